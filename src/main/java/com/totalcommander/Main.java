@@ -154,6 +154,9 @@ public class Main extends Application {
             });
             
             primaryStage.show();
+            
+            // Propone di riprendere o annullare gli spostamenti interrotti alla chiusura precedente
+            Platform.runLater(mainWindow::recoverInterruptedMoves);
         } catch (Exception e) {
             showError("Errore di Avvio", 
                 "Impossibile avviare l'applicazione: " + e.getMessage());
@@ -1,66 +1,148 @@
 package com.totalcommander.models;
 
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Modello per rappresentare un elemento file nella tabella
+ * Modello per rappresentare un elemento file nella tabella.
+ * Conserva solo valori grezzi (dimensione, data, flag); i testi mostrati nella tabella
+ * vengono formattati al momento della visualizzazione
  */
 public class FileItem {
-    private String name;
-    private String size;
-    private String type;
-    private String modifiedDate;
-    private boolean isDirectory;
 
-    public FileItem(String name, String type, String size, String modifiedDate, boolean isDirectory) {
+    // Data sconosciuta (es. alcuni listing FTP)
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    private static final byte FLAG_DIRECTORY = 1;
+    private static final byte FLAG_PARENT = 2;
+
+    private static final DateTimeFormatter DATE_FORMAT =
+        DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm").withZone(ZoneId.systemDefault());
+
+    // Estensioni condivise tra tutti gli elementi: poche stringhe distinte per migliaia di file.
+    // Si condividono solo quelle corte e fino a MAX_SHARED_EXTENSIONS, le altre restano per file
+    private static final Map<String, String> extensions = new ConcurrentHashMap<>();
+    private static final int MAX_SHARED_EXTENSION_LENGTH = 8;
+    private static final int MAX_SHARED_EXTENSIONS = 4096;
+
+    /**
+     * Ordinamento per dimensione reale; le cartelle precedono i file
+     */
+    public static final Comparator<FileItem> BY_SIZE =
+        Comparator.comparingLong(item -> item.isDirectory() ? -1 : item.size);
+
+    /**
+     * Ordinamento per data di modifica reale
+     */
+    public static final Comparator<FileItem> BY_DATE = Comparator.comparingLong(item -> item.mtime);
+
+    private final String name;
+    private final String extension;   // maiuscola, null se assente
+    private final long size;
+    private final long mtime;          // millisecondi, UNKNOWN_TIME se sconosciuta
+    private final byte flags;
+
+    public FileItem(String name, long size, long mtime, boolean isDirectory) {
+        this(name, size, mtime, isDirectory ? FLAG_DIRECTORY : 0);
+    }
+
+    private FileItem(String name, long size, long mtime, byte flags) {
         this.name = name;
-        this.type = type;
         this.size = size;
-        this.modifiedDate = modifiedDate;
-        this.isDirectory = isDirectory;
+        this.mtime = mtime;
+        this.flags = flags;
+        this.extension = (flags & FLAG_DIRECTORY) != 0 ? null : extensionOf(name);
+    }
+
+    /**
+     * Voce ".." per risalire alla cartella superiore
+     */
+    public static FileItem parent() {
+        return new FileItem("..", 0, UNKNOWN_TIME, (byte) (FLAG_DIRECTORY | FLAG_PARENT));
     }
 
     public static FileItem fromFile(File file) {
-        String name = file.getName();
         boolean isDir = file.isDirectory();
-        String type = isDir ? "Cartella" : getFileExtension(name);
-        String size = isDir ? "<DIR>" : formatFileSize(file.length());
-        String date = formatDate(file.lastModified());
-        
-        return new FileItem(name, type, size, date, isDir);
+        return new FileItem(file.getName(), isDir ? 0 : file.length(), file.lastModified(), isDir);
+    }
+
+    /**
+     * Crea l'elemento dagli attributi già letti, senza ulteriori accessi al disco
+     */
+    public static FileItem fromAttributes(String name, BasicFileAttributes attrs) {
+        boolean isDir = attrs.isDirectory();
+        return new FileItem(name, isDir ? 0 : attrs.size(), attrs.lastModifiedTime().toMillis(), isDir);
     }
 
-    private static String getFileExtension(String filename) {
+    private static String extensionOf(String filename) {
         int lastDot = filename.lastIndexOf('.');
         if (lastDot > 0 && lastDot < filename.length() - 1) {
-            return filename.substring(lastDot + 1).toUpperCase();
+            String extension = filename.substring(lastDot + 1).toUpperCase(Locale.ROOT);
+            if (extension.length() > MAX_SHARED_EXTENSION_LENGTH) {
+                return extension;
+            }
+            String shared = extensions.get(extension);
+            if (shared == null && extensions.size() < MAX_SHARED_EXTENSIONS) {
+                shared = extensions.putIfAbsent(extension, extension);
+            }
+            return shared != null ? shared : extension;
         }
-        return "File";
+        return null;
     }
 
-    private static String formatFileSize(long bytes) {
+    public static String formatFileSize(long bytes) {
         if (bytes < 1024) return bytes + " B";
         if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
         if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024.0));
         return String.format("%.2f GB", bytes / (1024.0 * 1024.0 * 1024.0));
     }
 
-    private static String formatDate(long millis) {
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-        return sdf.format(new Date(millis));
+    public static String formatDate(long millis) {
+        if (millis == UNKNOWN_TIME) {
+            return "";
+        }
+        return DATE_FORMAT.format(Instant.ofEpochMilli(millis));
     }
 
     // Getters
     public String getName() { return name; }
-    public String getSize() { return size; }
-    public String getType() { return type; }
-    public String getModifiedDate() { return modifiedDate; }
-    public boolean isDirectory() { return isDirectory; }
-}
+    public boolean isDirectory() { return (flags & FLAG_DIRECTORY) != 0; }
+    public boolean isParent() { return (flags & FLAG_PARENT) != 0; }
+    public long getSizeBytes() { return size; }
+    public long getLastModified() { return mtime; }
+    public String getExtension() { return extension; }
+
+    /**
+     * Stesso nome e stessi attributi: la riga in tabella non va aggiornata
+     */
+    public boolean sameAs(FileItem other) {
+        return other != null && name.equals(other.name) && size == other.size
+            && mtime == other.mtime && flags == other.flags;
+    }
+
+    // Testi per la tabella, calcolati su richiesta
+    public String getSize() {
+        if (isParent()) {
+            return "";
+        }
+        return isDirectory() ? "<DIR>" : formatFileSize(size);
+    }
+
+    public String getType() {
+        if (isDirectory()) {
+            return "Cartella";
+        }
+        return extension != null ? extension : "File";
+    }
 
+    public String getModifiedDate() {
+        return formatDate(mtime);
+    }
+}
@@ -0,0 +1,88 @@
+package com.totalcommander.models;
+
+/**
+ * Istantanea dell'avanzamento di un'operazione su file (byte, file, file corrente, ETA)
+ */
+public class OperationProgress {
+    private final long bytesDone;
+    private final long totalBytes;   // -1 se non noto
+    private final long filesDone;
+    private final long totalFiles;   // -1 se non noto
+    private final String currentFile;
+    private final double elapsedSeconds;
+
+    public OperationProgress(long bytesDone, long totalBytes, long filesDone, long totalFiles,
+                             String currentFile, double elapsedSeconds) {
+        this.bytesDone = bytesDone;
+        this.totalBytes = totalBytes;
+        this.filesDone = filesDone;
+        this.totalFiles = totalFiles;
+        this.currentFile = currentFile;
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    public long getBytesDone() { return bytesDone; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getFilesDone() { return filesDone; }
+    public long getTotalFiles() { return totalFiles; }
+    public String getCurrentFile() { return currentFile; }
+    public double getElapsedSeconds() { return elapsedSeconds; }
+
+    /**
+     * Frazione completata (0..1), oppure -1 se i totali non sono noti
+     */
+    public double getFraction() {
+        if (totalBytes > 0) {
+            return Math.min(1.0, bytesDone / (double) totalBytes);
+        }
+        if (totalFiles > 0) {
+            return Math.min(1.0, filesDone / (double) totalFiles);
+        }
+        return -1;
+    }
+
+    public double getBytesPerSecond() {
+        return elapsedSeconds > 0 ? bytesDone / elapsedSeconds : 0;
+    }
+
+    public double getFilesPerSecond() {
+        return elapsedSeconds > 0 ? filesDone / elapsedSeconds : 0;
+    }
+
+    /**
+     * Secondi stimati alla fine, oppure -1 se non stimabili
+     */
+    public long getEtaSeconds() {
+        double fraction = getFraction();
+        if (fraction <= 0 || elapsedSeconds <= 0) {
+            return -1;
+        }
+        return Math.round(elapsedSeconds / fraction - elapsedSeconds);
+    }
+
+    /**
+     * Descrizione breve per la colonna di stato (es. "12/200 file - 3.10 MB/s - ETA 00:42")
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(filesDone);
+        if (totalFiles >= 0) {
+            sb.append("/").append(totalFiles);
+        }
+        sb.append(" file");
+        if (bytesDone > 0) {
+            sb.append(String.format(" - %.2f MB/s", getBytesPerSecond() / (1024.0 * 1024.0)));
+        } else if (filesDone > 0) {
+            // Operazioni senza byte da trasferire (es. eliminazione): throughput in file
+            sb.append(String.format(" - %.0f file/s", getFilesPerSecond()));
+        }
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            sb.append(String.format(" - ETA %02d:%02d", eta / 60, eta % 60));
+        }
+        if (currentFile != null) {
+            sb.append(" - ").append(currentFile);
+        }
+        return sb.toString();
+    }
+}
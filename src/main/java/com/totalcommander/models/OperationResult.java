@@ -0,0 +1,110 @@
+package com.totalcommander.models;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Risultato di un'operazione su file multipli: esito per singolo file e throughput complessivo
+ */
+public class OperationResult {
+
+    /**
+     * Esito dell'operazione su un singolo file
+     */
+    public static class FileResult {
+        private final Path source;
+        private final Path destination;
+        private final long bytes;
+        private final boolean success;
+        private final String errorMessage;
+
+        public FileResult(Path source, Path destination, long bytes, boolean success, String errorMessage) {
+            this.source = source;
+            this.destination = destination;
+            this.bytes = bytes;
+            this.success = success;
+            this.errorMessage = errorMessage;
+        }
+
+        public Path getSource() { return source; }
+        public Path getDestination() { return destination; }
+        public long getBytes() { return bytes; }
+        public boolean isSuccess() { return success; }
+        public String getErrorMessage() { return errorMessage; }
+    }
+
+    private final Queue<FileResult> fileResults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos = -1;
+    private volatile boolean cancelled = false;
+
+    public void addSuccess(Path source, Path destination, long bytes) {
+        fileResults.add(new FileResult(source, destination, bytes, true, null));
+        filesDone.incrementAndGet();
+        bytesDone.addAndGet(bytes);
+    }
+
+    public void addFailure(Path source, Path destination, String errorMessage) {
+        fileResults.add(new FileResult(source, destination, 0, false, errorMessage));
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Segna la fine dell'operazione (per il calcolo del throughput)
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public void markCancelled() {
+        cancelled = true;
+    }
+
+    public boolean isSuccess() { return failures.get() == 0 && !cancelled; }
+    public boolean isCancelled() { return cancelled; }
+    public int getFilesDone() { return filesDone.get(); }
+    public int getFailureCount() { return failures.get(); }
+    public long getBytesDone() { return bytesDone.get(); }
+
+    public List<FileResult> getFileResults() {
+        return new ArrayList<>(fileResults);
+    }
+
+    public List<FileResult> getFailures() {
+        List<FileResult> failed = new ArrayList<>();
+        for (FileResult result : fileResults) {
+            if (!result.isSuccess()) {
+                failed.add(result);
+            }
+        }
+        return failed;
+    }
+
+    public double getElapsedSeconds() {
+        long end = endNanos >= 0 ? endNanos : System.nanoTime();
+        return Math.max(end - startNanos, 1) / 1_000_000_000.0;
+    }
+
+    public double getFilesPerSecond() {
+        return filesDone.get() / getElapsedSeconds();
+    }
+
+    public double getMegabytesPerSecond() {
+        return bytesDone.get() / (1024.0 * 1024.0) / getElapsedSeconds();
+    }
+
+    /**
+     * Riepilogo leggibile del throughput (es. "1200 file/s, 85.30 MB/s")
+     */
+    public String formatThroughput() {
+        return String.format("%.0f file/s, %.2f MB/s", getFilesPerSecond(), getMegabytesPerSecond());
+    }
+}
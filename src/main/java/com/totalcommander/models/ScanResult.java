@@ -0,0 +1,64 @@
+package com.totalcommander.models;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Risultato della scansione preliminare di una selezione: cartelle (in pre-ordine),
+ * file con dimensione e totali. Viene riutilizzato dall'operazione per non
+ * percorrere l'albero due volte
+ */
+public class ScanResult {
+
+    /**
+     * Elemento trovato durante la scansione. Il percorso relativo parte dal nome
+     * dell'elemento selezionato, così la destinazione si ottiene con resolve()
+     */
+    public static class Entry {
+        private final Path source;
+        private final Path relativePath;
+        private final long size;
+        private final boolean directory;
+
+        public Entry(Path source, Path relativePath, long size, boolean directory) {
+            this.source = source;
+            this.relativePath = relativePath;
+            this.size = size;
+            this.directory = directory;
+        }
+
+        public Path getSource() { return source; }
+        public Path getRelativePath() { return relativePath; }
+        public long getSize() { return size; }
+        public boolean isDirectory() { return directory; }
+    }
+
+    private final List<Entry> directories = new ArrayList<>();
+    private final List<Entry> files = new ArrayList<>();
+    private final List<OperationResult.FileResult> failures;
+    private final boolean cancelled;
+    private long totalBytes = 0;
+
+    public ScanResult(List<Entry> entries, List<OperationResult.FileResult> failures, boolean cancelled) {
+        for (Entry entry : entries) {
+            if (entry.isDirectory()) {
+                directories.add(entry);
+            } else {
+                files.add(entry);
+                totalBytes += entry.getSize();
+            }
+        }
+        this.failures = failures;
+        this.cancelled = cancelled;
+    }
+
+    public List<Entry> getDirectories() { return Collections.unmodifiableList(directories); }
+    public List<Entry> getFiles() { return Collections.unmodifiableList(files); }
+    public List<OperationResult.FileResult> getFailures() { return Collections.unmodifiableList(failures); }
+    public boolean isCancelled() { return cancelled; }
+    public long getTotalBytes() { return totalBytes; }
+    public int getFileCount() { return files.size(); }
+    public int getDirectoryCount() { return directories.size(); }
+}
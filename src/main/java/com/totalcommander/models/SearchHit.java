@@ -0,0 +1,64 @@
+package com.totalcommander.models;
+
+import java.nio.file.Path;
+
+/**
+ * File trovato da una ricerca, eventualmente un elemento all'interno di un archivio
+ */
+public class SearchHit {
+    private final Path path;
+    private final String entry;   // percorso dentro l'archivio, null per i file normali
+    private final long size;
+    private final long lastModified;
+
+    public SearchHit(Path path, long size, long lastModified) {
+        this(path, null, size, lastModified);
+    }
+
+    public SearchHit(Path path, String entry, long size, long lastModified) {
+        this.path = path;
+        this.entry = entry;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * File trovato, oppure l'archivio che contiene l'elemento trovato
+     */
+    public Path getPath() { return path; }
+    public String getEntry() { return entry; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+
+    public boolean isArchiveEntry() {
+        return entry != null;
+    }
+
+    /**
+     * Cartella che contiene il file, come mostrata nei risultati (archivio.zip!/cartella
+     * per gli elementi di un archivio)
+     */
+    public String getLocation() {
+        if (entry != null) {
+            int slash = entry.lastIndexOf('/');
+            return path + "!/" + (slash > 0 ? entry.substring(0, slash) : "");
+        }
+        Path parent = path.getParent();
+        return parent != null ? parent.toString() : "";
+    }
+
+    public String getName() {
+        if (entry != null) {
+            return entry.substring(entry.lastIndexOf('/') + 1);
+        }
+        Path name = path.getFileName();
+        return name != null ? name.toString() : path.toString();
+    }
+
+    /**
+     * Percorso completo, con archivio.zip!/percorso/interno per gli elementi di un archivio
+     */
+    public String getDisplayPath() {
+        return entry != null ? path + "!/" + entry : path.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.totalcommander.models;
+
+/**
+ * Operazione necessaria per allineare la destinazione all'origine in una sincronizzazione
+ */
+public class SyncAction {
+
+    public enum Type {
+        COPY("Copia"),
+        CREATE_DIRECTORY("Crea cartella"),
+        DELETE("Elimina");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final Type type;
+    private final String relativePath;   // separato da '/', relativo alle due radici
+    private final long size;
+    private final long lastModified;     // millisecondi, dell'origine per le copie
+    private final boolean directory;
+    private final String reason;
+
+    public SyncAction(Type type, String relativePath, long size, long lastModified,
+                      boolean directory, String reason) {
+        this.type = type;
+        this.relativePath = relativePath;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.directory = directory;
+        this.reason = reason;
+    }
+
+    public Type getType() { return type; }
+    public String getRelativePath() { return relativePath; }
+    public long getSize() { return size; }
+    public long getLastModified() { return lastModified; }
+    public boolean isDirectory() { return directory; }
+    public String getReason() { return reason; }
+
+    @Override
+    public String toString() {
+        return type.getLabel() + " " + relativePath + " (" + reason + ")";
+    }
+}
@@ -13,10 +13,14 @@ public class TransferTask {
     private final StringProperty status = new SimpleStringProperty("In attesa...");
     private final LongProperty bytesTransferred = new SimpleLongProperty(0);
     private final LongProperty totalBytes = new SimpleLongProperty(0);
+    private final DoubleProperty bytesPerSecond = new SimpleDoubleProperty(0); // velocità attuale
     private final StringProperty transferType = new SimpleStringProperty(); // "Upload" o "Download"
     private final BooleanProperty completed = new SimpleBooleanProperty(false);
     private final BooleanProperty failed = new SimpleBooleanProperty(false);
     private String errorMessage;
+    private String server;      // Server FTP (host:porta@utente), null per le operazioni locali
+    private boolean directory;
+    private int queueId;        // Elemento della coda persistente, 0 se non in coda
 
     public TransferTask(String sourcePath, String destinationPath, String fileName, String transferType) {
         this.sourcePath.set(sourcePath);
@@ -33,6 +37,7 @@ public class TransferTask {
     public StringProperty statusProperty() { return status; }
     public LongProperty bytesTransferredProperty() { return bytesTransferred; }
     public LongProperty totalBytesProperty() { return totalBytes; }
+    public DoubleProperty bytesPerSecondProperty() { return bytesPerSecond; }
     public StringProperty transferTypeProperty() { return transferType; }
     public BooleanProperty completedProperty() { return completed; }
     public BooleanProperty failedProperty() { return failed; }
@@ -45,17 +50,25 @@ public class TransferTask {
     public String getStatus() { return status.get(); }
     public long getBytesTransferred() { return bytesTransferred.get(); }
     public long getTotalBytes() { return totalBytes.get(); }
+    public double getBytesPerSecond() { return bytesPerSecond.get(); }
     public String getTransferType() { return transferType.get(); }
     public boolean isCompleted() { return completed.get(); }
     public boolean isFailed() { return failed.get(); }
     public String getErrorMessage() { return errorMessage; }
+    public String getServer() { return server; }
+    public boolean isDirectory() { return directory; }
+    public int getQueueId() { return queueId; }
 
     // Setters
     public void setProgress(double progress) { this.progress.set(progress); }
     public void setStatus(String status) { this.status.set(status); }
     public void setBytesTransferred(long bytes) { this.bytesTransferred.set(bytes); }
     public void setTotalBytes(long bytes) { this.totalBytes.set(bytes); }
+    public void setBytesPerSecond(double rate) { this.bytesPerSecond.set(rate); }
     public void setCompleted(boolean completed) { this.completed.set(completed); }
+    public void setServer(String server) { this.server = server; }
+    public void setDirectory(boolean directory) { this.directory = directory; }
+    public void setQueueId(int queueId) { this.queueId = queueId; }
     public void setFailed(boolean failed, String errorMessage) { 
         this.failed.set(failed); 
         this.errorMessage = errorMessage;
@@ -4,16 +4,123 @@ import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.commons.compress.archivers.ArchiveInputStream;
 import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Servizio per gestione archivi (ZIP, TAR, etc.)
  */
 public class ArchiveService {
     
+    /**
+     * Contenuto di un elemento dell'archivio, leggibile solo durante la visita
+     */
+    public interface EntryContent {
+        InputStream open() throws IOException;
+    }
+    
+    /**
+     * Riceve gli elementi (non cartelle) di un archivio; false interrompe la visita
+     */
+    public interface EntryVisitor {
+        boolean visit(String name, long size, long lastModified, EntryContent content) throws IOException;
+    }
+    
+    /**
+     * Archivi in cui la ricerca può entrare senza estrarli
+     */
+    public static boolean isSearchableArchive(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return isZip(name) || name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+    
+    private static boolean isZip(String lowerCaseName) {
+        return lowerCaseName.endsWith(".zip") || lowerCaseName.endsWith(".jar");
+    }
+    
+    /**
+     * Visita gli elementi senza scrivere nulla su disco: gli ZIP tramite la directory
+     * centrale (il contenuto di un elemento viene letto solo se richiesto), i TAR in
+     * sequenza sullo stream eventualmente decompresso
+     */
+    public void visitEntries(Path archive, EntryVisitor visitor) throws IOException {
+        if (isZip(archive.getFileName().toString().toLowerCase(Locale.ROOT))) {
+            try (ZipFile zip = new ZipFile(archive.toFile())) {
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    if (!visitor.visit(entryName(entry.getName()), entry.getSize(), entry.getTime(),
+                            () -> zip.getInputStream(entry))) {
+                        return;
+                    }
+                }
+            }
+        } else {
+            try (TarArchiveInputStream tar = openTar(archive)) {
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextTarEntry()) != null) {
+                    if (entry.isDirectory() || !tar.canReadEntryData(entry)) {
+                        continue;
+                    }
+                    // Lo stream resta dell'archivio: chiuderlo non deve chiudere il TAR
+                    if (!visitor.visit(entryName(entry.getName()), entry.getSize(), entry.getLastModifiedDate().getTime(),
+                            () -> CloseShieldInputStream.wrap(tar))) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Nome dell'elemento senza "./" o "/" iniziali (frequenti negli archivi TAR)
+     */
+    private static String entryName(String name) {
+        while (name.startsWith("./") || name.startsWith("/")) {
+            name = name.substring(name.charAt(0) == '/' ? 1 : 2);
+        }
+        return name;
+    }
+    
+    private TarArchiveInputStream openTar(Path archive) throws IOException {
+        String name = archive.getFileName().toString().toLowerCase(Locale.ROOT);
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive), 64 * 1024);
+        if (name.endsWith(".gz") || name.endsWith(".tgz")) {
+            in = new GzipCompressorInputStream(in, true);
+        }
+        return new TarArchiveInputStream(in);
+    }
+    
+    /**
+     * Legge un elemento dell'archivio (al massimo maxBytes byte); null se non presente
+     */
+    public byte[] readEntry(Path archive, String entryName, int maxBytes) throws IOException {
+        byte[][] result = new byte[1][];
+        visitEntries(archive, (name, size, lastModified, content) -> {
+            if (!name.equals(entryName)) {
+                return true;
+            }
+            try (InputStream in = content.open()) {
+                result[0] = in.readNBytes(maxBytes);
+            }
+            return false;
+        });
+        return result[0];
+    }
+    
     public boolean extractArchive(File archiveFile, File destinationDir) {
         try {
             String filename = archiveFile.getName().toLowerCase();
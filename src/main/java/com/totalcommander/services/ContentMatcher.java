@@ -0,0 +1,248 @@
+package com.totalcommander.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Cerca un testo nel contenuto di un file leggendolo a blocchi sovrapposti, con memoria
+ * limitata qualunque sia la dimensione del file. I testi semplici e le sequenze
+ * esadecimali vengono cercati direttamente sui byte (Boyer-Moore-Horspool); solo le
+ * porzioni attorno a un possibile riscontro vengono decodificate e verificate con la regex
+ */
+public class ContentMatcher {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    // Byte decodificati attorno a un riscontro per la verifica (es. parola intera)
+    private static final int CONTEXT = 16;
+    // Caratteri mantenuti tra un blocco e il successivo nella ricerca con regex:
+    // un riscontro più lungo a cavallo di due blocchi non viene trovato
+    private static final int REGEX_OVERLAP = 64 * 1024;
+
+    private static final byte[] ASCII_FOLD = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            ASCII_FOLD[i] = (byte) (i >= 'A' && i <= 'Z' ? i + 32 : i);
+        }
+    }
+
+    private final Pattern pattern;
+    private final Charset charset;
+    private final byte[] literal;       // null: nessun filtro sui byte, solo regex a blocchi
+    private final boolean ignoreCase;   // confronto dei byte senza distinzione maiuscole (solo ASCII)
+    private final boolean verify;       // i riscontri sui byte vanno confermati con la regex
+    private final int[] shift;
+
+    private ContentMatcher(Pattern pattern, Charset charset, byte[] literal, boolean ignoreCase, boolean verify) {
+        this.pattern = pattern;
+        this.charset = charset;
+        this.literal = literal;
+        this.ignoreCase = ignoreCase;
+        this.verify = verify;
+        this.shift = literal != null ? buildShiftTable(literal, ignoreCase) : null;
+    }
+
+    /**
+     * Testo (semplice o regex) nel charset indicato
+     */
+    public static ContentMatcher forText(String text, boolean regex, boolean wholeWord, boolean caseSensitive,
+                                         Charset charset) {
+        String expression = regex ? text : Pattern.quote(text);
+        if (wholeWord) {
+            expression = "\\b" + expression + "\\b";
+        }
+        Pattern pattern = caseSensitive ? Pattern.compile(expression)
+            : Pattern.compile(expression, Pattern.CASE_INSENSITIVE);
+        if (regex || !supportsByteSearch(charset)) {
+            return new ContentMatcher(pattern, charset, null, false, true);
+        }
+        boolean ascii = text.chars().allMatch(c -> c < 128);
+        if (!caseSensitive && !ascii) {
+            // Maiuscole/minuscole non ASCII: i byte non bastano, ricerca con regex a blocchi
+            return new ContentMatcher(pattern, charset, null, false, true);
+        }
+        byte[] bytes = text.getBytes(charset);
+        if (bytes.length == 0) {
+            return new ContentMatcher(pattern, charset, null, false, true);
+        }
+        return new ContentMatcher(pattern, charset, bytes, !caseSensitive, wholeWord);
+    }
+
+    /**
+     * Sequenza di byte in esadecimale (spazi e trattini ammessi), confrontata esattamente
+     */
+    public static ContentMatcher forHex(String hex) {
+        String clean = hex.replaceAll("[\\s-]", "");
+        if (clean.isEmpty() || clean.length() % 2 != 0 || !clean.matches("[0-9A-Fa-f]+")) {
+            throw new IllegalArgumentException("Sequenza esadecimale non valida: " + hex);
+        }
+        byte[] bytes = new byte[clean.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(clean.substring(i * 2, i * 2 + 2), 16);
+        }
+        return new ContentMatcher(null, StandardCharsets.ISO_8859_1, bytes, false, false);
+    }
+
+    /**
+     * Charset in cui ogni carattere ASCII è un solo byte e le sequenze non si sovrappongono
+     */
+    private static boolean supportsByteSearch(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        try {
+            CharsetEncoder encoder = charset.newEncoder();
+            return encoder.maxBytesPerChar() == 1.0f;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Il file contiene il testo cercato
+     */
+    public boolean matches(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return matches(in);
+        }
+    }
+
+    /**
+     * Lo stream contiene il testo cercato (es. un elemento di un archivio); lo stream
+     * non viene chiuso
+     */
+    public boolean matches(InputStream in) throws IOException {
+        return literal != null ? matchBytes(in) : matchChunks(new InputStreamReader(in, charset));
+    }
+
+    /**
+     * Il testo letto contiene il testo cercato (es. testo estratto da un documento);
+     * il Reader non viene chiuso
+     */
+    public boolean matches(Reader reader) throws IOException {
+        if (pattern == null) {
+            throw new IllegalStateException("Le sequenze esadecimali si cercano solo nei byte");
+        }
+        return matchChunks(reader);
+    }
+
+    private boolean matchBytes(InputStream in) throws IOException {
+        int length = literal.length;
+        byte[] buffer = new byte[CHUNK_SIZE + length + 2 * CONTEXT];
+        int filled = 0;
+        int searchFrom = 0;
+        boolean eof = false;
+        while (!eof) {
+            // Riempie il buffer dopo i byte conservati dal blocco precedente
+            while (filled < buffer.length) {
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    eof = true;
+                    break;
+                }
+                filled += read;
+            }
+            // Senza la fine del file, i riscontri troppo vicini al bordo attendono il blocco successivo
+            int limit = eof ? filled - length + 1 : filled - length - CONTEXT + 1;
+            int position = searchFrom;
+            while ((position = indexOf(buffer, position, limit)) >= 0) {
+                if (!verify || verifyWindow(buffer, position, filled)) {
+                    return true;
+                }
+                position++;
+            }
+            if (eof) {
+                break;
+            }
+            int keepFrom = Math.max(0, limit - CONTEXT);
+            System.arraycopy(buffer, keepFrom, buffer, 0, filled - keepFrom);
+            filled -= keepFrom;
+            searchFrom = Math.max(0, limit - keepFrom);
+        }
+        return false;
+    }
+
+    /**
+     * Boyer-Moore-Horspool sui byte: primo riscontro che inizia in [from, limit)
+     */
+    private int indexOf(byte[] data, int from, int limit) {
+        int last = literal.length - 1;
+        for (int i = from; i < limit; ) {
+            int j = last;
+            while (j >= 0 && byteAt(data, i + j) == byteAt(literal, j)) {
+                j--;
+            }
+            if (j < 0) {
+                return i;
+            }
+            i += shift[data[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    private byte byteAt(byte[] data, int index) {
+        return ignoreCase ? ASCII_FOLD[data[index] & 0xff] : data[index];
+    }
+
+    private static int[] buildShiftTable(byte[] needle, boolean ignoreCase) {
+        int[] table = new int[256];
+        int last = needle.length - 1;
+        java.util.Arrays.fill(table, needle.length);
+        for (int i = 0; i < last; i++) {
+            int b = needle[i] & 0xff;
+            table[b] = last - i;
+            if (ignoreCase) {
+                // Entrambe le forme della lettera spostano allo stesso modo
+                table[ASCII_FOLD[b] & 0xff] = last - i;
+                if (b >= 'a' && b <= 'z') {
+                    table[b - 32] = last - i;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Decodifica solo la finestra attorno al riscontro e la verifica con la regex
+     */
+    private boolean verifyWindow(byte[] data, int position, int filled) {
+        int start = Math.max(0, position - CONTEXT);
+        int end = Math.min(filled, position + literal.length + CONTEXT);
+        CharBuffer window = charset.decode(ByteBuffer.wrap(data, start, end - start));
+        return pattern.matcher(window).find();
+    }
+
+    /**
+     * Regex su blocchi di testo decodificati, con una sovrapposizione tra blocchi
+     */
+    private boolean matchChunks(Reader reader) throws IOException {
+        char[] buffer = new char[CHUNK_SIZE + REGEX_OVERLAP];
+        int filled = 0;
+        while (true) {
+            int read = reader.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                // Ultimo blocco, eventualmente parziale
+                return filled > 0 && pattern.matcher(CharBuffer.wrap(buffer, 0, filled)).find();
+            }
+            filled += read;
+            if (filled < buffer.length) {
+                continue;
+            }
+            if (pattern.matcher(CharBuffer.wrap(buffer, 0, filled)).find()) {
+                return true;
+            }
+            System.arraycopy(buffer, filled - REGEX_OVERLAP, buffer, 0, REGEX_OVERLAP);
+            filled = REGEX_OVERLAP;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.totalcommander.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Riconosce i file di testo e binari dai primi byte del contenuto, indipendentemente
+ * dall'estensione: BOM, proporzione di byte nulli e caratteri di controllo, validità
+ * UTF-8. Il verdetto viene conservato per percorso, dimensione e data di modifica
+ */
+public class ContentSniffer {
+
+    public static final int SAMPLE_SIZE = 8 * 1024;
+    private static final int MAX_CACHED = 50_000;
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static ContentSniffer instance;
+
+    /**
+     * Esito dell'analisi: binario oppure testo con il charset riconosciuto
+     */
+    public static class Verdict {
+        private final boolean binary;
+        private final Charset charset;
+        private final int bomLength;
+
+        Verdict(boolean binary, Charset charset, int bomLength) {
+            this.binary = binary;
+            this.charset = charset;
+            this.bomLength = bomLength;
+        }
+
+        public boolean isBinary() { return binary; }
+        public Charset getCharset() { return charset; }
+        public int getBomLength() { return bomLength; }
+
+        /**
+         * Testo decodificato con il charset riconosciuto, senza BOM
+         */
+        public String decode(byte[] bytes) {
+            return new String(bytes, bomLength, bytes.length - bomLength, charset);
+        }
+
+        /**
+         * Testo codificato come il file d'origine, con lo stesso charset e lo stesso BOM.
+         * I caratteri non rappresentabili nel charset sono un errore, non diventano '?'
+         */
+        public byte[] encode(String text) throws CharacterCodingException {
+            String withBom = bomLength > 0 ? "\uFEFF" + text : text;
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(withBom));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return bytes;
+        }
+    }
+
+    private static final Verdict BINARY = new Verdict(true, null, 0);
+
+    private static class CachedVerdict {
+        final long size;
+        final long lastModified;
+        final Verdict verdict;
+
+        CachedVerdict(long size, long lastModified, Verdict verdict) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.verdict = verdict;
+        }
+    }
+
+    private final Map<Path, CachedVerdict> cache = new LinkedHashMap<Path, CachedVerdict>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CachedVerdict> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private ContentSniffer() {}
+
+    public static synchronized ContentSniffer getInstance() {
+        if (instance == null) {
+            instance = new ContentSniffer();
+        }
+        return instance;
+    }
+
+    /**
+     * Analizza l'inizio del file; il verdetto resta valido finché dimensione e data non cambiano
+     */
+    public Verdict sniff(Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        synchronized (cache) {
+            CachedVerdict cached = cache.get(file);
+            if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                return cached.verdict;
+            }
+        }
+        byte[] sample;
+        try (InputStream in = Files.newInputStream(file)) {
+            sample = in.readNBytes(SAMPLE_SIZE);
+        }
+        Verdict verdict = sniff(sample, sample.length);
+        synchronized (cache) {
+            cache.put(file, new CachedVerdict(size, lastModified, verdict));
+        }
+        return verdict;
+    }
+
+    /**
+     * Analizza i primi byte di un contenuto già letto (es. un elemento di un archivio)
+     */
+    public static Verdict sniff(byte[] data, int length) {
+        length = Math.min(length, Math.min(data.length, SAMPLE_SIZE));
+        if (length >= 3 && (data[0] & 0xff) == 0xEF && (data[1] & 0xff) == 0xBB && (data[2] & 0xff) == 0xBF) {
+            return new Verdict(false, StandardCharsets.UTF_8, 3);
+        }
+        if (length >= 4 && (data[0] & 0xff) == 0xFF && (data[1] & 0xff) == 0xFE && data[2] == 0 && data[3] == 0) {
+            return new Verdict(false, Charset.forName("UTF-32LE"), 4);
+        }
+        if (length >= 4 && data[0] == 0 && data[1] == 0 && (data[2] & 0xff) == 0xFE && (data[3] & 0xff) == 0xFF) {
+            return new Verdict(false, Charset.forName("UTF-32BE"), 4);
+        }
+        if (length >= 2 && (data[0] & 0xff) == 0xFF && (data[1] & 0xff) == 0xFE) {
+            return new Verdict(false, StandardCharsets.UTF_16LE, 2);
+        }
+        if (length >= 2 && (data[0] & 0xff) == 0xFE && (data[1] & 0xff) == 0xFF) {
+            return new Verdict(false, StandardCharsets.UTF_16BE, 2);
+        }
+
+        int evenNulls = 0;
+        int oddNulls = 0;
+        int controls = 0;
+        for (int i = 0; i < length; i++) {
+            int b = data[i] & 0xff;
+            if (b == 0) {
+                if ((i & 1) == 0) {
+                    evenNulls++;
+                } else {
+                    oddNulls++;
+                }
+            } else if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x08 && b != 0x1B) {
+                controls++;
+            }
+        }
+        if (evenNulls + oddNulls > 0) {
+            // UTF-16 senza BOM: testo latino con un byte nullo ogni due, sempre dallo stesso lato
+            int half = length / 2;
+            if (half > 0 && controls * 20 < length) {
+                if (oddNulls * 10 >= half * 7 && evenNulls * 20 < half) {
+                    return new Verdict(false, StandardCharsets.UTF_16LE, 0);
+                }
+                if (evenNulls * 10 >= half * 7 && oddNulls * 20 < half) {
+                    return new Verdict(false, StandardCharsets.UTF_16BE, 0);
+                }
+            }
+            return BINARY;
+        }
+        if (controls * 10 > length) {
+            return BINARY;
+        }
+        return new Verdict(false, isValidUtf8(data, length) ? StandardCharsets.UTF_8 : WINDOWS_1252, 0);
+    }
+
+    /**
+     * Sequenze UTF-8 corrette; l'ultima può essere troncata dalla fine del campione
+     */
+    private static boolean isValidUtf8(byte[] data, int length) {
+        int i = 0;
+        while (i < length) {
+            int b = data[i] & 0xff;
+            int continuation;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+            } else {
+                return false;
+            }
+            for (int j = 1; j <= continuation; j++) {
+                if (i + j >= length) {
+                    return true;
+                }
+                if ((data[i + j] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += continuation + 1;
+        }
+        return true;
+    }
+}
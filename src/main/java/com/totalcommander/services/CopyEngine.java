@@ -0,0 +1,274 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationResult;
+import com.totalcommander.models.ScanResult;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Motore di copia locale: riusa la scansione preliminare dell'albero, crea le cartelle
+ * prima dei loro figli e distribuisce la copia dei file su un pool ForkJoin
+ */
+public class CopyEngine {
+
+    // Numero di file per sotto-task sotto il quale non si suddivide più il lavoro
+    private static final int SPLIT_THRESHOLD = 16;
+
+    // Dimensione di ogni segmento trasferito con transferTo per i file grandi
+    private static final long CHUNK_SIZE = 8L * 1024 * 1024;
+
+    // Limite di copie concorrenti per volume di destinazione, condiviso tra tutte le operazioni
+    private static final Map<FileStore, Semaphore> volumeLimits = new ConcurrentHashMap<>();
+
+    private final int threadsPerVolume;
+    private long largeFileThreshold;
+    private String verifyAlgorithm;
+    private OperationControl control = new OperationControl();
+    private ProgressTracker tracker = ProgressTracker.silent();
+
+    public CopyEngine() {
+        this(SettingsService.getInstance().getSettings().copyThreadsPerVolume);
+    }
+
+    public CopyEngine(int threadsPerVolume) {
+        this.threadsPerVolume = Math.max(1, threadsPerVolume);
+        SettingsService.ApplicationSettings settings = SettingsService.getInstance().getSettings();
+        this.largeFileThreshold = settings.largeFileThresholdMB * 1024L * 1024L;
+        this.verifyAlgorithm = settings.verifyCopies ? settings.verifyAlgorithm : null;
+    }
+
+    /**
+     * Imposta il controllo usato per mettere in pausa o annullare la copia (verificato
+     * tra un file e l'altro e tra un segmento e l'altro dei file grandi)
+     */
+    public void setControl(OperationControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Imposta il tracker che riceve byte e file copiati dai thread di lavoro
+     */
+    public void setProgressTracker(ProgressTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Dimensione oltre la quale un file viene copiato a segmenti con FileChannel.transferTo
+     */
+    public void setLargeFileThreshold(long bytes) {
+        this.largeFileThreshold = bytes;
+    }
+
+    /**
+     * Algoritmo di verifica delle copie (CRC32C o SHA-256), null per non verificare
+     */
+    public void setVerifyAlgorithm(String algorithm) {
+        this.verifyAlgorithm = algorithm;
+    }
+
+    /**
+     * Copia file e cartelle nella directory di destinazione, scansionando prima la selezione
+     */
+    public OperationResult copy(List<File> files, Path destination) {
+        TreeScanner scanner = new TreeScanner();
+        scanner.setControl(control);
+        return copy(scanner.scan(files), destination);
+    }
+
+    /**
+     * Copia gli elementi di una scansione già eseguita, senza percorrere di nuovo l'albero
+     */
+    public OperationResult copy(ScanResult scan, Path destination) {
+        OperationResult result = new OperationResult();
+        for (OperationResult.FileResult failure : scan.getFailures()) {
+            result.addFailure(failure.getSource(), null, failure.getErrorMessage());
+        }
+        List<ScanResult.Entry> files = scan.getFiles();
+        tracker.setTotals(files.size(), scan.getTotalBytes());
+
+        // Crea le cartelle in pre-ordine, così ogni padre esiste prima dei figli
+        for (ScanResult.Entry dir : scan.getDirectories()) {
+            Path target = resolve(destination, dir);
+            try {
+                Files.createDirectories(target);
+            } catch (IOException e) {
+                result.addFailure(dir.getSource(), target, e.getMessage());
+            }
+        }
+
+        if (!files.isEmpty()) {
+            Semaphore volumeLimit = getVolumeLimit(destination);
+            ForkJoinPool pool = new ForkJoinPool(threadsPerVolume);
+            try {
+                pool.invoke(new CopyTask(files, 0, files.size(), destination, volumeLimit, result));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (scan.isCancelled() || control.isCancelled()) {
+            result.markCancelled();
+        }
+
+        result.finish();
+        tracker.publishNow();
+        return result;
+    }
+
+    private static Path resolve(Path destination, ScanResult.Entry entry) {
+        return destination.resolve(entry.getRelativePath().toString());
+    }
+
+    private Semaphore getVolumeLimit(Path destination) {
+        try {
+            FileStore store = Files.getFileStore(destination);
+            return volumeLimits.computeIfAbsent(store, s -> new Semaphore(threadsPerVolume));
+        } catch (IOException e) {
+            // Volume non determinabile: limite locale a questa operazione
+            return new Semaphore(threadsPerVolume);
+        }
+    }
+
+    /**
+     * Task work-stealing: divide l'intervallo di file a metà finché è abbastanza piccolo
+     */
+    private class CopyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<ScanResult.Entry> jobs;
+        private final int from;
+        private final int to;
+        private final Path destination;
+        private final Semaphore volumeLimit;
+        private final OperationResult result;
+
+        CopyTask(List<ScanResult.Entry> jobs, int from, int to, Path destination,
+                 Semaphore volumeLimit, OperationResult result) {
+            this.jobs = jobs;
+            this.from = from;
+            this.to = to;
+            this.destination = destination;
+            this.volumeLimit = volumeLimit;
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to && control.checkpoint(); i++) {
+                    copyOne(jobs.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CopyTask(jobs, from, middle, destination, volumeLimit, result),
+                      new CopyTask(jobs, middle, to, destination, volumeLimit, result));
+        }
+
+        private void copyOne(ScanResult.Entry job) {
+            Path target = resolve(destination, job);
+            volumeLimit.acquireUninterruptibly();
+            tracker.fileStarted(job.getSource());
+            try {
+                if (verifyAlgorithm != null) {
+                    copyVerified(job.getSource(), target);
+                } else if (job.getSize() >= largeFileThreshold) {
+                    copyLargeFile(job.getSource(), target);
+                } else {
+                    Files.copy(job.getSource(), target, StandardCopyOption.REPLACE_EXISTING);
+                    tracker.addBytes(job.getSize());
+                }
+                result.addSuccess(job.getSource(), target, job.getSize());
+                tracker.fileCompleted();
+            } catch (IOException e) {
+                result.addFailure(job.getSource(), target, e.getMessage());
+            } finally {
+                volumeLimit.release();
+            }
+        }
+    }
+
+    /**
+     * Copia calcolando l'hash dell'origine durante la lettura, poi rilegge la copia e
+     * confronta; in caso di differenza la copia danneggiata viene eliminata e il file
+     * segnalato come non riuscito
+     */
+    private void copyVerified(Path source, Path target) throws IOException {
+        requireDistinct(source, target);
+        String sourceHash;
+        boolean completed = false;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            sourceHash = FileVerifier.copyAndHash(in, out, verifyAlgorithm, control, tracker);
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(target);
+            }
+        }
+        String targetHash = FileVerifier.hash(target, verifyAlgorithm);
+        if (!sourceHash.equals(targetHash)) {
+            Files.deleteIfExists(target);
+            throw new IOException("Checksum " + verifyAlgorithm + " non corrispondente: " + sourceHash + " / " + targetHash);
+        }
+    }
+
+    /**
+     * Aprire la destinazione con TRUNCATE_EXISTING azzererebbe l'origine stessa
+     * (es. copia nella propria cartella): l'operazione viene rifiutata
+     */
+    private static void requireDistinct(Path source, Path target) throws IOException {
+        if (source.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize())
+            || Files.exists(target) && Files.isSameFile(source, target)) {
+            throw new IOException("Origine e destinazione coincidono: " + source);
+        }
+    }
+
+    /**
+     * Copia un file grande a segmenti con FileChannel.transferTo, lasciando al kernel
+     * la copia diretta (copy_file_range/sendfile) quando disponibile
+     */
+    private void copyLargeFile(Path source, Path target) throws IOException {
+        requireDistinct(source, target);
+        boolean completed = false;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                if (!control.checkpoint()) {
+                    throw new IOException("Copia annullata");
+                }
+                long transferred = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), out);
+                if (transferred <= 0) {
+                    // Il file sorgente si è accorciato durante la copia o il canale non avanza
+                    break;
+                }
+                position += transferred;
+                tracker.addBytes(transferred);
+            }
+            if (position < size) {
+                throw new IOException("Copia incompleta: " + position + " di " + size + " byte");
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // Non lasciare file parziali nella destinazione
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationResult;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Motore di eliminazione locale: percorre l'albero in post-ordine, elimina i file
+ * in parallelo su un pool limitato e rimuove ogni cartella appena i suoi figli sono spariti
+ */
+public class DeleteEngine {
+
+    // Eliminazioni accodate per thread prima che la visita dell'albero si fermi ad attendere
+    private static final int QUEUE_PER_THREAD = 64;
+
+    private final int threads;
+    private OperationControl control = new OperationControl();
+    private ProgressTracker tracker = ProgressTracker.silent();
+
+    /**
+     * Cartella in attesa di eliminazione: il contatore include i figli non ancora
+     * eliminati più uno finché la visita della cartella non è terminata
+     */
+    private static class DirectoryNode {
+        final Path path;
+        final DirectoryNode parent;
+        final AtomicInteger pending = new AtomicInteger(1);
+
+        DirectoryNode(Path path, DirectoryNode parent) {
+            this.path = path;
+            this.parent = parent;
+        }
+    }
+
+    public DeleteEngine() {
+        this(SettingsService.getInstance().getSettings().deleteThreads);
+    }
+
+    public DeleteEngine(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setControl(OperationControl control) {
+        this.control = control;
+    }
+
+    public void setProgressTracker(ProgressTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Elimina file e cartelle, restituendo l'esito per singolo elemento
+     */
+    public OperationResult delete(List<File> files) {
+        OperationResult result = new OperationResult();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "delete-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore queueLimit = new Semaphore(threads * QUEUE_PER_THREAD);
+
+        try {
+            for (File file : files) {
+                if (!control.checkpoint()) {
+                    break;
+                }
+                walk(file.toPath(), pool, queueLimit, result);
+            }
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (control.isCancelled()) {
+            result.markCancelled();
+        }
+        result.finish();
+        tracker.publishNow();
+        return result;
+    }
+
+    private void walk(Path root, ExecutorService pool, Semaphore queueLimit, OperationResult result) {
+        Deque<DirectoryNode> stack = new ArrayDeque<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!control.checkpoint()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    DirectoryNode parent = stack.peek();
+                    if (parent != null) {
+                        parent.pending.incrementAndGet();
+                    }
+                    stack.push(new DirectoryNode(dir, parent));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!control.checkpoint()) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    DirectoryNode parent = stack.peek();
+                    if (parent != null) {
+                        parent.pending.incrementAndGet();
+                    }
+                    queueLimit.acquireUninterruptibly();
+                    pool.execute(() -> {
+                        try {
+                            if (control.checkpoint()) {
+                                deletePath(file, result);
+                            }
+                            if (parent != null) {
+                                childDone(parent, result);
+                            }
+                        } finally {
+                            queueLimit.release();
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    result.addFailure(file, null, exc.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if (exc != null) {
+                        result.addFailure(dir, null, exc.getMessage());
+                    }
+                    // La visita è finita: rilascia il riferimento tenuto dalla visita stessa
+                    childDone(stack.pop(), result);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            result.addFailure(root, null, e.getMessage());
+        }
+    }
+
+    /**
+     * Un figlio della cartella è stato eliminato (o ha fallito): all'ultimo si elimina la
+     * cartella e si notifica il padre, senza attendere la fine della visita
+     */
+    private void childDone(DirectoryNode node, OperationResult result) {
+        DirectoryNode current = node;
+        while (current != null && current.pending.decrementAndGet() == 0) {
+            if (control.isCancelled()) {
+                return;
+            }
+            deletePath(current.path, result);
+            current = current.parent;
+        }
+    }
+
+    private void deletePath(Path path, OperationResult result) {
+        tracker.fileStarted(path);
+        try {
+            Files.delete(path);
+            result.addSuccess(path, null, 0);
+        } catch (IOException e) {
+            if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                result.addFailure(path, null, "Impossibile eliminare: " + e.getMessage());
+            } else {
+                // Già eliminato da altri nel frattempo
+                result.addSuccess(path, null, 0);
+            }
+        }
+        tracker.fileCompleted();
+    }
+}
@@ -0,0 +1,432 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.FileItem;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cache condivisa dei contenuti delle cartelle visitate, tenuta aggiornata da un WatchService.
+ * Le modifiche sul disco vengono applicate alla copia in cache e inoltrate come differenze
+ * ai pannelli che mostrano la cartella; le cartelle meno usate vengono scartate
+ */
+public class DirectoryCache {
+
+    // Cartelle conservate al massimo (ognuna occupa un watch del sistema operativo)
+    private static final int MAX_DIRECTORIES = 64;
+
+    // Silenzio atteso prima di applicare gli eventi di una cartella, e ritardo massimo
+    private static final long DEBOUNCE_MS = 50;
+    private static final long MAX_DELAY_MS = 500;
+
+    private static DirectoryCache instance;
+
+    /**
+     * Differenze da applicare a una cartella mostrata; reload indica che la cartella
+     * non è più disponibile (es. eliminata) e il pannello deve ricaricarla
+     */
+    public static class Delta {
+        private final List<FileItem> updated;
+        private final List<String> removed;
+        private final boolean reload;
+
+        Delta(List<FileItem> updated, List<String> removed, boolean reload) {
+            this.updated = updated;
+            this.removed = removed;
+            this.reload = reload;
+        }
+
+        public List<FileItem> getUpdated() { return updated; }
+        public List<String> getRemoved() { return removed; }
+        public boolean isReload() { return reload; }
+        public boolean isEmpty() { return !reload && updated.isEmpty() && removed.isEmpty(); }
+    }
+
+    private static class CachedDirectory {
+        final Map<String, FileItem> items = new LinkedHashMap<>();
+    }
+
+    private final int maxEntries;
+    // Ordine di accesso: la prima cartella è la meno usata di recente
+    private final LinkedHashMap<Path, CachedDirectory> directories = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+    private final Map<Path, List<Consumer<Delta>>> listeners = new HashMap<>();
+    // Nomi cambiati mentre la cartella veniva letta per la prima volta
+    private final Map<Path, Set<String>> pendingNames = new HashMap<>();
+    private int cachedEntries;
+    private WatchService watchService;
+    private final Set<Path> reloadsQueued = new HashSet<>();
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "directory-reload");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private DirectoryCache() {
+        maxEntries = SettingsService.getInstance().getSettings().directoryCacheEntries;
+    }
+
+    public static synchronized DirectoryCache getInstance() {
+        if (instance == null) {
+            instance = new DirectoryCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Contenuto in cache della cartella, null se non presente
+     */
+    public synchronized List<FileItem> get(Path directory) {
+        CachedDirectory cached = directories.get(key(directory));
+        return cached != null ? new ArrayList<>(cached.items.values()) : null;
+    }
+
+    /**
+     * Memorizza il contenuto appena letto; le modifiche avvenute durante la lettura
+     * vengono rilette e inoltrate come differenze
+     */
+    public void put(Path directory, Collection<FileItem> items) {
+        Path dir = key(directory);
+        Set<String> pending;
+        synchronized (this) {
+            if (!register(dir)) {
+                return;
+            }
+            CachedDirectory cached = new CachedDirectory();
+            for (FileItem item : items) {
+                cached.items.put(item.getName(), item);
+            }
+            CachedDirectory previous = directories.put(dir, cached);
+            if (previous != null) {
+                cachedEntries -= previous.items.size();
+            }
+            cachedEntries += cached.items.size();
+            pending = pendingNames.remove(dir);
+            evict();
+        }
+        if (pending != null) {
+            applyChanges(dir, pending);
+        }
+    }
+
+    /**
+     * Come reload, sul thread delle riletture in background; onDone viene eseguito su
+     * quel thread al termine, anche dopo un errore
+     */
+    public void reloadInBackground(Path directory, Runnable onDone) {
+        reloadExecutor.submit(() -> {
+            try {
+                reload(directory);
+            } catch (IOException e) {
+                System.err.println("Errore nella rilettura di " + directory + ": " + e.getMessage());
+            }
+            onDone.run();
+        });
+    }
+
+    /**
+     * Rilegge la cartella e inoltra ai pannelli solo le differenze rispetto alla cache
+     */
+    public void reload(Path directory) throws IOException {
+        Path dir = key(directory);
+        List<FileItem> items = DirectoryLoader.list(dir);
+        Delta delta;
+        synchronized (this) {
+            CachedDirectory cached = directories.get(dir);
+            if (cached == null) {
+                cached = new CachedDirectory();
+                if (!register(dir)) {
+                    return;
+                }
+                directories.put(dir, cached);
+            }
+            Map<String, FileItem> current = new LinkedHashMap<>();
+            List<FileItem> updated = new ArrayList<>();
+            for (FileItem item : items) {
+                current.put(item.getName(), item);
+                if (!item.sameAs(cached.items.get(item.getName()))) {
+                    updated.add(item);
+                }
+            }
+            List<String> removed = new ArrayList<>();
+            for (String name : cached.items.keySet()) {
+                if (!current.containsKey(name)) {
+                    removed.add(name);
+                }
+            }
+            cachedEntries += current.size() - cached.items.size();
+            cached.items.clear();
+            cached.items.putAll(current);
+            evict();
+            delta = new Delta(updated, removed, false);
+        }
+        notifyListeners(dir, delta);
+    }
+
+    /**
+     * Segue le modifiche della cartella mostrata da un pannello; la cartella resta in cache
+     * finché ha almeno un osservatore
+     */
+    public void watch(Path directory, Consumer<Delta> listener) {
+        Path dir = key(directory);
+        synchronized (this) {
+            listeners.computeIfAbsent(dir, d -> new CopyOnWriteArrayList<>()).add(listener);
+            register(dir);
+        }
+    }
+
+    public synchronized void unwatch(Path directory, Consumer<Delta> listener) {
+        Path dir = key(directory);
+        List<Consumer<Delta>> list = listeners.get(dir);
+        if (list == null) {
+            return;
+        }
+        list.remove(listener);
+        if (list.isEmpty()) {
+            listeners.remove(dir);
+            pendingNames.remove(dir);
+            if (!directories.containsKey(dir)) {
+                cancelWatch(dir);
+            }
+            evict();
+        }
+    }
+
+    private static Path key(Path directory) {
+        return directory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Registra la cartella sul WatchService; senza watch la cache non resterebbe aggiornata
+     */
+    private boolean register(Path dir) {
+        if (watchKeys.containsKey(dir)) {
+            return true;
+        }
+        if (dir.getFileSystem() != FileSystems.getDefault()) {
+            return false;
+        }
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(this::processEvents, "directory-watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            WatchKey watchKey = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchKeys.put(dir, watchKey);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Impossibile osservare la cartella " + dir + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void cancelWatch(Path dir) {
+        WatchKey watchKey = watchKeys.remove(dir);
+        if (watchKey != null) {
+            watchKey.cancel();
+        }
+    }
+
+    /**
+     * Scarta le cartelle meno usate oltre i limiti, tranne quelle mostrate nei pannelli
+     */
+    private void evict() {
+        Iterator<Map.Entry<Path, CachedDirectory>> iterator = directories.entrySet().iterator();
+        while ((cachedEntries > maxEntries || directories.size() > MAX_DIRECTORIES) && iterator.hasNext()) {
+            Map.Entry<Path, CachedDirectory> entry = iterator.next();
+            if (listeners.containsKey(entry.getKey())) {
+                continue;
+            }
+            cachedEntries -= entry.getValue().items.size();
+            iterator.remove();
+            cancelWatch(entry.getKey());
+        }
+    }
+
+    /**
+     * Raccoglie gli eventi per cartella e li applica quando la cartella resta ferma per
+     * DEBOUNCE_MS (o al più dopo MAX_DELAY_MS), così una raffica di modifiche diventa
+     * un solo aggiornamento
+     */
+    private void processEvents() {
+        Map<Path, Set<String>> changedNames = new HashMap<>();
+        Map<Path, long[]> deadlines = new HashMap<>(); // {ultimo evento, primo evento}
+        Set<Path> overflowed = new HashSet<>();
+        while (true) {
+            WatchKey watchKey;
+            try {
+                if (deadlines.isEmpty()) {
+                    watchKey = watchService.take();
+                } else {
+                    long wait = Long.MAX_VALUE;
+                    long now = System.currentTimeMillis();
+                    for (long[] times : deadlines.values()) {
+                        wait = Math.min(wait, dueTime(times) - now);
+                    }
+                    watchKey = watchService.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (watchKey != null) {
+                Path dir = (Path) watchKey.watchable();
+                Set<String> names = changedNames.computeIfAbsent(dir, d -> new HashSet<>());
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflowed.add(dir);
+                    } else {
+                        names.add(((Path) event.context()).getFileName().toString());
+                    }
+                }
+                long now = System.currentTimeMillis();
+                long[] times = deadlines.computeIfAbsent(dir, d -> new long[] {now, now});
+                times[0] = now;
+                if (!watchKey.reset()) {
+                    // Cartella eliminata o non più osservabile: la cache non è affidabile
+                    changedNames.remove(dir);
+                    deadlines.remove(dir);
+                    overflowed.remove(dir);
+                    invalidate(dir);
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            Iterator<Map.Entry<Path, long[]>> iterator = deadlines.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Path, long[]> entry = iterator.next();
+                if (dueTime(entry.getValue()) > now) {
+                    continue;
+                }
+                iterator.remove();
+                Path dir = entry.getKey();
+                Set<String> names = changedNames.remove(dir);
+                if (overflowed.remove(dir)) {
+                    // Eventi persi: una sola rilettura completa in background
+                    scheduleReload(dir);
+                } else if (names != null && !names.isEmpty()) {
+                    applyChanges(dir, names);
+                }
+            }
+        }
+    }
+
+    private static long dueTime(long[] times) {
+        return Math.min(times[0] + DEBOUNCE_MS, times[1] + MAX_DELAY_MS);
+    }
+
+    /**
+     * Accoda la rilettura della cartella, una sola per volta per cartella
+     */
+    private void scheduleReload(Path dir) {
+        synchronized (reloadsQueued) {
+            if (!reloadsQueued.add(dir)) {
+                return;
+            }
+        }
+        reloadExecutor.submit(() -> {
+            synchronized (reloadsQueued) {
+                reloadsQueued.remove(dir);
+            }
+            try {
+                reload(dir);
+            } catch (IOException e) {
+                invalidate(dir);
+            }
+        });
+    }
+
+    /**
+     * Rilegge gli elementi indicati e aggiorna cache e pannelli
+     */
+    private void applyChanges(Path dir, Set<String> names) {
+        // Attributi letti fuori dal lock
+        Map<String, FileItem> read = new HashMap<>();
+        for (String name : names) {
+            read.put(name, DirectoryLoader.readItem(dir.resolve(name)));
+        }
+        Delta delta;
+        synchronized (this) {
+            CachedDirectory cached = directories.get(dir);
+            if (cached == null) {
+                if (listeners.containsKey(dir)) {
+                    // Cartella ancora in lettura: i nomi vengono ricontrollati in put()
+                    pendingNames.computeIfAbsent(dir, d -> new HashSet<>()).addAll(names);
+                }
+                return;
+            }
+            List<FileItem> updated = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String, FileItem> entry : read.entrySet()) {
+                FileItem item = entry.getValue();
+                if (item == null) {
+                    if (cached.items.remove(entry.getKey()) != null) {
+                        cachedEntries--;
+                        removed.add(entry.getKey());
+                    }
+                } else {
+                    FileItem previous = cached.items.put(item.getName(), item);
+                    if (previous == null) {
+                        cachedEntries++;
+                    }
+                    if (!item.sameAs(previous)) {
+                        updated.add(item);
+                    }
+                }
+            }
+            delta = new Delta(updated, removed, false);
+        }
+        notifyListeners(dir, delta);
+    }
+
+    private void invalidate(Path dir) {
+        synchronized (this) {
+            CachedDirectory cached = directories.remove(dir);
+            if (cached != null) {
+                cachedEntries -= cached.items.size();
+            }
+            WatchKey watchKey = watchKeys.get(dir);
+            if (watchKey != null && !watchKey.isValid()) {
+                watchKeys.remove(dir);
+            }
+        }
+        notifyListeners(dir, new Delta(new ArrayList<>(), new ArrayList<>(), true));
+    }
+
+    private void notifyListeners(Path dir, Delta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        List<Consumer<Delta>> list;
+        synchronized (this) {
+            list = listeners.get(dir);
+        }
+        if (list != null) {
+            for (Consumer<Delta> listener : list) {
+                listener.accept(delta);
+            }
+        }
+    }
+}
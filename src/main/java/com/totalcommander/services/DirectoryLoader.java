@@ -0,0 +1,127 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.FileItem;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Carica il contenuto di una cartella in background, leggendo gli attributi una sola volta
+ * per elemento e consegnando gli elementi a blocchi. Il caricamento si annulla con il
+ * controllo restituito (es. quando l'utente cambia cartella)
+ */
+public class DirectoryLoader {
+
+    // Elementi per blocco consegnato all'interfaccia
+    private static final int BATCH_SIZE = 500;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "directory-loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Statistiche della cartella calcolate dagli attributi già letti
+     */
+    public static class Statistics {
+        private int folderCount;
+        private int fileCount;
+        private long totalBytes;
+
+        public int getFolderCount() { return folderCount; }
+        public int getFileCount() { return fileCount; }
+        public long getTotalBytes() { return totalBytes; }
+    }
+
+    /**
+     * Avvia il caricamento; le callback sono invocate dal thread di caricamento
+     */
+    public static OperationControl load(Path directory, Consumer<List<FileItem>> onBatch,
+                                        Consumer<Statistics> onComplete, Consumer<IOException> onError) {
+        OperationControl control = new OperationControl();
+        executor.submit(() -> {
+            Statistics statistics = new Statistics();
+            List<FileItem> batch = new ArrayList<>(BATCH_SIZE);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    if (control.isCancelled()) {
+                        return;
+                    }
+                    FileItem item = readItem(path);
+                    if (item == null) {
+                        continue;
+                    }
+                    if (item.isDirectory()) {
+                        statistics.folderCount++;
+                    } else {
+                        statistics.fileCount++;
+                        statistics.totalBytes += item.getSizeBytes();
+                    }
+                    batch.add(item);
+                    if (batch.size() >= BATCH_SIZE) {
+                        onBatch.accept(batch);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+            } catch (IOException e) {
+                if (!control.isCancelled()) {
+                    onError.accept(e);
+                }
+                return;
+            }
+            if (control.isCancelled()) {
+                return;
+            }
+            if (!batch.isEmpty()) {
+                onBatch.accept(batch);
+            }
+            onComplete.accept(statistics);
+        });
+        return control;
+    }
+
+    /**
+     * Legge l'intera cartella sul thread corrente
+     */
+    static List<FileItem> list(Path directory) throws IOException {
+        List<FileItem> items = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                FileItem item = readItem(path);
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Elemento letto dal disco, null se non esiste più
+     */
+    static FileItem readItem(Path path) {
+        try {
+            // I collegamenti simbolici seguono la destinazione, come File.isDirectory()
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Collegamento interrotto: mostra il collegamento stesso
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            }
+            return FileItem.fromAttributes(path.getFileName().toString(), attrs);
+        } catch (IOException e) {
+            // Elemento sparito durante la lettura
+            return null;
+        }
+    }
+}
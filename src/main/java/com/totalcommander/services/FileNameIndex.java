@@ -0,0 +1,880 @@
+package com.totalcommander.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Indice dei nomi di file di un'intera unità, per le ricerche "Everything" sul solo nome.
+ * Ogni elemento conserva il proprio nome e l'indice della cartella che lo contiene (i
+ * percorsi non vengono ripetuti); per ogni sequenza di tre caratteri del nome c'è l'elenco
+ * compresso dei file che la contengono, così un pattern viene confrontato solo con i nomi
+ * che contengono tutte le sue parti fisse
+ */
+public class FileNameIndex {
+
+    private static final String INDEX_DIR = System.getProperty("user.home") + File.separator + ".totalcommander" + File.separator + "index";
+    private static final int MAGIC = 0x54434E58; // "TCNX"
+    private static final int VERSION = 1;
+    private static final int CRAWL_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+    // File system virtuali esclusi dalla scansione dell'unità
+    private static final Set<String> EXCLUDED = new HashSet<>(Arrays.asList("/proc", "/sys", "/dev", "/run"));
+
+    private static final int SMALL_CANDIDATES = 1024;
+    private static final byte[] ASCII_FOLD = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            ASCII_FOLD[i] = (byte) (i >= 'A' && i <= 'Z' ? i + 32 : i);
+        }
+    }
+
+    private static FileNameIndex instance;
+
+    private final Map<Path, Index> indexes = new HashMap<>();
+    private final Set<Path> building = new HashSet<>();
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "name-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private FileNameIndex() {
+        try {
+            Files.createDirectories(Paths.get(INDEX_DIR));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static synchronized FileNameIndex getInstance() {
+        if (instance == null) {
+            instance = new FileNameIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Indice dell'unità che contiene il percorso, letto dal disco al primo uso;
+     * null se l'unità non è ancora stata indicizzata
+     */
+    public Index getIndex(Path path) {
+        Path root = path.toAbsolutePath().getRoot();
+        synchronized (this) {
+            Index index = indexes.get(root);
+            if (index != null) {
+                return index;
+            }
+        }
+        Path file = indexFile(root);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            Index index = read(file, root);
+            synchronized (this) {
+                indexes.putIfAbsent(root, index);
+                return indexes.get(root);
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere l'indice dei nomi di " + root + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized boolean isBuilding(Path path) {
+        return building.contains(path.toAbsolutePath().getRoot());
+    }
+
+    /**
+     * Scansiona in background l'unità che contiene il percorso e sostituisce l'indice;
+     * onComplete riceve un messaggio di esito
+     */
+    public Future<?> build(Path path, Consumer<String> onComplete) {
+        Path root = path.toAbsolutePath().getRoot();
+        synchronized (this) {
+            if (!building.add(root)) {
+                return null;
+            }
+        }
+        return buildExecutor.submit(() -> {
+            String message;
+            try {
+                long start = System.currentTimeMillis();
+                Index index = crawl(root);
+                write(index, indexFile(root));
+                synchronized (this) {
+                    indexes.put(root, index);
+                }
+                message = "Indice dei nomi aggiornato: " + root + " (" + index.getEntryCount() + " elementi in "
+                    + (System.currentTimeMillis() - start) / 1000 + " s)";
+            } catch (Exception e) {
+                e.printStackTrace();
+                message = "Errore nella costruzione dell'indice dei nomi di " + root + ": " + e.getMessage();
+            } finally {
+                synchronized (this) {
+                    building.remove(root);
+                }
+            }
+            if (onComplete != null) {
+                onComplete.accept(message);
+            }
+        });
+    }
+
+    static Index crawl(Path root) {
+        Builder builder = new Builder();
+        int rootId = builder.add(-1, "", true);
+        ForkJoinPool pool = new ForkJoinPool(CRAWL_PARALLELISM);
+        try {
+            pool.invoke(new CrawlTask(root, rootId, builder));
+        } finally {
+            pool.shutdown();
+        }
+        return builder.build(root, System.currentTimeMillis());
+    }
+
+    private static Path indexFile(Path root) {
+        String key = Integer.toHexString(root.toString().hashCode());
+        return Paths.get(INDEX_DIR, "names-" + key + ".idx");
+    }
+
+    /**
+     * Legge una cartella, aggiunge i suoi elementi e delega le sottocartelle a sotto-task
+     */
+    private static class CrawlTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Path directory;
+        private final int id;
+        private final Builder builder;
+
+        CrawlTask(Path directory, int id, Builder builder) {
+            this.directory = directory;
+            this.id = id;
+            this.builder = builder;
+        }
+
+        @Override
+        protected void compute() {
+            List<String> names = new ArrayList<>();
+            BitSet directories = new BitSet();
+            List<Path> subdirectories = new ArrayList<>();
+            try {
+                Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            Path name = file.getFileName();
+                            if (name == null) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                            if (attrs.isDirectory()) {
+                                if (EXCLUDED.contains(file.toString())) {
+                                    return FileVisitResult.CONTINUE;
+                                }
+                                directories.set(names.size());
+                                subdirectories.add(file);
+                            }
+                            names.add(name.toString());
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+            } catch (IOException e) {
+                // Cartella non accessibile
+            }
+            int[] ids = builder.addAll(id, names, directories);
+            List<CrawlTask> subtasks = new ArrayList<>(subdirectories.size());
+            int next = 0;
+            for (int i = 0; i < names.size(); i++) {
+                if (directories.get(i)) {
+                    subtasks.add(new CrawlTask(subdirectories.get(next++), ids[i], builder));
+                }
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    /**
+     * Indice immutabile di un'unità; l'elemento 0 è la radice
+     */
+    public static class Index {
+        private final Path root;
+        private final long builtAt;
+        private final int count;
+        private final int[] parents;
+        private final int[] nameOffsets;   // count + 1 posizioni in names
+        private final byte[] names;        // nomi in UTF-8 uno dopo l'altro
+        private final BitSet directories;
+        private final long[] trigrams;     // ordinati
+        private final int[] postingCounts;
+        private final byte[][] postings;   // id crescenti, differenze in varint
+        private final int[] childStart;    // count + 1 posizioni in children
+        private final int[] children;      // id raggruppati per cartella madre
+
+        Index(Path root, long builtAt, int count, int[] parents, int[] nameOffsets, byte[] names,
+              BitSet directories, long[] trigrams, int[] postingCounts, byte[][] postings) {
+            this.root = root;
+            this.builtAt = builtAt;
+            this.count = count;
+            this.parents = parents;
+            this.nameOffsets = nameOffsets;
+            this.names = names;
+            this.directories = directories;
+            this.trigrams = trigrams;
+            this.postingCounts = postingCounts;
+            this.postings = postings;
+            // Figli di ogni cartella contigui (ordinamento per conteggio sui genitori)
+            childStart = new int[count + 1];
+            for (int i = 1; i < count; i++) {
+                childStart[parents[i] + 1]++;
+            }
+            for (int i = 0; i < count; i++) {
+                childStart[i + 1] += childStart[i];
+            }
+            children = new int[Math.max(0, count - 1)];
+            int[] next = Arrays.copyOf(childStart, count);
+            for (int i = 1; i < count; i++) {
+                children[next[parents[i]]++] = i;
+            }
+        }
+
+        public Path getRoot() { return root; }
+        public long getBuiltAt() { return builtAt; }
+        public int getEntryCount() { return count; }
+
+        /**
+         * Id della cartella nell'indice, -1 se l'indice non la contiene
+         */
+        public int findDirectory(Path directory) {
+            Path relative = root.relativize(directory.toAbsolutePath().normalize());
+            int current = 0;
+            for (Path component : relative) {
+                String name = component.toString();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                byte[] wanted = name.getBytes(StandardCharsets.UTF_8);
+                int found = -1;
+                for (int i = childStart[current]; i < childStart[current + 1] && found < 0; i++) {
+                    int child = children[i];
+                    if (directories.get(child) && nameEquals(child, wanted)) {
+                        found = child;
+                    }
+                }
+                if (found < 0) {
+                    return -1;
+                }
+                current = found;
+            }
+            return current;
+        }
+
+        private boolean nameEquals(int id, byte[] wanted) {
+            int offset = nameOffsets[id];
+            return nameOffsets[id + 1] - offset == wanted.length
+                && Arrays.equals(names, offset, offset + wanted.length, wanted, 0, wanted.length);
+        }
+
+        String nameOf(int id) {
+            return new String(names, nameOffsets[id], nameOffsets[id + 1] - nameOffsets[id], StandardCharsets.UTF_8);
+        }
+
+        Path pathOf(int id) {
+            List<String> components = new ArrayList<>();
+            for (int current = id; current > 0; current = parents[current]) {
+                components.add(nameOf(current));
+            }
+            StringBuilder path = new StringBuilder(root.toString());
+            for (int i = components.size() - 1; i >= 0; i--) {
+                if (path.charAt(path.length() - 1) != File.separatorChar) {
+                    path.append(File.separatorChar);
+                }
+                path.append(components.get(i));
+            }
+            return Paths.get(path.toString());
+        }
+
+        /**
+         * File sotto la cartella directoryId entro maxDepth il cui nome soddisfa il pattern.
+         * pattern è il testo digitato (caratteri jolly o regex), compiled la sua forma compilata
+         */
+        public void query(int directoryId, int maxDepth, String pattern, boolean regex, Pattern compiled,
+                          OperationControl control, Consumer<Path> onMatch) {
+            int[] candidates = null;
+            List<byte[]> asciiLiterals = new ArrayList<>();
+            if (pattern != null) {
+                List<String> literals = regex ? regexLiterals(pattern) : wildcardLiterals(pattern);
+                candidates = intersect(trigramsOf(literals));
+                if (candidates != null && candidates.length == 0) {
+                    return;
+                }
+                for (String literal : literals) {
+                    if (literal.chars().allMatch(c -> c < 128)) {
+                        asciiLiterals.add(literal.toLowerCase(java.util.Locale.ROOT).getBytes(StandardCharsets.US_ASCII));
+                    }
+                }
+            }
+            int total = candidates != null ? candidates.length : count;
+            for (int i = 0; i < total; i++) {
+                if ((i & 0xfff) == 0 && control.isCancelled()) {
+                    return;
+                }
+                int id = candidates != null ? candidates[i] : i;
+                if (directories.get(id) || !containsLiterals(id, asciiLiterals) || !isUnder(id, directoryId, maxDepth)) {
+                    continue;
+                }
+                if (compiled == null || compiled.matcher(nameOf(id)).matches()) {
+                    onMatch.accept(pathOf(id));
+                }
+            }
+        }
+
+        /**
+         * Filtro sui byte prima della regex: i nomi ASCII devono contenere le parti fisse
+         * (anche quelle troppo corte per le sequenze, come ".h")
+         */
+        private boolean containsLiterals(int id, List<byte[]> literals) {
+            int offset = nameOffsets[id];
+            int end = nameOffsets[id + 1];
+            if (literals.isEmpty() || !isAscii(names, offset, end)) {
+                return true;
+            }
+            for (byte[] literal : literals) {
+                if (!containsFolded(offset, end, literal)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean containsFolded(int offset, int end, byte[] literal) {
+            outer:
+            for (int i = offset; i + literal.length <= end; i++) {
+                for (int j = 0; j < literal.length; j++) {
+                    if (ASCII_FOLD[names[i + j] & 0xff] != literal[j]) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isUnder(int id, int directoryId, int maxDepth) {
+            int depth = 0;
+            for (int current = parents[id]; current >= 0; current = parents[current]) {
+                if (current == directoryId) {
+                    return true;
+                }
+                if (++depth > maxDepth) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * File che contengono tutte le sequenze, dalla lista più corta; null se non ci sono
+         * sequenze da usare (il pattern va confrontato con tutti i nomi)
+         */
+        private int[] intersect(Set<Long> required) {
+            if (required.isEmpty()) {
+                return null;
+            }
+            List<Integer> lists = new ArrayList<>();
+            for (long trigram : required) {
+                int index = Arrays.binarySearch(trigrams, trigram);
+                if (index < 0) {
+                    return new int[0];
+                }
+                lists.add(index);
+            }
+            lists.sort((a, b) -> Integer.compare(postingCounts[a], postingCounts[b]));
+            int[] result = decode(lists.get(0));
+            // Con pochi candidati conviene confrontare i nomi invece di decodificare elenchi lunghi
+            for (int i = 1; i < lists.size() && result.length > SMALL_CANDIDATES; i++) {
+                int[] other = decode(lists.get(i));
+                int[] merged = new int[result.length];
+                int size = 0;
+                int a = 0;
+                int b = 0;
+                while (a < result.length && b < other.length) {
+                    if (result[a] < other[b]) {
+                        a++;
+                    } else if (result[a] > other[b]) {
+                        b++;
+                    } else {
+                        merged[size++] = result[a];
+                        a++;
+                        b++;
+                    }
+                }
+                result = Arrays.copyOf(merged, size);
+            }
+            return result;
+        }
+
+        private int[] decode(int index) {
+            byte[] data = postings[index];
+            int[] ids = new int[postingCounts[index]];
+            int position = 0;
+            int previous = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int value = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = data[position++];
+                    value |= (b & 0x7f) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                previous += value;
+                ids[i] = previous;
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Parti fisse di un pattern con caratteri jolly: ciascuna deve comparire nel nome
+     */
+    static List<String> wildcardLiterals(String pattern) {
+        List<String> literals = new ArrayList<>();
+        for (String part : pattern.split("[*?]")) {
+            if (!part.isEmpty()) {
+                literals.add(part);
+            }
+        }
+        return literals;
+    }
+
+    /**
+     * Sequenze di caratteri letterali che ogni nome conforme alla regex deve contenere.
+     * Analisi prudente: le alternative (|) rinunciano del tutto al filtro, gruppi e classi
+     * di caratteri interrompono le sequenze, un carattere seguito da ?, * o {..} non è obbligatorio
+     */
+    static List<String> regexLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0) {
+            return literals;
+        }
+        StringBuilder current = new StringBuilder();
+        int groupDepth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            char value = c;
+            if (c == '\\' && i + 1 < regex.length()) {
+                char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    // \Q..\E: testo tra virgolette, tutto letterale; il quantificatore vale per l'ultimo carattere
+                    int end = regex.indexOf("\\E", i + 2);
+                    String quoted = regex.substring(i + 2, end < 0 ? regex.length() : end);
+                    i = end < 0 ? regex.length() : end + 2;
+                    if (!quoted.isEmpty()) {
+                        if (groupDepth == 0) {
+                            current.append(quoted, 0, quoted.length() - 1);
+                        }
+                        literal = true;
+                        value = quoted.charAt(quoted.length() - 1);
+                    }
+                } else {
+                    // \d, \w, \xhh, \p{..}... sono classi o costrutti (saltati per intero);
+                    // gli altri caratteri sono letterali
+                    literal = !Character.isLetterOrDigit(next);
+                    value = next;
+                    i = literal ? i + 2 : skipEscape(regex, i);
+                }
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                groupDepth++;
+                i++;
+            } else if (c == ')') {
+                groupDepth = Math.max(0, groupDepth - 1);
+                i++;
+            } else if (c == '{') {
+                int end = regex.indexOf('}', i);
+                i = end < 0 ? regex.length() : end + 1;
+            } else {
+                literal = ".^$*+?".indexOf(c) < 0;
+                i++;
+            }
+            if (literal && groupDepth == 0) {
+                char quantifier = i < regex.length() ? regex.charAt(i) : 0;
+                if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                    addLiteral(literals, current);
+                } else {
+                    current.append(value);
+                    if (quantifier == '+') {
+                        addLiteral(literals, current);
+                    }
+                }
+            } else {
+                addLiteral(literals, current);
+            }
+        }
+        addLiteral(literals, current);
+        return literals;
+    }
+
+    /**
+     * Posizione dopo un costrutto backslash + lettera o cifra, compresi i suoi argomenti
+     * (xhh, x{h..}, uhhhh, 0nnn, cX, p{..}, k&lt;nome&gt;, riferimenti nn)
+     */
+    private static int skipEscape(String regex, int start) {
+        char type = regex.charAt(start + 1);
+        int i = start + 2;
+        switch (type) {
+            case 'x':
+                return i < regex.length() && regex.charAt(i) == '{'
+                    ? skipPast(regex, i, '}') : Math.min(regex.length(), i + 2);
+            case 'u':
+                return Math.min(regex.length(), i + 4);
+            case 'c':
+                return Math.min(regex.length(), i + 1);
+            case 'p':
+            case 'P':
+            case 'N':
+                return i < regex.length() && regex.charAt(i) == '{'
+                    ? skipPast(regex, i, '}') : Math.min(regex.length(), i + 1);
+            case 'k':
+                return i < regex.length() && regex.charAt(i) == '<' ? skipPast(regex, i, '>') : i;
+            case '0':
+                for (int n = 0; n < 3 && i < regex.length() && regex.charAt(i) >= '0' && regex.charAt(i) <= '7'; n++) {
+                    i++;
+                }
+                return i;
+            default:
+                if (type >= '1' && type <= '9') {
+                    while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    private static int skipPast(String regex, int start, char close) {
+        int end = regex.indexOf(close, start);
+        return end < 0 ? regex.length() : end + 1;
+    }
+
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < regex.length() && regex.charAt(i) != ']') {
+            i += regex.charAt(i) == '\\' ? 2 : 1;
+        }
+        return i + 1;
+    }
+
+    private static void addLiteral(List<String> literals, StringBuilder current) {
+        if (current.length() > 0) {
+            literals.add(current.toString());
+            current.setLength(0);
+        }
+    }
+
+    static Set<Long> trigramsOf(List<String> literals) {
+        Set<Long> trigrams = new LinkedHashSet<>();
+        for (String literal : literals) {
+            for (int i = 0; i + 3 <= literal.length(); i++) {
+                trigrams.add(trigram(literal, i));
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * Tre caratteri senza distinzione tra maiuscole e minuscole in un long
+     */
+    private static long trigram(String text, int start) {
+        return ((long) fold(text.charAt(start)) << 32) | ((long) fold(text.charAt(start + 1)) << 16)
+            | fold(text.charAt(start + 2));
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static boolean isAscii(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Raccoglie gli elementi durante la scansione (da più thread) e crea l'indice
+     */
+    static class Builder {
+        private int count;
+        private int[] parents = new int[1024];
+        private int[] nameOffsets = new int[1025];
+        private byte[] names = new byte[16 * 1024];
+        private final BitSet directories = new BitSet();
+
+        synchronized int add(int parent, String name, boolean directory) {
+            BitSet flag = new BitSet();
+            flag.set(0, directory);
+            return addAll(parent, List.of(name), flag)[0];
+        }
+
+        synchronized int[] addAll(int parent, List<String> entries, BitSet entryDirectories) {
+            int[] ids = new int[entries.size()];
+            for (int i = 0; i < ids.length; i++) {
+                byte[] bytes = entries.get(i).getBytes(StandardCharsets.UTF_8);
+                if (count + 1 >= parents.length) {
+                    parents = Arrays.copyOf(parents, parents.length * 2);
+                    nameOffsets = Arrays.copyOf(nameOffsets, parents.length + 1);
+                }
+                int offset = nameOffsets[count];
+                if (offset + bytes.length > names.length) {
+                    names = Arrays.copyOf(names, Math.max(names.length * 2, offset + bytes.length));
+                }
+                System.arraycopy(bytes, 0, names, offset, bytes.length);
+                parents[count] = parent;
+                nameOffsets[count + 1] = offset + bytes.length;
+                if (entryDirectories.get(i)) {
+                    directories.set(count);
+                }
+                ids[i] = count++;
+            }
+            return ids;
+        }
+
+        synchronized Index build(Path root, long builtAt) {
+            // Elenchi costruiti in ordine di id, così le differenze sono sempre positive
+            TrigramTable table = new TrigramTable();
+            for (int id = 0; id < count; id++) {
+                if (directories.get(id)) {
+                    continue;
+                }
+                int offset = nameOffsets[id];
+                int end = nameOffsets[id + 1];
+                if (isAscii(names, offset, end)) {
+                    // Caso comune: sequenze calcolate direttamente sui byte
+                    for (int i = offset; i + 3 <= end; i++) {
+                        table.add(((long) ASCII_FOLD[names[i] & 0xff] << 32)
+                            | ((long) ASCII_FOLD[names[i + 1] & 0xff] << 16) | ASCII_FOLD[names[i + 2] & 0xff], id);
+                    }
+                } else {
+                    String name = new String(names, offset, end - offset, StandardCharsets.UTF_8);
+                    for (int i = 0; i + 3 <= name.length(); i++) {
+                        table.add(trigram(name, i), id);
+                    }
+                }
+            }
+            long[] keys = table.sortedKeys();
+            int[] counts = new int[keys.length];
+            byte[][] data = new byte[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                PostingBuilder list = table.get(keys[i]);
+                counts[i] = list.count;
+                data[i] = Arrays.copyOf(list.data, list.size);
+            }
+            return new Index(root, builtAt, count, Arrays.copyOf(parents, count),
+                Arrays.copyOf(nameOffsets, count + 1), Arrays.copyOf(names, nameOffsets[count]),
+                (BitSet) directories.clone(), keys, counts, data);
+        }
+    }
+
+    /**
+     * Tabella ad indirizzamento aperto sequenza -> elenco, senza boxing delle chiavi
+     */
+    private static class TrigramTable {
+        private static final long EMPTY = -1L;
+        private long[] keys = new long[1 << 12];
+        private PostingBuilder[] values = new PostingBuilder[1 << 12];
+        private int size;
+
+        TrigramTable() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void add(long key, int id) {
+            int slot = slot(key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = new PostingBuilder();
+                if (++size * 2 > keys.length) {
+                    grow();
+                    slot = slot(key);
+                }
+            }
+            values[slot].add(id);
+        }
+
+        PostingBuilder get(long key) {
+            return values[slot(key)];
+        }
+
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            PostingBuilder[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new PostingBuilder[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        long[] sortedKeys() {
+            long[] result = new long[size];
+            int k = 0;
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    result[k++] = key;
+                }
+            }
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    private static class PostingBuilder {
+        byte[] data = new byte[4];
+        int size;
+        int count;
+        int last = -1;
+
+        void add(int id) {
+            if (id == last) {
+                return;  // sequenza ripetuta nello stesso nome
+            }
+            int value = id - Math.max(last, 0);
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                data[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+            last = id;
+            count++;
+        }
+    }
+
+    static void write(Index index, Path target) throws IOException {
+        Path temp = Paths.get(target + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(index.root.toString());
+            out.writeLong(index.builtAt);
+            out.writeInt(index.count);
+            for (int i = 0; i < index.count; i++) {
+                out.writeInt(index.parents[i]);
+                out.writeInt(index.nameOffsets[i + 1]);
+            }
+            out.writeInt(index.names.length);
+            out.write(index.names);
+            long[] words = index.directories.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+            out.writeInt(index.trigrams.length);
+            for (int i = 0; i < index.trigrams.length; i++) {
+                out.writeLong(index.trigrams[i]);
+                out.writeInt(index.postingCounts[i]);
+                out.writeInt(index.postings[i].length);
+                out.write(index.postings[i]);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static Index read(Path file, Path root) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(root.toString())) {
+                throw new IOException("Formato dell'indice non riconosciuto");
+            }
+            long builtAt = in.readLong();
+            int count = in.readInt();
+            int[] parents = new int[count];
+            int[] nameOffsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                parents[i] = in.readInt();
+                nameOffsets[i + 1] = in.readInt();
+            }
+            byte[] names = new byte[in.readInt()];
+            in.readFully(names);
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            int trigramCount = in.readInt();
+            long[] trigrams = new long[trigramCount];
+            int[] counts = new int[trigramCount];
+            byte[][] postings = new byte[trigramCount][];
+            for (int i = 0; i < trigramCount; i++) {
+                trigrams[i] = in.readLong();
+                counts[i] = in.readInt();
+                postings[i] = new byte[in.readInt()];
+                in.readFully(postings[i]);
+            }
+            return new Index(root, builtAt, count, parents, nameOffsets, names, BitSet.valueOf(words),
+                trigrams, counts, postings);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.totalcommander.services;
 
+import com.totalcommander.models.OperationResult;
+import com.totalcommander.models.ScanResult;
 import com.totalcommander.ui.FileViewerDialog;
 import com.totalcommander.ui.FileEditorDialog;
 import javafx.application.Platform;
@@ -16,46 +18,71 @@ import java.awt.Desktop;
  */
 public class FileOperationService {
     
-    public boolean copyFiles(List<File> files, Path destination) {
-        try {
-            for (File file : files) {
-                Path destPath = destination.resolve(file.getName());
-                if (file.isDirectory()) {
-                    copyDirectory(file.toPath(), destPath);
-                } else {
-                    Files.copy(file.toPath(), destPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            }
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+    /**
+     * Copia file e cartelle in parallelo, restituendo l'esito per singolo file
+     */
+    public OperationResult copyFiles(List<File> files, Path destination) {
+        return copyFiles(files, destination, new OperationControl(), ProgressTracker.silent());
     }
 
-    public boolean moveFiles(List<File> files, Path destination) {
+    public OperationResult copyFiles(List<File> files, Path destination,
+                                     OperationControl control, ProgressTracker tracker) {
+        // Scansione preliminare: totali esatti per l'avanzamento e controllo dello spazio libero
+        TreeScanner scanner = new TreeScanner();
+        scanner.setControl(control);
+        ScanResult scan = scanner.scan(files);
+        if (scan.isCancelled()) {
+            return cancelledResult();
+        }
         try {
-            for (File file : files) {
-                Path destPath = destination.resolve(file.getName());
-                Files.move(file.toPath(), destPath, StandardCopyOption.REPLACE_EXISTING);
-            }
-            return true;
+            TreeScanner.ensureFreeSpace(scan, destination);
         } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+            OperationResult result = new OperationResult();
+            result.addFailure(destination, null, e.getMessage());
+            result.finish();
+            return result;
         }
+
+        CopyEngine engine = new CopyEngine();
+        engine.setControl(control);
+        engine.setProgressTracker(tracker);
+        return engine.copy(scan, destination);
     }
 
-    public boolean deleteFiles(List<File> files) {
-        try {
-            for (File file : files) {
-                deleteRecursive(file);
-            }
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+    private OperationResult cancelledResult() {
+        OperationResult result = new OperationResult();
+        result.markCancelled();
+        result.finish();
+        return result;
+    }
+
+    /**
+     * Sposta file e cartelle: rinomina sullo stesso volume, copia verificata tra volumi diversi
+     */
+    public OperationResult moveFiles(List<File> files, Path destination) {
+        return moveFiles(files, destination, new OperationControl(), ProgressTracker.silent());
+    }
+
+    public OperationResult moveFiles(List<File> files, Path destination,
+                                     OperationControl control, ProgressTracker tracker) {
+        MoveEngine engine = new MoveEngine();
+        engine.setControl(control);
+        engine.setProgressTracker(tracker);
+        return engine.move(files, destination);
+    }
+
+    /**
+     * Elimina file e cartelle in parallelo, riportando gli elementi non eliminati
+     */
+    public OperationResult deleteFiles(List<File> files) {
+        return deleteFiles(files, new OperationControl(), ProgressTracker.silent());
+    }
+
+    public OperationResult deleteFiles(List<File> files, OperationControl control, ProgressTracker tracker) {
+        DeleteEngine engine = new DeleteEngine();
+        engine.setControl(control);
+        engine.setProgressTracker(tracker);
+        return engine.delete(files);
     }
 
     public boolean createFolder(Path folderPath) {
@@ -125,32 +152,4 @@ public class FileOperationService {
             }
         });
     }
-
-    private void copyDirectory(Path source, Path destination) throws IOException {
-        Files.walk(source).forEach(sourcePath -> {
-            try {
-                Path destPath = destination.resolve(source.relativize(sourcePath));
-                if (Files.isDirectory(sourcePath)) {
-                    Files.createDirectories(destPath);
-                } else {
-                    Files.copy(sourcePath, destPath, StandardCopyOption.REPLACE_EXISTING);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
-    }
-
-    private void deleteRecursive(File file) {
-        if (file.isDirectory()) {
-            File[] children = file.listFiles();
-            if (children != null) {
-                for (File child : children) {
-                    deleteRecursive(child);
-                }
-            }
-        }
-        file.delete();
-    }
 }
-
@@ -0,0 +1,452 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.SearchHit;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Motore di ricerca file indipendente dall'interfaccia: i pattern vengono compilati una
+ * sola volta, le cartelle sono percorse in parallelo e il contenuto dei file viene
+ * esaminato su un pool separato e limitato, così lettura delle cartelle e ricerca
+ * nel contenuto procedono insieme
+ */
+public class FileSearchEngine {
+
+    private static final int WALK_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int CONTENT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // File in attesa di analisi: oltre, la visita delle cartelle esamina il file da sé
+    private static final int CONTENT_QUEUE_SIZE = 256;
+
+    private Pattern namePattern;
+    private String namePatternText;
+    private boolean nameRegex;
+    private String contentText;
+    private boolean contentRegex;
+    private boolean contentWholeWord;
+    private boolean contentHex;
+    private boolean contentCaseSensitive;
+    // Un matcher per charset (il testo dei documenti Office è letto come UTF-8)
+    private final Map<Charset, ContentMatcher> matchers = new ConcurrentHashMap<>();
+    private boolean notContaining;
+    private int maxDepth = Integer.MAX_VALUE;
+    private Charset charset = StandardCharsets.UTF_8;
+    private boolean officeXml;
+    private OperationControl control = new OperationControl();
+    private boolean useIndex;
+    private SearchIndexService.Snapshot usedIndex;
+    private boolean useNameIndex;
+    private boolean searchArchives;
+    private final ArchiveService archiveService = new ArchiveService();
+    private FileNameIndex.Index usedNameIndex;
+
+    private final AtomicLong directoriesScanned = new AtomicLong();
+    private final AtomicLong filesScanned = new AtomicLong();
+
+    /**
+     * Pattern del nome: caratteri jolly (* e ?) oppure espressione regolare
+     */
+    public void setNamePattern(String pattern, boolean regex, boolean caseSensitive) {
+        if (pattern == null || pattern.isEmpty()) {
+            namePattern = null;
+            namePatternText = null;
+            return;
+        }
+        namePatternText = pattern;
+        nameRegex = regex;
+        String expression = regex ? pattern : wildcardToRegex(pattern);
+        namePattern = caseSensitive ? Pattern.compile(expression)
+            : Pattern.compile(expression, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    /**
+     * Testo da cercare nel contenuto; hex indica una sequenza di byte in esadecimale.
+     * Le espressioni non valide vengono segnalate subito
+     */
+    public void setContentPattern(String text, boolean regex, boolean wholeWord, boolean hex, boolean caseSensitive) {
+        matchers.clear();
+        if (text == null || text.isEmpty()) {
+            contentText = null;
+            return;
+        }
+        contentText = text;
+        contentRegex = regex;
+        contentWholeWord = wholeWord;
+        contentHex = hex;
+        contentCaseSensitive = caseSensitive;
+        matcherFor(charset);
+    }
+
+    public void setNotContaining(boolean notContaining) {
+        this.notContaining = notContaining;
+    }
+
+    /**
+     * Profondità massima delle sottocartelle (0 = solo la cartella indicata)
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+        matchers.clear();
+    }
+
+    /**
+     * Nei documenti Office e OpenDocument si cerca il testo estratto invece dei byte dell'archivio
+     */
+    public void setOfficeXml(boolean officeXml) {
+        this.officeXml = officeXml;
+    }
+
+    /**
+     * Cerca anche tra gli elementi degli archivi ZIP e TAR/TGZ, senza estrarli
+     */
+    public void setSearchArchives(boolean searchArchives) {
+        this.searchArchives = searchArchives;
+    }
+
+    public void setControl(OperationControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Usa l'indice persistente quando la cartella cercata è indicizzata
+     */
+    public void setUseIndex(boolean useIndex) {
+        this.useIndex = useIndex;
+    }
+
+    /**
+     * Indice usato dall'ultima ricerca, null se le cartelle sono state lette dal disco
+     */
+    public SearchIndexService.Snapshot getUsedIndex() {
+        return usedIndex;
+    }
+
+    /**
+     * Cerca i nomi nell'indice dell'unità ("Everything") quando disponibile
+     */
+    public void setUseNameIndex(boolean useNameIndex) {
+        this.useNameIndex = useNameIndex;
+    }
+
+    /**
+     * Indice dei nomi usato dall'ultima ricerca, null se non usato
+     */
+    public FileNameIndex.Index getUsedNameIndex() {
+        return usedNameIndex;
+    }
+
+    public long getDirectoriesScanned() {
+        return directoriesScanned.get();
+    }
+
+    public long getFilesScanned() {
+        return filesScanned.get();
+    }
+
+    /**
+     * Cerca sotto la cartella indicata e attende la fine della ricerca; onMatch viene
+     * invocato dai thread di ricerca, non dal thread chiamante
+     */
+    public void search(Path root, Consumer<SearchHit> onMatch) {
+        ThreadPoolExecutor contentPool = new ThreadPoolExecutor(CONTENT_THREADS, CONTENT_THREADS,
+            30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(CONTENT_QUEUE_SIZE), r -> {
+                Thread t = new Thread(r, "search-content");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        ForkJoinPool walkPool = new ForkJoinPool(WALK_PARALLELISM);
+        // Gli indici non contengono gli elementi degli archivi
+        usedIndex = useIndex && !searchArchives ? SearchIndexService.getInstance().getSnapshot(root) : null;
+        usedNameIndex = usedIndex == null && useNameIndex && !searchArchives ? FileNameIndex.getInstance().getIndex(root) : null;
+        // Cartella creata dopo l'indicizzazione dell'unità: si legge il disco
+        int directoryId = usedNameIndex != null ? usedNameIndex.findDirectory(root) : -1;
+        if (directoryId < 0) {
+            usedNameIndex = null;
+        }
+        try {
+            if (usedIndex != null) {
+                searchIndex(usedIndex, root, contentPool, onMatch);
+            } else if (usedNameIndex != null) {
+                usedNameIndex.query(directoryId, maxDepth, namePatternText, nameRegex, namePattern, control,
+                    file -> checkCandidate(file, contentPool, onMatch));
+            } else {
+                walkPool.invoke(new WalkTask(root, 0, contentPool, onMatch));
+            }
+            contentPool.shutdown();
+            while (!contentPool.awaitTermination(100, TimeUnit.MILLISECONDS)) {
+                if (control.isCancelled()) {
+                    contentPool.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            walkPool.shutdownNow();
+            contentPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Ricerca sui file dell'indice: le parole cercate restringono i candidati, che vengono
+     * comunque verificati sul disco (l'indice può non essere aggiornato)
+     */
+    private void searchIndex(SearchIndexService.Snapshot snapshot, Path root, ThreadPoolExecutor contentPool,
+                             Consumer<SearchHit> onMatch) {
+        snapshot.query(root.toAbsolutePath().normalize(), maxDepth, namePattern, indexTokens(),
+            candidate -> checkCandidate(candidate.getPath(), contentPool, onMatch));
+    }
+
+    /**
+     * Verifica sul disco un file trovato in un indice: esistenza, dati aggiornati e contenuto
+     */
+    private void checkCandidate(Path file, ThreadPoolExecutor contentPool, Consumer<SearchHit> onMatch) {
+        if (control.isCancelled()) {
+            return;
+        }
+        filesScanned.incrementAndGet();
+        contentPool.execute(() -> {
+            if (control.isCancelled()) {
+                return;
+            }
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // File eliminato dopo l'indicizzazione
+                return;
+            }
+            if (matchesContent(file)) {
+                onMatch.accept(new SearchHit(file, attrs.size(), attrs.lastModifiedTime().toMillis()));
+            }
+        });
+    }
+
+    /**
+     * Parole con cui filtrare l'indice, null se il testo cercato non permette di escludere file
+     * (regex, esadecimale, "non contiene" o charset in cui le parole indicizzate non corrispondono)
+     */
+    private List<String> indexTokens() {
+        if (contentText == null || contentRegex || contentHex || notContaining) {
+            return null;
+        }
+        boolean ascii = contentText.chars().allMatch(c -> c < 128);
+        if (!charset.equals(StandardCharsets.UTF_8) && !(ascii && singleByte(charset))) {
+            return null;
+        }
+        List<String> tokens = SearchIndexService.tokenize(contentText);
+        return tokens.isEmpty() ? null : tokens;
+    }
+
+    private static boolean singleByte(Charset charset) {
+        try {
+            return charset.newEncoder().maxBytesPerChar() == 1.0f;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Confronta nome e contenuto degli elementi di un archivio, letti al volo
+     */
+    private void searchArchive(Path archive, Consumer<SearchHit> onMatch) {
+        try {
+            archiveService.visitEntries(archive, (entry, size, lastModified, content) -> {
+                if (control.isCancelled()) {
+                    return false;
+                }
+                filesScanned.incrementAndGet();
+                String name = entry.substring(entry.lastIndexOf('/') + 1);
+                if (namePattern != null && !namePattern.matcher(name).matches()) {
+                    return true;
+                }
+                if (matchesEntryContent(name, content)) {
+                    onMatch.accept(new SearchHit(archive, entry, size, lastModified));
+                }
+                return true;
+            });
+        } catch (IOException | RuntimeException e) {
+            // Archivio danneggiato o non leggibile: ignorato
+        }
+    }
+
+    private boolean matchesEntryContent(String name, ArchiveService.EntryContent content) {
+        if (contentText == null) {
+            return true;
+        }
+        // Documenti Office annidati: servirebbe l'accesso casuale, conta solo il nome
+        if (officeXml && !contentHex && OfficeTextExtractor.isOfficeDocument(name)) {
+            return true;
+        }
+        try (InputStream in = new BufferedInputStream(content.open(), ContentSniffer.SAMPLE_SIZE)) {
+            if (!contentHex) {
+                // Elementi binari esclusi guardando solo i primi byte
+                in.mark(ContentSniffer.SAMPLE_SIZE);
+                byte[] sample = in.readNBytes(ContentSniffer.SAMPLE_SIZE);
+                in.reset();
+                if (ContentSniffer.sniff(sample, sample.length).isBinary()) {
+                    return false;
+                }
+            }
+            boolean found = matcherFor(charset).matches(in);
+            return notContaining ? !found : found;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Il file soddisfa i criteri sul contenuto (sempre vero se non c'è testo da cercare).
+     * I file binari, riconosciuti dai primi byte, sono esclusi dalla ricerca di testo
+     */
+    public boolean matchesContent(Path file) {
+        if (contentText == null) {
+            return true;
+        }
+        String name = file.getFileName().toString();
+        try {
+            boolean found;
+            if (officeXml && !contentHex && OfficeTextExtractor.isOfficeDocument(name)) {
+                // Testo estratto dalle parti XML del documento
+                try (Reader reader = OfficeTextExtractor.getInstance().open(file)) {
+                    found = matcherFor(StandardCharsets.UTF_8).matches(reader);
+                }
+            } else if (!contentHex && ContentSniffer.getInstance().sniff(file).isBinary()) {
+                return false;
+            } else {
+                found = matcherFor(charset).matches(file);
+            }
+            return notContaining ? !found : found;
+        } catch (IOException e) {
+            // File non leggibile: escluso dai risultati
+            return false;
+        }
+    }
+
+    private ContentMatcher matcherFor(Charset fileCharset) {
+        return matchers.computeIfAbsent(fileCharset, cs -> contentHex
+            ? ContentMatcher.forHex(contentText)
+            : ContentMatcher.forText(contentText, contentRegex, contentWholeWord, contentCaseSensitive, cs));
+    }
+
+    /**
+     * Converte i caratteri jolly in espressione regolare
+     */
+    public static String wildcardToRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                regex.append('\\').append(c);
+            } else {
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Legge una cartella (profondità 1), accoda i file candidati al pool del contenuto
+     * e delega le sottocartelle a sotto-task
+     */
+    private class WalkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Path directory;
+        private final int depth;
+        private final ThreadPoolExecutor contentPool;
+        private final Consumer<SearchHit> onMatch;
+
+        WalkTask(Path directory, int depth, ThreadPoolExecutor contentPool, Consumer<SearchHit> onMatch) {
+            this.directory = directory;
+            this.depth = depth;
+            this.contentPool = contentPool;
+            this.onMatch = onMatch;
+        }
+
+        @Override
+        protected void compute() {
+            if (!control.checkpoint()) {
+                return;
+            }
+            directoriesScanned.incrementAndGet();
+            List<WalkTask> subtasks = new ArrayList<>();
+            try {
+                Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (control.isCancelled()) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                            if (attrs.isDirectory()) {
+                                if (depth < maxDepth) {
+                                    subtasks.add(new WalkTask(file, depth + 1, contentPool, onMatch));
+                                }
+                            } else {
+                                visitCandidate(file, attrs);
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                            // File o cartelle non accessibili vengono ignorati
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+            } catch (IOException e) {
+                // Cartella non accessibile
+            }
+            invokeAll(subtasks);
+        }
+
+        private void visitCandidate(Path file, BasicFileAttributes attrs) {
+            filesScanned.incrementAndGet();
+            if (searchArchives && ArchiveService.isSearchableArchive(file.getFileName().toString())) {
+                contentPool.execute(() -> searchArchive(file, onMatch));
+            }
+            if (namePattern != null && !namePattern.matcher(file.getFileName().toString()).matches()) {
+                return;
+            }
+            SearchHit hit = new SearchHit(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+            if (contentText == null) {
+                onMatch.accept(hit);
+                return;
+            }
+            contentPool.execute(() -> {
+                if (!control.isCancelled() && matchesContent(file)) {
+                    onMatch.accept(hit);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.totalcommander.services;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32C;
+
+/**
+ * Verifica che la copia di un file sia identica all'originale confrontando i checksum.
+ * La lettura e il calcolo dell'hash procedono in pipeline su due thread, con buffer
+ * diretti riutilizzati, così ogni byte viene letto una sola volta per lato
+ */
+public class FileVerifier {
+
+    public static final String CRC32C = "CRC32C";
+    public static final String SHA256 = "SHA-256";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    // Buffer in volo tra il thread che legge e quello che calcola l'hash
+    private static final int PIPELINE_DEPTH = 4;
+
+    private static final ExecutorService hashExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "hash-worker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Buffer diretti per thread di copia, allocati una volta sola
+    private static final ThreadLocal<ByteBuffer[]> buffers = ThreadLocal.withInitial(() -> {
+        ByteBuffer[] pool = new ByteBuffer[PIPELINE_DEPTH];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        return pool;
+    });
+
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    /**
+     * Calcolo incrementale di CRC32C o SHA-256
+     */
+    public static class Hasher {
+        private final CRC32C crc;
+        private final MessageDigest digest;
+
+        private Hasher(CRC32C crc, MessageDigest digest) {
+            this.crc = crc;
+            this.digest = digest;
+        }
+
+        public static Hasher create(String algorithm) {
+            if (SHA256.equalsIgnoreCase(algorithm)) {
+                try {
+                    return new Hasher(null, MessageDigest.getInstance(SHA256));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return new Hasher(new CRC32C(), null);
+        }
+
+        public void update(ByteBuffer buffer) {
+            if (crc != null) {
+                crc.update(buffer);
+            } else {
+                digest.update(buffer);
+            }
+        }
+
+        public void update(byte[] data, int offset, int length) {
+            if (crc != null) {
+                crc.update(data, offset, length);
+            } else {
+                digest.update(data, offset, length);
+            }
+        }
+
+        /**
+         * Valore finale in esadecimale
+         */
+        public String result() {
+            if (crc != null) {
+                return String.format("%08x", crc.getValue());
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Confronta dimensione e CRC32C di origine e copia
+     */
+    public static boolean verify(Path source, Path target) throws IOException {
+        if (Files.size(source) != Files.size(target)) {
+            return false;
+        }
+        return hash(source, CRC32C).equals(hash(target, CRC32C));
+    }
+
+    /**
+     * Hash di un file letto una sola volta
+     */
+    public static String hash(Path file, String algorithm) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return pipeline(in, null, in.size(), algorithm, null, null);
+        }
+    }
+
+    /**
+     * Copia da un canale all'altro calcolando l'hash dei byte letti; l'avanzamento
+     * va al tracker e il controllo viene verificato a ogni buffer
+     */
+    public static String copyAndHash(FileChannel in, WritableByteChannel out, String algorithm,
+                                     OperationControl control, ProgressTracker tracker) throws IOException {
+        return pipeline(in, out, in.size(), algorithm, control, tracker);
+    }
+
+    /**
+     * Stream che calcola l'hash dei byte letti (es. origine di un upload FTP)
+     */
+    public static InputStream hashingInputStream(InputStream in, Hasher hasher) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    hasher.update(new byte[] {(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException {
+                int read = super.read(data, offset, length);
+                if (read > 0) {
+                    hasher.update(data, offset, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Stream che calcola l'hash dei byte scritti (es. dati ricevuti da un download FTP)
+     */
+    public static OutputStream hashingOutputStream(OutputStream out, Hasher hasher) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                hasher.update(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                out.write(data, offset, length);
+                hasher.update(data, offset, length);
+            }
+        };
+    }
+
+    private static String pipeline(ReadableByteChannel in, WritableByteChannel out, long size, String algorithm,
+                                   OperationControl control, ProgressTracker tracker) throws IOException {
+        Hasher hasher = Hasher.create(algorithm);
+        ByteBuffer[] pool = buffers.get();
+
+        // File piccoli: un solo buffer, il passaggio a un altro thread costerebbe più dell'hash
+        if (size <= BUFFER_SIZE) {
+            ByteBuffer buffer = pool[0];
+            buffer.clear();
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                buffer.flip();
+                hasher.update(buffer.duplicate());
+                write(out, buffer);
+                if (tracker != null) {
+                    tracker.addBytes(read);
+                }
+                buffer.clear();
+            }
+            return hasher.result();
+        }
+
+        BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(PIPELINE_DEPTH + 1);
+        for (ByteBuffer buffer : pool) {
+            free.add(buffer);
+        }
+        Future<?> hashing = hashExecutor.submit(() -> {
+            while (true) {
+                ByteBuffer buffer = filled.take();
+                if (buffer == END_OF_STREAM) {
+                    return null;
+                }
+                hasher.update(buffer.duplicate());
+                free.put(buffer);
+            }
+        });
+
+        boolean finished = false;
+        try {
+            while (true) {
+                if (control != null && !control.checkpoint()) {
+                    throw new IOException("Copia annullata");
+                }
+                ByteBuffer buffer = free.take();
+                buffer.clear();
+                int read = in.read(buffer);
+                if (read == -1) {
+                    free.put(buffer);
+                    break;
+                }
+                buffer.flip();
+                // Il thread di hash legge lo stesso buffer mentre questo thread lo scrive
+                filled.put(buffer);
+                write(out, buffer.duplicate());
+                if (tracker != null) {
+                    tracker.addBytes(read);
+                }
+            }
+            filled.put(END_OF_STREAM);
+            hashing.get();
+            finished = true;
+            return hasher.result();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Calcolo checksum interrotto");
+        } catch (ExecutionException e) {
+            throw new IOException("Errore nel calcolo del checksum: " + e.getCause().getMessage());
+        } finally {
+            if (!finished) {
+                hashing.cancel(true);
+            }
+        }
+    }
+
+    private static void write(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        if (out == null) {
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -71,6 +71,7 @@ public class FtpConnectionManager {
             FtpService service = activeConnections.remove(key);
             service.disconnect();
         }
+        FtpSessionPool.getInstance().close(connection);
     }
 
     private static void saveConnections(List<FtpConnection> connections) {
@@ -119,6 +120,8 @@ public class FtpConnectionManager {
         if (service != null) {
             service.disconnect();
         }
+        // Chiude anche le sessioni usate dai trasferimenti
+        FtpSessionPool.getInstance().close(connection);
     }
     
     /**
@@ -132,7 +135,7 @@ public class FtpConnectionManager {
     /**
      * Genera una chiave univoca per la connessione
      */
-    private static String getConnectionKey(FtpConnection connection) {
+    static String getConnectionKey(FtpConnection connection) {
         return connection.getHost() + ":" + connection.getPort() + "@" + connection.getUsername();
     }
     
@@ -144,5 +147,6 @@ public class FtpConnectionManager {
             service.disconnect();
         }
         activeConnections.clear();
+        FtpSessionPool.getInstance().closeAll();
     }
 }
@@ -3,9 +3,11 @@ package com.totalcommander.services;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Servizio per connessioni FTP
@@ -15,12 +17,16 @@ public class FtpService {
     private FTPClient ftpClient;
     private String currentServer;
     private String currentUser;
+    private final int bufferSize;
 
     public FtpService() {
         this.ftpClient = new FTPClient();
         // Imposta timeout per evitare blocchi
         this.ftpClient.setDefaultTimeout(30000); // 30 secondi
         this.ftpClient.setConnectTimeout(10000); // 10 secondi per la connessione
+        // Stesso buffer per la copia dei dati e per i file locali
+        this.bufferSize = Math.max(8, SettingsService.getInstance().getSettings().ftpBufferSizeKB) * 1024;
+        this.ftpClient.setBufferSize(bufferSize);
     }
 
     public boolean connect(String host, int port, String username, String password) {
@@ -63,6 +69,17 @@ public class FtpService {
         return ftpClient.isConnected();
     }
 
+    /**
+     * Verifica che la sessione risponda ancora (comando NOOP)
+     */
+    public boolean sendNoOp() {
+        try {
+            return ftpClient.isConnected() && ftpClient.sendNoOp();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
     public FTPFile[] listFiles(String remotePath) throws IOException {
         if (remotePath == null || remotePath.isEmpty()) {
             remotePath = "/";
@@ -79,22 +96,100 @@ public class FtpService {
     }
 
     public boolean downloadFile(String remotePath, Path localPath) {
-        try (OutputStream os = Files.newOutputStream(localPath)) {
+        return downloadFile(remotePath, localPath, 0, null, null);
+    }
+
+    public boolean uploadFile(Path localPath, String remotePath) {
+        return uploadFile(localPath, remotePath, 0, null, null);
+    }
+    
+    /**
+     * Download che calcola l'hash dei byte ricevuti mentre li scrive su disco
+     */
+    public boolean downloadFile(String remotePath, Path localPath, FileVerifier.Hasher hasher) {
+        return downloadFile(remotePath, localPath, 0, hasher, null);
+    }
+
+    /**
+     * Upload che calcola l'hash dei byte letti dal file locale mentre li invia
+     */
+    public boolean uploadFile(Path localPath, String remotePath, FileVerifier.Hasher hasher) {
+        return uploadFile(localPath, remotePath, 0, hasher, null);
+    }
+
+    /**
+     * Download con hash e conteggio dei byte ricevuti, entrambi facoltativi (null). Con offset
+     * maggiore di zero il download riprende da quel byte (REST) e il file locale, già lungo
+     * offset byte, viene completato in coda
+     */
+    public boolean downloadFile(String remotePath, Path localPath, long offset, FileVerifier.Hasher hasher,
+                                ProgressTracker tracker) {
+        OutputStream file;
+        try {
+            file = offset > 0
+                ? Files.newOutputStream(localPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : Files.newOutputStream(localPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        try (OutputStream os = wrap(new BufferedOutputStream(file, bufferSize), hasher, tracker)) {
+            ftpClient.setRestartOffset(offset);
             return ftpClient.retrieveFile(remotePath, os);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            ftpClient.setRestartOffset(0);
         }
     }
 
-    public boolean uploadFile(Path localPath, String remotePath) {
-        try (InputStream is = Files.newInputStream(localPath)) {
-            return ftpClient.storeFile(remotePath, is);
+    /**
+     * Upload con hash e conteggio dei byte inviati, entrambi facoltativi (null). Con offset
+     * maggiore di zero si inviano solo i byte successivi, accodati al file remoto (APPE,
+     * oppure REST + STOR se il server non supporta APPE)
+     */
+    public boolean uploadFile(Path localPath, String remotePath, long offset, FileVerifier.Hasher hasher,
+                              ProgressTracker tracker) {
+        try (InputStream file = Files.newInputStream(localPath)) {
+            file.skipNBytes(offset);
+            InputStream is = wrap(new BufferedInputStream(file, bufferSize), hasher, tracker);
+            if (offset == 0) {
+                return ftpClient.storeFile(remotePath, is);
+            }
+            if (ftpClient.appendFile(remotePath, is)) {
+                return true;
+            }
+            int reply = ftpClient.getReplyCode();
+            if (reply != FTPReply.UNRECOGNIZED_COMMAND && reply != FTPReply.COMMAND_NOT_IMPLEMENTED) {
+                return false;
+            }
+            // APPE rifiutato prima di aprire la connessione dati: lo stream è ancora intatto
+            try {
+                ftpClient.setRestartOffset(offset);
+                return ftpClient.storeFile(remotePath, is);
+            } finally {
+                ftpClient.setRestartOffset(0);
+            }
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    private static OutputStream wrap(OutputStream os, FileVerifier.Hasher hasher, ProgressTracker tracker) {
+        if (hasher != null) {
+            os = FileVerifier.hashingOutputStream(os, hasher);
+        }
+        return tracker != null ? tracker.count(os) : os;
+    }
+
+    private static InputStream wrap(InputStream is, FileVerifier.Hasher hasher, ProgressTracker tracker) {
+        if (hasher != null) {
+            is = FileVerifier.hashingInputStream(is, hasher);
+        }
+        return tracker != null ? tracker.count(is) : is;
+    }
     
     public boolean uploadFile(InputStream inputStream, String remotePath) {
         try {
@@ -113,6 +208,60 @@ public class FtpService {
         return ftpClient.completePendingCommand();
     }
 
+    /**
+     * Dimensione di un file remoto, oppure -1 se non disponibile
+     */
+    public long getRemoteSize(String remotePath) {
+        try {
+            FTPFile[] files = ftpClient.listFiles(remotePath);
+            if (files != null && files.length == 1 && files[0].isFile()) {
+                return files[0].getSize();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    /**
+     * Hash calcolato dal server (HASH, oppure XSHA256/XMD5 per gli algoritmi corrispondenti),
+     * senza trasferire il file; null se il server non lo supporta per l'algoritmo richiesto.
+     * CRC32C non ha un comando FTP: XCRC restituisce CRC32, non confrontabile
+     */
+    public String getServerHash(String remotePath, String algorithm) {
+        if (!FileVerifier.SHA256.equalsIgnoreCase(algorithm)) {
+            return null;
+        }
+        try {
+            if (ftpClient.hasFeature("HASH")
+                && FTPReply.isPositiveCompletion(ftpClient.sendCommand("OPTS", "HASH SHA-256"))
+                && FTPReply.isPositiveCompletion(ftpClient.sendCommand("HASH", remotePath))) {
+                String hash = findHex(ftpClient.getReplyString(), 64);
+                if (hash != null) {
+                    return hash;
+                }
+            }
+            if (FTPReply.isPositiveCompletion(ftpClient.sendCommand("XSHA256", remotePath))) {
+                return findHex(ftpClient.getReplyString(), 64);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Prima parola della risposta composta da length cifre esadecimali, in minuscolo
+     */
+    private static String findHex(String reply, int length) {
+        for (String word : reply.trim().split("\\s+")) {
+            if (word.length() == length && word.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+                return word.toLowerCase();
+            }
+        }
+        return null;
+    }
+
     public boolean deleteFile(String remotePath) {
         try {
             return ftpClient.deleteFile(remotePath);
@@ -131,6 +280,29 @@ public class FtpService {
         }
     }
 
+    public boolean removeDirectory(String remotePath) {
+        try {
+            return ftpClient.removeDirectory(remotePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Imposta la data di modifica di un file remoto (comando MFMT, non supportato da tutti i server)
+     */
+    public boolean setModificationTime(String remotePath, long millis) {
+        try {
+            java.text.SimpleDateFormat format = new java.text.SimpleDateFormat("yyyyMMddHHmmss");
+            format.setTimeZone(java.util.TimeZone.getTimeZone("UTC"));
+            return ftpClient.setModificationTime(remotePath, format.format(new java.util.Date(millis)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     public String getCurrentServer() {
         return currentServer;
     }
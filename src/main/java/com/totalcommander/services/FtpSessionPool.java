@@ -0,0 +1,325 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.FtpConnection;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sessioni FTP riutilizzabili per i trasferimenti, separate da quella usata dal pannello.
+ * Per ogni server si aprono al massimo maxSessions connessioni; chi ne chiede un'altra
+ * attende che una venga restituita. Le sessioni inutilizzate da più di idleTimeout vengono
+ * chiuse, tranne le ultime minIdle che restano aperte con un NOOP periodico; una sessione
+ * ferma da qualche secondo viene verificata con un NOOP prima di essere riusata
+ */
+public class FtpSessionPool {
+
+    // Oltre questa inattività la sessione viene verificata prima dell'uso
+    private static final long VALIDATE_AFTER_MILLIS = 5_000;
+    private static final long EVICT_INTERVAL_SECONDS = 15;
+
+    private static FtpSessionPool instance;
+
+    private final Map<String, ServerPool> pools = new HashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile int minIdle = 1;
+    private volatile int maxSessions;
+    private volatile long idleTimeoutMillis;
+
+    private static class Session {
+        final FtpService service;
+        long lastUsed;
+        Boolean binary; // modalità di trasmissione impostata, null se non ancora impostata
+
+        Session(FtpService service) {
+            this.service = service;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Sessioni di un server: libere (la più recente in testa) e in uso
+     */
+    private static class ServerPool {
+        final FtpConnection connection;
+        final Deque<Session> idle = new ArrayDeque<>();
+        final Map<FtpService, Session> borrowed = new IdentityHashMap<>();
+        int opening;
+        boolean closed;
+
+        ServerPool(FtpConnection connection) {
+            this.connection = connection;
+        }
+
+        int total() {
+            return idle.size() + borrowed.size() + opening;
+        }
+    }
+
+    private FtpSessionPool() {
+        SettingsService.ApplicationSettings settings = SettingsService.getInstance().getSettings();
+        maxSessions = Math.max(1, settings.ftpParallelTransfers);
+        idleTimeoutMillis = Math.max(1, settings.ftpIdleSessionSeconds) * 1000L;
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ftp-session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictIdle, EVICT_INTERVAL_SECONDS, EVICT_INTERVAL_SECONDS,
+            TimeUnit.SECONDS);
+    }
+
+    public static synchronized FtpSessionPool getInstance() {
+        if (instance == null) {
+            instance = new FtpSessionPool();
+        }
+        return instance;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = Math.max(0, minIdle);
+    }
+
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = Math.max(1, maxSessions);
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Sessione pronta per il server; da restituire con release o invalidate
+     */
+    public FtpService borrow(FtpConnection connection) throws IOException {
+        ServerPool pool = poolFor(connection);
+        while (true) {
+            Session session;
+            synchronized (pool) {
+                while (!pool.closed && pool.idle.isEmpty() && pool.total() >= maxSessions) {
+                    try {
+                        pool.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Attesa di una sessione FTP interrotta");
+                    }
+                }
+                if (pool.closed) {
+                    throw new IOException("Connessione FTP chiusa: " + connection.getHost());
+                }
+                session = pool.idle.pollFirst();
+                if (session != null) {
+                    pool.borrowed.put(session.service, session);
+                } else {
+                    pool.opening++;
+                }
+            }
+
+            if (session == null) {
+                session = open(pool);
+            } else if (System.currentTimeMillis() - session.lastUsed > VALIDATE_AFTER_MILLIS
+                       && !session.service.sendNoOp()) {
+                // Chiusa dal server durante l'inattività: se ne prende o apre un'altra
+                invalidate(connection, session.service);
+                continue;
+            }
+
+            try {
+                applyTransmissionMode(session);
+            } catch (IOException e) {
+                invalidate(connection, session.service);
+                throw e;
+            }
+            return session.service;
+        }
+    }
+
+    /**
+     * Restituisce una sessione funzionante perché venga riusata
+     */
+    public void release(FtpConnection connection, FtpService service) {
+        ServerPool pool = existingPool(connection);
+        if (pool == null) {
+            service.disconnect();
+            return;
+        }
+        boolean discard;
+        synchronized (pool) {
+            Session session = pool.borrowed.remove(service);
+            discard = session == null || pool.closed || !service.isConnected();
+            if (!discard) {
+                session.lastUsed = System.currentTimeMillis();
+                pool.idle.addFirst(session);
+            }
+            pool.notifyAll();
+        }
+        if (discard) {
+            service.disconnect();
+        }
+    }
+
+    /**
+     * Scarta una sessione non più utilizzabile (errore di rete, risposta inattesa)
+     */
+    public void invalidate(FtpConnection connection, FtpService service) {
+        ServerPool pool = existingPool(connection);
+        if (pool != null) {
+            synchronized (pool) {
+                pool.borrowed.remove(service);
+                pool.notifyAll();
+            }
+        }
+        service.disconnect();
+    }
+
+    /**
+     * Chiude le sessioni del server; quelle in uso vengono chiuse quando restituite
+     */
+    public void close(FtpConnection connection) {
+        ServerPool pool;
+        synchronized (pools) {
+            pool = pools.remove(FtpConnectionManager.getConnectionKey(connection));
+        }
+        if (pool != null) {
+            closePool(pool);
+        }
+    }
+
+    public void closeAll() {
+        List<ServerPool> all;
+        synchronized (pools) {
+            all = new ArrayList<>(pools.values());
+            pools.clear();
+        }
+        for (ServerPool pool : all) {
+            closePool(pool);
+        }
+    }
+
+    private void closePool(ServerPool pool) {
+        List<Session> idle;
+        synchronized (pool) {
+            pool.closed = true;
+            idle = new ArrayList<>(pool.idle);
+            pool.idle.clear();
+            pool.notifyAll();
+        }
+        for (Session session : idle) {
+            session.service.disconnect();
+        }
+    }
+
+    private ServerPool poolFor(FtpConnection connection) {
+        String key = FtpConnectionManager.getConnectionKey(connection);
+        synchronized (pools) {
+            return pools.computeIfAbsent(key, k -> new ServerPool(connection));
+        }
+    }
+
+    private ServerPool existingPool(FtpConnection connection) {
+        synchronized (pools) {
+            return pools.get(FtpConnectionManager.getConnectionKey(connection));
+        }
+    }
+
+    /**
+     * Apre una nuova sessione; il posto è già stato riservato in opening
+     */
+    private Session open(ServerPool pool) throws IOException {
+        FtpConnection connection = pool.connection;
+        Session session = null;
+        try {
+            FtpService service = new FtpService();
+            if (!service.connect(connection.getHost(), connection.getPort(), connection.getUsername(),
+                                 connection.getPassword(), connection.isUsePassiveMode())) {
+                service.disconnect();
+                throw new IOException("Connessione a " + connection.getHost() + " non riuscita: "
+                    + service.getReplyString());
+            }
+            session = new Session(service);
+            session.binary = true;
+            return session;
+        } finally {
+            synchronized (pool) {
+                pool.opening--;
+                if (session != null) {
+                    pool.borrowed.put(session.service, session);
+                }
+                pool.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Allinea la sessione alla modalità di trasmissione scelta nelle impostazioni
+     */
+    private void applyTransmissionMode(Session session) throws IOException {
+        String mode = SettingsService.getInstance().getSettings().ftpTransmissionMode;
+        boolean binary = mode == null || mode.startsWith("Binaria");
+        if (session.binary == null || session.binary != binary) {
+            session.service.setFileType(binary);
+            session.binary = binary;
+        }
+    }
+
+    /**
+     * Chiude le sessioni inattive oltre il limite e tiene vive con un NOOP le altre
+     */
+    private void evictIdle() {
+        List<ServerPool> all;
+        synchronized (pools) {
+            all = new ArrayList<>(pools.values());
+        }
+        long now = System.currentTimeMillis();
+        for (ServerPool pool : all) {
+            List<Session> expired = new ArrayList<>();
+            List<Session> keepAlive = new ArrayList<>();
+            synchronized (pool) {
+                // Le più vecchie sono in fondo
+                int kept = 0;
+                Iterator<Session> sessions = pool.idle.iterator();
+                while (sessions.hasNext()) {
+                    Session session = sessions.next();
+                    if (now - session.lastUsed <= idleTimeoutMillis) {
+                        kept++;
+                    } else if (kept < minIdle) {
+                        kept++;
+                        sessions.remove();
+                        pool.borrowed.put(session.service, session);
+                        keepAlive.add(session);
+                    } else {
+                        sessions.remove();
+                        expired.add(session);
+                    }
+                }
+                if (!expired.isEmpty()) {
+                    pool.notifyAll();
+                }
+            }
+            for (Session session : expired) {
+                session.service.disconnect();
+            }
+            for (Session session : keepAlive) {
+                if (session.service.sendNoOp()) {
+                    release(pool.connection, session.service);
+                } else {
+                    invalidate(pool.connection, session.service);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationResult;
+import com.totalcommander.models.ScanResult;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Motore di spostamento locale: sullo stesso volume usa una rinomina atomica, tra volumi
+ * diversi copia in parallelo, verifica le copie e solo dopo elimina le origini.
+ * Gli spostamenti tra volumi sono registrati in {@link MoveJournal}
+ */
+public class MoveEngine {
+
+    private OperationControl control = new OperationControl();
+    private ProgressTracker tracker = ProgressTracker.silent();
+    private boolean verify = SettingsService.getInstance().getSettings().verifyMoves;
+    private String verifyAlgorithm = SettingsService.getInstance().getSettings().verifyAlgorithm;
+
+    public void setControl(OperationControl control) {
+        this.control = control;
+    }
+
+    public void setProgressTracker(ProgressTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Attiva il confronto dei checksum tra copia e originale prima di eliminare le origini
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Sposta file e cartelle nella directory di destinazione
+     */
+    public OperationResult move(List<File> files, Path destination) {
+        OperationResult result = new OperationResult();
+        tracker.setTotals(files.size(), -1);
+
+        FileStore destinationStore = storeOf(destination);
+        List<File> crossVolume = new ArrayList<>();
+        for (File file : files) {
+            if (!control.checkpoint()) {
+                break;
+            }
+            if (destinationStore != null && destinationStore.equals(storeOf(file.toPath()))) {
+                rename(file.toPath(), destination.resolve(file.getName()), result);
+            } else {
+                crossVolume.add(file);
+            }
+        }
+
+        if (!crossVolume.isEmpty() && !control.isCancelled()) {
+            moveAcrossVolumes(crossVolume, destination, MoveJournal.begin(crossVolume, destination), result);
+        }
+        if (control.isCancelled()) {
+            result.markCancelled();
+        }
+        result.finish();
+        tracker.publishNow();
+        return result;
+    }
+
+    /**
+     * Riprende uno spostamento interrotto trovato nel giornale
+     */
+    public OperationResult resume(MoveJournal.Entry entry) {
+        OperationResult result = new OperationResult();
+        List<File> remaining = new ArrayList<>();
+        for (File file : entry.getSourceFiles()) {
+            if (file.exists()) {
+                remaining.add(file);
+            }
+        }
+        Path destination = Path.of(entry.destination);
+        if (MoveJournal.PHASE_DELETE.equals(entry.phase)) {
+            // La copia era già completa e verificata: restano da eliminare le origini
+            deleteSources(remaining, result);
+            if (!control.isCancelled()) {
+                deleteBackups(entry);
+                MoveJournal.complete(entry);
+            }
+        } else if (remaining.isEmpty()) {
+            MoveJournal.complete(entry);
+        } else {
+            moveAcrossVolumes(remaining, destination, entry, result);
+        }
+        if (control.isCancelled()) {
+            result.markCancelled();
+        }
+        result.finish();
+        tracker.publishNow();
+        return result;
+    }
+
+    /**
+     * Annulla uno spostamento interrotto in fase di copia: rimuove dalla destinazione solo
+     * ciò che lo spostamento ha creato e ripristina i file sovrascritti, le origini restano intatte
+     */
+    public OperationResult rollback(MoveJournal.Entry entry) {
+        OperationResult result = new OperationResult();
+        if (!MoveJournal.PHASE_COPY.equals(entry.phase)) {
+            // Le origini sono già in parte eliminate: l'unica strada è completare lo spostamento
+            return resume(entry);
+        }
+        undoTargets(entry, result);
+        if (result.getFailureCount() == 0) {
+            MoveJournal.complete(entry);
+        }
+        result.finish();
+        tracker.publishNow();
+        return result;
+    }
+
+    private void rename(Path source, Path target, OperationResult result) {
+        tracker.fileStarted(source);
+        try {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            result.addSuccess(source, target, 0);
+        } catch (IOException e) {
+            result.addFailure(source, target, e.getMessage());
+        }
+        tracker.fileCompleted();
+    }
+
+    /**
+     * Copia, verifica ed elimina le origini; se la copia non riesce le origini restano
+     * intatte, i file creati vengono rimossi e quelli sovrascritti ripristinati
+     */
+    private void moveAcrossVolumes(List<File> files, Path destination, MoveJournal.Entry journal,
+                                   OperationResult result) {
+        TreeScanner scanner = new TreeScanner();
+        scanner.setControl(control);
+        ScanResult scan = scanner.scan(files);
+        if (scan.isCancelled()) {
+            MoveJournal.complete(journal);
+            return;
+        }
+        try {
+            TreeScanner.ensureFreeSpace(scan, destination);
+        } catch (IOException e) {
+            result.addFailure(destination, null, e.getMessage());
+            MoveJournal.complete(journal);
+            return;
+        }
+
+        try {
+            prepareTargets(scan, destination, journal);
+        } catch (IOException e) {
+            result.addFailure(destination, null, "Impossibile preparare la destinazione: " + e.getMessage());
+            undoTargets(journal, result);
+            MoveJournal.complete(journal);
+            return;
+        }
+
+        CopyEngine engine = new CopyEngine();
+        engine.setControl(control);
+        engine.setProgressTracker(tracker);
+        if (verify) {
+            engine.setVerifyAlgorithm(verifyAlgorithm);
+        }
+        // Il risultato della copia include anche gli errori della scansione
+        OperationResult copyResult = engine.copy(scan, destination);
+
+        List<OperationResult.FileResult> copied = new ArrayList<>();
+        boolean complete = copyResult.isSuccess();
+        for (OperationResult.FileResult file : copyResult.getFileResults()) {
+            if (file.isSuccess()) {
+                copied.add(file);
+            } else {
+                result.addFailure(file.getSource(), file.getDestination(), file.getErrorMessage());
+            }
+        }
+
+        if (!complete || control.isCancelled()) {
+            // Origini intatte: rimuove le copie per non lasciare un albero spostato a metà
+            OperationResult undo = new OperationResult();
+            undoTargets(journal, undo);
+            for (OperationResult.FileResult failure : undo.getFailures()) {
+                result.addFailure(failure.getSource(), null, "Impossibile ripristinare la destinazione: "
+                    + failure.getErrorMessage());
+            }
+            // Se il ripristino non è completo il giornale resta, per annullarlo al prossimo avvio
+            if (undo.getFailureCount() == 0) {
+                MoveJournal.complete(journal);
+            }
+            return;
+        }
+
+        MoveJournal.setPhase(journal, MoveJournal.PHASE_DELETE);
+        for (OperationResult.FileResult file : copied) {
+            result.addSuccess(file.getSource(), file.getDestination(), file.getBytes());
+        }
+        deleteSources(files, result);
+        // Se annullato durante l'eliminazione il giornale resta, per completarla al prossimo avvio
+        if (!control.isCancelled()) {
+            deleteBackups(journal);
+            MoveJournal.complete(journal);
+        }
+    }
+
+    /**
+     * Annota nel giornale le cartelle e i file che la copia creerà, poi mette da parte
+     * (rinominandoli accanto) i file esistenti che verrebbero sovrascritti. Quanto creato da
+     * un tentativo precedente dello stesso spostamento è già nel giornale e non viene salvato
+     */
+    private void prepareTargets(ScanResult scan, Path destination, MoveJournal.Entry journal) throws IOException {
+        Set<String> createdDirectories = new HashSet<>(journal.createdDirectories);
+        for (ScanResult.Entry dir : scan.getDirectories()) {
+            Path target = destination.resolve(dir.getRelativePath().toString());
+            if (!createdDirectories.contains(target.toString()) && !Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                journal.createdDirectories.add(target.toString());
+            }
+        }
+        Set<String> createdFiles = new HashSet<>(journal.createdFiles);
+        List<Path> toBackup = new ArrayList<>();
+        for (ScanResult.Entry file : scan.getFiles()) {
+            Path target = destination.resolve(file.getRelativePath().toString());
+            String key = target.toString();
+            if (createdFiles.add(key)) {
+                journal.createdFiles.add(key);
+                if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+                    toBackup.add(target);
+                    journal.backups.put(key, backupPath(target, journal).toString());
+                }
+            }
+        }
+        // Il giornale va su disco prima di toccare la destinazione
+        MoveJournal.update(journal);
+        for (Path target : toBackup) {
+            Files.move(target, Path.of(journal.backups.get(target.toString())));
+        }
+    }
+
+    private static Path backupPath(Path target, MoveJournal.Entry journal) {
+        return target.resolveSibling("." + target.getFileName() + "." + journal.id.substring(0, 8) + ".bak");
+    }
+
+    /**
+     * Rimuove file e cartelle creati dallo spostamento e rimette al loro posto i file
+     * sovrascritti. Ciò che esisteva prima non viene mai eliminato
+     */
+    private void undoTargets(MoveJournal.Entry journal, OperationResult result) {
+        for (String created : journal.createdFiles) {
+            Path target = Path.of(created);
+            try {
+                if (Files.deleteIfExists(target)) {
+                    result.addSuccess(target, null, 0);
+                }
+            } catch (IOException e) {
+                result.addFailure(target, null, e.getMessage());
+            }
+        }
+        for (Map.Entry<String, String> backup : journal.backups.entrySet()) {
+            Path saved = Path.of(backup.getValue());
+            if (!Files.exists(saved, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            try {
+                Files.move(saved, Path.of(backup.getKey()), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                result.addFailure(saved, Path.of(backup.getKey()), e.getMessage());
+            }
+        }
+        // Dalla più profonda; una cartella non vuota contiene file estranei allo spostamento
+        for (int i = journal.createdDirectories.size() - 1; i >= 0; i--) {
+            try {
+                Files.deleteIfExists(Path.of(journal.createdDirectories.get(i)));
+            } catch (DirectoryNotEmptyException e) {
+                // Contiene file che non appartengono allo spostamento
+            } catch (IOException e) {
+                System.err.println("Impossibile rimuovere la cartella: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Spostamento riuscito: le copie di riserva dei file sovrascritti non servono più
+     */
+    private void deleteBackups(MoveJournal.Entry journal) {
+        List<File> backups = new ArrayList<>();
+        for (String backup : journal.backups.values()) {
+            if (Files.exists(Path.of(backup), LinkOption.NOFOLLOW_LINKS)) {
+                backups.add(new File(backup));
+            }
+        }
+        if (!backups.isEmpty()) {
+            for (OperationResult.FileResult failure : new DeleteEngine().delete(backups).getFailures()) {
+                System.err.println("Impossibile eliminare la copia di riserva: " + failure.getSource());
+            }
+        }
+    }
+
+    /**
+     * Elimina le origini con il motore di eliminazione parallelo
+     */
+    private void deleteSources(List<File> files, OperationResult result) {
+        DeleteEngine engine = new DeleteEngine();
+        engine.setControl(control);
+        for (OperationResult.FileResult failure : engine.delete(files).getFailures()) {
+            result.addFailure(failure.getSource(), null, "Impossibile eliminare l'origine: " + failure.getErrorMessage());
+        }
+    }
+
+    private static FileStore storeOf(Path path) {
+        try {
+            return Files.getFileStore(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
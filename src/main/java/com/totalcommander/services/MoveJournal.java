@@ -0,0 +1,144 @@
+package com.totalcommander.services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Giornale degli spostamenti tra volumi diversi: un file JSON per spostamento,
+ * rimosso a operazione conclusa. Quelli rimasti all'avvio sono spostamenti interrotti
+ */
+public class MoveJournal {
+
+    private static final String JOURNAL_DIR = System.getProperty("user.home") + File.separator + ".totalcommander" + File.separator + "moves";
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    // Fase di copia: le origini sono intatte, la destinazione può essere parziale
+    public static final String PHASE_COPY = "COPIA";
+    // Fase di eliminazione: la copia è completa e verificata, le origini sono in parte eliminate
+    public static final String PHASE_DELETE = "ELIMINAZIONE";
+
+    public static class Entry {
+        public String id;
+        public List<String> sources = new ArrayList<>();
+        public String destination;
+        public String phase;
+        public long timestamp;
+        // File e cartelle (in pre-ordine) creati dallo spostamento: solo questi si possono rimuovere
+        public List<String> createdFiles = new ArrayList<>();
+        public List<String> createdDirectories = new ArrayList<>();
+        // File esistenti messi da parte prima di sovrascriverli: destinazione -> copia di riserva
+        public Map<String, String> backups = new LinkedHashMap<>();
+
+        public Entry() {}
+
+        public List<File> getSourceFiles() {
+            List<File> files = new ArrayList<>();
+            for (String source : sources) {
+                files.add(new File(source));
+            }
+            return files;
+        }
+    }
+
+    static {
+        try {
+            Files.createDirectories(Paths.get(JOURNAL_DIR));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Registra l'inizio di uno spostamento tra volumi
+     */
+    public static Entry begin(List<File> files, Path destination) {
+        Entry entry = new Entry();
+        entry.id = UUID.randomUUID().toString();
+        for (File file : files) {
+            entry.sources.add(file.getAbsolutePath());
+        }
+        entry.destination = destination.toString();
+        entry.phase = PHASE_COPY;
+        save(entry);
+        return entry;
+    }
+
+    public static void setPhase(Entry entry, String phase) {
+        entry.phase = phase;
+        save(entry);
+    }
+
+    /**
+     * Salva le modifiche all'elenco dei file creati e delle copie di riserva
+     */
+    public static void update(Entry entry) {
+        save(entry);
+    }
+
+    /**
+     * Rimuove il giornale di uno spostamento concluso (o annullato senza residui)
+     */
+    public static void complete(Entry entry) {
+        try {
+            Files.deleteIfExists(journalFile(entry));
+        } catch (IOException e) {
+            System.err.println("Errore durante la rimozione del giornale di spostamento: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Spostamenti interrotti rimasti nel giornale
+     */
+    public static List<Entry> loadPending() {
+        List<Entry> pending = new ArrayList<>();
+        File[] files = new File(JOURNAL_DIR).listFiles((dir, name) -> name.endsWith(".json"));
+        if (files == null) {
+            return pending;
+        }
+        for (File file : files) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                Entry entry = gson.fromJson(reader, Entry.class);
+                if (entry != null && entry.id != null && entry.destination != null) {
+                    pending.add(entry);
+                }
+            } catch (IOException | JsonSyntaxException e) {
+                System.err.println("Giornale di spostamento non leggibile: " + file + " - " + e.getMessage());
+            }
+        }
+        return pending;
+    }
+
+    private static Path journalFile(Entry entry) {
+        return Paths.get(JOURNAL_DIR, entry.id + ".json");
+    }
+
+    private static synchronized void save(Entry entry) {
+        entry.timestamp = System.currentTimeMillis();
+        Path file = journalFile(entry);
+        Path temp = Paths.get(file + ".tmp");
+        try {
+            // Scrive prima in un file temporaneo per non lasciare un giornale troncato
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(entry, writer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Errore durante il salvataggio del giornale di spostamento: " + e.getMessage());
+        }
+    }
+}
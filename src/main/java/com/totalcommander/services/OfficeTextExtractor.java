@@ -0,0 +1,349 @@
+package com.totalcommander.services;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Estrae il testo dai documenti Office Open XML (docx, xlsx, pptx) e OpenDocument (odt,
+ * ods, odp). Dell'archivio vengono lette solo le parti con il testo, analizzate con un
+ * parser StAX mentre vengono decompresse: il testo è prodotto a richiesta da un Reader,
+ * senza costruire il documento in memoria. I testi estratti interamente e non troppo
+ * lunghi vengono conservati per percorso, dimensione e data di modifica
+ */
+public class OfficeTextExtractor {
+
+    // Testi più lunghi non vengono conservati
+    private static final int MAX_CACHED_DOCUMENT = 4 * 1024 * 1024;
+    private static final long MAX_CACHED_TOTAL = 32L * 1024 * 1024;
+
+    private static final Pattern DOCX_PARTS = Pattern.compile(
+        "word/(document|header\\d*|footer\\d*|footnotes|endnotes|comments)\\.xml");
+    private static final Pattern XLSX_PARTS = Pattern.compile("xl/(sharedStrings|worksheets/sheet\\d+)\\.xml");
+    private static final Pattern PPTX_PARTS = Pattern.compile("ppt/(slides/slide|notesSlides/notesSlide)\\d+\\.xml");
+    private static final Pattern ODF_PARTS = Pattern.compile("content\\.xml");
+    private static final Pattern PART_NUMBER = Pattern.compile("(\\D*)(\\d*)\\.xml");
+
+    private static OfficeTextExtractor instance;
+
+    private final XMLInputFactory xmlFactory;
+    private final Map<Path, CachedText> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedChars;
+
+    private static class CachedText {
+        final long size;
+        final long lastModified;
+        final String text;
+
+        CachedText(long size, long lastModified, String text) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.text = text;
+        }
+    }
+
+    private OfficeTextExtractor() {
+        xmlFactory = XMLInputFactory.newInstance();
+        // Nessuna risorsa esterna: i documenti possono provenire da chiunque
+        xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+    }
+
+    public static synchronized OfficeTextExtractor getInstance() {
+        if (instance == null) {
+            instance = new OfficeTextExtractor();
+        }
+        return instance;
+    }
+
+    public static boolean isOfficeDocument(String fileName) {
+        return format(fileName.toLowerCase(Locale.ROOT)) != null;
+    }
+
+    /**
+     * Testo del documento; il chiamante chiude il Reader
+     */
+    public Reader open(Path file) throws IOException {
+        Format format = format(file.getFileName().toString().toLowerCase(Locale.ROOT));
+        if (format == null) {
+            throw new IOException("Formato non supportato: " + file);
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        synchronized (cache) {
+            CachedText cached = cache.get(file);
+            if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+                return new StringReader(cached.text);
+            }
+        }
+        return new TextReader(file, format, size, lastModified);
+    }
+
+    /**
+     * Tutto il testo del documento (per documenti di dimensioni contenute)
+     */
+    public String extract(Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (Reader reader = open(file)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+
+    private void store(Path file, long size, long lastModified, String text) {
+        synchronized (cache) {
+            CachedText previous = cache.put(file, new CachedText(size, lastModified, text));
+            if (previous != null) {
+                cachedChars -= previous.text.length();
+            }
+            cachedChars += text.length();
+            Iterator<CachedText> eldest = cache.values().iterator();
+            while (cachedChars > MAX_CACHED_TOTAL && eldest.hasNext()) {
+                cachedChars -= eldest.next().text.length();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Parti del documento che contengono testo e come leggerle
+     */
+    private enum Format {
+        // w:t testo, w:p paragrafo, w:tab e w:br separatori
+        WORD(DOCX_PARTS, Set.of("t"), Set.of("p", "br", "cr"), Set.of("tab")),
+        // t testo (stringhe condivise e in linea), v valori delle celle; righe e celle separate
+        EXCEL(XLSX_PARTS, Set.of("t", "v"), Set.of("row", "si"), Set.of("c")),
+        // a:t testo, a:p paragrafo
+        POWERPOINT(PPTX_PARTS, Set.of("t"), Set.of("p", "br"), Set.of("tab")),
+        // Tutto il testo del corpo; null indica qualunque elemento
+        OPEN_DOCUMENT(ODF_PARTS, null, Set.of("p", "h", "line-break", "table-row"), Set.of("tab", "s", "table-cell"));
+
+        final Pattern parts;
+        final Set<String> textElements;
+        final Set<String> lineElements;
+        final Set<String> spaceElements;
+
+        Format(Pattern parts, Set<String> textElements, Set<String> lineElements, Set<String> spaceElements) {
+            this.parts = parts;
+            this.textElements = textElements;
+            this.lineElements = lineElements;
+            this.spaceElements = spaceElements;
+        }
+    }
+
+    private static Format format(String lowerCaseName) {
+        if (lowerCaseName.endsWith(".docx") || lowerCaseName.endsWith(".docm")) {
+            return Format.WORD;
+        } else if (lowerCaseName.endsWith(".xlsx") || lowerCaseName.endsWith(".xlsm")) {
+            return Format.EXCEL;
+        } else if (lowerCaseName.endsWith(".pptx") || lowerCaseName.endsWith(".pptm")) {
+            return Format.POWERPOINT;
+        } else if (lowerCaseName.endsWith(".odt") || lowerCaseName.endsWith(".ods") || lowerCaseName.endsWith(".odp")) {
+            return Format.OPEN_DOCUMENT;
+        }
+        return null;
+    }
+
+    /**
+     * Produce il testo a richiesta leggendo una parte XML alla volta; a fine lettura il
+     * testo viene conservato se abbastanza breve
+     */
+    private class TextReader extends Reader {
+        private final Path file;
+        private final Format format;
+        private final long size;
+        private final long lastModified;
+        private final ZipFile zip;
+        private final Iterator<ZipArchiveEntry> parts;
+        private InputStream partStream;
+        private XMLStreamReader xml;
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingPosition;
+        private int textDepth;               // profondità dentro elementi di testo
+        private boolean sharedStringCell;    // cella xlsx con indice di stringa condivisa
+        private boolean inValue;             // dentro l'elemento v di una cella xlsx
+        private StringBuilder copy = new StringBuilder();  // null oltre il limite della cache
+        private boolean finished;
+
+        TextReader(Path file, Format format, long size, long lastModified) throws IOException {
+            this.file = file;
+            this.format = format;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.zip = new ZipFile(file.toFile());
+            List<ZipArchiveEntry> selected = new ArrayList<>();
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                if (format.parts.matcher(entry.getName()).matches()) {
+                    selected.add(entry);
+                }
+            }
+            // Parti in ordine di documento (sheet2 prima di sheet10)
+            selected.sort((a, b) -> comparePartNames(a.getName(), b.getName()));
+            this.parts = selected.iterator();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            while (pendingPosition >= pending.length()) {
+                pending.setLength(0);
+                pendingPosition = 0;
+                if (!fill()) {
+                    finish();
+                    return -1;
+                }
+            }
+            int count = Math.min(length, pending.length() - pendingPosition);
+            pending.getChars(pendingPosition, pendingPosition + count, buffer, offset);
+            pendingPosition += count;
+            return count;
+        }
+
+        /**
+         * Avanza nel documento finché non c'è nuovo testo; false a fine documento
+         */
+        private boolean fill() throws IOException {
+            try {
+                while (pending.length() == 0) {
+                    if (xml == null && !nextPart()) {
+                        return false;
+                    }
+                    if (!xml.hasNext()) {
+                        closePart();
+                        continue;
+                    }
+                    handle(xml.next());
+                }
+            } catch (XMLStreamException e) {
+                throw new IOException("XML non valido in " + file + ": " + e.getMessage(), e);
+            }
+            if (copy != null) {
+                if (copy.length() + pending.length() > MAX_CACHED_DOCUMENT) {
+                    copy = null;
+                } else {
+                    copy.append(pending);
+                }
+            }
+            return true;
+        }
+
+        private void handle(int event) {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    String name = xml.getLocalName();
+                    if (format == Format.EXCEL && name.equals("c")) {
+                        sharedStringCell = "s".equals(xml.getAttributeValue(null, "t"));
+                    } else if (format == Format.EXCEL && name.equals("v")) {
+                        inValue = true;
+                    }
+                    if (format.textElements != null && format.textElements.contains(name)) {
+                        textDepth++;
+                    }
+                    if (format.spaceElements.contains(name)) {
+                        pending.append(format == Format.WORD || format == Format.POWERPOINT ? '\t' : ' ');
+                    }
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT: {
+                    String name = xml.getLocalName();
+                    if (format.textElements != null && format.textElements.contains(name)) {
+                        textDepth--;
+                    }
+                    if (name.equals("v")) {
+                        inValue = false;
+                    }
+                    if (format.lineElements.contains(name)) {
+                        pending.append('\n');
+                    }
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (format.textElements == null || textDepth > 0) {
+                        // Il valore di una cella con stringa condivisa è solo un indice
+                        if (!(sharedStringCell && inValue)) {
+                            pending.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private boolean nextPart() throws IOException, XMLStreamException {
+            if (!parts.hasNext()) {
+                return false;
+            }
+            ZipArchiveEntry entry = parts.next();
+            partStream = zip.getInputStream(entry);
+            xml = xmlFactory.createXMLStreamReader(partStream);
+            textDepth = 0;
+            return true;
+        }
+
+        private void closePart() throws IOException {
+            try {
+                xml.close();
+            } catch (XMLStreamException e) {
+                // Nessuna risorsa da rilasciare oltre allo stream
+            }
+            partStream.close();
+            xml = null;
+            partStream = null;
+        }
+
+        private void finish() {
+            if (!finished && copy != null) {
+                store(file, size, lastModified, copy.toString());
+            }
+            finished = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (xml != null) {
+                    closePart();
+                }
+            } finally {
+                zip.close();
+            }
+        }
+    }
+
+    private static int comparePartNames(String a, String b) {
+        Matcher ma = PART_NUMBER.matcher(a);
+        Matcher mb = PART_NUMBER.matcher(b);
+        if (ma.matches() && mb.matches() && ma.group(1).equals(mb.group(1))
+            && !ma.group(2).isEmpty() && !mb.group(2).isEmpty()) {
+            return Long.compare(Long.parseLong(ma.group(2)), Long.parseLong(mb.group(2)));
+        }
+        return a.compareTo(b);
+    }
+}
@@ -0,0 +1,49 @@
+package com.totalcommander.services;
+
+/**
+ * Permette di mettere in pausa, riprendere o annullare un'operazione su file in corso
+ * da un altro thread
+ */
+public class OperationControl {
+
+    private boolean cancelled = false;
+    private boolean paused = false;
+
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Punto di controllo per i thread di lavoro: attende finché l'operazione è in pausa.
+     * Ritorna false se l'operazione è stata annullata e il lavoro deve interrompersi
+     */
+    public synchronized boolean checkpoint() {
+        while (paused && !cancelled) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !cancelled;
+    }
+}
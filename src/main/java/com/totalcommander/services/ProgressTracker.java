@@ -0,0 +1,134 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationProgress;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Raccoglie l'avanzamento di un'operazione da più thread e lo pubblica
+ * al massimo una volta ogni intervallo, per non sommergere il thread JavaFX
+ */
+public class ProgressTracker {
+
+    private static final long DEFAULT_INTERVAL_MS = 100;
+
+    private final Consumer<OperationProgress> publisher;
+    private final long intervalNanos;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong lastPublish = new AtomicLong(startNanos);
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicLong filesDone = new AtomicLong();
+    private volatile long totalBytes = -1;
+    private volatile long totalFiles = -1;
+    private volatile String currentFile;
+
+    public ProgressTracker(Consumer<OperationProgress> publisher) {
+        this(publisher, DEFAULT_INTERVAL_MS);
+    }
+
+    public ProgressTracker(Consumer<OperationProgress> publisher, long intervalMillis) {
+        this.publisher = publisher;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Tracker che non pubblica nulla (per le chiamate sincrone)
+     */
+    public static ProgressTracker silent() {
+        return new ProgressTracker(progress -> {});
+    }
+
+    public void setTotals(long totalFiles, long totalBytes) {
+        this.totalFiles = totalFiles;
+        this.totalBytes = totalBytes;
+        publishNow();
+    }
+
+    public void fileStarted(Path file) {
+        currentFile = file.getFileName() != null ? file.getFileName().toString() : file.toString();
+        maybePublish();
+    }
+
+    public void addBytes(long bytes) {
+        bytesDone.addAndGet(bytes);
+        maybePublish();
+    }
+
+    public void fileCompleted() {
+        filesDone.incrementAndGet();
+        maybePublish();
+    }
+
+    /**
+     * Stream che conta i byte letti (es. file inviato con un upload FTP)
+     */
+    public InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    addBytes(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] data, int offset, int length) throws IOException {
+                int read = super.read(data, offset, length);
+                if (read > 0) {
+                    addBytes(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Stream che conta i byte scritti (es. dati ricevuti da un download FTP)
+     */
+    public OutputStream count(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                addBytes(1);
+            }
+
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                out.write(data, offset, length);
+                addBytes(length);
+            }
+        };
+    }
+
+    public OperationProgress snapshot() {
+        double elapsed = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return new OperationProgress(bytesDone.get(), totalBytes, filesDone.get(), totalFiles,
+            currentFile, elapsed);
+    }
+
+    /**
+     * Pubblica subito lo stato corrente (es. alla fine dell'operazione)
+     */
+    public void publishNow() {
+        lastPublish.set(System.nanoTime());
+        publisher.accept(snapshot());
+    }
+
+    private void maybePublish() {
+        long now = System.nanoTime();
+        long last = lastPublish.get();
+        // Solo il thread che vince il compareAndSet pubblica in questo intervallo
+        if (now - last >= intervalNanos && lastPublish.compareAndSet(last, now)) {
+            publisher.accept(snapshot());
+        }
+    }
+}
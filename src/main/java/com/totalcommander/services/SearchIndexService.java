@@ -0,0 +1,740 @@
+package com.totalcommander.services;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.totalcommander.models.SearchHit;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Indice persistente per la ricerca file: per ogni cartella radice scelta dall'utente
+ * conserva nomi, dimensioni, date e le parole contenute nei file di testo. L'aggiornamento
+ * rilegge solo i file con dimensione o data cambiate. Un file per radice sotto
+ * ~/.totalcommander/index, più l'elenco delle radici in roots.json
+ */
+public class SearchIndexService {
+
+    private static final String INDEX_DIR = System.getProperty("user.home") + File.separator + ".totalcommander" + File.separator + "index";
+    private static final Path ROOTS_FILE = Paths.get(INDEX_DIR, "roots.json");
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private static final int MAGIC = 0x54434958; // "TCIX"
+    private static final int VERSION = 1;
+
+    static final int MIN_TOKEN_LENGTH = 2;
+    static final int MAX_TOKEN_LENGTH = 64;
+    // File oltre questa dimensione non vengono letti: restano sempre candidati
+    private static final long MAX_INDEXED_SIZE = 32L * 1024 * 1024;
+    // Segnaposto per i file con contenuto non indicizzato (binari, troppo grandi,
+    // parole troppo lunghe): qualunque testo potrebbe esservi contenuto
+    private static final String UNINDEXED = "\u0000";
+    private static final int TOKENIZER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // File letti contemporaneamente durante l'aggiornamento: le parole degli altri non sono ancora in memoria
+    private static final int MAX_FILES_IN_FLIGHT = TOKENIZER_THREADS * 4;
+
+    private static SearchIndexService instance;
+
+    /**
+     * Radice indicizzata, salvata in roots.json
+     */
+    public static class RootInfo {
+        public String root;
+        public String id;
+        public long builtAt;     // 0 se l'indice non è ancora stato costruito
+        public int fileCount;
+
+        public RootInfo() {}
+
+        public Path getRootPath() {
+            return Paths.get(root);
+        }
+    }
+
+    /**
+     * Contenuto immutabile dell'indice di una radice
+     */
+    public static class Snapshot {
+        private final Path root;
+        private final long builtAt;
+        private final String[] paths;    // relativi alla radice, separati da '/'
+        private final long[] sizes;
+        private final long[] mtimes;
+        private final String[] tokens;   // ordinati
+        private final int[][] postings;  // id dei file per parola, crescenti
+        private Map<Integer, int[]> bigrams; // coppie di caratteri -> parole che le contengono, alla prima ricerca
+
+        Snapshot(Path root, long builtAt, String[] paths, long[] sizes, long[] mtimes,
+                 String[] tokens, int[][] postings) {
+            this.root = root;
+            this.builtAt = builtAt;
+            this.paths = paths;
+            this.sizes = sizes;
+            this.mtimes = mtimes;
+            this.tokens = tokens;
+            this.postings = postings;
+        }
+
+        public Path getRoot() { return root; }
+        public long getBuiltAt() { return builtAt; }
+        public int getFileCount() { return paths.length; }
+
+        /**
+         * File sotto searchRoot entro maxDepth, con nome conforme e che possono contenere
+         * tutte le parole indicate (null: nessun filtro sul contenuto)
+         */
+        public void query(Path searchRoot, int maxDepth, Pattern namePattern, List<String> contentTokens,
+                          Consumer<SearchHit> onCandidate) {
+            String prefix = root.relativize(searchRoot).toString().replace(File.separatorChar, '/');
+            if (!prefix.isEmpty()) {
+                prefix += "/";
+            }
+            int[] candidates = contentTokens != null ? candidatesFor(contentTokens) : null;
+            int count = candidates != null ? candidates.length : paths.length;
+            for (int i = 0; i < count; i++) {
+                int id = candidates != null ? candidates[i] : i;
+                String path = paths[id];
+                if (!path.startsWith(prefix) || depth(path, prefix.length()) > maxDepth) {
+                    continue;
+                }
+                String name = path.substring(path.lastIndexOf('/') + 1);
+                if (namePattern != null && !namePattern.matcher(name).matches()) {
+                    continue;
+                }
+                onCandidate.accept(new SearchHit(root.resolve(path), sizes[id], mtimes[id]));
+            }
+        }
+
+        private static int depth(String path, int from) {
+            int depth = 0;
+            for (int i = from; i < path.length(); i++) {
+                if (path.charAt(i) == '/') {
+                    depth++;
+                }
+            }
+            return depth;
+        }
+
+        /**
+         * Intersezione, per ogni parola cercata, dei file con una parola che la contiene
+         * (la ricerca trova anche parti di parola) più i file non indicizzati
+         */
+        private int[] candidatesFor(List<String> contentTokens) {
+            int unindexed = Arrays.binarySearch(tokens, UNINDEXED);
+            int[] always = unindexed >= 0 ? postings[unindexed] : new int[0];
+            int[] result = null;
+            for (String query : contentTokens) {
+                boolean[] matched = new boolean[paths.length];
+                for (int t : tokensContaining(query)) {
+                    for (int id : postings[t]) {
+                        matched[id] = true;
+                    }
+                }
+                for (int id : always) {
+                    matched[id] = true;
+                }
+                if (result == null) {
+                    result = collect(matched, null);
+                } else {
+                    result = collect(matched, result);
+                }
+                if (result.length == 0) {
+                    break;
+                }
+            }
+            return result != null ? result : new int[0];
+        }
+
+        /**
+         * Parole che contengono il testo: si verificano solo quelle che hanno la sua coppia
+         * di caratteri più rara (le parole indicizzate hanno almeno due caratteri)
+         */
+        private int[] tokensContaining(String query) {
+            Map<Integer, int[]> index = bigramIndex();
+            int[] rarest = null;
+            for (int i = 0; i + 1 < query.length(); i++) {
+                int[] candidates = index.get(bigram(query, i));
+                if (candidates == null) {
+                    return new int[0];
+                }
+                if (rarest == null || candidates.length < rarest.length) {
+                    rarest = candidates;
+                }
+            }
+            if (rarest == null) {
+                return new int[0];
+            }
+            int[] result = new int[rarest.length];
+            int count = 0;
+            for (int t : rarest) {
+                if (tokens[t].contains(query)) {
+                    result[count++] = t;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        private synchronized Map<Integer, int[]> bigramIndex() {
+            if (bigrams == null) {
+                Map<Integer, IntList> lists = new HashMap<>();
+                for (int t = 0; t < tokens.length; t++) {
+                    for (int i = 0; i + 1 < tokens[t].length(); i++) {
+                        IntList list = lists.computeIfAbsent(bigram(tokens[t], i), k -> new IntList());
+                        // Le parole arrivano in ordine: una coppia ripetuta nella stessa parola si salta
+                        if (list.size == 0 || list.values[list.size - 1] != t) {
+                            list.add(t);
+                        }
+                    }
+                }
+                bigrams = new HashMap<>(lists.size() * 2);
+                for (Map.Entry<Integer, IntList> entry : lists.entrySet()) {
+                    bigrams.put(entry.getKey(), Arrays.copyOf(entry.getValue().values, entry.getValue().size));
+                }
+            }
+            return bigrams;
+        }
+
+        private static int bigram(String text, int index) {
+            return (text.charAt(index) << 16) | text.charAt(index + 1);
+        }
+
+        private static int[] collect(boolean[] matched, int[] within) {
+            int[] ids = new int[within != null ? within.length : matched.length];
+            int count = 0;
+            if (within != null) {
+                for (int id : within) {
+                    if (matched[id]) {
+                        ids[count++] = id;
+                    }
+                }
+            } else {
+                for (int id = 0; id < matched.length; id++) {
+                    if (matched[id]) {
+                        ids[count++] = id;
+                    }
+                }
+            }
+            return Arrays.copyOf(ids, count);
+        }
+    }
+
+    private final List<RootInfo> roots;
+    private final Map<String, Snapshot> snapshots = new HashMap<>();
+    private final Set<String> updating = new HashSet<>();
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "search-index");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SearchIndexService() {
+        try {
+            Files.createDirectories(Paths.get(INDEX_DIR));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        roots = loadRoots();
+    }
+
+    public static synchronized SearchIndexService getInstance() {
+        if (instance == null) {
+            instance = new SearchIndexService();
+        }
+        return instance;
+    }
+
+    public synchronized List<RootInfo> getRoots() {
+        return new ArrayList<>(roots);
+    }
+
+    /**
+     * Radice indicizzata che contiene il percorso (la più vicina), null se nessuna
+     */
+    public synchronized RootInfo findRoot(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        RootInfo best = null;
+        for (RootInfo info : roots) {
+            if (info.builtAt > 0 && normalized.startsWith(info.getRootPath())
+                && (best == null || info.root.length() > best.root.length())) {
+                best = info;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Indice della radice che contiene il percorso, caricato dal disco al primo uso;
+     * null se il percorso non è indicizzato
+     */
+    public Snapshot getSnapshot(Path path) {
+        RootInfo info = findRoot(path);
+        if (info == null) {
+            return null;
+        }
+        synchronized (this) {
+            Snapshot snapshot = snapshots.get(info.id);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        try {
+            Snapshot snapshot = read(info);
+            synchronized (this) {
+                snapshots.putIfAbsent(info.id, snapshot);
+                return snapshots.get(info.id);
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere l'indice di " + info.root + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized boolean isUpdating(RootInfo info) {
+        return updating.contains(info.id);
+    }
+
+    /**
+     * Aggiunge una radice e ne costruisce l'indice in background
+     */
+    public Future<?> addRoot(Path root, Consumer<String> onComplete) {
+        RootInfo info;
+        synchronized (this) {
+            Path normalized = root.toAbsolutePath().normalize();
+            for (RootInfo existing : roots) {
+                if (existing.getRootPath().equals(normalized)) {
+                    return update(existing, onComplete);
+                }
+            }
+            info = new RootInfo();
+            info.root = normalized.toString();
+            info.id = UUID.randomUUID().toString();
+            roots.add(info);
+            saveRoots();
+        }
+        return update(info, onComplete);
+    }
+
+    public void removeRoot(RootInfo info) {
+        synchronized (this) {
+            roots.removeIf(existing -> existing.id.equals(info.id));
+            snapshots.remove(info.id);
+            saveRoots();
+        }
+        try {
+            Files.deleteIfExists(indexFile(info));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Aggiorna l'indice in background: rilegge solo i file nuovi o con dimensione/data
+     * cambiate; onComplete riceve un messaggio di esito
+     */
+    public Future<?> update(RootInfo info, Consumer<String> onComplete) {
+        synchronized (this) {
+            if (!updating.add(info.id)) {
+                return null;
+            }
+        }
+        return updateExecutor.submit(() -> {
+            String message;
+            try {
+                Snapshot snapshot = build(info);
+                write(info, snapshot);
+                synchronized (this) {
+                    snapshots.put(info.id, snapshot);
+                    info.builtAt = snapshot.getBuiltAt();
+                    info.fileCount = snapshot.getFileCount();
+                    saveRoots();
+                }
+                message = "Indice aggiornato: " + info.root + " (" + info.fileCount + " file)";
+            } catch (Exception e) {
+                e.printStackTrace();
+                message = "Errore nell'aggiornamento dell'indice di " + info.root + ": " + e.getMessage();
+            } finally {
+                synchronized (this) {
+                    updating.remove(info.id);
+                }
+            }
+            if (onComplete != null) {
+                onComplete.accept(message);
+            }
+        });
+    }
+
+    /**
+     * Parole di un testo come le memorizza l'indice: sequenze di lettere e cifre in minuscolo
+     */
+    public static List<String> tokenize(CharSequence text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (String token : tokens) {
+            if (token.length() >= MIN_TOKEN_LENGTH) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    private Snapshot build(RootInfo info) throws IOException, InterruptedException {
+        Path root = info.getRootPath();
+        Snapshot previous = null;
+        if (info.builtAt > 0) {
+            try {
+                previous = read(info);
+            } catch (IOException e) {
+                // Indice illeggibile: viene ricostruito da capo
+            }
+        }
+        Map<String, Integer> previousIds = new HashMap<>();
+        if (previous != null) {
+            for (int i = 0; i < previous.paths.length; i++) {
+                previousIds.put(previous.paths[i], i);
+            }
+        }
+
+        List<String> paths = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<Long> mtimes = new ArrayList<>();
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
+            new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isDirectory()) {
+                        paths.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                        sizes.add(attrs.size());
+                        mtimes.add(attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+        // File invariati: le loro parole vengono riprese dall'indice precedente
+        int[] remap = previous != null ? new int[previous.paths.length] : new int[0];
+        Arrays.fill(remap, -1);
+        List<Integer> changed = new ArrayList<>();
+        for (int id = 0; id < paths.size(); id++) {
+            Integer old = previousIds.get(paths.get(id));
+            if (old != null && previous.sizes[old] == sizes.get(id) && previous.mtimes[old] == mtimes.get(id)) {
+                remap[old] = id;
+            } else {
+                changed.add(id);
+            }
+        }
+        Map<String, IntList> postings = new HashMap<>();
+        if (previous != null) {
+            for (int t = 0; t < previous.tokens.length; t++) {
+                IntList ids = null;
+                for (int old : previous.postings[t]) {
+                    if (remap[old] >= 0) {
+                        if (ids == null) {
+                            ids = postings.computeIfAbsent(previous.tokens[t], k -> new IntList());
+                        }
+                        ids.add(remap[old]);
+                    }
+                }
+            }
+        }
+
+        // File nuovi o modificati: lettura in parallelo di al più MAX_FILES_IN_FLIGHT file,
+        // unione in ordine
+        ExecutorService pool = Executors.newFixedThreadPool(TOKENIZER_THREADS, r -> {
+            Thread t = new Thread(r, "search-index-reader");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            ArrayDeque<Future<Set<String>>> inFlight = new ArrayDeque<>();
+            int merged = 0;
+            for (int id : changed) {
+                Path file = root.resolve(paths.get(id));
+                long size = sizes.get(id);
+                inFlight.add(pool.submit(() -> tokenizeFile(file, size)));
+                if (inFlight.size() >= MAX_FILES_IN_FLIGHT) {
+                    mergeTokens(inFlight.poll(), changed.get(merged++), postings);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                mergeTokens(inFlight.poll(), changed.get(merged++), postings);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        String[] tokens = postings.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        int[][] lists = new int[tokens.length][];
+        for (int t = 0; t < tokens.length; t++) {
+            lists[t] = postings.get(tokens[t]).toSortedArray();
+        }
+        long[] sizeArray = new long[paths.size()];
+        long[] mtimeArray = new long[paths.size()];
+        for (int i = 0; i < sizeArray.length; i++) {
+            sizeArray[i] = sizes.get(i);
+            mtimeArray[i] = mtimes.get(i);
+        }
+        return new Snapshot(root, System.currentTimeMillis(), paths.toArray(new String[0]),
+            sizeArray, mtimeArray, tokens, lists);
+    }
+
+    private static void mergeTokens(Future<Set<String>> result, int id, Map<String, IntList> postings)
+            throws InterruptedException {
+        Set<String> fileTokens;
+        try {
+            fileTokens = result.get();
+        } catch (java.util.concurrent.ExecutionException e) {
+            fileTokens = Set.of(UNINDEXED);
+        }
+        for (String token : fileTokens) {
+            postings.computeIfAbsent(token, k -> new IntList()).add(id);
+        }
+    }
+
+    /**
+     * Parole di un file di testo; i file binari non ne hanno (la ricerca di testo li esclude),
+     * quelli non leggibili come testo restano sempre candidati. Il testo viene decodificato
+     * con la codifica rilevata da ContentSniffer
+     */
+    private static Set<String> tokenizeFile(Path file, long size) {
+        Set<String> tokens = new HashSet<>();
+        String name = file.getFileName().toString();
+        // I documenti Office si cercano nel testo estratto o nei byte compressi a seconda
+        // delle opzioni: restano sempre candidati
+        if (size > MAX_INDEXED_SIZE || OfficeTextExtractor.isOfficeDocument(name)) {
+            tokens.add(UNINDEXED);
+            return tokens;
+        }
+        ContentSniffer.Verdict verdict;
+        try {
+            verdict = ContentSniffer.getInstance().sniff(file);
+            if (verdict.isBinary()) {
+                return tokens;
+            }
+        } catch (IOException e) {
+            tokens.add(UNINDEXED);
+            return tokens;
+        }
+        try (InputStream in = Files.newInputStream(file);
+             Reader reader = new InputStreamReader(in, verdict.getCharset())) {
+            in.skipNBytes(verdict.getBomLength());
+            char[] buffer = new char[64 * 1024];
+            StringBuilder current = new StringBuilder();
+            boolean tooLong = false;
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (Character.isLetterOrDigit(c)) {
+                        if (current.length() < MAX_TOKEN_LENGTH) {
+                            current.append(Character.toLowerCase(c));
+                        } else {
+                            tooLong = true;
+                        }
+                    } else {
+                        addToken(tokens, current, tooLong);
+                        tooLong = false;
+                    }
+                }
+            }
+            addToken(tokens, current, tooLong);
+        } catch (IOException e) {
+            tokens.add(UNINDEXED);
+        }
+        return tokens;
+    }
+
+    private static void addToken(Set<String> tokens, StringBuilder current, boolean tooLong) {
+        if (tooLong) {
+            // Parola troncata: una sua parte successiva non sarebbe trovata
+            tokens.add(UNINDEXED);
+        } else if (current.length() >= MIN_TOKEN_LENGTH) {
+            tokens.add(current.toString());
+        }
+        current.setLength(0);
+    }
+
+    private Path indexFile(RootInfo info) {
+        return Paths.get(INDEX_DIR, info.id + ".idx");
+    }
+
+    private void write(RootInfo info, Snapshot snapshot) throws IOException {
+        Path target = indexFile(info);
+        Path temp = Paths.get(target + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshot.builtAt);
+            out.writeInt(snapshot.paths.length);
+            for (int i = 0; i < snapshot.paths.length; i++) {
+                out.writeUTF(snapshot.paths[i]);
+                out.writeLong(snapshot.sizes[i]);
+                out.writeLong(snapshot.mtimes[i]);
+            }
+            out.writeInt(snapshot.tokens.length);
+            for (int t = 0; t < snapshot.tokens.length; t++) {
+                out.writeUTF(snapshot.tokens[t]);
+                int[] ids = snapshot.postings[t];
+                writeVarInt(out, ids.length);
+                int previous = 0;
+                for (int id : ids) {
+                    // Differenze tra id consecutivi: quasi sempre un byte
+                    writeVarInt(out, id - previous);
+                    previous = id;
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Snapshot read(RootInfo info) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile(info)), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Formato dell'indice non riconosciuto");
+            }
+            long builtAt = in.readLong();
+            int fileCount = in.readInt();
+            String[] paths = new String[fileCount];
+            long[] sizes = new long[fileCount];
+            long[] mtimes = new long[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                paths[i] = in.readUTF();
+                sizes[i] = in.readLong();
+                mtimes[i] = in.readLong();
+            }
+            int tokenCount = in.readInt();
+            String[] tokens = new String[tokenCount];
+            int[][] postings = new int[tokenCount][];
+            for (int t = 0; t < tokenCount; t++) {
+                tokens[t] = in.readUTF();
+                int[] ids = new int[readVarInt(in)];
+                int previous = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    previous += readVarInt(in);
+                    ids[i] = previous;
+                }
+                postings[t] = ids;
+            }
+            return new Snapshot(info.getRootPath(), builtAt, paths, sizes, mtimes, tokens, postings);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private List<RootInfo> loadRoots() {
+        if (!Files.exists(ROOTS_FILE)) {
+            return new ArrayList<>();
+        }
+        try (Reader reader = Files.newBufferedReader(ROOTS_FILE, StandardCharsets.UTF_8)) {
+            List<RootInfo> loaded = gson.fromJson(reader, new TypeToken<List<RootInfo>>(){}.getType());
+            return loaded != null ? loaded : new ArrayList<>();
+        } catch (IOException | JsonSyntaxException e) {
+            System.err.println("Errore nel caricamento delle radici indicizzate: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private void saveRoots() {
+        Path temp = Paths.get(ROOTS_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            gson.toJson(roots, writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(temp, ROOTS_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Lista di interi senza boxing per le liste di file per parola
+     */
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toSortedArray() {
+            int[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
@@ -61,6 +61,26 @@ public class SettingsService {
         
         // Impostazioni FTP
         public String ftpTransmissionMode = "Binaria (archivi, doc ecc.)";
+        public int ftpParallelTransfers = 4; // Trasferimenti contemporanei, ognuno con la propria sessione
+        public int ftpIdleSessionSeconds = 60; // Le sessioni inutilizzate oltre questo tempo vengono chiuse
+        public int ftpBufferSizeKB = 256; // Buffer per i dati dei trasferimenti FTP
+        public int ftpRetryAttempts = 3; // Nuovi tentativi dopo un errore, ripresi dal punto raggiunto
+        public int ftpRetryDelaySeconds = 2; // Attesa prima del primo nuovo tentativo, poi raddoppia
+        
+        // Impostazioni operazioni file
+        public int copyThreadsPerVolume = 4; // Copie concorrenti per volume di destinazione
+        public int largeFileThresholdMB = 64; // Oltre questa dimensione la copia avviene a segmenti
+        public int deleteThreads = 8; // Eliminazioni concorrenti
+        public boolean verifyMoves = true; // Verifica i checksum prima di eliminare le origini tra volumi diversi
+        public boolean verifyCopies = false; // Verifica ogni copia (locale e FTP) con un checksum
+        public String verifyAlgorithm = "CRC32C"; // "CRC32C" oppure "SHA-256"
+        
+        // Impostazioni cache cartelle
+        public int directoryCacheEntries = 200000; // Elementi totali conservati per le cartelle visitate
+        
+        // Impostazioni ricerca
+        public boolean useSearchIndex = true; // Cerca nell'indice quando la cartella è indicizzata
+        public int searchIndexRefreshMinutes = 60; // Indice più vecchio: aggiornato in background dopo l'uso
         
         // Altre impostazioni future possono essere aggiunte qui
         
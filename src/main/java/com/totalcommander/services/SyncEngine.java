@@ -0,0 +1,486 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.FtpConnection;
+import com.totalcommander.models.OperationResult;
+import com.totalcommander.models.SyncAction;
+import org.apache.commons.net.ftp.FTPFile;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Motore di sincronizzazione tra due cartelle (locali o FTP): confronta i due alberi
+ * una cartella alla volta, così in memoria restano solo le cartelle in corso di confronto,
+ * ed emette le sole operazioni necessarie ad allineare la destinazione all'origine
+ */
+public class SyncEngine {
+
+    // Tolleranza sulle date: FAT ha una risoluzione di 2 secondi, i LIST FTP spesso del minuto
+    private static final long LOCAL_TIME_TOLERANCE_MS = 2000;
+    private static final long REMOTE_TIME_TOLERANCE_MS = 60000;
+
+    /**
+     * Elemento di una cartella durante il confronto
+     */
+    public static class Entry {
+        final String name;
+        final long size;
+        final long lastModified;
+        final boolean directory;
+
+        Entry(String name, long size, long lastModified, boolean directory) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * Uno dei due lati della sincronizzazione
+     */
+    public interface Side {
+        String describe();
+
+        boolean isRemote();
+
+        /**
+         * Elementi della cartella ordinati per nome; vuota se la cartella non esiste
+         */
+        List<Entry> list(String relativeDir) throws IOException;
+
+        void createDirectory(String relativePath) throws IOException;
+
+        void delete(String relativePath, boolean directory) throws IOException;
+
+        /**
+         * Lato pronto per un solo confronto o applicazione, su un solo thread; da chiudere con close
+         */
+        default Side open() throws IOException {
+            return this;
+        }
+
+        default void close() {
+        }
+    }
+
+    /**
+     * Cartella sul file system locale
+     */
+    public static class LocalSide implements Side {
+        private final Path root;
+
+        public LocalSide(Path root) {
+            this.root = root;
+        }
+
+        public Path resolve(String relativePath) {
+            return relativePath.isEmpty() ? root : root.resolve(relativePath);
+        }
+
+        @Override
+        public String describe() {
+            return root.toString();
+        }
+
+        @Override
+        public boolean isRemote() {
+            return false;
+        }
+
+        @Override
+        public List<Entry> list(String relativeDir) throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(resolve(relativeDir))) {
+                for (Path path : stream) {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                    entries.add(new Entry(path.getFileName().toString(), attrs.size(),
+                        attrs.lastModifiedTime().toMillis(), attrs.isDirectory()));
+                }
+            } catch (NoSuchFileException e) {
+                // Cartella assente nella destinazione: tutto il contenuto dell'origine è nuovo
+            }
+            entries.sort(Comparator.comparing(entry -> entry.name));
+            return entries;
+        }
+
+        @Override
+        public void createDirectory(String relativePath) throws IOException {
+            Files.createDirectories(resolve(relativePath));
+        }
+
+        @Override
+        public void delete(String relativePath, boolean directory) throws IOException {
+            Path path = resolve(relativePath);
+            if (!directory) {
+                Files.deleteIfExists(path);
+                return;
+            }
+            OperationResult result = new DeleteEngine().delete(List.of(path.toFile()));
+            if (!result.getFailures().isEmpty()) {
+                OperationResult.FileResult failure = result.getFailures().get(0);
+                throw new IOException(failure.getSource() + ": " + failure.getErrorMessage());
+            }
+        }
+    }
+
+    /**
+     * Cartella su un server FTP. Non usa la sessione del pannello, che intanto continua ad
+     * aggiornarsi: open prende dal pool una sessione riservata, restituita da close
+     */
+    public static class FtpSide implements Side {
+        private final FtpConnection connection;
+        private final String root;
+        private final FtpService ftpService; // null finché il lato non viene aperto
+
+        public FtpSide(FtpConnection connection, String root) {
+            this(connection, root, null);
+        }
+
+        private FtpSide(FtpConnection connection, String root, FtpService ftpService) {
+            this.connection = connection;
+            this.root = root == null || root.isEmpty() ? "/" : root;
+            this.ftpService = ftpService;
+        }
+
+        @Override
+        public Side open() throws IOException {
+            return new FtpSide(connection, root, FtpSessionPool.getInstance().borrow(connection));
+        }
+
+        @Override
+        public void close() {
+            if (ftpService != null) {
+                FtpSessionPool.getInstance().release(connection, ftpService);
+            }
+        }
+
+        public FtpService getFtpService() {
+            return ftpService;
+        }
+
+        public String resolve(String relativePath) {
+            if (relativePath.isEmpty()) {
+                return root;
+            }
+            return root.endsWith("/") ? root + relativePath : root + "/" + relativePath;
+        }
+
+        @Override
+        public String describe() {
+            return "ftp://" + connection.getHost() + root;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return true;
+        }
+
+        @Override
+        public List<Entry> list(String relativeDir) throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            FTPFile[] files = ftpService.listFiles(resolve(relativeDir));
+            if (files != null) {
+                for (FTPFile file : files) {
+                    if (file == null || file.getName().equals(".") || file.getName().equals("..")) {
+                        continue;
+                    }
+                    long modified = file.getTimestamp() != null ? file.getTimestamp().getTimeInMillis() : 0;
+                    entries.add(new Entry(file.getName(), file.getSize(), modified, file.isDirectory()));
+                }
+            }
+            entries.sort(Comparator.comparing(entry -> entry.name));
+            return entries;
+        }
+
+        @Override
+        public void createDirectory(String relativePath) throws IOException {
+            if (!ftpService.createDirectory(resolve(relativePath))) {
+                throw new IOException("Impossibile creare la cartella remota: " + ftpService.getReplyString());
+            }
+        }
+
+        @Override
+        public void delete(String relativePath, boolean directory) throws IOException {
+            if (directory) {
+                for (Entry child : list(relativePath)) {
+                    delete(relativePath + "/" + child.name, child.directory);
+                }
+                if (!ftpService.removeDirectory(resolve(relativePath))) {
+                    throw new IOException("Impossibile eliminare la cartella remota: " + ftpService.getReplyString());
+                }
+            } else if (!ftpService.deleteFile(resolve(relativePath))) {
+                throw new IOException("Impossibile eliminare il file remoto: " + ftpService.getReplyString());
+            }
+        }
+    }
+
+    private final Side sourceSide;
+    private final Side targetSide;
+    private Side source;  // lati aperti durante compare o apply
+    private Side target;
+    private boolean deleteExtra = false;
+    private boolean compareContent = false;
+    private OperationControl control = new OperationControl();
+
+    public SyncEngine(Side source, Side target) {
+        if (source.isRemote() && target.isRemote()) {
+            throw new IllegalArgumentException("Sincronizzazione tra due server FTP non supportata");
+        }
+        this.sourceSide = source;
+        this.targetSide = target;
+    }
+
+    /**
+     * Modalità mirror: elimina dalla destinazione ciò che non esiste nell'origine
+     */
+    public void setDeleteExtra(boolean deleteExtra) {
+        this.deleteExtra = deleteExtra;
+    }
+
+    /**
+     * A parità di dimensione confronta il contenuto con un checksum invece della data
+     * (solo se entrambi i lati sono locali)
+     */
+    public void setCompareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+    }
+
+    public void setControl(OperationControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Confronta i due alberi ed emette le differenze in pre-ordine (ogni cartella prima del suo contenuto)
+     */
+    public void compare(Consumer<SyncAction> consumer) throws IOException {
+        openSides();
+        try {
+            compareDirectory("", true, consumer);
+        } finally {
+            closeSides();
+        }
+    }
+
+    private void openSides() throws IOException {
+        source = sourceSide.open();
+        try {
+            target = targetSide.open();
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    private void closeSides() {
+        source.close();
+        target.close();
+    }
+
+    private void compareDirectory(String relativeDir, boolean targetExists,
+                                  Consumer<SyncAction> consumer) throws IOException {
+        if (!control.checkpoint()) {
+            return;
+        }
+        List<Entry> sourceEntries = source.list(relativeDir);
+        List<Entry> targetEntries = targetExists ? target.list(relativeDir) : new ArrayList<>();
+
+        // Merge delle due liste ordinate per nome
+        int i = 0;
+        int j = 0;
+        while (i < sourceEntries.size() || j < targetEntries.size()) {
+            Entry left = i < sourceEntries.size() ? sourceEntries.get(i) : null;
+            Entry right = j < targetEntries.size() ? targetEntries.get(j) : null;
+            int order = left == null ? 1 : right == null ? -1 : left.name.compareTo(right.name);
+
+            if (order < 0) {
+                emitNew(child(relativeDir, left.name), left, consumer);
+                i++;
+            } else if (order > 0) {
+                if (deleteExtra) {
+                    consumer.accept(new SyncAction(SyncAction.Type.DELETE, child(relativeDir, right.name),
+                        right.size, right.lastModified, right.directory, "Solo nella destinazione"));
+                }
+                j++;
+            } else {
+                String path = child(relativeDir, left.name);
+                if (left.directory != right.directory) {
+                    consumer.accept(new SyncAction(SyncAction.Type.DELETE, path, right.size, right.lastModified,
+                        right.directory, "Tipo diverso"));
+                    emitNew(path, left, consumer);
+                } else if (left.directory) {
+                    compareDirectory(path, true, consumer);
+                } else if (differs(path, left, right)) {
+                    consumer.accept(new SyncAction(SyncAction.Type.COPY, path, left.size, left.lastModified,
+                        false, "Modificato"));
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private void emitNew(String path, Entry entry, Consumer<SyncAction> consumer) throws IOException {
+        if (entry.directory) {
+            consumer.accept(new SyncAction(SyncAction.Type.CREATE_DIRECTORY, path, 0, entry.lastModified,
+                true, "Nuova cartella"));
+            compareDirectory(path, false, consumer);
+        } else {
+            consumer.accept(new SyncAction(SyncAction.Type.COPY, path, entry.size, entry.lastModified,
+                false, "Nuovo"));
+        }
+    }
+
+    private boolean differs(String path, Entry left, Entry right) throws IOException {
+        if (left.size != right.size) {
+            return true;
+        }
+        if (compareContent && !source.isRemote() && !target.isRemote()) {
+            return !FileVerifier.hash(((LocalSide) source).resolve(path), FileVerifier.CRC32C)
+                .equals(FileVerifier.hash(((LocalSide) target).resolve(path), FileVerifier.CRC32C));
+        }
+        long tolerance = source.isRemote() || target.isRemote() ? REMOTE_TIME_TOLERANCE_MS : LOCAL_TIME_TOLERANCE_MS;
+        return Math.abs(left.lastModified - right.lastModified) > tolerance;
+    }
+
+    private static String child(String relativeDir, String name) {
+        return relativeDir.isEmpty() ? name : relativeDir + "/" + name;
+    }
+
+    /**
+     * Applica le differenze ripetendo il confronto, così le azioni non vengono mai tenute
+     * tutte in memoria: eliminazioni e cartelle nell'ordine del confronto, le copie in
+     * parallelo tra cartelle locali. Con un lato FTP tutto avviene in sequenza sulla sessione
+     * presa dal pool, che non può servire un elenco e un trasferimento insieme.
+     * I totali stimati (dal confronto dell'anteprima) servono solo all'avanzamento
+     */
+    public OperationResult apply(long expectedActions, long expectedBytes, OperationControl control,
+                                 ProgressTracker tracker) {
+        OperationResult result = new OperationResult();
+        this.control = control;
+        tracker.setTotals(expectedActions, expectedBytes);
+        try {
+            openSides();
+        } catch (IOException e) {
+            result.addFailure(Path.of(""), null, e.getMessage());
+            result.finish();
+            return result;
+        }
+        try {
+            applyActions(control, tracker, result);
+        } finally {
+            closeSides();
+        }
+        return result;
+    }
+
+    private void applyActions(OperationControl control, ProgressTracker tracker, OperationResult result) {
+        boolean remote = source.isRemote() || target.isRemote();
+        int threads = remote ? 1 : Math.max(1, SettingsService.getInstance().getSettings().copyThreadsPerVolume);
+        // Coda limitata: quando è piena la copia la esegue il thread del confronto, che così rallenta
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * 4), r -> {
+                Thread t = new Thread(r, "sync-worker");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            compareDirectory("", true, action -> {
+                if (action.getType() != SyncAction.Type.COPY) {
+                    applyTargetAction(action, tracker, result);
+                } else if (remote) {
+                    copyAction(action, control, tracker, result);
+                } else {
+                    pool.execute(() -> copyAction(action, control, tracker, result));
+                }
+            });
+        } catch (IOException e) {
+            result.addFailure(Path.of(""), null, e.getMessage());
+        } finally {
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (control.isCancelled()) {
+            result.markCancelled();
+        }
+        result.finish();
+        tracker.publishNow();
+    }
+
+    private void applyTargetAction(SyncAction action, ProgressTracker tracker, OperationResult result) {
+        tracker.fileStarted(Path.of(action.getRelativePath()));
+        try {
+            if (action.getType() == SyncAction.Type.DELETE) {
+                target.delete(action.getRelativePath(), action.isDirectory());
+            } else {
+                target.createDirectory(action.getRelativePath());
+            }
+            result.addSuccess(Path.of(action.getRelativePath()), null, 0);
+        } catch (IOException e) {
+            result.addFailure(Path.of(action.getRelativePath()), null, e.getMessage());
+        }
+        tracker.fileCompleted();
+    }
+
+    private void copyAction(SyncAction action, OperationControl control, ProgressTracker tracker,
+                            OperationResult result) {
+        if (!control.checkpoint()) {
+            return;
+        }
+        tracker.fileStarted(Path.of(action.getRelativePath()));
+        try {
+            copy(action);
+            tracker.addBytes(action.getSize());
+            result.addSuccess(Path.of(action.getRelativePath()), null, action.getSize());
+        } catch (IOException e) {
+            result.addFailure(Path.of(action.getRelativePath()), null, e.getMessage());
+        }
+        tracker.fileCompleted();
+    }
+
+    /**
+     * Copia un file mantenendo la data di modifica, così la sincronizzazione successiva lo trova allineato
+     */
+    private void copy(SyncAction action) throws IOException {
+        String path = action.getRelativePath();
+        if (source instanceof LocalSide && target instanceof LocalSide) {
+            Files.copy(((LocalSide) source).resolve(path), ((LocalSide) target).resolve(path),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        } else if (source instanceof LocalSide) {
+            FtpSide ftp = (FtpSide) target;
+            String remotePath = ftp.resolve(path);
+            if (!ftp.getFtpService().uploadFile(((LocalSide) source).resolve(path), remotePath)) {
+                throw new IOException("Upload fallito: " + ftp.getFtpService().getReplyString());
+            }
+            ftp.getFtpService().setModificationTime(remotePath, action.getLastModified());
+        } else {
+            FtpSide ftp = (FtpSide) source;
+            Path localPath = ((LocalSide) target).resolve(path);
+            if (!ftp.getFtpService().downloadFile(ftp.resolve(path), localPath)) {
+                throw new IOException("Download fallito: " + ftp.getFtpService().getReplyString());
+            }
+            if (action.getLastModified() > 0) {
+                Files.setLastModifiedTime(localPath, FileTime.fromMillis(action.getLastModified()));
+            }
+        }
+    }
+}
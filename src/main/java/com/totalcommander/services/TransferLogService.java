@@ -2,33 +2,71 @@ package com.totalcommander.services;
 
 import com.totalcommander.models.TransferTask;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.MalformedJsonException;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
- * Servizio per salvare e caricare log dei trasferimenti
+ * Servizio per salvare e caricare log dei trasferimenti. Il log è un file in sola aggiunta
+ * (una riga JSON per voce) scritto da un thread dedicato: chi registra un trasferimento
+ * accoda la voce e prosegue, il thread scrive a blocchi tutte quelle accumulate nel
+ * frattempo e le rende persistenti con una sola sincronizzazione. L'ultima voce di ogni
+ * coppia origine/destinazione resta in memoria per le ricerche; il file viene compattato
+ * periodicamente, eliminando le voci superate e quelle completate da più di 24 ore
  */
 public class TransferLogService {
-    
+
     private static final String LOG_DIR = System.getProperty("user.home") + File.separator + ".totalcommander" + File.separator + "transfers";
-    private static final String LOG_FILE = LOG_DIR + File.separator + "transfer_log.json";
-    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    
+    private static final Path LOG_FILE = Paths.get(LOG_DIR, "transfer_log.jsonl");
+    // Log delle versioni precedenti (un unico array JSON), importato al primo avvio
+    private static final Path LEGACY_LOG_FILE = Paths.get(LOG_DIR, "transfer_log.json");
+    private static final long RETENTION_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long COMPACT_INTERVAL_MILLIS = 60 * 60 * 1000L;
+    private static final int MIN_ENTRIES_TO_COMPACT = 1000;
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+    private static final Gson gson = new Gson();
+
+    // Ultima voce per origine/destinazione
+    private static final Map<String, TransferLogEntry> latest = new ConcurrentHashMap<>();
+    private static final BlockingQueue<TransferLogEntry> pending = new LinkedBlockingQueue<>();
+    private static final Object writeLock = new Object();
+    private static long queuedCount;   // voci accodate, protetto da writeLock
+    private static long writtenCount;  // voci scritte su disco, protetto da writeLock
+    private static long fileEntries;   // righe nel file, usato solo dal thread di scrittura
+    private static long lastCompaction;
+    private static OutputStream out;
+    private static FileChannel channel;
+
     static {
         try {
             Files.createDirectories(Paths.get(LOG_DIR));
+            load();
+            importLegacyLog();
         } catch (IOException e) {
             e.printStackTrace();
         }
+        Thread writer = new Thread(TransferLogService::runWriter, "transfer-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        // Le voci ancora in coda vengono scritte prima dell'uscita
+        Runtime.getRuntime().addShutdownHook(new Thread(TransferLogService::flush, "transfer-log-flush"));
     }
-    
+
     public static class TransferLogEntry {
         public String sourcePath;
         public String destinationPath;
@@ -41,9 +79,11 @@ public class TransferLogService {
         public boolean failed;
         public String errorMessage;
         public long timestamp;
-        
+        public String server;      // Server FTP (host:porta@utente) per riprendere dopo un riavvio
+        public boolean directory;
+
         public TransferLogEntry() {}
-        
+
         public TransferLogEntry(TransferTask task) {
             this.sourcePath = task.getSourcePath();
             this.destinationPath = task.getDestinationPath();
@@ -56,113 +96,288 @@ public class TransferLogService {
             this.failed = task.isFailed();
             this.errorMessage = task.getErrorMessage();
             this.timestamp = System.currentTimeMillis();
+            this.server = task.getServer();
+            this.directory = task.isDirectory();
         }
     }
-    
+
+    /**
+     * Registra lo stato del trasferimento; la scrittura su disco avviene in background
+     */
     public static void saveTransfer(TransferTask task) {
-        synchronized (TransferLogService.class) {
+        record(new TransferLogEntry(task));
+    }
+
+    /**
+     * Registra lo stato con i byte effettivamente scritti a destinazione, che il task
+     * aggiorna solo in seguito sul thread JavaFX: da qui riparte la ripresa
+     */
+    public static void saveTransfer(TransferTask task, long bytesTransferred) {
+        TransferLogEntry entry = new TransferLogEntry(task);
+        entry.bytesTransferred = bytesTransferred;
+        record(entry);
+    }
+
+    private static void record(TransferLogEntry entry) {
+        synchronized (writeLock) {
+            latest.put(key(entry.sourcePath, entry.destinationPath), entry);
+            pending.add(entry);
+            queuedCount++;
+        }
+    }
+
+    /**
+     * Attende che le voci registrate finora siano state scritte su disco
+     */
+    public static void flush() {
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        synchronized (writeLock) {
+            long target = queuedCount;
+            while (writtenCount < target) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    System.err.println("Log dei trasferimenti: " + (target - writtenCount) + " voci non ancora scritte");
+                    return;
+                }
+                try {
+                    writeLock.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tutte le voci del log, dalla più vecchia
+     */
+    public static List<TransferLogEntry> loadAllTransfers() {
+        flush();
+        List<TransferLogEntry> logs = new ArrayList<>();
+        readLog(logs::add);
+        return logs;
+    }
+
+    public static TransferLogEntry findIncompleteTransfer(String sourcePath, String destinationPath) {
+        TransferLogEntry log = latest.get(key(sourcePath, destinationPath));
+        return log != null && !log.completed && !log.failed ? log : null;
+    }
+
+    /**
+     * Ultimo tentativo registrato per la coppia origine/destinazione, se non completato
+     * (interrotto o fallito): il file parziale può essere ripreso
+     */
+    public static TransferLogEntry findUnfinishedTransfer(String sourcePath, String destinationPath) {
+        TransferLogEntry log = latest.get(key(sourcePath, destinationPath));
+        return log != null && !log.completed ? log : null;
+    }
+
+    private static String key(String sourcePath, String destinationPath) {
+        return sourcePath + '\u0000' + destinationPath;
+    }
+
+    /**
+     * Thread di scrittura: prende tutte le voci in attesa e le scrive insieme, con una
+     * sola sincronizzazione su disco per blocco
+     */
+    private static void runWriter() {
+        List<TransferLogEntry> batch = new ArrayList<>();
+        StringBuilder lines = new StringBuilder(64 * 1024);
+        while (true) {
             try {
-                List<TransferLogEntry> logs = loadAllTransfers();
-                
-                // Rimuovi entry vecchie (più di 24 ore)
-                long dayAgo = System.currentTimeMillis() - (24 * 60 * 60 * 1000);
-                logs.removeIf(log -> log.timestamp < dayAgo && log.completed);
-                
-                // Aggiungi o aggiorna entry corrente
-                TransferLogEntry entry = new TransferLogEntry(task);
-                logs.removeIf(log -> log.sourcePath.equals(entry.sourcePath) && 
-                                  log.destinationPath.equals(entry.destinationPath) &&
-                                  !log.completed && !log.failed);
-                logs.add(entry);
-                
-                // Salva in un file temporaneo prima di sostituire quello originale
-                String tempFile = LOG_FILE + ".tmp";
-                try (Writer writer = new FileWriter(tempFile)) {
-                    gson.toJson(logs, writer);
-                    writer.flush();
+                batch.add(pending.take());
+                pending.drainTo(batch);
+                lines.setLength(0);
+                for (TransferLogEntry entry : batch) {
+                    gson.toJson(entry, TransferLogEntry.class, lines);
+                    lines.append('\n');
                 }
-                
-                // Sostituisci il file originale solo se la scrittura è riuscita
-                File temp = new File(tempFile);
-                File original = new File(LOG_FILE);
-                if (temp.exists() && temp.length() > 0) {
-                    if (original.exists()) {
-                        original.delete();
+                try {
+                    if (out == null) {
+                        openLog();
                     }
-                    temp.renameTo(original);
+                    out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    channel.force(false);
+                    fileEntries += batch.size();
+                } catch (IOException e) {
+                    System.err.println("Errore durante il salvataggio del log di trasferimento: " + e.getMessage());
+                    closeLog();
                 }
-            } catch (IOException e) {
-                System.err.println("Errore durante il salvataggio del log di trasferimento: " + e.getMessage());
-                e.printStackTrace();
+                synchronized (writeLock) {
+                    writtenCount += batch.size();
+                    writeLock.notifyAll();
+                }
+                batch.clear();
+                if (fileEntries > 2L * latest.size() + MIN_ENTRIES_TO_COMPACT
+                    || System.currentTimeMillis() - lastCompaction > COMPACT_INTERVAL_MILLIS) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                return;
             } catch (Exception e) {
                 System.err.println("Errore imprevisto durante il salvataggio del log: " + e.getMessage());
                 e.printStackTrace();
+                batch.clear();
             }
         }
     }
-    
-    public static List<TransferLogEntry> loadAllTransfers() {
-        synchronized (TransferLogService.class) {
-            File file = new File(LOG_FILE);
-            if (!file.exists() || file.length() == 0) {
-                return new ArrayList<>();
+
+    private static void openLog() throws IOException {
+        boolean torn = Files.exists(LOG_FILE) && !endsWithNewline();
+        channel = FileChannel.open(LOG_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+        if (torn) {
+            // Chiude la riga interrotta da un'uscita improvvisa, che altrimenti si fonderebbe con la prossima
+            out.write('\n');
+        }
+    }
+
+    private static boolean endsWithNewline() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(LOG_FILE.toFile(), "r")) {
+            if (file.length() == 0) {
+                return true;
             }
-            
-            // Prova prima con il parser normale
-            try (FileReader fileReader = new FileReader(file);
-                 JsonReader jsonReader = new JsonReader(fileReader)) {
-                
-                jsonReader.setLenient(false);
-                
-                List<TransferLogEntry> logs = gson.fromJson(jsonReader, 
-                    new com.google.gson.reflect.TypeToken<List<TransferLogEntry>>(){}.getType());
-                return logs != null ? logs : new ArrayList<>();
-                
-            } catch (MalformedJsonException | JsonSyntaxException e) {
-                // Se il JSON è malformato, prova con lenient mode
-                System.err.println("JSON malformato rilevato, tentativo di recupero con lenient mode: " + e.getMessage());
-                try (FileReader fileReader = new FileReader(file);
-                     JsonReader jsonReader = new JsonReader(fileReader)) {
-                    
-                    jsonReader.setLenient(true);
-                    
-                    List<TransferLogEntry> logs = gson.fromJson(jsonReader, 
-                        new com.google.gson.reflect.TypeToken<List<TransferLogEntry>>(){}.getType());
-                    return logs != null ? logs : new ArrayList<>();
-                    
-                } catch (Exception e2) {
-                    // Se anche con lenient mode fallisce, crea un backup e ricomincia
-                    System.err.println("Impossibile recuperare il file JSON corrotto, creazione backup e reset: " + e2.getMessage());
-                    try {
-                        String backupFile = LOG_FILE + ".backup." + System.currentTimeMillis();
-                        Files.copy(file.toPath(), Paths.get(backupFile));
-                        file.delete();
-                    } catch (IOException backupEx) {
-                        System.err.println("Errore durante la creazione del backup: " + backupEx.getMessage());
+            file.seek(file.length() - 1);
+            return file.read() == '\n';
+        }
+    }
+
+    private static void closeLog() {
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException e) {
+            // Il file viene riaperto alla prossima scrittura
+        }
+        out = null;
+        channel = null;
+    }
+
+    /**
+     * Riscrive il log con l'ultima voce di ogni trasferimento, tralasciando quelle
+     * completate da più di 24 ore. Le voci registrate durante la compattazione vengono
+     * accodate al nuovo file dal blocco successivo
+     */
+    private static void compact() {
+        lastCompaction = System.currentTimeMillis();
+        long dayAgo = lastCompaction - RETENTION_MILLIS;
+        latest.values().removeIf(log -> log.timestamp < dayAgo && log.completed);
+        List<TransferLogEntry> entries = new ArrayList<>(latest.values());
+        entries.sort(Comparator.comparingLong(log -> log.timestamp));
+
+        Path temp = LOG_FILE.resolveSibling(LOG_FILE.getFileName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                 Files.newOutputStream(temp), StandardCharsets.UTF_8), 64 * 1024)) {
+            for (TransferLogEntry entry : entries) {
+                gson.toJson(entry, TransferLogEntry.class, writer);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            System.err.println("Errore durante la compattazione del log di trasferimento: " + e.getMessage());
+            return;
+        }
+        closeLog();
+        try {
+            Files.move(temp, LOG_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileEntries = entries.size();
+        } catch (IOException e) {
+            System.err.println("Errore durante la compattazione del log di trasferimento: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Legge il log all'avvio e ne ricava l'indice; un'ultima riga interrotta viene ignorata
+     */
+    private static void load() {
+        readLog(entry -> {
+            latest.put(key(entry.sourcePath, entry.destinationPath), entry);
+            fileEntries++;
+        });
+    }
+
+    private static void readLog(java.util.function.Consumer<TransferLogEntry> action) {
+        if (!Files.exists(LOG_FILE)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(LOG_FILE, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    TransferLogEntry entry = gson.fromJson(line, TransferLogEntry.class);
+                    if (entry != null && entry.sourcePath != null && entry.destinationPath != null) {
+                        action.accept(entry);
                     }
-                    return new ArrayList<>();
+                } catch (JsonSyntaxException e) {
+                    System.err.println("Riga del log di trasferimento ignorata: " + e.getMessage());
                 }
-            } catch (IOException e) {
-                System.err.println("Errore durante la lettura del file di log: " + e.getMessage());
-                return new ArrayList<>();
-            } catch (Exception e) {
-                System.err.println("Errore imprevisto durante il caricamento dei log: " + e.getMessage());
-                e.printStackTrace();
-                return new ArrayList<>();
             }
+        } catch (IOException e) {
+            System.err.println("Errore durante la lettura del file di log: " + e.getMessage());
         }
     }
-    
-    public static TransferLogEntry findIncompleteTransfer(String sourcePath, String destinationPath) {
-        List<TransferLogEntry> logs = loadAllTransfers();
-        for (TransferLogEntry log : logs) {
-            if (log.sourcePath.equals(sourcePath) && 
-                log.destinationPath.equals(destinationPath) &&
-                !log.completed && !log.failed) {
-                return log;
+
+    /**
+     * Importa il log in formato array delle versioni precedenti e lo elimina solo dopo
+     * che le voci sono state scritte e sincronizzate nel nuovo log
+     */
+    private static void importLegacyLog() {
+        if (!Files.exists(LEGACY_LOG_FILE)) {
+            return;
+        }
+        List<TransferLogEntry> entries = new ArrayList<>();
+        try (JsonReader jsonReader = new JsonReader(Files.newBufferedReader(LEGACY_LOG_FILE, StandardCharsets.UTF_8))) {
+            jsonReader.setLenient(true);
+            List<TransferLogEntry> logs = gson.fromJson(jsonReader,
+                new com.google.gson.reflect.TypeToken<List<TransferLogEntry>>(){}.getType());
+            if (logs != null) {
+                for (TransferLogEntry entry : logs) {
+                    if (entry != null && entry.sourcePath != null && entry.destinationPath != null) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Illeggibile: si conserva come backup e si riparte da un log vuoto
+            System.err.println("Impossibile importare il vecchio log dei trasferimenti: " + e.getMessage());
+            try {
+                Files.move(LEGACY_LOG_FILE, Paths.get(LEGACY_LOG_FILE + ".backup." + System.currentTimeMillis()));
+            } catch (IOException backupEx) {
+                System.err.println("Errore durante la creazione del backup: " + backupEx.getMessage());
             }
+            return;
+        }
+        // Il thread di scrittura non è ancora partito: le voci si scrivono qui, in modo sincrono
+        StringBuilder lines = new StringBuilder();
+        for (TransferLogEntry entry : entries) {
+            gson.toJson(entry, TransferLogEntry.class, lines);
+            lines.append('\n');
+        }
+        try {
+            openLog();
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            // Il vecchio log resta al suo posto e verrà importato al prossimo avvio
+            System.err.println("Impossibile importare il vecchio log dei trasferimenti: " + e.getMessage());
+            closeLog();
+            return;
+        }
+        fileEntries += entries.size();
+        for (TransferLogEntry entry : entries) {
+            latest.put(key(entry.sourcePath, entry.destinationPath), entry);
+        }
+        try {
+            Files.delete(LEGACY_LOG_FILE);
+        } catch (IOException e) {
+            System.err.println("Impossibile eliminare il vecchio log dei trasferimenti: " + e.getMessage());
         }
-        return null;
     }
 }
-
@@ -0,0 +1,1131 @@
+package com.totalcommander.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Coda persistente dei trasferimenti FTP. Ogni modifica viene accodata a un giornale
+ * (una riga JSON per evento) che all'avvio viene riletto e compattato: gli elementi
+ * rimasti in coda o in corso tornano come "in attesa" del loro server. In memoria restano
+ * solo stato, priorità, directory superiore e posizione nel giornale di ogni elemento, in
+ * array indicizzati dall'id; percorsi e nomi si rileggono dal giornale quando servono.
+ * L'ordine è dato da una coda per priorità; spostare un elemento lo reinserisce e rende
+ * obsoleta la voce precedente, scartata quando la si incontra. Gli elementi in pausa e
+ * quelli trattenuti da una directory in pausa, in attesa o fallita escono dalla coda e
+ * restano da parte finché la directory (o l'elemento stesso) non cambia stato
+ */
+public class TransferQueue {
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * Stato di un elemento. WAITING: il server non è connesso (es. dopo un riavvio);
+     * REMOVED: tolto dalla coda dall'utente
+     */
+    public enum State { QUEUED, ACTIVE, PAUSED, WAITING, DONE, FAILED, REMOVED }
+
+    private static final State[] STATES = State.values();
+    // Righe superate oltre le quali il giornale viene compattato durante la sessione
+    private static final int MIN_LINES_TO_COMPACT = 10_000;
+    private static final Gson gson = new Gson();
+
+    /**
+     * Elemento della coda con i dati completi, riletti dal giornale
+     */
+    public static class Item {
+        private final int id;
+        private final String sourcePath;
+        private final String destinationPath;
+        private final boolean directory;
+        private final long size;
+        private final String fileName;
+        private final String transferType;
+        private final String server;
+        private final int parentId;
+        private final int priority;
+        private final State state;
+        private final boolean resume;
+
+        Item(Record record, int priority, State state, boolean resume) {
+            this.id = record.id;
+            this.sourcePath = record.source;
+            this.destinationPath = record.destination;
+            this.directory = Boolean.TRUE.equals(record.directory);
+            this.size = record.size != null ? record.size : -1;
+            this.fileName = record.name;
+            this.transferType = record.type;
+            this.server = record.server;
+            this.parentId = record.parent != null ? record.parent : 0;
+            this.priority = priority;
+            this.state = state;
+            this.resume = resume;
+        }
+
+        public int getId() { return id; }
+        public String getSourcePath() { return sourcePath; }
+        public String getDestinationPath() { return destinationPath; }
+        public boolean isDirectory() { return directory; }
+        public long getSize() { return size; }
+        public String getFileName() { return fileName; }
+        public String getTransferType() { return transferType; }
+        public String getServer() { return server; }
+        public int getParentId() { return parentId; }
+        public int getPriority() { return priority; }
+        public State getState() { return state; }
+        public boolean isResume() { return resume; }
+    }
+
+    /**
+     * Riga del giornale; i campi null non vengono scritti
+     */
+    private static class Record {
+        String op;          // add, state, priority, move
+        int id;
+        String source;
+        String destination;
+        Boolean directory;
+        Long size;
+        String name;
+        String type;
+        String server;
+        Integer parent;
+        Integer priority;
+        String state;
+        Boolean front;
+    }
+
+    private final Path journalFile;
+    private FileChannel channel;
+    private OutputStream out;
+    private long journalSize;
+    private long journalLines;
+    private boolean unflushed;
+    private final StringBuilder lineBuilder = new StringBuilder(512);
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+    private long readStart = -1; // posizione nel giornale del blocco in readBuffer, -1 se vuoto
+
+    // Per elemento, indicizzati da id - firstId
+    private int firstId = 1;
+    private int nextId = 1;
+    private long[] offsets = new long[1024];   // posizione della riga "add" nel giornale
+    private int[] parents = new int[1024];
+    private int[] stamps = new int[1024];      // cambia a ogni reinserimento: le voci precedenti sono obsolete
+    private byte[] states = new byte[1024];
+    private byte[] priorities = new byte[1024];
+    private short[] servers = new short[1024];
+    private final BitSet resumable = new BitSet();
+    private final List<String> serverNames = new ArrayList<>();
+    private final Map<String, Integer> serverIndex = new HashMap<>();
+    private final LongDeque[] queues = { new LongDeque(), new LongDeque(), new LongDeque() };
+    // Voci tolte dalla coda, per id dell'elemento o della directory che le trattiene
+    private final Map<Integer, LongDeque> parked = new LinkedHashMap<>();
+    private final int[] counts = new int[STATES.length];
+    private boolean rewriteNeeded; // il giornale letto ha eventi oltre agli inserimenti o una riga interrotta
+
+    public TransferQueue(Path journalFile) {
+        this.journalFile = journalFile;
+        try {
+            Files.createDirectories(journalFile.getParent());
+            load();
+        } catch (IOException e) {
+            System.err.println("Impossibile leggere la coda dei trasferimenti: " + e.getMessage());
+            e.printStackTrace();
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // Si continua sul giornale originale, che resta valido
+            System.err.println("Impossibile compattare la coda dei trasferimenti: " + e.getMessage());
+        }
+        try {
+            openJournal();
+        } catch (IOException e) {
+            System.err.println("Impossibile aprire la coda dei trasferimenti: " + e.getMessage());
+            e.printStackTrace();
+        }
+        // Quanto era in coda o in corso attende che l'utente si ricolleghi al server
+        for (int id = firstId; id < nextId; id++) {
+            State state = state(id);
+            if (state == State.QUEUED || state == State.ACTIVE) {
+                setState(id, State.WAITING);
+                resumable.set(id - firstId);
+            }
+        }
+    }
+
+    /**
+     * Accoda un elemento con priorità normale; l'id di una directory già accodata come
+     * parentId (0 se nessuna) fa partire l'elemento dopo di lei. Per rendere persistente
+     * un gruppo di elementi chiamare sync
+     */
+    public synchronized int add(String sourcePath, String destinationPath, boolean directory, long size,
+                                String fileName, String transferType, String server, int parentId) {
+        Record record = new Record();
+        record.op = "add";
+        record.id = nextId;
+        record.source = sourcePath;
+        record.destination = destinationPath;
+        record.directory = directory ? Boolean.TRUE : null;
+        record.size = size >= 0 ? size : null;
+        record.name = fileName;
+        record.type = transferType;
+        record.server = server;
+        record.parent = parentId > 0 ? parentId : null;
+        write(record);
+        return record.id;
+    }
+
+    /**
+     * Scrive sul disco quanto accodato finora
+     */
+    public synchronized void sync() {
+        try {
+            if (out != null) {
+                out.flush();
+                unflushed = false;
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            System.err.println("Errore nel salvataggio della coda dei trasferimenti: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prossimo elemento da trasferire, in ordine di priorità e posizione, oppure null.
+     * Gli elementi di server non disponibili passano in attesa; se la directory di un
+     * elemento è ancora in coda parte prima lei. Il contenuto di una directory in pausa,
+     * in attesa o fallita resta in coda, quello di una directory rimossa viene rimosso
+     */
+    public synchronized Item next(Predicate<String> serverAvailable) {
+        boolean removed = false;
+        for (int priority = PRIORITY_HIGH; priority >= PRIORITY_LOW; priority--) {
+            LongDeque queue = queues[priority];
+            int i = 0;
+            while (i < queue.size()) {
+                long entry = queue.get(i);
+                int id = (int) entry;
+                State state = isStale(entry) ? null : state(id);
+                if (state != State.QUEUED && state != State.PAUSED) {
+                    queue.removeAt(i);
+                    continue;
+                }
+                if (state == State.PAUSED) {
+                    queue.removeAt(i);
+                    park(id, entry);
+                    continue;
+                }
+                if (!serverAvailable.test(serverNames.get(servers[id - firstId]))) {
+                    queue.removeAt(i);
+                    setState(id, State.WAITING);
+                    continue;
+                }
+                int blocking = blockingAncestor(id);
+                if (blocking != 0) {
+                    queue.removeAt(i);
+                    if (state(blocking) == State.REMOVED) {
+                        writeState(id, State.REMOVED);
+                        removed = true;
+                    } else {
+                        park(blocking, entry);
+                    }
+                    continue;
+                }
+                int candidate = id;
+                int parent = parents[id - firstId];
+                while (isLive(parent) && state(parent) == State.QUEUED) {
+                    candidate = parent;
+                    parent = parents[parent - firstId];
+                }
+                if (candidate == id) {
+                    queue.removeAt(i);
+                } else {
+                    stamps[candidate - firstId]++;
+                }
+                if (removed) {
+                    flush();
+                }
+                setState(candidate, State.ACTIVE);
+                return read(candidate);
+            }
+        }
+        if (removed) {
+            flush();
+        }
+        return null;
+    }
+
+    /**
+     * Esito di un elemento partito con next; a coda vuota il giornale riparte da zero
+     */
+    public synchronized void finished(int id, boolean success) {
+        if (!isLive(id) || state(id) != State.ACTIVE) {
+            return;
+        }
+        writeState(id, success ? State.DONE : State.FAILED);
+        flush();
+        int live = counts[State.QUEUED.ordinal()] + counts[State.ACTIVE.ordinal()] + counts[State.PAUSED.ordinal()]
+            + counts[State.WAITING.ordinal()] + counts[State.FAILED.ordinal()];
+        if (live == 0) {
+            reset();
+        } else if (journalLines > 2L * live + MIN_LINES_TO_COMPACT) {
+            try {
+                compactLive();
+            } catch (IOException e) {
+                System.err.println("Impossibile compattare la coda dei trasferimenti: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void pause(int id) {
+        if (isLive(id) && state(id) == State.QUEUED) {
+            writeState(id, State.PAUSED);
+            flush();
+        }
+    }
+
+    public synchronized void resume(int id) {
+        if (isLive(id) && state(id) == State.PAUSED) {
+            writeState(id, State.QUEUED);
+            flush();
+        }
+    }
+
+    /**
+     * Rimette in coda un elemento fallito, che riprenderà dal punto raggiunto
+     */
+    public synchronized void retry(int id) {
+        if (isLive(id) && state(id) == State.FAILED) {
+            writeState(id, State.QUEUED);
+            flush();
+        }
+    }
+
+    public synchronized int retryFailed() {
+        int count = 0;
+        for (int id = firstId; id < nextId; id++) {
+            if (state(id) == State.FAILED) {
+                writeState(id, State.QUEUED);
+                count++;
+            }
+        }
+        flush();
+        return count;
+    }
+
+    public synchronized void remove(int id) {
+        if (isLive(id)) {
+            State state = state(id);
+            if (state == State.QUEUED || state == State.PAUSED || state == State.WAITING || state == State.FAILED) {
+                writeState(id, State.REMOVED);
+                flush();
+            }
+        }
+    }
+
+    public synchronized void setPriority(int id, int priority) {
+        if (isQueuedOrPaused(id) && priority >= PRIORITY_LOW && priority <= PRIORITY_HIGH) {
+            Record record = new Record();
+            record.op = "priority";
+            record.id = id;
+            record.priority = priority;
+            write(record);
+            flush();
+        }
+    }
+
+    /**
+     * Sposta l'elemento all'inizio (front) o alla fine della coda della sua priorità
+     */
+    public synchronized void move(int id, boolean front) {
+        if (isQueuedOrPaused(id)) {
+            Record record = new Record();
+            record.op = "move";
+            record.id = id;
+            record.front = front;
+            write(record);
+            flush();
+        }
+    }
+
+    /**
+     * Elementi in attesa che il server torni disponibile
+     */
+    public synchronized int countWaiting(String server) {
+        Integer index = serverIndex.get(server);
+        int count = 0;
+        if (index != null) {
+            for (int id = firstId; id < nextId; id++) {
+                if (state(id) == State.WAITING && servers[id - firstId] == index) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rimette in coda gli elementi in attesa del server, ora connesso
+     */
+    public synchronized int releaseWaiting(String server) {
+        Integer index = serverIndex.get(server);
+        int count = 0;
+        if (index != null) {
+            for (int id = firstId; id < nextId; id++) {
+                if (state(id) == State.WAITING && servers[id - firstId] == index) {
+                    setState(id, State.QUEUED);
+                    enqueue(id, false);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Server con elementi in attesa
+     */
+    public synchronized List<String> getWaitingServers() {
+        BitSet waiting = new BitSet();
+        for (int id = firstId; id < nextId; id++) {
+            if (state(id) == State.WAITING) {
+                waiting.set(servers[id - firstId]);
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (int index = waiting.nextSetBit(0); index >= 0; index = waiting.nextSetBit(index + 1)) {
+            names.add(serverNames.get(index));
+        }
+        return names;
+    }
+
+    public synchronized void discardWaiting(String server) {
+        Integer index = serverIndex.get(server);
+        if (index != null) {
+            for (int id = firstId; id < nextId; id++) {
+                if (state(id) == State.WAITING && servers[id - firstId] == index) {
+                    writeState(id, State.REMOVED);
+                }
+            }
+            flush();
+        }
+    }
+
+    public synchronized int getCount(State state) {
+        return counts[state.ordinal()];
+    }
+
+    /**
+     * I primi elementi non ancora partiti, nell'ordine in cui partiranno; seguono quelli
+     * in attesa del server e quelli falliti
+     */
+    public synchronized List<Item> snapshot(int limit) {
+        List<Item> items = new ArrayList<>();
+        for (int priority = PRIORITY_HIGH; priority >= PRIORITY_LOW && items.size() < limit; priority--) {
+            LongDeque queue = queues[priority];
+            for (int i = 0; i < queue.size() && items.size() < limit; i++) {
+                long entry = queue.get(i);
+                if (!isStale(entry) && isQueuedOrPaused((int) entry)) {
+                    items.add(read((int) entry));
+                }
+            }
+        }
+        for (LongDeque held : parked.values()) {
+            for (int i = 0; i < held.size() && items.size() < limit; i++) {
+                long entry = held.get(i);
+                if (!isStale(entry) && isQueuedOrPaused((int) entry)) {
+                    items.add(read((int) entry));
+                }
+            }
+        }
+        for (int id = firstId; id < nextId && items.size() < limit; id++) {
+            State state = state(id);
+            if (state == State.WAITING || state == State.FAILED) {
+                items.add(read(id));
+            }
+        }
+        return items;
+    }
+
+    public synchronized void close() {
+        sync();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+        out = null;
+    }
+
+    // --- Stato in memoria ---
+
+    private boolean isLive(int id) {
+        return id >= firstId && id < nextId;
+    }
+
+    private State state(int id) {
+        return STATES[states[id - firstId]];
+    }
+
+    private boolean isQueuedOrPaused(int id) {
+        if (!isLive(id)) {
+            return false;
+        }
+        State state = state(id);
+        return state == State.QUEUED || state == State.PAUSED;
+    }
+
+    /**
+     * Prima directory antenata che trattiene l'elemento (in pausa, in attesa, fallita o
+     * rimossa), 0 se nessuna
+     */
+    private int blockingAncestor(int id) {
+        int parent = parents[id - firstId];
+        while (isLive(parent)) {
+            State state = state(parent);
+            if (state == State.PAUSED || state == State.WAITING || state == State.FAILED || state == State.REMOVED) {
+                return parent;
+            }
+            parent = parents[parent - firstId];
+        }
+        return 0;
+    }
+
+    private void park(int holder, long entry) {
+        parked.computeIfAbsent(holder, key -> new LongDeque()).addLast(entry);
+    }
+
+    /**
+     * Rimette in testa alle code, nell'ordine originale, le voci trattenute da holder:
+     * next le valuta di nuovo (e le rimette da parte se sono ancora trattenute)
+     */
+    private void unpark(int holder) {
+        LongDeque held = parked.remove(holder);
+        if (held == null) {
+            return;
+        }
+        for (int i = held.size() - 1; i >= 0; i--) {
+            long entry = held.get(i);
+            if (!isStale(entry)) {
+                queues[priorities[(int) entry - firstId]].addFirst(entry);
+            }
+        }
+    }
+
+    private boolean isStale(long entry) {
+        int id = (int) entry;
+        return !isLive(id) || stamps[id - firstId] != (int) (entry >>> 32);
+    }
+
+    private void setState(int id, State state) {
+        counts[states[id - firstId]]--;
+        counts[state.ordinal()]++;
+        states[id - firstId] = (byte) state.ordinal();
+        if (!parked.isEmpty()) {
+            unpark(id);
+        }
+    }
+
+    /**
+     * Inserisce l'elemento nella coda della sua priorità; le voci precedenti diventano obsolete
+     */
+    private void enqueue(int id, boolean front) {
+        int stamp = ++stamps[id - firstId];
+        long entry = ((long) stamp << 32) | (id & 0xffffffffL);
+        LongDeque queue = queues[priorities[id - firstId]];
+        if (front) {
+            queue.addFirst(entry);
+        } else {
+            queue.addLast(entry);
+        }
+    }
+
+    private void writeState(int id, State state) {
+        Record record = new Record();
+        record.op = "state";
+        record.id = id;
+        record.state = state.name();
+        write(record);
+    }
+
+    /**
+     * Applica un evento del giornale, letto all'avvio o appena scritto
+     */
+    private void apply(Record record, long offset) {
+        switch (record.op) {
+            case "add": {
+                int id = record.id;
+                if (nextId == firstId) {
+                    firstId = id;
+                    nextId = id;
+                }
+                if (id < nextId) {
+                    return;
+                }
+                // Id saltati: elementi conclusi tolti dal giornale durante la sessione
+                while (nextId < id) {
+                    ensureCapacity(nextId + 1 - firstId);
+                    int index = nextId - firstId;
+                    offsets[index] = -1;
+                    parents[index] = 0;
+                    priorities[index] = PRIORITY_NORMAL;
+                    servers[index] = 0;
+                    states[index] = (byte) State.REMOVED.ordinal();
+                    counts[State.REMOVED.ordinal()]++;
+                    nextId++;
+                }
+                nextId++;
+                ensureCapacity(nextId - firstId);
+                int index = id - firstId;
+                offsets[index] = offset;
+                parents[index] = record.parent != null ? record.parent : 0;
+                priorities[index] = (byte) (record.priority != null ? record.priority : PRIORITY_NORMAL);
+                servers[index] = (short) serverIndex(record.server);
+                State state = record.state != null ? State.valueOf(record.state) : State.QUEUED;
+                states[index] = (byte) state.ordinal();
+                counts[state.ordinal()]++;
+                if (state == State.QUEUED || state == State.PAUSED) {
+                    enqueue(id, false);
+                }
+                break;
+            }
+            case "state": {
+                if (!isLive(record.id)) {
+                    return;
+                }
+                State previous = state(record.id);
+                State state = State.valueOf(record.state);
+                setState(record.id, state);
+                // Da fallito (o in corso, se rilanciato) torna in fondo alla coda
+                if (state == State.QUEUED && previous != State.PAUSED) {
+                    resumable.set(record.id - firstId);
+                    enqueue(record.id, false);
+                }
+                break;
+            }
+            case "priority":
+                if (isLive(record.id)) {
+                    priorities[record.id - firstId] = (byte) (int) record.priority;
+                    enqueue(record.id, false);
+                }
+                break;
+            case "move":
+                if (isLive(record.id)) {
+                    enqueue(record.id, Boolean.TRUE.equals(record.front));
+                }
+                break;
+            default:
+                break;
+        }
+        if (!"add".equals(record.op)) {
+            rewriteNeeded = true;
+        }
+    }
+
+    private int serverIndex(String server) {
+        String key = server != null ? server : "";
+        Integer index = serverIndex.get(key);
+        if (index == null) {
+            index = serverNames.size();
+            serverNames.add(key);
+            serverIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > offsets.length) {
+            int capacity = Math.max(size, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+            states = Arrays.copyOf(states, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            servers = Arrays.copyOf(servers, capacity);
+        }
+    }
+
+    private Item read(int id) {
+        Record record = readRecord(offsets[id - firstId]);
+        if (record == null) {
+            // Riga illeggibile: l'elemento resta senza dati ma non blocca la coda
+            record = new Record();
+            record.id = id;
+        }
+        record.id = id;
+        return new Item(record, priorities[id - firstId], state(id), resumable.get(id - firstId));
+    }
+
+    // --- Giornale ---
+
+    /**
+     * Passa al sistema operativo gli eventi scritti, senza attendere il disco: un crash
+     * dell'applicazione non li perde, uno del sistema al più ripete qualche trasferimento
+     */
+    private void flush() {
+        try {
+            if (unflushed) {
+                out.flush();
+                unflushed = false;
+            }
+        } catch (IOException e) {
+            System.err.println("Errore nel salvataggio della coda dei trasferimenti: " + e.getMessage());
+        }
+    }
+
+    private void write(Record record) {
+        long offset = journalSize;
+        byte[] line = encode(record);
+        try {
+            if (out == null) {
+                openJournal();
+                offset = journalSize;
+            }
+            out.write(line);
+            journalSize += line.length;
+            journalLines++;
+            unflushed = true;
+        } catch (IOException e) {
+            System.err.println("Errore nella scrittura della coda dei trasferimenti: " + e.getMessage());
+        }
+        apply(record, offset);
+    }
+
+    private byte[] encode(Record record) {
+        lineBuilder.setLength(0);
+        gson.toJson(record, Record.class, lineBuilder);
+        return lineBuilder.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void openJournal() throws IOException {
+        readStart = -1;
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        if (channel.size() > journalSize) {
+            // Scarta l'ultima riga interrotta, che altrimenti si fonderebbe con la successiva
+            channel.truncate(journalSize);
+        }
+        journalSize = channel.size();
+        channel.position(journalSize);
+        out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+    }
+
+    private Record readRecord(long offset) {
+        try {
+            if (unflushed) {
+                out.flush();
+                unflushed = false;
+            }
+            return gson.fromJson(readLine(offset), Record.class);
+        } catch (IOException | JsonSyntaxException e) {
+            System.err.println("Elemento della coda illeggibile: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Riga del giornale che inizia in offset. Le righe vengono lette a blocchi: chi scorre
+     * la coda in ordine trova quasi sempre la successiva già in memoria
+     */
+    private String readLine(long offset) throws IOException {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (readStart < 0 || offset < readStart || offset >= readStart + readBuffer.limit() || attempt > 0) {
+                readBuffer.clear();
+                int read = channel.read(readBuffer, offset);
+                readBuffer.flip();
+                readStart = read > 0 ? offset : -1;
+                if (read <= 0) {
+                    return "";
+                }
+            }
+            byte[] data = readBuffer.array();
+            int start = (int) (offset - readStart);
+            for (int i = start; i < readBuffer.limit(); i++) {
+                if (data[i] == '\n') {
+                    return new String(data, start, i - start, StandardCharsets.UTF_8);
+                }
+            }
+            if (readBuffer.limit() < readBuffer.capacity() && start == 0) {
+                // Fine del file senza a capo
+                return new String(data, 0, readBuffer.limit(), StandardCharsets.UTF_8);
+            }
+        }
+        // Riga più lunga del blocco
+        ByteArrayOutputStream line = new ByteArrayOutputStream(readBuffer.capacity() * 2);
+        ByteBuffer buffer = ByteBuffer.allocate(readBuffer.capacity());
+        long position = offset;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            byte[] data = buffer.array();
+            int end = 0;
+            while (end < read && data[end] != '\n') {
+                end++;
+            }
+            line.write(data, 0, end);
+            if (end < read) {
+                break;
+            }
+            position += read;
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(journalFile)) {
+            byte[] buffer = new byte[256 * 1024];
+            int length = 0;
+            long bufferOffset = 0; // posizione nel file del primo byte del buffer
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                int start = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer[i] == '\n') {
+                        applyLine(buffer, start, i - start, bufferOffset + start);
+                        start = i + 1;
+                    }
+                }
+                // La riga incompleta passa all'inizio del buffer, ingrandito se non ci sta
+                System.arraycopy(buffer, start, buffer, 0, length - start);
+                length -= start;
+                bufferOffset += start;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            // Un'ultima riga senza a capo è una scrittura interrotta: viene scartata
+            if (length > 0) {
+                rewriteNeeded = true;
+            }
+            journalSize = bufferOffset;
+        }
+    }
+
+    private void applyLine(byte[] buffer, int start, int length, long offset) {
+        try {
+            Record record = gson.fromJson(new String(buffer, start, length, StandardCharsets.UTF_8), Record.class);
+            journalLines++;
+            if (record != null && record.op != null) {
+                apply(record, offset);
+            }
+        } catch (JsonSyntaxException | IllegalArgumentException e) {
+            rewriteNeeded = true;
+            System.err.println("Riga della coda dei trasferimenti ignorata: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Riscrive il giornale con i soli elementi ancora da trasferire, nell'ordine corrente
+     */
+    private void compact() throws IOException {
+        int live = counts[State.QUEUED.ordinal()] + counts[State.ACTIVE.ordinal()]
+            + counts[State.PAUSED.ordinal()] + counts[State.WAITING.ordinal()] + counts[State.FAILED.ordinal()];
+        if (live == 0) {
+            reset();
+            return;
+        }
+        List<Integer> order = new ArrayList<>(live);
+        BitSet seen = new BitSet();
+        for (int priority = PRIORITY_HIGH; priority >= PRIORITY_LOW; priority--) {
+            LongDeque queue = queues[priority];
+            for (int i = 0; i < queue.size(); i++) {
+                long entry = queue.get(i);
+                int id = (int) entry;
+                if (!isStale(entry) && isQueuedOrPaused(id) && !seen.get(id - firstId)) {
+                    seen.set(id - firstId);
+                    order.add(id);
+                }
+            }
+        }
+        for (int id = firstId; id < nextId; id++) {
+            State state = state(id);
+            if (!seen.get(id - firstId) && state != State.DONE && state != State.REMOVED) {
+                order.add(id);
+            }
+        }
+        if (order.size() == nextId - firstId && !rewriteNeeded) {
+            return;
+        }
+
+        // Nuovi id nell'ordine di partenza; le directory già trasferite non contano più.
+        // La memoria si ricostruisce applicando le righe man mano che vengono scritte
+        int oldFirstId = firstId;
+        long[] oldOffsets = offsets;
+        int[] oldParents = parents;
+        byte[] oldStates = states;
+        byte[] oldPriorities = priorities;
+        int[] newIds = new int[nextId - firstId];
+        for (int i = 0; i < order.size(); i++) {
+            newIds[order.get(i) - firstId] = i + 1;
+        }
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel source = FileChannel.open(journalFile, StandardOpenOption.READ);
+             OutputStream target = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+            channel = source;
+            readStart = -1;
+            clearMemory(1);
+            long position = 0;
+            for (int id : order) {
+                int index = id - oldFirstId;
+                Record record = readRecord(oldOffsets[index]);
+                if (record == null) {
+                    throw new IOException("Elemento " + id + " illeggibile");
+                }
+                int parent = oldParents[index] - oldFirstId;
+                record.id = newIds[index];
+                record.parent = parent >= 0 && parent < newIds.length && newIds[parent] > 0 ? newIds[parent] : null;
+                record.priority = oldPriorities[index] != PRIORITY_NORMAL ? (int) oldPriorities[index] : null;
+                State state = STATES[oldStates[index]];
+                record.state = state == State.PAUSED || state == State.FAILED ? state.name() : null;
+                byte[] line = encode(record);
+                target.write(line);
+                apply(record, position);
+                position += line.length;
+            }
+            journalSize = position;
+            journalLines = order.size();
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            clearMemory(1);
+            load();
+            throw e;
+        } finally {
+            channel = null;
+        }
+        Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        rewriteNeeded = false;
+    }
+
+    /**
+     * Compattazione durante la sessione: riscrive i soli elementi ancora da trasferire
+     * mantenendone gli id, in uso da worker e finestra dei trasferimenti, e libera la
+     * memoria degli elementi iniziali già conclusi. Se l'ordine di partenza non segue più
+     * gli id lo si riscrive con eventi "move"
+     */
+    private void compactLive() throws IOException {
+        sync();
+        int newFirstId = firstId;
+        while (newFirstId < nextId && isFinished(newFirstId)) {
+            newFirstId++;
+        }
+        long[] newOffsets = new long[nextId - newFirstId];
+        long lines = 0;
+        long position = 0;
+        Path temp = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (OutputStream target = new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+            for (int id = newFirstId; id < nextId; id++) {
+                int index = id - firstId;
+                if (isFinished(id)) {
+                    newOffsets[id - newFirstId] = -1;
+                    continue;
+                }
+                Record record = readRecord(offsets[index]);
+                if (record == null) {
+                    throw new IOException("Elemento " + id + " illeggibile");
+                }
+                int parent = parents[index];
+                record.id = id;
+                record.parent = parent > 0 && !(isLive(parent) && state(parent) == State.DONE) ? parent : null;
+                record.priority = priorities[index] != PRIORITY_NORMAL ? (int) priorities[index] : null;
+                State state = state(id);
+                record.state = state == State.PAUSED || state == State.FAILED ? state.name() : null;
+                byte[] line = encode(record);
+                target.write(line);
+                newOffsets[id - newFirstId] = position;
+                position += line.length;
+                lines++;
+            }
+            for (LongDeque queue : queues) {
+                List<Integer> order = new ArrayList<>();
+                boolean sorted = true;
+                for (int i = 0; i < queue.size(); i++) {
+                    long entry = queue.get(i);
+                    if (!isStale(entry) && isQueuedOrPaused((int) entry)) {
+                        sorted &= order.isEmpty() || order.get(order.size() - 1) < (int) entry;
+                        order.add((int) entry);
+                    }
+                }
+                if (sorted) {
+                    continue;
+                }
+                for (int id : order) {
+                    Record move = new Record();
+                    move.op = "move";
+                    move.id = id;
+                    byte[] line = encode(move);
+                    target.write(line);
+                    position += line.length;
+                    lines++;
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        out.close();
+        out = null;
+        channel = null;
+        try {
+            Files.move(temp, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            openJournal();
+            throw e;
+        }
+        journalSize = position;
+        journalLines = lines;
+        rewriteNeeded = false;
+        openJournal();
+
+        int shift = newFirstId - firstId;
+        int size = nextId - newFirstId;
+        for (int i = 0; i < shift; i++) {
+            counts[states[i]]--;
+        }
+        int capacity = Math.max(1024, size * 2);
+        offsets = Arrays.copyOf(newOffsets, capacity);
+        parents = Arrays.copyOfRange(parents, shift, shift + capacity);
+        stamps = Arrays.copyOfRange(stamps, shift, shift + capacity);
+        states = Arrays.copyOfRange(states, shift, shift + capacity);
+        priorities = Arrays.copyOfRange(priorities, shift, shift + capacity);
+        servers = Arrays.copyOfRange(servers, shift, shift + capacity);
+        BitSet kept = resumable.get(shift, shift + size);
+        resumable.clear();
+        resumable.or(kept);
+        firstId = newFirstId;
+    }
+
+    private boolean isFinished(int id) {
+        State state = state(id);
+        return state == State.DONE || state == State.REMOVED;
+    }
+
+    /**
+     * Svuota coda e giornale; i nuovi id proseguono da quelli già usati
+     */
+    private void reset() {
+        try {
+            if (channel != null) {
+                out.flush();
+                channel.truncate(0);
+                readStart = -1;
+                channel.position(0);
+                journalSize = 0;
+                journalLines = 0;
+                unflushed = false;
+            } else {
+                Files.deleteIfExists(journalFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Impossibile svuotare la coda dei trasferimenti: " + e.getMessage());
+        }
+        clearMemory(nextId);
+    }
+
+    private void clearMemory(int firstId) {
+        this.firstId = firstId;
+        this.nextId = firstId;
+        Arrays.fill(counts, 0);
+        resumable.clear();
+        for (LongDeque queue : queues) {
+            queue.clear();
+        }
+        parked.clear();
+        int capacity = 1024;
+        offsets = new long[capacity];
+        parents = new int[capacity];
+        stamps = new int[capacity];
+        states = new byte[capacity];
+        priorities = new byte[capacity];
+        servers = new short[capacity];
+    }
+
+    /**
+     * Coda di long su array circolare, con rimozione in una posizione qualsiasi
+     * (economica vicino alla testa, dove avviene quasi sempre)
+     */
+    private static class LongDeque {
+        private long[] items = new long[16];
+        private int head;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return items[(head + index) & (items.length - 1)];
+        }
+
+        void addLast(long value) {
+            grow();
+            items[(head + size) & (items.length - 1)] = value;
+            size++;
+        }
+
+        void addFirst(long value) {
+            grow();
+            head = (head - 1) & (items.length - 1);
+            items[head] = value;
+            size++;
+        }
+
+        void removeAt(int index) {
+            int mask = items.length - 1;
+            for (int i = index; i > 0; i--) {
+                items[(head + i) & mask] = items[(head + i - 1) & mask];
+            }
+            head = (head + 1) & mask;
+            size--;
+        }
+
+        void clear() {
+            items = new long[16];
+            head = 0;
+            size = 0;
+        }
+
+        private void grow() {
+            if (size == items.length) {
+                long[] larger = new long[items.length * 2];
+                for (int i = 0; i < size; i++) {
+                    larger[i] = get(i);
+                }
+                items = larger;
+                head = 0;
+            }
+        }
+    }
+}
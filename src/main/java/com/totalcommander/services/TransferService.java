@@ -1,46 +1,193 @@
 package com.totalcommander.services;
 
+import com.totalcommander.models.FtpConnection;
+import com.totalcommander.models.OperationProgress;
+import com.totalcommander.models.OperationResult;
 import com.totalcommander.models.TransferTask;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import org.apache.commons.net.ftp.FTPFile;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 /**
- * Servizio per gestire trasferimenti file in background con coda sequenziale
+ * Servizio per gestire trasferimenti file in background. La coda FTP è persistente
+ * (TransferQueue) e viene svuotata da più worker in parallelo, ognuno con la propria
+ * sessione presa da FtpSessionPool
  */
 public class TransferService {
     
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+    // Server fittizio degli elementi accodati con una sessione condivisa anziché una connessione
+    private static final String SHARED_SESSION_PREFIX = "sessione:";
+    // Trasferimenti conclusi mostrati nella finestra: oltre questo numero i più vecchi vengono tolti
+    private static final int MAX_FINISHED_TASKS = 1000;
+    
     private final ObservableList<TransferTask> activeTransfers = FXCollections.observableArrayList();
-    private final Queue<TransferItem> transferQueue = new LinkedList<>();
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
-    private boolean isProcessing = false;
+    private final TransferQueue transferQueue = new TransferQueue(
+        Paths.get(System.getProperty("user.home"), ".totalcommander", "transfers", "queue.journal"));
+    private final Map<String, FtpConnection> connections = new ConcurrentHashMap<>(); // server -> connessione
+    private final Map<String, FtpService> sharedSessions = new ConcurrentHashMap<>();
+    // Directory in corso di creazione: i loro elementi partono quando hanno finito
+    private final Map<Integer, CountDownLatch> runningDirectories = new ConcurrentHashMap<>();
+    private final Object workerLock = new Object();
+    private final AtomicInteger workerCount = new AtomicInteger();
+    private final ExecutorService executorService = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ftp-transfer-" + workerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Operazioni locali (copia/sposta/elimina) in una coda separata da quella FTP
+    private final ExecutorService localExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "local-operations");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<TransferTask, OperationControl> controls = new ConcurrentHashMap<>();
+    private int activeWorkers = 0; // protetto da workerLock
     private BiConsumer<String, String> statusCallback;
-    private FtpService currentFtpService; // Servizio FTP corrente
     private Runnable onAllTransfersComplete; // Callback quando tutti i trasferimenti sono completati
     
     /**
-     * Classe per rappresentare un elemento nella coda di trasferimento
+     * Aggiunge un task alla lista e toglie i conclusi più vecchi oltre MAX_FINISHED_TASKS,
+     * così la lista non cresce per tutta la sessione. Da chiamare dal thread JavaFX
+     */
+    private void addTask(TransferTask task) {
+        activeTransfers.add(task);
+        int finished = 0;
+        for (TransferTask existing : activeTransfers) {
+            if (existing.isCompleted() || existing.isFailed()) {
+                finished++;
+            }
+        }
+        // Si sfoltisce a blocchi, non a ogni trasferimento concluso
+        if (finished <= MAX_FINISHED_TASKS + MAX_FINISHED_TASKS / 10) {
+            return;
+        }
+        int[] excess = {finished - MAX_FINISHED_TASKS};
+        activeTransfers.removeIf(existing -> {
+            if (excess[0] > 0 && (existing.isCompleted() || existing.isFailed())) {
+                excess[0]--;
+                controls.remove(existing);
+                return true;
+            }
+            return false;
+        });
+    }
+    
+    /**
+     * Elemento preso dalla coda da un worker, con la sessione per trasferirlo
      */
     private static class TransferItem {
+        final int id;                  // Id nella coda persistente
         final String sourcePath;      // Percorso assoluto sorgente
         final String destinationPath;  // Percorso assoluto destinazione
         final boolean isDirectory;     // Se è una directory
+        final long size;               // Dimensione del file, -1 se non nota
         final String fileName;         // Nome del file/cartella
         final String transferType;     // "Upload" o "Download"
+        final String server;           // Chiave del server (o della sessione condivisa)
+        final FtpConnection connection; // Server da cui prendere le sessioni, null per usare ftpService
+        final FtpService ftpService;    // Sessione condivisa, usata solo senza connection
+        final int parentId;             // Directory da creare prima di questo elemento, 0 se nessuna
+        
+        TransferItem(TransferQueue.Item queued, FtpConnection connection, FtpService ftpService) {
+            this.id = queued.getId();
+            this.sourcePath = queued.getSourcePath();
+            this.destinationPath = queued.getDestinationPath();
+            this.isDirectory = queued.isDirectory();
+            this.size = queued.getSize();
+            this.fileName = queued.getFileName();
+            this.transferType = queued.getTransferType();
+            this.server = queued.getServer();
+            this.connection = connection;
+            this.ftpService = ftpService;
+            this.parentId = queued.getParentId();
+        }
+    }
+    
+    /**
+     * Il file trasferito non corrisponde all'originale: il tentativo successivo riparte da zero
+     */
+    private static class VerificationException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        VerificationException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * Byte a destinazione scritti da questo trasferimento (in un tentativo precedente o in
+     * una sessione precedente, secondo il log): solo questi si possono riprendere. 0 se la
+     * destinazione non è stata ancora toccata e un file già presente va sovrascritto
+     */
+    private static class ResumePoint {
+        long bytes;
+        
+        ResumePoint(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+    
+    /**
+     * Sessione FTP tenuta da un worker finché gli elementi restano sullo stesso server
+     */
+    private static class WorkerSession {
+        private FtpConnection connection;
+        private FtpService service;
+        
+        FtpService get(TransferItem item) throws IOException {
+            if (item.connection == null) {
+                if (item.ftpService == null) {
+                    throw new IOException("Servizio FTP non disponibile");
+                }
+                return item.ftpService;
+            }
+            if (service != null && !FtpConnectionManager.getConnectionKey(connection)
+                    .equals(FtpConnectionManager.getConnectionKey(item.connection))) {
+                release();
+            }
+            if (service == null) {
+                service = FtpSessionPool.getInstance().borrow(item.connection);
+                connection = item.connection;
+            }
+            return service;
+        }
+        
+        /**
+         * Dopo un errore la sessione viene scartata se non risponde più
+         */
+        void check() {
+            if (service != null && !service.sendNoOp()) {
+                FtpSessionPool.getInstance().invalidate(connection, service);
+                service = null;
+            }
+        }
         
-        TransferItem(String sourcePath, String destinationPath, boolean isDirectory, 
-                    String fileName, String transferType) {
-            this.sourcePath = sourcePath;
-            this.destinationPath = destinationPath;
-            this.isDirectory = isDirectory;
-            this.fileName = fileName;
-            this.transferType = transferType;
+        void release() {
+            if (service != null) {
+                FtpSessionPool.getInstance().release(connection, service);
+                service = null;
+            }
+        }
+    }
+    
+    public TransferService() {
+        // Le sessioni condivise non sopravvivono al riavvio: i loro elementi non possono ripartire
+        for (String server : transferQueue.getWaitingServers()) {
+            if (server.startsWith(SHARED_SESSION_PREFIX)) {
+                transferQueue.discardWaiting(server);
+            }
         }
     }
     
@@ -63,31 +210,311 @@ public class TransferService {
     }
     
     /**
-     * Aggiunge file/cartelle alla coda per download (FTP -> Locale)
+     * Accoda un'operazione locale (copia, spostamento, eliminazione) da eseguire in background.
+     * L'operazione riceve il controllo per pausa/annullamento e il tracker per l'avanzamento;
+     * onComplete viene eseguito sul thread JavaFX. Da chiamare dal thread JavaFX.
      */
-    public void queueDownload(List<String> remotePaths, File localDestinationDir, FtpService ftpService) {
-        this.currentFtpService = ftpService;
+    public TransferTask queueLocalOperation(String operationType, String sourcePath, String destinationPath,
+                                           String displayName,
+                                           BiFunction<OperationControl, ProgressTracker, OperationResult> operation,
+                                           Consumer<OperationResult> onComplete) {
+        TransferTask task = new TransferTask(sourcePath, destinationPath, displayName, operationType);
+        OperationControl control = new OperationControl();
+        controls.put(task, control);
+        addTask(task);
+        
+        ProgressTracker tracker = new ProgressTracker(progress ->
+            javafx.application.Platform.runLater(() -> applyProgress(task, progress, control)));
+        
+        localExecutor.submit(() -> {
+            OperationResult result;
+            try {
+                result = operation.apply(control, tracker);
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = new OperationResult();
+                result.addFailure(null, null, e.getMessage());
+                result.finish();
+            }
+            OperationResult finalResult = result;
+            javafx.application.Platform.runLater(() -> {
+                controls.remove(task);
+                if (finalResult.isCancelled()) {
+                    task.setFailed(true, "Annullato");
+                    task.setStatus("Annullato");
+                } else if (finalResult.isSuccess()) {
+                    task.setProgress(1.0);
+                    task.setStatus("Completato (" + finalResult.formatThroughput() + ")");
+                    task.setCompleted(true);
+                } else {
+                    task.setFailed(true, finalResult.getFailureCount() + " errori");
+                    task.setStatus("Errore: " + finalResult.getFailureCount() + " elementi non riusciti");
+                }
+                if (onComplete != null) {
+                    onComplete.accept(finalResult);
+                }
+            });
+        });
+        return task;
+    }
+    
+    private void applyProgress(TransferTask task, OperationProgress progress, OperationControl control) {
+        if (task.isCompleted() || task.isFailed()) {
+            return;
+        }
+        if (progress.getTotalBytes() >= 0) {
+            task.setTotalBytes(progress.getTotalBytes());
+        }
+        task.setBytesTransferred(progress.getBytesDone());
+        task.setBytesPerSecond(control.isPaused() ? 0 : progress.getBytesPerSecond());
+        task.setProgress(progress.getFraction());
+        task.setStatus((control.isPaused() ? "In pausa - " : "") + progress.describe());
+    }
+    
+    /**
+     * Tracker per un singolo trasferimento FTP: byte, velocità ed ETA pubblicati al massimo
+     * dieci volte al secondo
+     */
+    private ProgressTracker meter(TransferTask task, String label, long size, long offset) {
+        ProgressTracker tracker = new ProgressTracker(new TransferMeter(task, label, offset));
+        tracker.setTotals(1, size);
+        tracker.addBytes(offset);
+        return tracker;
+    }
+    
+    /**
+     * Calcola la velocità attuale (media mobile tra due pubblicazioni) e aggiorna il task
+     * sul thread JavaFX. Riceve gli aggiornamenti dal solo thread che trasferisce il file.
+     * Ogni PROGRESS_LOG_SECONDS registra nel log i byte raggiunti, da cui riprendere dopo un riavvio
+     */
+    private static class TransferMeter implements Consumer<OperationProgress> {
+        private static final double PROGRESS_LOG_SECONDS = 5;
+        
+        private final TransferTask task;
+        private final String label;
+        private long lastBytes;
+        private double lastSeconds;
+        private double lastLogged;
+        private double rate = -1;
+        
+        TransferMeter(TransferTask task, String label, long offset) {
+            this.task = task;
+            this.label = label;
+            this.lastBytes = offset;
+        }
+        
+        @Override
+        public void accept(OperationProgress progress) {
+            long bytes = progress.getBytesDone();
+            double seconds = progress.getElapsedSeconds();
+            if (bytes > 0 && seconds - lastLogged >= PROGRESS_LOG_SECONDS) {
+                TransferLogService.saveTransfer(task, bytes);
+                lastLogged = seconds;
+            }
+            if (seconds > lastSeconds && bytes > lastBytes) {
+                double sample = (bytes - lastBytes) / (seconds - lastSeconds);
+                rate = rate < 0 ? sample : rate * 0.7 + sample * 0.3;
+                lastBytes = bytes;
+                lastSeconds = seconds;
+            }
+            double current = Math.max(rate, 0);
+            long total = progress.getTotalBytes();
+            StringBuilder status = new StringBuilder(label);
+            if (total > 0) {
+                status.append(String.format(" %.0f%%", Math.min(100.0, bytes * 100.0 / total)));
+            }
+            if (current > 0) {
+                status.append(String.format(" - %.2f MB/s", current / (1024.0 * 1024.0)));
+                if (total > bytes) {
+                    long eta = Math.round((total - bytes) / current);
+                    status.append(String.format(" - ETA %02d:%02d", eta / 60, eta % 60));
+                }
+            }
+            String text = status.toString();
+            double fraction = progress.getFraction();
+            javafx.application.Platform.runLater(() -> {
+                if (task.isCompleted() || task.isFailed()) {
+                    return;
+                }
+                if (total >= 0) {
+                    task.setTotalBytes(total);
+                }
+                task.setBytesTransferred(bytes);
+                task.setBytesPerSecond(current);
+                if (fraction >= 0) {
+                    task.setProgress(fraction);
+                }
+                task.setStatus(text);
+            });
+        }
+    }
+    
+    /**
+     * Mette in pausa un trasferimento (solo per le operazioni che lo supportano)
+     */
+    public void pauseTransfer(TransferTask task) {
+        OperationControl control = controls.get(task);
+        if (control != null) {
+            control.pause();
+            task.setStatus("In pausa");
+        }
+    }
+    
+    public void resumeTransfer(TransferTask task) {
+        OperationControl control = controls.get(task);
+        if (control != null) {
+            control.resume();
+            task.setStatus("Ripresa...");
+        }
+    }
+    
+    public void cancelTransfer(TransferTask task) {
+        OperationControl control = controls.get(task);
+        if (control != null) {
+            control.cancel();
+            task.setStatus("Annullamento...");
+        }
+    }
+    
+    /**
+     * Riprova un trasferimento fallito, rimettendolo in fondo alla coda
+     */
+    public void retryTransfer(TransferTask task) {
+        if (task.isFailed() && task.getQueueId() > 0) {
+            activeTransfers.remove(task);
+            retryQueued(task.getQueueId());
+        }
+    }
+    
+    /**
+     * Aggiunge file/cartelle alla coda per download (FTP -> Locale). I file vengono trasferiti
+     * in parallelo con sessioni dedicate al server; ftpService serve solo per elencarli
+     */
+    public void queueDownload(List<String> remotePaths, File localDestinationDir, FtpService ftpService,
+                              FtpConnection connection) {
+        String server = registerServer(ftpService, connection);
         for (String remotePath : remotePaths) {
-            queueDownloadItem(remotePath, localDestinationDir, ftpService);
+            queueDownloadItem(remotePath, localDestinationDir, ftpService, server);
         }
+        transferQueue.sync();
         startProcessing();
     }
     
+    /**
+     * Download con la sola sessione indicata: i file vengono trasferiti uno alla volta
+     */
+    public void queueDownload(List<String> remotePaths, File localDestinationDir, FtpService ftpService) {
+        queueDownload(remotePaths, localDestinationDir, ftpService, null);
+    }
+    
     /**
      * Aggiunge file/cartelle alla coda per upload (Locale -> FTP)
      */
-    public void queueUpload(List<File> localFiles, String remoteDestinationPath, FtpService ftpService) {
-        this.currentFtpService = ftpService;
+    public void queueUpload(List<File> localFiles, String remoteDestinationPath, FtpService ftpService,
+                            FtpConnection connection) {
+        String server = registerServer(ftpService, connection);
         for (File localFile : localFiles) {
-            queueUploadItem(localFile, remoteDestinationPath, ftpService);
+            queueUploadItem(localFile, remoteDestinationPath, server);
+        }
+        transferQueue.sync();
+        startProcessing();
+    }
+    
+    public void queueUpload(List<File> localFiles, String remoteDestinationPath, FtpService ftpService) {
+        queueUpload(localFiles, remoteDestinationPath, ftpService, null);
+    }
+    
+    /**
+     * Chiave con cui gli elementi in coda ritrovano il server; senza connessione gli
+     * elementi usano la sessione indicata e non sopravvivono al riavvio
+     */
+    private String registerServer(FtpService ftpService, FtpConnection connection) {
+        if (connection != null) {
+            String server = FtpConnectionManager.getConnectionKey(connection);
+            connections.put(server, connection);
+            return server;
         }
+        String server = SHARED_SESSION_PREFIX + System.identityHashCode(ftpService);
+        sharedSessions.put(server, ftpService);
+        return server;
+    }
+    
+    private boolean isServerAvailable(String server) {
+        return connections.containsKey(server) || sharedSessions.containsKey(server);
+    }
+    
+    /**
+     * Elementi verso il server rimasti in coda o in corso alla chiusura dell'applicazione
+     */
+    public int countInterruptedTransfers(FtpConnection connection) {
+        return transferQueue.countWaiting(FtpConnectionManager.getConnectionKey(connection));
+    }
+    
+    /**
+     * Rimette in coda i trasferimenti interrotti nella posizione che avevano, ripresi dal
+     * punto raggiunto
+     */
+    public int resumeInterruptedTransfers(FtpConnection connection) {
+        String server = registerServer(null, connection);
+        int count = transferQueue.releaseWaiting(server);
         startProcessing();
+        return count;
+    }
+    
+    public void discardInterruptedTransfers(FtpConnection connection) {
+        transferQueue.discardWaiting(FtpConnectionManager.getConnectionKey(connection));
+    }
+    
+    // --- Gestione della coda ---
+    
+    /**
+     * I primi elementi della coda non ancora partiti, nell'ordine in cui partiranno
+     */
+    public List<TransferQueue.Item> getQueuedItems(int limit) {
+        return transferQueue.snapshot(limit);
+    }
+    
+    public int getQueueCount(TransferQueue.State state) {
+        return transferQueue.getCount(state);
+    }
+    
+    public void pauseQueued(int id) {
+        transferQueue.pause(id);
+    }
+    
+    public void resumeQueued(int id) {
+        transferQueue.resume(id);
+        startProcessing();
+    }
+    
+    public void setQueuedPriority(int id, int priority) {
+        transferQueue.setPriority(id, priority);
+    }
+    
+    public void moveQueued(int id, boolean front) {
+        transferQueue.move(id, front);
+    }
+    
+    public void removeQueued(int id) {
+        transferQueue.remove(id);
+    }
+    
+    public void retryQueued(int id) {
+        transferQueue.retry(id);
+        startProcessing();
+    }
+    
+    public int retryFailedTransfers() {
+        int count = transferQueue.retryFailed();
+        startProcessing();
+        return count;
     }
     
     /**
      * Aggiunge un elemento remoto alla coda di download
      */
-    private void queueDownloadItem(String remotePath, File localDestinationDir, FtpService ftpService) {
+    private void queueDownloadItem(String remotePath, File localDestinationDir, FtpService ftpService,
+                                   String server) {
         try {
             // Normalizza il percorso remoto
             String normalizedRemotePath = remotePath;
@@ -104,6 +531,7 @@ public class TransferService {
             // Determina se è un file o una directory
             FTPFile[] files = ftpService.listFiles(normalizedRemotePath);
             boolean isDirectory = false;
+            long size = -1;
             
             if (files != null && files.length > 0) {
                 if (files.length > 1) {
@@ -113,6 +541,7 @@ public class TransferService {
                     // Un elemento: controlla se è directory o file
                     FTPFile ftpFile = files[0];
                     isDirectory = ftpFile.isDirectory();
+                    size = ftpFile.getSize();
                 }
             } else {
                 // Se listFiles restituisce vuoto, prova a verificare nella directory parent
@@ -126,6 +555,7 @@ public class TransferService {
                         for (FTPFile f : parentFiles) {
                             if (f.getName().equals(fileName)) {
                                 isDirectory = f.isDirectory();
+                                size = f.getSize();
                                 break;
                             }
                         }
@@ -139,15 +569,15 @@ public class TransferService {
             
             if (isDirectory) {
                 // Aggiungi la directory e poi esplora ricorsivamente
-                transferQueue.offer(new TransferItem(normalizedRemotePath, localDestination.getAbsolutePath(), 
-                    true, fileName, "Download"));
+                int directory = transferQueue.add(normalizedRemotePath, localDestination.getAbsolutePath(),
+                    true, 0, fileName, "Download", server, 0);
                 
                 // Esplora ricorsivamente la directory
-                exploreRemoteDirectory(normalizedRemotePath, localDestination, ftpService);
+                exploreRemoteDirectory(normalizedRemotePath, localDestination, ftpService, server, directory);
             } else {
                 // Aggiungi il file alla coda
-                transferQueue.offer(new TransferItem(normalizedRemotePath, localDestination.getAbsolutePath(), 
-                    false, fileName, "Download"));
+                transferQueue.add(normalizedRemotePath, localDestination.getAbsolutePath(),
+                    false, size, fileName, "Download", server, 0);
             }
         } catch (Exception e) {
             System.err.println("Errore nell'aggiungere alla coda: " + e.getMessage());
@@ -158,7 +588,8 @@ public class TransferService {
     /**
      * Esplora ricorsivamente una directory remota e aggiunge tutti i file alla coda
      */
-    private void exploreRemoteDirectory(String remoteDirPath, File localDir, FtpService ftpService) {
+    private void exploreRemoteDirectory(String remoteDirPath, File localDir, FtpService ftpService,
+                                        String server, int parent) {
         try {
             // Normalizza il percorso
             String normalizedPath = remoteDirPath;
@@ -179,14 +610,14 @@ public class TransferService {
                     
                     if (ftpFile.isDirectory()) {
                         // Aggiungi la directory alla coda
-                        transferQueue.offer(new TransferItem(childRemotePath, childLocalFile.getAbsolutePath(), 
-                            true, fileName, "Download"));
+                        int directory = transferQueue.add(childRemotePath, childLocalFile.getAbsolutePath(),
+                            true, 0, fileName, "Download", server, parent);
                         // Esplora ricorsivamente
-                        exploreRemoteDirectory(childRemotePath, childLocalFile, ftpService);
+                        exploreRemoteDirectory(childRemotePath, childLocalFile, ftpService, server, directory);
                     } else {
                         // Aggiungi il file alla coda
-                        transferQueue.offer(new TransferItem(childRemotePath, childLocalFile.getAbsolutePath(), 
-                            false, fileName, "Download"));
+                        transferQueue.add(childRemotePath, childLocalFile.getAbsolutePath(),
+                            false, ftpFile.getSize(), fileName, "Download", server, parent);
                     }
                 }
             }
@@ -198,7 +629,7 @@ public class TransferService {
     /**
      * Aggiunge un elemento locale alla coda di upload
      */
-    private void queueUploadItem(File localFile, String remoteDestinationPath, FtpService ftpService) {
+    private void queueUploadItem(File localFile, String remoteDestinationPath, String server) {
         try {
             // Normalizza il percorso remoto
             String normalizedRemotePath = remoteDestinationPath;
@@ -214,13 +645,15 @@ public class TransferService {
             
             if (localFile.isDirectory()) {
                 // Aggiungi la directory e poi esplora ricorsivamente
-                transferQueue.offer(new TransferItem(localPath, remotePath, true, localFile.getName(), "Upload"));
+                int directory = transferQueue.add(localPath, remotePath, true, 0, localFile.getName(), "Upload",
+                    server, 0);
                 
                 // Esplora ricorsivamente la directory locale
-                exploreLocalDirectory(localFile, remotePath, ftpService);
+                exploreLocalDirectory(localFile, remotePath, server, directory);
             } else {
                 // Aggiungi il file alla coda
-                transferQueue.offer(new TransferItem(localPath, remotePath, false, localFile.getName(), "Upload"));
+                transferQueue.add(localPath, remotePath, false, localFile.length(), localFile.getName(), "Upload",
+                    server, 0);
             }
         } catch (Exception e) {
             System.err.println("Errore nell'aggiungere alla coda: " + e.getMessage());
@@ -231,7 +664,7 @@ public class TransferService {
     /**
      * Esplora ricorsivamente una directory locale e aggiunge tutti i file alla coda
      */
-    private void exploreLocalDirectory(File localDir, String remoteDirPath, FtpService ftpService) {
+    private void exploreLocalDirectory(File localDir, String remoteDirPath, String server, int parent) {
         File[] files = localDir.listFiles();
         if (files != null) {
             for (File file : files) {
@@ -241,172 +674,234 @@ public class TransferService {
                 
                 if (file.isDirectory()) {
                     // Aggiungi la directory alla coda
-                    transferQueue.offer(new TransferItem(file.getAbsolutePath(), remotePath, 
-                        true, file.getName(), "Upload"));
+                    int directory = transferQueue.add(file.getAbsolutePath(), remotePath,
+                        true, 0, file.getName(), "Upload", server, parent);
                     // Esplora ricorsivamente
-                    exploreLocalDirectory(file, remotePath, ftpService);
+                    exploreLocalDirectory(file, remotePath, server, directory);
                 } else {
                     // Aggiungi il file alla coda
-                    transferQueue.offer(new TransferItem(file.getAbsolutePath(), remotePath, 
-                        false, file.getName(), "Upload"));
+                    transferQueue.add(file.getAbsolutePath(), remotePath,
+                        false, file.length(), file.getName(), "Upload", server, parent);
                 }
             }
         }
     }
     
     /**
-     * Avvia il processing della coda se non è già in corso
+     * Avvia altri worker finché ci sono elementi in coda e il limite non è raggiunto
      */
     private void startProcessing() {
-        if (!isProcessing) {
-            isProcessing = true;
-            executorService.submit(this::processQueue);
+        int maxWorkers = Math.max(1, SettingsService.getInstance().getSettings().ftpParallelTransfers);
+        synchronized (workerLock) {
+            int queued = transferQueue.getCount(TransferQueue.State.QUEUED);
+            while (activeWorkers < maxWorkers && activeWorkers < queued) {
+                activeWorkers++;
+                executorService.submit(this::runWorker);
+            }
+        }
+    }
+    
+    /**
+     * Worker: prende un elemento alla volta dalla coda finché non è vuota, tenendo la
+     * propria sessione FTP. L'ultimo worker a terminare segnala il completamento
+     */
+    private void runWorker() {
+        WorkerSession session = new WorkerSession();
+        while (true) {
+            TransferQueue.Item queued;
+            boolean last = false;
+            synchronized (workerLock) {
+                queued = transferQueue.next(this::isServerAvailable);
+                if (queued == null) {
+                    activeWorkers--;
+                    last = activeWorkers == 0;
+                } else if (queued.isDirectory()) {
+                    runningDirectories.put(queued.getId(), new CountDownLatch(1));
+                }
+            }
+            if (queued == null) {
+                session.release();
+                if (last) {
+                    notifyAllComplete();
+                }
+                return;
+            }
+            TransferItem item = new TransferItem(queued, connections.get(queued.getServer()),
+                sharedSessions.get(queued.getServer()));
+            boolean success = false;
+            try {
+                // La directory che contiene l'elemento deve esistere prima del trasferimento:
+                // se un altro worker la sta creando si attende che finisca
+                CountDownLatch parent = runningDirectories.get(item.parentId);
+                if (parent != null) {
+                    parent.await();
+                }
+                if (item.connection == null && item.ftpService != null) {
+                    // Una sola sessione condivisa: un trasferimento alla volta
+                    synchronized (item.ftpService) {
+                        success = processItem(item, session);
+                    }
+                } else {
+                    success = processItem(item, session);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                transferQueue.finished(item.id, success);
+                CountDownLatch done = runningDirectories.remove(item.id);
+                if (done != null) {
+                    done.countDown();
+                }
+            }
         }
     }
     
     /**
-     * Processa la coda sequenzialmente, un file alla volta
+     * Crea la directory o trasferisce il file di un elemento della coda
      */
-    private void processQueue() {
-        int maxIterations = 10000; // Limite di sicurezza per evitare loop infiniti
-        int iteration = 0;
+    private boolean processItem(TransferItem item, WorkerSession session) {
+        // Crea il task per la visualizzazione
+        TransferTask task = new TransferTask(item.sourcePath, item.destinationPath, 
+            item.fileName, item.transferType);
+        task.setDirectory(item.isDirectory);
+        task.setQueueId(item.id);
+        if (item.connection != null) {
+            task.setServer(item.server);
+        }
+        
+        // Aggiungi il task immediatamente alla lista sulla JavaFX thread
+        javafx.application.Platform.runLater(() -> addTask(task));
         
-        while (!transferQueue.isEmpty() && iteration < maxIterations) {
-            iteration++;
-            TransferItem item = transferQueue.poll();
-            if (item == null) {
-                break;
+        ResumePoint point = new ResumePoint(0);
+        try {
+            // Un tentativo precedente non completato che aveva già scritto dei byte ha lasciato
+            // un file parziale da riprendere (da controllare prima di registrare il nuovo tentativo)
+            if (!item.isDirectory) {
+                TransferLogService.TransferLogEntry previous =
+                    TransferLogService.findUnfinishedTransfer(item.sourcePath, item.destinationPath);
+                if (previous != null && previous.bytesTransferred > 0
+                    && (item.size < 0 || previous.totalBytes <= 0 || previous.totalBytes == item.size)) {
+                    point.bytes = previous.bytesTransferred;
+                }
             }
             
-            // Crea il task per la visualizzazione
-            TransferTask task = new TransferTask(item.sourcePath, item.destinationPath, 
-                item.fileName, item.transferType);
-            
-            // Aggiungi il task immediatamente alla lista sulla JavaFX thread
-            javafx.application.Platform.runLater(() -> {
-                activeTransfers.add(task);
-            });
-            
+            // Salva il log in modo asincrono per non bloccare
             try {
-                // Salva il log in modo asincrono per non bloccare
-                try {
-                    TransferLogService.saveTransfer(task);
-                } catch (Exception logEx) {
-                    // Ignora errori di log, non bloccanti
-                    System.err.println("Errore nel salvataggio log: " + logEx.getMessage());
-                }
-                
-                if (item.isDirectory) {
-                    // Crea la directory
-                    if (item.transferType.equals("Download")) {
-                        // Download: crea directory locale
-                        File localDir = new File(item.destinationPath);
-                        if (!localDir.exists()) {
-                            boolean created = localDir.mkdirs();
-                            if (!created && !localDir.exists()) {
-                                throw new IOException("Impossibile creare directory locale: " + item.destinationPath);
-                            }
-                            javafx.application.Platform.runLater(() -> {
-                                task.setStatus("Directory creata: " + item.fileName);
-                            });
-                        } else {
-                            javafx.application.Platform.runLater(() -> {
-                                task.setStatus("Directory già esistente: " + item.fileName);
-                            });
+                TransferLogService.saveTransfer(task);
+            } catch (Exception logEx) {
+                // Ignora errori di log, non bloccanti
+                System.err.println("Errore nel salvataggio log: " + logEx.getMessage());
+            }
+            
+            if (item.isDirectory) {
+                // Crea la directory
+                if (item.transferType.equals("Download")) {
+                    // Download: crea directory locale
+                    File localDir = new File(item.destinationPath);
+                    if (!localDir.exists()) {
+                        boolean created = localDir.mkdirs();
+                        if (!created && !localDir.exists()) {
+                            throw new IOException("Impossibile creare directory locale: " + item.destinationPath);
                         }
+                        javafx.application.Platform.runLater(() -> {
+                            task.setStatus("Directory creata: " + item.fileName);
+                        });
                     } else {
-                        // Upload: crea directory remota
-                        FtpService ftpService = getFtpServiceForItem(item);
-                        if (ftpService != null) {
-                            // Verifica se la directory esiste già (con timeout implicito)
+                        javafx.application.Platform.runLater(() -> {
+                            task.setStatus("Directory già esistente: " + item.fileName);
+                        });
+                    }
+                } else {
+                    // Upload: crea directory remota
+                    FtpService ftpService = session.get(item);
+                    if (ftpService != null) {
+                        // Verifica se la directory esiste già (con timeout implicito)
+                        try {
+                            // Usa un timeout per evitare blocchi
+                            FTPFile[] files = null;
                             try {
-                                // Usa un timeout per evitare blocchi
-                                FTPFile[] files = null;
-                                try {
-                                    files = ftpService.listFiles(item.destinationPath);
-                                } catch (Exception listEx) {
-                                    // Se listFiles fallisce, ignora e prova a creare
-                                    System.err.println("Errore listFiles: " + listEx.getMessage());
-                                }
-                                
-                                if (files != null) {
-                                    // Directory esiste già
-                                    task.setStatus("Directory remota già esistente: " + item.fileName);
+                                files = ftpService.listFiles(item.destinationPath);
+                            } catch (Exception listEx) {
+                                // Se listFiles fallisce, ignora e prova a creare
+                                System.err.println("Errore listFiles: " + listEx.getMessage());
+                            }
+                            
+                            if (files != null) {
+                                // Directory esiste già
+                                showStatus(task, "Directory remota già esistente: " + item.fileName);
+                            } else {
+                                // Prova a crearla
+                                if (!ftpService.createDirectory(item.destinationPath)) {
+                                    // Potrebbe esistere già, non è un errore critico
+                                    showStatus(task, "Directory remota: " + item.fileName);
                                 } else {
-                                    // Prova a crearla
-                                    if (!ftpService.createDirectory(item.destinationPath)) {
-                                        // Potrebbe esistere già, non è un errore critico
-                                        task.setStatus("Directory remota: " + item.fileName);
-                                    } else {
-                                        task.setStatus("Directory remota creata: " + item.fileName);
-                                    }
+                                    showStatus(task, "Directory remota creata: " + item.fileName);
                                 }
-                            } catch (Exception e) {
-                                // Se listFiles fallisce, prova comunque a creare
-                                try {
-                                    if (!ftpService.createDirectory(item.destinationPath)) {
-                                        // Potrebbe esistere già, non è un errore critico
-                                        task.setStatus("Directory remota: " + item.fileName);
-                                    } else {
-                                        task.setStatus("Directory remota creata: " + item.fileName);
-                                    }
-                                } catch (Exception createEx) {
-                                    // Anche la creazione fallisce, ma non blocchiamo
-                                    task.setStatus("Directory remota: " + item.fileName + " (errore ignorato)");
-                                    System.err.println("Errore creazione directory: " + createEx.getMessage());
+                            }
+                        } catch (Exception e) {
+                            // Se listFiles fallisce, prova comunque a creare
+                            try {
+                                if (!ftpService.createDirectory(item.destinationPath)) {
+                                    // Potrebbe esistere già, non è un errore critico
+                                    showStatus(task, "Directory remota: " + item.fileName);
+                                } else {
+                                    showStatus(task, "Directory remota creata: " + item.fileName);
                                 }
+                            } catch (Exception createEx) {
+                                // Anche la creazione fallisce, ma non blocchiamo
+                                showStatus(task, "Directory remota: " + item.fileName + " (errore ignorato)");
+                                System.err.println("Errore creazione directory: " + createEx.getMessage());
                             }
-                        } else {
-                            throw new IOException("Servizio FTP non disponibile");
                         }
-                    }
-                } else {
-                    // Trasferisci il file
-                    if (item.transferType.equals("Download")) {
-                        downloadFile(item.sourcePath, item.destinationPath, task);
                     } else {
-                        uploadFile(item.sourcePath, item.destinationPath, task);
+                        throw new IOException("Servizio FTP non disponibile");
                     }
                 }
-                
-                // Aggiorna lo stato sulla JavaFX thread
-                javafx.application.Platform.runLater(() -> {
-                    task.setProgress(1.0);
-                    task.setStatus("Completato");
-                    task.setCompleted(true);
-                });
-                
+            } else {
+                // Trasferisci il file
+                transferFile(item, task, session, point);
+            }
+            
+            // Aggiorna lo stato sulla JavaFX thread; il log legge il task dopo l'aggiornamento
+            javafx.application.Platform.runLater(() -> {
+                task.setProgress(1.0);
+                task.setBytesPerSecond(0);
+                task.setStatus("Completato");
+                task.setCompleted(true);
                 try {
                     TransferLogService.saveTransfer(task);
                 } catch (Exception logEx) {
                     // Ignora errori di log
                     System.err.println("Errore nel salvataggio log finale: " + logEx.getMessage());
                 }
-                
-                notifyStatus(item.transferType, "Completato: " + item.fileName);
-                
-            } catch (Exception e) {
+            });
+            
+            notifyStatus(item.transferType, "Completato: " + item.fileName);
+            return true;
+            
+        } catch (Exception e) {
+            long bytesWritten = point.bytes;
+            javafx.application.Platform.runLater(() -> {
                 task.setFailed(true, e.getMessage());
                 task.setStatus("Errore: " + e.getMessage());
-                
                 try {
-                    TransferLogService.saveTransfer(task);
+                    TransferLogService.saveTransfer(task, bytesWritten);
                 } catch (Exception logEx) {
                     // Ignora errori di log
                     System.err.println("Errore nel salvataggio log errore: " + logEx.getMessage());
                 }
-                
-                notifyStatus(item.transferType, "Errore: " + item.fileName + " - " + e.getMessage());
-                e.printStackTrace();
+            });
+            if (item.connection != null) {
+                session.check();
             }
+            
+            notifyStatus(item.transferType, "Errore: " + item.fileName + " - " + e.getMessage());
+            e.printStackTrace();
+            return false;
         }
-        
-        if (iteration >= maxIterations) {
-            System.err.println("ATTENZIONE: Raggiunto il limite massimo di iterazioni nella coda!");
-        }
-        
-        isProcessing = false;
-        
+    }
+    
+    private void notifyAllComplete() {
         // Notifica quando tutti i trasferimenti sono completati
         javafx.application.Platform.runLater(() -> {
             boolean allComplete = activeTransfers.stream()
@@ -418,13 +913,56 @@ public class TransferService {
     }
     
     /**
-     * Download di un singolo file
+     * Trasferisce un file; dopo un errore di rete riprova con attese crescenti (1x, 2x, 4x...)
+     * riprendendo dai byte già scritti. Se la verifica fallisce si riparte da zero
      */
-    private void downloadFile(String remotePath, String localPath, TransferTask task) throws IOException {
-        javafx.application.Platform.runLater(() -> {
-            task.setStatus("Download in corso...");
-        });
-        
+    private void transferFile(TransferItem item, TransferTask task, WorkerSession session,
+                              ResumePoint point) throws IOException {
+        SettingsService.ApplicationSettings settings = SettingsService.getInstance().getSettings();
+        int retries = Math.max(0, settings.ftpRetryAttempts);
+        long delayMillis = Math.max(1, settings.ftpRetryDelaySeconds) * 1000L;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                if (item.transferType.equals("Download")) {
+                    downloadFile(item.sourcePath, item.destinationPath, item.size, point, task, session.get(item));
+                } else {
+                    uploadFile(item.sourcePath, item.destinationPath, point, task, session.get(item));
+                }
+                return;
+            } catch (IOException e) {
+                if (attempt >= retries || e instanceof InterruptedIOException) {
+                    throw e;
+                }
+                if (e instanceof VerificationException) {
+                    point.bytes = 0;
+                }
+                if (item.connection != null) {
+                    // La sessione caduta viene sostituita al prossimo tentativo
+                    session.check();
+                }
+                String message = String.format("Nuovo tentativo %d di %d tra %d s: %s",
+                    attempt + 1, retries, delayMillis / 1000, e.getMessage());
+                javafx.application.Platform.runLater(() -> {
+                    task.setBytesPerSecond(0);
+                    task.setStatus(message);
+                });
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Trasferimento interrotto");
+                }
+                delayMillis = Math.min(delayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+    
+    /**
+     * Download di un singolo file; riprende dalla lunghezza del file locale solo se contiene
+     * almeno i byte scritti da questo trasferimento (altrimenti è un file estraneo da sovrascrivere)
+     */
+    private void downloadFile(String remotePath, String localPath, long size, ResumePoint point, TransferTask task,
+                              FtpService ftpService) throws IOException {
         File localFile = new File(localPath);
         
         // Crea la directory parent se non esiste
@@ -433,88 +971,213 @@ public class TransferService {
             parentDir.mkdirs();
         }
         
-        // Ottieni il servizio FTP
-        FtpService ftpService = getFtpServiceForItem(new TransferItem(remotePath, localPath, false, 
-            new File(remotePath).getName(), "Download"));
-        
-        if (ftpService == null) {
-            throw new IOException("Servizio FTP non disponibile");
+        long offset = point.bytes > 0 && localFile.isFile() ? localFile.length() : 0;
+        if (offset < point.bytes || size >= 0 && offset > size) {
+            // Più corto dei byte scritti o più lungo del file remoto: non è una sua parte, si riscarica
+            offset = 0;
         }
+        long startOffset = offset;
+        javafx.application.Platform.runLater(() -> {
+            task.setStatus(startOffset > 0 ? "Ripresa download da " + startOffset + " byte..." : "Download in corso...");
+        });
         
-        // Usa il metodo semplice di download
-        boolean success = ftpService.downloadFile(remotePath, localFile.toPath());
+        // Con la verifica attiva l'hash dei byte ricevuti si calcola durante il download;
+        // in ripresa parte dai byte già presenti su disco
+        String algorithm = getFtpVerifyAlgorithm();
+        FileVerifier.Hasher hasher = algorithm != null ? FileVerifier.Hasher.create(algorithm) : null;
+        if (hasher != null && offset > 0) {
+            hashPrefix(localFile, offset, hasher);
+        }
+        if (offset > 0 && offset == size) {
+            // Tutti i byte sono già su disco: il file si considera completo solo se coincide con quello remoto
+            verifyComplete(ftpService, remotePath, localFile, algorithm, task);
+            showFinished(task, size, "Download completato");
+            return;
+        }
+        ProgressTracker tracker = meter(task, "Download", size, offset);
+        boolean success;
+        try {
+            success = ftpService.downloadFile(remotePath, localFile.toPath(), offset, hasher, tracker);
+        } finally {
+            point.bytes = tracker.snapshot().getBytesDone();
+        }
         
-        if (success) {
-            if (localFile.exists()) {
-                task.setTotalBytes(localFile.length());
-                task.setBytesTransferred(localFile.length());
-                task.setProgress(1.0);
-                task.setStatus("Download completato");
-            } else {
-                throw new IOException("File scaricato ma non trovato localmente: " + localPath);
-            }
-        } else {
-            // Verifica se il file esiste comunque (potrebbe essere stato scaricato parzialmente)
-            if (localFile.exists() && localFile.length() > 0) {
-                // File esiste, potrebbe essere stato scaricato correttamente nonostante il return false
-                task.setTotalBytes(localFile.length());
-                task.setBytesTransferred(localFile.length());
-                task.setProgress(1.0);
-                task.setStatus("Download completato");
-            } else {
-                throw new IOException("Download fallito per: " + remotePath);
-            }
+        if (!success) {
+            throw new IOException("Download interrotto per " + remotePath + " a " + localFile.length()
+                + " byte: " + ftpService.getReplyString().trim());
+        }
+        if (!localFile.exists()) {
+            throw new IOException("File scaricato ma non trovato localmente: " + localPath);
         }
+        if (size >= 0 && localFile.length() != size) {
+            throw new IOException("Download incompleto: " + localFile.length() + " di " + size + " byte");
+        }
+        if (hasher != null) {
+            verifyDownload(ftpService, remotePath, localFile, algorithm, hasher.result(), task);
+        } else if (offset > 0) {
+            // Senza checksum il file ripreso si controlla almeno con la dimensione remota
+            verifySize(ftpService, remotePath, localFile);
+        }
+        showFinished(task, localFile.length(), "Download completato");
     }
     
     /**
-     * Upload di un singolo file
+     * Upload di un singolo file; accoda al file remoto i byte mancanti solo se non supera
+     * i byte inviati da questo trasferimento (altrimenti è un file estraneo da sovrascrivere)
      */
-    private void uploadFile(String localPath, String remotePath, TransferTask task) throws IOException {
-        javafx.application.Platform.runLater(() -> {
-            task.setStatus("Upload in corso...");
-        });
-        
+    private void uploadFile(String localPath, String remotePath, ResumePoint point, TransferTask task,
+                            FtpService ftpService) throws IOException {
         File localFile = new File(localPath);
         if (!localFile.exists() || !localFile.isFile()) {
             throw new IOException("File locale non trovato: " + localPath);
         }
+        long length = localFile.length();
         
-        // Ottieni il servizio FTP
-        FtpService ftpService = getFtpServiceForItem(new TransferItem(localPath, remotePath, false, 
-            localFile.getName(), "Upload"));
-        
-        if (ftpService == null) {
-            throw new IOException("Servizio FTP non disponibile");
+        long offset = 0;
+        if (point.bytes > 0) {
+            long remoteSize = ftpService.getRemoteSize(remotePath);
+            if (remoteSize > 0 && remoteSize <= point.bytes && remoteSize <= length) {
+                offset = remoteSize;
+            }
         }
+        long startOffset = offset;
+        javafx.application.Platform.runLater(() -> {
+            task.setStatus(startOffset > 0 ? "Ripresa upload da " + startOffset + " byte..." : "Upload in corso...");
+        });
         
-        // Controlla se il file esiste già sul server
-        try {
-            FTPFile[] files = ftpService.listFiles(remotePath);
-            if (files != null && files.length > 0 && files[0].isFile()) {
-                // File esiste già - per ora sovrascrive (potresti voler chiedere conferma)
+        // Con la verifica attiva l'hash del file locale si calcola durante l'invio
+        String algorithm = getFtpVerifyAlgorithm();
+        FileVerifier.Hasher hasher = algorithm != null ? FileVerifier.Hasher.create(algorithm) : null;
+        if (hasher != null && offset > 0) {
+            hashPrefix(localFile, offset, hasher);
+        }
+        // Con offset == length non resta nulla da inviare: il controllo remoto sotto decide
+        boolean success = true;
+        if (offset < length || length == 0) {
+            ProgressTracker tracker = meter(task, "Upload", length, offset);
+            try {
+                success = ftpService.uploadFile(localFile.toPath(), remotePath, offset, hasher, tracker);
+            } finally {
+                point.bytes = tracker.snapshot().getBytesDone();
             }
-        } catch (Exception e) {
-            // Ignora errori di controllo
         }
         
-        // Usa il metodo semplice di upload
-        boolean success = ftpService.uploadFile(localFile.toPath(), remotePath);
-        
-        if (success) {
-            task.setTotalBytes(localFile.length());
-            task.setBytesTransferred(localFile.length());
+        if (!success) {
+            throw new IOException("Upload interrotto per " + remotePath + ": " + ftpService.getReplyString().trim());
+        }
+        if (hasher != null) {
+            verifyUpload(ftpService, remotePath, localFile, algorithm, hasher.result(), task);
+        } else if (offset > 0) {
+            verifySize(ftpService, remotePath, localFile);
+        }
+        showFinished(task, length, null);
+    }
+    
+    /**
+     * Mostra sul thread JavaFX il trasferimento concluso con tutti i suoi byte
+     */
+    private static void showFinished(TransferTask task, long bytes, String status) {
+        javafx.application.Platform.runLater(() -> {
+            task.setTotalBytes(bytes);
+            task.setBytesTransferred(bytes);
             task.setProgress(1.0);
-        } else {
-            throw new IOException("Upload fallito per: " + remotePath);
+            if (status != null) {
+                task.setStatus(status);
+            }
+        });
+    }
+    
+    private static void showStatus(TransferTask task, String status) {
+        javafx.application.Platform.runLater(() -> task.setStatus(status));
+    }
+    
+    /**
+     * Aggiunge all'hash i primi length byte del file (la parte già trasferita)
+     */
+    private void hashPrefix(File file, long length, FileVerifier.Hasher hasher) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("File parziale più corto del previsto: " + file);
+                }
+                hasher.update(buffer, 0, read);
+                remaining -= read;
+            }
         }
     }
     
     /**
-     * Ottiene il servizio FTP corrente
+     * Controlla contro il server un file locale già lungo quanto quello remoto: dimensione
+     * nota e uguale, e con la verifica attiva lo stesso hash se il server sa calcolarlo
      */
-    private FtpService getFtpServiceForItem(TransferItem item) {
-        return currentFtpService;
+    private void verifyComplete(FtpService ftpService, String remotePath, File localFile, String algorithm,
+                                TransferTask task) throws IOException {
+        long remoteSize = ftpService.getRemoteSize(remotePath);
+        if (remoteSize != localFile.length()) {
+            throw new VerificationException("Verifica fallita: dimensione remota " + remoteSize
+                + ", locale " + localFile.length());
+        }
+        if (algorithm != null) {
+            javafx.application.Platform.runLater(() -> task.setStatus("Verifica " + algorithm + "..."));
+            String remoteHash = ftpService.getServerHash(remotePath, algorithm);
+            if (remoteHash != null && !remoteHash.equals(FileVerifier.hash(localFile.toPath(), algorithm))) {
+                throw new VerificationException("Verifica fallita: checksum " + algorithm + " non corrispondente");
+            }
+        }
+    }
+    
+    private void verifySize(FtpService ftpService, String remotePath, File localFile) throws IOException {
+        long remoteSize = ftpService.getRemoteSize(remotePath);
+        if (remoteSize >= 0 && remoteSize != localFile.length()) {
+            throw new VerificationException("Verifica fallita: dimensione remota " + remoteSize
+                + ", locale " + localFile.length());
+        }
+    }
+    
+    /**
+     * Algoritmo di verifica per i trasferimenti FTP, null se la verifica è disattivata
+     */
+    private String getFtpVerifyAlgorithm() {
+        SettingsService.ApplicationSettings settings = SettingsService.getInstance().getSettings();
+        if (!settings.verifyCopies) {
+            return null;
+        }
+        // In modalità ASCII i fine riga vengono convertiti: dimensioni e checksum non sono confrontabili
+        if (settings.ftpTransmissionMode != null && !settings.ftpTransmissionMode.startsWith("Binaria")) {
+            return null;
+        }
+        return settings.verifyAlgorithm;
+    }
+    
+    /**
+     * Confronta l'hash dei byte ricevuti con quello del file salvato e la dimensione remota
+     */
+    private void verifyDownload(FtpService ftpService, String remotePath, File localFile, String algorithm,
+                                String receivedHash, TransferTask task) throws IOException {
+        javafx.application.Platform.runLater(() -> task.setStatus("Verifica " + algorithm + "..."));
+        verifySize(ftpService, remotePath, localFile);
+        String localHash = FileVerifier.hash(localFile.toPath(), algorithm);
+        if (!localHash.equals(receivedHash)) {
+            throw new VerificationException("Verifica fallita: checksum " + algorithm + " non corrispondente");
+        }
+    }
+    
+    /**
+     * Controlla la dimensione remota e, se il server calcola l'hash (HASH/XSHA256), lo
+     * confronta con quello dei byte inviati. Senza hash lato server basta la dimensione:
+     * rileggere il file raddoppierebbe la durata dell'upload
+     */
+    private void verifyUpload(FtpService ftpService, String remotePath, File localFile, String algorithm,
+                              String sentHash, TransferTask task) throws IOException {
+        javafx.application.Platform.runLater(() -> task.setStatus("Verifica " + algorithm + "..."));
+        verifySize(ftpService, remotePath, localFile);
+        String remoteHash = ftpService.getServerHash(remotePath, algorithm);
+        if (remoteHash != null && !remoteHash.equals(sentHash)) {
+            throw new VerificationException("Verifica fallita: checksum " + algorithm + " non corrispondente");
+        }
     }
     
     /**
@@ -534,5 +1197,7 @@ public class TransferService {
     
     public void shutdown() {
         executorService.shutdown();
+        localExecutor.shutdown();
+        transferQueue.close();
     }
 }
@@ -0,0 +1,141 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationResult;
+import com.totalcommander.models.ScanResult;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scansione preliminare di una selezione prima di copia/spostamento: conta file e byte
+ * percorrendo le sottocartelle in parallelo, con una sola stat per elemento
+ */
+public class TreeScanner {
+
+    private static final int SCAN_PARALLELISM = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private OperationControl control = new OperationControl();
+
+    public void setControl(OperationControl control) {
+        this.control = control;
+    }
+
+    /**
+     * Scansiona i file selezionati; le cartelle sono restituite in pre-ordine
+     */
+    public ScanResult scan(List<File> selection) {
+        List<OperationResult.FileResult> failures = Collections.synchronizedList(new ArrayList<>());
+        List<ScanResult.Entry> entries = new ArrayList<>();
+        List<ScanTask> tasks = new ArrayList<>();
+
+        for (File file : selection) {
+            Path source = file.toPath();
+            Path relative = source.getFileName();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isDirectory()) {
+                    tasks.add(new ScanTask(source, relative, failures));
+                } else {
+                    entries.add(new ScanResult.Entry(source, relative, attrs.size(), false));
+                }
+            } catch (IOException e) {
+                failures.add(new OperationResult.FileResult(source, null, 0, false, e.getMessage()));
+            }
+        }
+
+        if (!tasks.isEmpty()) {
+            ForkJoinPool pool = new ForkJoinPool(SCAN_PARALLELISM);
+            try {
+                for (ScanTask task : tasks) {
+                    entries.addAll(pool.invoke(task));
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        return new ScanResult(entries, new ArrayList<>(failures), control.isCancelled());
+    }
+
+    /**
+     * Verifica che il volume di destinazione abbia spazio sufficiente per la scansione
+     */
+    public static void ensureFreeSpace(ScanResult scan, Path destination) throws IOException {
+        FileStore store = Files.getFileStore(destination);
+        long usable = store.getUsableSpace();
+        if (usable < scan.getTotalBytes()) {
+            throw new IOException(String.format("Spazio insufficiente su %s: servono %.2f MB, liberi %.2f MB",
+                store.name(), scan.getTotalBytes() / (1024.0 * 1024.0), usable / (1024.0 * 1024.0)));
+        }
+    }
+
+    /**
+     * Scansiona una cartella (profondità 1) e delega le sottocartelle a sotto-task;
+     * restituisce il sotto-albero in pre-ordine
+     */
+    private class ScanTask extends RecursiveTask<List<ScanResult.Entry>> {
+        private static final long serialVersionUID = 1L;
+        
+        private final Path directory;
+        private final Path relative;
+        private final List<OperationResult.FileResult> failures;
+
+        ScanTask(Path directory, Path relative, List<OperationResult.FileResult> failures) {
+            this.directory = directory;
+            this.relative = relative;
+            this.failures = failures;
+        }
+
+        @Override
+        protected List<ScanResult.Entry> compute() {
+            List<ScanResult.Entry> entries = new ArrayList<>();
+            if (!control.checkpoint()) {
+                return entries;
+            }
+            entries.add(new ScanResult.Entry(directory, relative, 0, true));
+            List<ScanTask> subtasks = new ArrayList<>();
+            try {
+                Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            Path childRelative = relative.resolve(file.getFileName().toString());
+                            if (attrs.isDirectory()) {
+                                subtasks.add(new ScanTask(file, childRelative, failures));
+                            } else {
+                                entries.add(new ScanResult.Entry(file, childRelative, attrs.size(), false));
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                            failures.add(new OperationResult.FileResult(file, null, 0, false, exc.getMessage()));
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+            } catch (IOException e) {
+                failures.add(new OperationResult.FileResult(directory, null, 0, false, e.getMessage()));
+            }
+            invokeAll(subtasks);
+            for (ScanTask subtask : subtasks) {
+                entries.addAll(subtask.join());
+            }
+            return entries;
+        }
+    }
+}
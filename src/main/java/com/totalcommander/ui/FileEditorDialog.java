@@ -1,5 +1,6 @@
 package com.totalcommander.ui;
 
+import com.totalcommander.services.ContentSniffer;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -8,8 +9,7 @@ import javafx.stage.StageStyle;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.charset.StandardCharsets;
-import java.nio.charset.Charset;
+import java.nio.charset.CharacterCodingException;
 
 /**
  * Dialog per modificare file di testo
@@ -18,6 +18,7 @@ public class FileEditorDialog extends Stage {
     
     private TextArea textArea;
     private File file;
+    private ContentSniffer.Verdict verdict; // charset e BOM del file, riusati al salvataggio
     private boolean hasChanges = false;
     
     public FileEditorDialog(File file) {
@@ -112,8 +113,9 @@ public class FileEditorDialog extends Stage {
                 return;
             }
             
-            // Verifica se è un file binario
-            if (isBinaryFile(file)) {
+            // Verifica se è un file binario (dal contenuto, non dall'estensione)
+            verdict = ContentSniffer.getInstance().sniff(file.toPath());
+            if (verdict.isBinary()) {
                 Alert alert = new Alert(Alert.AlertType.WARNING);
                 alert.setTitle("File binario");
                 alert.setHeaderText("Impossibile modificare file binari");
@@ -136,36 +138,7 @@ public class FileEditorDialog extends Stage {
             
             byte[] bytes = Files.readAllBytes(file.toPath());
             
-            // Prova diversi charset per leggere il file
-            String[] charsets = {"UTF-8", "Windows-1252", "ISO-8859-1", "US-ASCII"};
-            boolean loaded = false;
-            
-            for (String charsetName : charsets) {
-                try {
-                    Charset charset = Charset.forName(charsetName);
-                    String content = new String(bytes, charset);
-                    // Verifica se contiene caratteri non stampabili (eccetto spazi, tab, newline)
-                    boolean hasInvalidChars = false;
-                    for (char c : content.toCharArray()) {
-                        if (c < 32 && c != 9 && c != 10 && c != 13) {
-                            hasInvalidChars = true;
-                            break;
-                        }
-                    }
-                    if (!hasInvalidChars || charsetName.equals("UTF-8")) {
-                        textArea.setText(content);
-                        loaded = true;
-                        break;
-                    }
-                } catch (Exception e) {
-                    // Prova il prossimo charset
-                }
-            }
-            
-            if (!loaded) {
-                // Se tutti i charset falliscono, usa UTF-8 comunque
-                textArea.setText(new String(bytes, StandardCharsets.UTF_8));
-            }
+            textArea.setText(verdict.decode(bytes));
             
             hasChanges = false;
             setTitle("Modifica: " + file.getName());
@@ -181,9 +154,13 @@ public class FileEditorDialog extends Stage {
     }
     
     private boolean saveFile() {
+        if (verdict == null) {
+            // File non caricato (non valido o binario): nulla da salvare
+            return false;
+        }
         try {
             String content = textArea.getText();
-            Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            Files.write(file.toPath(), verdict.encode(content));
             
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
             alert.setTitle("Salvataggio completato");
@@ -192,6 +169,14 @@ public class FileEditorDialog extends Stage {
             alert.showAndWait();
             
             return true;
+        } catch (CharacterCodingException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Errore");
+            alert.setHeaderText("Errore durante il salvataggio");
+            alert.setContentText("Il testo contiene caratteri non rappresentabili nella codifica del file ("
+                + verdict.getCharset().name() + ").");
+            alert.showAndWait();
+            return false;
         } catch (IOException e) {
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("Errore");
@@ -201,42 +186,4 @@ public class FileEditorDialog extends Stage {
             return false;
         }
     }
-    
-    private boolean isBinaryFile(File file) {
-        String name = file.getName().toLowerCase();
-        String[] binaryExtensions = {
-            // Immagini
-            "jpg", "jpeg", "png", "gif", "bmp", "tiff", "tif", "ico", "svg", "webp",
-            "psd", "raw", "cr2", "nef", "orf", "sr2", "dng", "heic", "heif",
-            // Video
-            "mp4", "avi", "mkv", "mov", "wmv", "flv", "webm", "m4v", "mpg", "mpeg",
-            // Audio
-            "mp3", "wav", "flac", "ogg", "aac", "m4a", "wma", "opus",
-            // Eseguibili
-            "exe", "dll", "so", "dylib", "bin", "com", "bat", "cmd", "scr", "msi",
-            // Archivi
-            "zip", "rar", "7z", "tar", "gz", "bz2", "xz", "cab",
-            // Documenti binari
-            "doc", "xls", "ppt", "mdb", "accdb", "pdf",
-            // Database
-            "db", "sqlite", "sqlite3", "mdb", "accdb",
-            // Font
-            "ttf", "otf", "woff", "woff2", "eot", "fon"
-        };
-        
-        int lastDot = name.lastIndexOf('.');
-        if (lastDot > 0 && lastDot < name.length() - 1) {
-            String ext = name.substring(lastDot + 1);
-            for (String binaryExt : binaryExtensions) {
-                if (ext.equals(binaryExt)) {
-                    return true;
-                }
-            }
-        }
-        
-        return false;
-    }
 }
-
-
-
@@ -1,5 +1,7 @@
 package com.totalcommander.ui;
 
+import com.totalcommander.services.ArchiveService;
+import com.totalcommander.services.ContentSniffer;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
@@ -8,14 +10,15 @@ import javafx.stage.StageStyle;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.charset.StandardCharsets;
-import java.nio.charset.Charset;
+import java.nio.file.Path;
 
 /**
  * Dialog per visualizzare il contenuto dei file
  */
 public class FileViewerDialog extends Stage {
     
+    private static final int MAX_VIEW_SIZE = 50 * 1024 * 1024;
+    
     private TextArea textArea;
     private TextArea hexArea;
     private TabPane tabPane;
@@ -33,6 +36,21 @@ public class FileViewerDialog extends Stage {
         loadFile();
     }
     
+    /**
+     * Visualizza un elemento di un archivio senza estrarlo su disco
+     */
+    public FileViewerDialog(Path archive, String entry) {
+        this.file = archive.toFile();
+        initStyle(StageStyle.UTILITY);
+        setTitle("Visualizza: " + archive.getFileName() + "!/" + entry);
+        setWidth(900);
+        setHeight(700);
+        setResizable(true);
+        
+        initializeUI();
+        loadArchiveEntry(archive, entry);
+    }
+    
     private void initializeUI() {
         VBox root = new VBox(10);
         root.setPadding(new Insets(10));
@@ -87,25 +105,12 @@ public class FileViewerDialog extends Stage {
             }
             
             long fileSize = file.length();
-            if (fileSize > 50 * 1024 * 1024) { // 50MB
-                textArea.setText("File troppo grande per la visualizzazione (> 50MB).");
-                hexArea.setText("File troppo grande per la visualizzazione (> 50MB).");
+            if (fileSize > MAX_VIEW_SIZE) {
+                showTooLarge();
                 return;
             }
             
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            
-            // Carica vista esadecimale
-            loadHexView(bytes);
-            
-            // Prova a caricare come testo
-            if (isTextFile(file)) {
-                loadTextView(bytes);
-                tabPane.getSelectionModel().select(0); // Seleziona tab testo
-            } else {
-                textArea.setText("File binario - usa la vista esadecimale.");
-                tabPane.getSelectionModel().select(1); // Seleziona tab esadecimale
-            }
+            showContent(Files.readAllBytes(file.toPath()), ContentSniffer.getInstance().sniff(file.toPath()));
             
         } catch (IOException e) {
             textArea.setText("Errore durante la lettura del file: " + e.getMessage());
@@ -113,33 +118,41 @@ public class FileViewerDialog extends Stage {
         }
     }
     
-    private void loadTextView(byte[] bytes) {
-        // Prova diversi charset
-        String[] charsets = {"UTF-8", "Windows-1252", "ISO-8859-1", "US-ASCII"};
-        
-        for (String charsetName : charsets) {
-            try {
-                Charset charset = Charset.forName(charsetName);
-                String content = new String(bytes, charset);
-                // Verifica se contiene caratteri non stampabili (eccetto spazi, tab, newline)
-                boolean hasInvalidChars = false;
-                for (char c : content.toCharArray()) {
-                    if (c < 32 && c != 9 && c != 10 && c != 13) {
-                        hasInvalidChars = true;
-                        break;
-                    }
-                }
-                if (!hasInvalidChars || charsetName.equals("UTF-8")) {
-                    textArea.setText(content);
-                    return;
-                }
-            } catch (Exception e) {
-                // Prova il prossimo charset
+    private void loadArchiveEntry(Path archive, String entry) {
+        try {
+            byte[] bytes = new ArchiveService().readEntry(archive, entry, MAX_VIEW_SIZE + 1);
+            if (bytes == null) {
+                textArea.setText("Elemento non trovato nell'archivio.");
+                return;
             }
+            if (bytes.length > MAX_VIEW_SIZE) {
+                showTooLarge();
+                return;
+            }
+            showContent(bytes, ContentSniffer.sniff(bytes, bytes.length));
+        } catch (IOException e) {
+            textArea.setText("Errore durante la lettura dell'archivio: " + e.getMessage());
+            hexArea.setText("Errore durante la lettura dell'archivio: " + e.getMessage());
         }
+    }
+    
+    private void showTooLarge() {
+        textArea.setText("File troppo grande per la visualizzazione (> 50MB).");
+        hexArea.setText("File troppo grande per la visualizzazione (> 50MB).");
+    }
+    
+    private void showContent(byte[] bytes, ContentSniffer.Verdict verdict) {
+        // Carica vista esadecimale
+        loadHexView(bytes);
         
-        // Se tutti i charset falliscono, usa UTF-8 comunque
-        textArea.setText(new String(bytes, StandardCharsets.UTF_8));
+        // Testo decodificato con il charset riconosciuto dai primi byte
+        if (!verdict.isBinary()) {
+            textArea.setText(verdict.decode(bytes));
+            tabPane.getSelectionModel().select(0); // Seleziona tab testo
+        } else {
+            textArea.setText("File binario - usa la vista esadecimale.");
+            tabPane.getSelectionModel().select(1); // Seleziona tab esadecimale
+        }
     }
     
     private void loadHexView(byte[] bytes) {
@@ -176,31 +189,4 @@ public class FileViewerDialog extends Stage {
         
         hexArea.setText(hex.toString());
     }
-    
-    private boolean isTextFile(File file) {
-        String name = file.getName().toLowerCase();
-        String[] textExtensions = {
-            "txt", "log", "ini", "cfg", "conf", "xml", "html", "htm", "css", "js",
-            "json", "java", "c", "cpp", "h", "hpp", "py", "rb", "php", "asp", "aspx",
-            "sql", "sh", "bat", "cmd", "ps1", "md", "yml", "yaml", "properties",
-            "csv", "tsv", "rtf", "tex", "latex", "bib", "clj", "cljs", "edn",
-            "go", "rs", "swift", "kt", "scala", "r", "m", "pl", "pm", "lua",
-            "vim", "vimrc", "gitignore", "gitconfig", "dockerfile", "makefile"
-        };
-        
-        int lastDot = name.lastIndexOf('.');
-        if (lastDot > 0 && lastDot < name.length() - 1) {
-            String ext = name.substring(lastDot + 1);
-            for (String textExt : textExtensions) {
-                if (ext.equals(textExt)) {
-                    return true;
-                }
-            }
-        }
-        
-        return false;
-    }
 }
-
-
-
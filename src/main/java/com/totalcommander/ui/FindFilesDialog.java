@@ -1,5 +1,11 @@
 package com.totalcommander.ui;
 
+import com.totalcommander.models.SearchHit;
+import com.totalcommander.services.FileNameIndex;
+import com.totalcommander.services.FileSearchEngine;
+import com.totalcommander.services.OperationControl;
+import com.totalcommander.services.SearchIndexService;
+import com.totalcommander.services.SettingsService;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
@@ -8,13 +14,12 @@ import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.PatternSyntaxException;
 
 /**
@@ -48,11 +53,18 @@ public class FindFilesDialog extends Stage {
     private CheckBox pluginCheckBox;
     private TextField pluginField;
     
+    private CheckBox useIndexCheckBox;
+    private ListView<SearchIndexService.RootInfo> indexedRootsList;
+    
     private TableView<SearchResult> resultsTable;
     private Label statusLabel;
     private ProgressBar progressBar;
     private ExecutorService executorService;
     private boolean isSearching = false;
+    private OperationControl searchControl;
+    // Risultati trovati dai thread di ricerca, in attesa di essere mostrati
+    private final ConcurrentLinkedQueue<SearchHit> pendingResults = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
     
     public FindFilesDialog() {
         initStyle(StageStyle.UTILITY);
@@ -66,6 +78,9 @@ public class FindFilesDialog extends Stage {
         initializeUI();
         
         setOnCloseRequest(e -> {
+            if (searchControl != null) {
+                searchControl.cancel();
+            }
             if (executorService != null) {
                 executorService.shutdown();
             }
@@ -81,7 +96,7 @@ public class FindFilesDialog extends Stage {
         generalTab.setContent(createGeneralTab());
         tabPane.getTabs().add(generalTab);
         
-        // Tab Estesa (placeholder per ora)
+        // Tab Estesa
         Tab extendedTab = new Tab("Estesa");
         extendedTab.setClosable(false);
         extendedTab.setContent(createExtendedTab());
@@ -127,6 +142,17 @@ public class FindFilesDialog extends Stage {
         
         resultsTable.getColumns().addAll(pathColumn, nameColumn, sizeColumn, dateColumn);
         
+        // Doppio clic: apre il risultato nel visualizzatore (anche dentro un archivio)
+        resultsTable.setRowFactory(table -> {
+            TableRow<SearchResult> row = new TableRow<>();
+            row.setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && !row.isEmpty()) {
+                    openResult(row.getItem().getHit());
+                }
+            });
+            return row;
+        });
+        
         // Status e progress
         progressBar = new ProgressBar();
         progressBar.setProgress(-1);
@@ -140,6 +166,9 @@ public class FindFilesDialog extends Stage {
         
         Button cancelButton = new Button("Annulla");
         cancelButton.setOnAction(e -> {
+            if (searchControl != null) {
+                searchControl.cancel();
+            }
             isSearching = false;
             progressBar.setVisible(false);
             statusLabel.setText("Ricerca annullata");
@@ -250,7 +279,7 @@ public class FindFilesDialog extends Stage {
         dosCharsetCheckBox = new CheckBox("Set caratteri DOS (ASCII)");
         unicodeUtf16CheckBox = new CheckBox("Unicode UTF16");
         utf8CheckBox = new CheckBox("UTF8");
-        officeXmlCheckBox = new CheckBox("Office XML (docx, xlsx, odt");
+        officeXmlCheckBox = new CheckBox("Office XML (docx, xlsx, pptx, odt)");
         
         Button addCharsetButton = new Button("+");
         
@@ -293,10 +322,84 @@ public class FindFilesDialog extends Stage {
     private VBox createExtendedTab() {
         VBox content = new VBox(10);
         content.setPadding(new Insets(10));
-        content.getChildren().add(new Label("Opzioni estese - In sviluppo"));
+        
+        SettingsService settingsService = SettingsService.getInstance();
+        useIndexCheckBox = new CheckBox("Usa l'indice quando la cartella è indicizzata");
+        useIndexCheckBox.setSelected(settingsService.getSettings().useSearchIndex);
+        useIndexCheckBox.setOnAction(e -> {
+            settingsService.getSettings().useSearchIndex = useIndexCheckBox.isSelected();
+            settingsService.saveSettings();
+        });
+        
+        // Cartelle indicizzate con data dell'ultimo aggiornamento
+        indexedRootsList = new ListView<>();
+        indexedRootsList.setPrefHeight(150);
+        indexedRootsList.setCellFactory(list -> new ListCell<SearchIndexService.RootInfo>() {
+            @Override
+            protected void updateItem(SearchIndexService.RootInfo info, boolean empty) {
+                super.updateItem(info, empty);
+                if (empty || info == null) {
+                    setText(null);
+                } else if (SearchIndexService.getInstance().isUpdating(info)) {
+                    setText(info.root + " - aggiornamento in corso...");
+                } else if (info.builtAt == 0) {
+                    setText(info.root + " - non ancora indicizzata");
+                } else {
+                    setText(info.root + " - aggiornato il " + formatDate(info.builtAt) + ", " + info.fileCount + " file");
+                }
+            }
+        });
+        refreshIndexedRoots();
+        
+        Button addButton = new Button("Indicizza cartella di ricerca");
+        addButton.setOnAction(e -> {
+            String path = searchInField.getText().trim();
+            if (path.isEmpty() || !new File(path).isDirectory()) {
+                statusLabel.setText("Seleziona una directory valida da indicizzare");
+                return;
+            }
+            SearchIndexService.getInstance().addRoot(new File(path).toPath(), this::indexUpdated);
+            refreshIndexedRoots();
+        });
+        Button updateButton = new Button("Aggiorna");
+        updateButton.setOnAction(e -> {
+            SearchIndexService.RootInfo selected = indexedRootsList.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                SearchIndexService.getInstance().update(selected, this::indexUpdated);
+                refreshIndexedRoots();
+            }
+        });
+        Button removeButton = new Button("Rimuovi");
+        removeButton.setOnAction(e -> {
+            SearchIndexService.RootInfo selected = indexedRootsList.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                SearchIndexService.getInstance().removeRoot(selected);
+                refreshIndexedRoots();
+            }
+        });
+        HBox indexButtons = new HBox(5, addButton, updateButton, removeButton);
+        
+        content.getChildren().addAll(useIndexCheckBox, new Label("Cartelle indicizzate:"),
+            indexedRootsList, indexButtons);
         return content;
     }
     
+    private void refreshIndexedRoots() {
+        indexedRootsList.getItems().setAll(SearchIndexService.getInstance().getRoots());
+    }
+    
+    /**
+     * Chiamato dal thread dell'indice al termine di un aggiornamento
+     */
+    private void indexUpdated(String message) {
+        javafx.application.Platform.runLater(() -> {
+            refreshIndexedRoots();
+            if (!isSearching) {
+                statusLabel.setText(message);
+            }
+        });
+    }
+    
     private VBox createPluginTab() {
         VBox content = new VBox(10);
         content.setPadding(new Insets(10));
@@ -392,6 +495,36 @@ public class FindFilesDialog extends Stage {
             return;
         }
         
+        // Opzioni lette qui sul thread JavaFX, il motore lavora in background
+        FileSearchEngine engine = new FileSearchEngine();
+        try {
+            engine.setNamePattern(searchPattern, regexCheckBox.isSelected(), caseSensitiveCheckBox.isSelected());
+        } catch (PatternSyntaxException e) {
+            statusLabel.setText("Errore nel pattern RegEx: " + e.getMessage());
+            return;
+        }
+        if (findTextCheckBox.isSelected()) {
+            try {
+                engine.setContentPattern(contentPattern, regex2CheckBox.isSelected(), wholeWordCheckBox.isSelected(),
+                    hexadecimalCheckBox.isSelected(), caseSensitiveCheckBox.isSelected());
+            } catch (IllegalArgumentException e) {
+                // Regex o sequenza esadecimale non valida
+                statusLabel.setText("Errore nel pattern contenuto: " + e.getMessage());
+                return;
+            }
+            engine.setNotContaining(searchFilesNotContainingCheckBox.isSelected());
+            engine.setCharset(java.nio.charset.Charset.forName(determineCharset("")));
+            engine.setOfficeXml(officeXmlCheckBox.isSelected());
+        }
+        engine.setMaxDepth(getMaxDepth());
+        engine.setUseIndex(useIndexCheckBox.isSelected());
+        engine.setUseNameIndex(everythingCheckBox.isSelected());
+        engine.setSearchArchives(searchArchivesCheckBox.isSelected());
+        OperationControl control = new OperationControl();
+        engine.setControl(control);
+        searchControl = control;
+        pendingResults.clear();
+        
         isSearching = true;
         progressBar.setVisible(true);
         statusLabel.setText("Ricerca in corso...");
@@ -402,19 +535,34 @@ public class FindFilesDialog extends Stage {
         
         executorService.submit(() -> {
             try {
-                int maxDepth = getMaxDepth();
-                boolean useRegex = regexCheckBox.isSelected();
-                boolean searchInContent = findTextCheckBox.isSelected();
-                String contentPatternText = findTextField.getText().trim();
-                boolean caseSensitive = caseSensitiveCheckBox.isSelected();
-                
-                searchFiles(searchDir.toPath(), searchPattern, useRegex, maxDepth, 
-                           searchInContent, contentPatternText, caseSensitive, 0);
+                engine.search(searchDir.toPath(), hit -> publish(hit, control));
                 
                 javafx.application.Platform.runLater(() -> {
+                    if (control != searchControl) {
+                        return;
+                    }
+                    flushResults(control);
                     isSearching = false;
                     progressBar.setVisible(false);
-                    statusLabel.setText("Ricerca completata. Trovati " + resultsTable.getItems().size() + " file.");
+                    if (control.isCancelled()) {
+                        statusLabel.setText("Ricerca annullata. Trovati " + resultsTable.getItems().size() + " file.");
+                    } else if (engine.getUsedIndex() != null) {
+                        SearchIndexService.Snapshot index = engine.getUsedIndex();
+                        statusLabel.setText("Ricerca completata. Trovati " + resultsTable.getItems().size()
+                            + " file in " + engine.getFilesScanned() + " candidati (indice del "
+                            + formatDate(index.getBuiltAt()) + ").");
+                        refreshStaleIndex(index);
+                    } else if (engine.getUsedNameIndex() != null) {
+                        statusLabel.setText("Ricerca completata. Trovati " + resultsTable.getItems().size()
+                            + " file (indice dei nomi del " + formatDate(engine.getUsedNameIndex().getBuiltAt()) + ").");
+                        refreshNameIndex(engine.getUsedNameIndex(), searchDir);
+                    } else {
+                        statusLabel.setText("Ricerca completata. Trovati " + resultsTable.getItems().size()
+                            + " file in " + engine.getFilesScanned() + " esaminati.");
+                        if (everythingCheckBox.isSelected()) {
+                            refreshNameIndex(null, searchDir);
+                        }
+                    }
                 });
                 
             } catch (Exception e) {
@@ -428,275 +576,86 @@ public class FindFilesDialog extends Stage {
         });
     }
     
-    private int getMaxDepth() {
-        String selected = subfoldersCombo.getValue();
-        if (selected == null || selected.equals("Tutte (profondità illimitata)")) {
-            return Integer.MAX_VALUE;
-        } else if (selected.equals("Nessuna")) {
-            return 0;
-        } else {
-            try {
-                return Integer.parseInt(selected.split(" ")[0]);
-            } catch (Exception e) {
-                return Integer.MAX_VALUE;
-            }
+    /**
+     * Un indice più vecchio del limite nelle impostazioni viene aggiornato in background,
+     * così la ricerca successiva è di nuovo attuale
+     */
+    private void refreshStaleIndex(SearchIndexService.Snapshot index) {
+        long maxAge = SettingsService.getInstance().getSettings().searchIndexRefreshMinutes * 60_000L;
+        if (System.currentTimeMillis() - index.getBuiltAt() < maxAge) {
+            return;
+        }
+        SearchIndexService.RootInfo info = SearchIndexService.getInstance().findRoot(index.getRoot());
+        if (info != null) {
+            SearchIndexService.getInstance().update(info, this::indexUpdated);
         }
     }
     
-    private void searchFiles(Path dir, String pattern, boolean useRegex, int maxDepth,
-                            boolean searchInContent, String contentPattern, boolean caseSensitive, int currentDepth) {
-        if (!isSearching || currentDepth > maxDepth) {
+    /**
+     * Con "Everything" attivo costruisce in background l'indice dei nomi dell'unità quando
+     * manca, non contiene la cartella cercata o è più vecchio del limite nelle impostazioni
+     */
+    private void refreshNameIndex(FileNameIndex.Index index, File searchDir) {
+        long maxAge = SettingsService.getInstance().getSettings().searchIndexRefreshMinutes * 60_000L;
+        if (index != null && System.currentTimeMillis() - index.getBuiltAt() < maxAge) {
             return;
         }
-        
-        try {
-            File dirFile = dir.toFile();
-            if (!dirFile.exists() || !dirFile.isDirectory()) {
-                return;
-            }
-            
-            File[] files = dirFile.listFiles();
-            if (files == null) {
-                return;
-            }
-            
-            Pattern namePattern = null;
-            if (!pattern.isEmpty()) {
-                try {
-                    if (useRegex) {
-                        namePattern = caseSensitive ? Pattern.compile(pattern) : 
-                                     Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
-                    } else {
-                        // Converti wildcard in regex
-                        // Escape dei caratteri speciali regex, poi sostituisci * e ?
-                        StringBuilder regexBuilder = new StringBuilder();
-                        for (char c : pattern.toCharArray()) {
-                            if (c == '*') {
-                                regexBuilder.append(".*");
-                            } else if (c == '?') {
-                                regexBuilder.append(".");
-                            } else if (c == '.' || c == '^' || c == '$' || c == '+' || 
-                                      c == '{' || c == '}' || c == '(' || c == ')' || 
-                                      c == '|' || c == '[' || c == ']' || c == '\\') {
-                                // Escape caratteri speciali regex
-                                regexBuilder.append("\\").append(c);
-                            } else {
-                                regexBuilder.append(c);
-                            }
-                        }
-                        String regexPattern = regexBuilder.toString();
-                        namePattern = caseSensitive ? Pattern.compile(regexPattern) :
-                                     Pattern.compile(regexPattern, Pattern.CASE_INSENSITIVE);
-                    }
-                } catch (PatternSyntaxException e) {
-                    javafx.application.Platform.runLater(() -> {
-                        statusLabel.setText("Errore nel pattern RegEx: " + e.getMessage());
-                    });
-                    return;
-                }
-            }
-            
-            Pattern contentPatternObj = null;
-            if (searchInContent && !contentPattern.isEmpty()) {
-                try {
-                    String patternToUse = contentPattern;
-                    
-                    // Gestione esadecimale
-                    if (hexadecimalCheckBox.isSelected()) {
-                        // Converti esadecimale in pattern
-                        patternToUse = convertHexToPattern(contentPattern);
-                    }
-                    
-                    // Gestione parola intera
-                    if (wholeWordCheckBox.isSelected() && !regex2CheckBox.isSelected()) {
-                        patternToUse = "\\b" + Pattern.quote(patternToUse) + "\\b";
-                    } else if (wholeWordCheckBox.isSelected() && regex2CheckBox.isSelected()) {
-                        patternToUse = "\\b" + patternToUse + "\\b";
-                    } else if (!regex2CheckBox.isSelected()) {
-                        patternToUse = Pattern.quote(patternToUse);
-                    }
-                    
-                    if (regex2CheckBox.isSelected()) {
-                        contentPatternObj = caseSensitive ? Pattern.compile(patternToUse) :
-                                           Pattern.compile(patternToUse, Pattern.CASE_INSENSITIVE);
-                    } else {
-                        contentPatternObj = caseSensitive ? Pattern.compile(patternToUse) :
-                                           Pattern.compile(patternToUse, Pattern.CASE_INSENSITIVE);
-                    }
-                } catch (PatternSyntaxException e) {
-                    javafx.application.Platform.runLater(() -> {
-                        statusLabel.setText("Errore nel pattern contenuto: " + e.getMessage());
-                    });
-                    return;
-                }
-            }
-            
-            for (File file : files) {
-                if (!isSearching) {
-                    break;
-                }
-                
-                try {
-                    if (file.isDirectory()) {
-                        // Cerca ricorsivamente nelle sottocartelle
-                        if (currentDepth < maxDepth) {
-                            searchFiles(file.toPath(), pattern, useRegex, maxDepth,
-                                      searchInContent, contentPattern, caseSensitive, currentDepth + 1);
-                        }
-                    } else {
-                        // Verifica il nome del file
-                        boolean nameMatches = true;
-                        if (namePattern != null) {
-                            nameMatches = namePattern.matcher(file.getName()).matches();
-                        }
-                        
-                        // Se il nome non corrisponde e c'è un pattern per il nome, salta il file
-                        if (!nameMatches && namePattern != null) {
-                            continue;
-                        }
-                        
-                        // Verifica il contenuto se richiesto
-                        boolean contentMatches = true;
-                        if (searchInContent && contentPatternObj != null) {
-                            // Salta i file binari (immagini, video, eseguibili, ecc.)
-                            if (isBinaryFile(file)) {
-                                // Per file binari, considera solo il nome del file
-                                contentMatches = true;
-                            } else {
-                                contentMatches = searchInFileContent(file, contentPatternObj, 
-                                                                   searchFilesNotContainingCheckBox.isSelected(),
-                                                                   caseSensitive);
-                            }
-                        }
-                        
-                        if (nameMatches && contentMatches) {
-                            // File trovato!
-                            SearchResult result = new SearchResult(
-                                file.getParent(),
-                                file.getName(),
-                                formatBytes(file.length()),
-                                formatDate(file.lastModified())
-                            );
-                            
-                            javafx.application.Platform.runLater(() -> {
-                                resultsTable.getItems().add(result);
-                                statusLabel.setText("Trovati " + resultsTable.getItems().size() + " file...");
-                            });
-                        }
-                    }
-                } catch (Exception e) {
-                    // Ignora errori di accesso
-                }
-            }
-        } catch (Exception e) {
-            // Ignora errori
+        FileNameIndex names = FileNameIndex.getInstance();
+        if (!names.isBuilding(searchDir.toPath())) {
+            names.build(searchDir.toPath(), this::indexUpdated);
         }
-    }
-    
-    private boolean searchInFileContent(File file, Pattern pattern, boolean notContaining, boolean caseSensitive) {
-        try {
-            if (file.length() > 10 * 1024 * 1024) { // Skip file > 10MB
-                return !notContaining;
-            }
-            
-            if (file.length() == 0) {
-                return !notContaining; // File vuoto
-            }
-            
-            String fileName = file.getName().toLowerCase();
-            String content = null;
-            
-            // Determina il charset da usare in base alle checkbox e al tipo di file
-            String charset = determineCharset(fileName);
-            
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            
-            // Prova diversi charset in ordine di priorità
-            // Per file di testo comuni (.txt, .asp, .html, .js, .css, ecc.) usa UTF-8 o Windows-1252
-            String[] charsetsToTry = {charset, "UTF-8", "Windows-1252", "ISO-8859-1", "US-ASCII"};
-            
-            for (String charsetToTry : charsetsToTry) {
-                try {
-                    content = new String(bytes, java.nio.charset.Charset.forName(charsetToTry));
-                    // Se la decodifica funziona, cerca il pattern
-                    if (content != null && content.length() > 0) {
-                        boolean found = pattern.matcher(content).find();
-                        // Se trovato (o non trovato se notContaining), ritorna subito
-                        return notContaining ? !found : found;
-                    }
-                } catch (Exception e) {
-                    // Prova il prossimo charset solo se questo fallisce
-                    continue;
-                }
-            }
-            
-            // Se tutti i charset falliscono, prova UTF-8 come ultimo tentativo
-            try {
-                content = new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
-                if (content != null && content.length() > 0) {
-                    boolean found = pattern.matcher(content).find();
-                    return notContaining ? !found : found;
-                }
-            } catch (Exception e) {
-                // Ignora
-            }
-            
-            // Se non riesce a decodificare, considera come non trovato
-            return !notContaining;
-            
-        } catch (Exception e) {
-            // Ignora errori e considera come non trovato
-            return !notContaining;
+        if (index == null) {
+            statusLabel.setText(statusLabel.getText() + " Indice dei nomi dell'unità in costruzione.");
         }
     }
     
     /**
-     * Verifica se un file è binario (immagini, video, audio, eseguibili, ecc.)
-     * e non dovrebbe essere cercato nel contenuto
+     * Accoda un risultato; la tabella viene aggiornata a blocchi con un solo runLater
+     * in sospeso alla volta
      */
-    private boolean isBinaryFile(File file) {
-        String fileName = file.getName().toLowerCase();
-        String extension = "";
-        int lastDot = fileName.lastIndexOf('.');
-        if (lastDot > 0 && lastDot < fileName.length() - 1) {
-            extension = fileName.substring(lastDot + 1);
+    private void publish(SearchHit hit, OperationControl control) {
+        pendingResults.add(hit);
+        if (flushScheduled.compareAndSet(false, true)) {
+            javafx.application.Platform.runLater(() -> flushResults(control));
         }
-        
-        // Estensioni di file binari comuni
-        String[] binaryExtensions = {
-            // Immagini
-            "jpg", "jpeg", "png", "gif", "bmp", "tiff", "tif", "ico", "svg", "webp",
-            "psd", "raw", "cr2", "nef", "orf", "sr2", "dng", "heic", "heif",
-            // Video
-            "mp4", "avi", "mkv", "mov", "wmv", "flv", "webm", "m4v", "mpg", "mpeg",
-            "3gp", "3g2", "asf", "rm", "rmvb", "vob", "ogv", "divx", "xvid",
-            // Audio
-            "mp3", "wav", "flac", "ogg", "aac", "m4a", "wma", "opus", "ape", "ac3",
-            "amr", "au", "ra", "voc", "mid", "midi", "mod", "s3m", "xm", "it",
-            // Eseguibili e librerie
-            "exe", "dll", "so", "dylib", "bin", "com", "bat", "cmd", "scr", "msi",
-            // Archivi binari
-            "zip", "rar", "7z", "tar", "gz", "bz2", "xz", "lz", "lzma", "cab",
-            "ace", "arj", "z", "lzh", "sit", "sitx", "deb", "rpm", "pkg", "dmg",
-            // Documenti binari (vecchi formati Office)
-            "doc", "xls", "ppt", "mdb", "accdb", "pub", "vsd", "vsdx",
-            // PDF (binario anche se contiene testo)
-            "pdf",
-            // Database
-            "db", "sqlite", "sqlite3", "mdb", "accdb", "fdb", "gdb",
-            // Font
-            "ttf", "otf", "woff", "woff2", "eot", "fon",
-            // Altri binari
-            "iso", "img", "bin", "dat", "pak", "vpk", "bsp", "bsp2"
-        };
-        
-        for (String ext : binaryExtensions) {
-            if (extension.equals(ext)) {
-                return true;
+    }
+    
+    private void flushResults(OperationControl control) {
+        flushScheduled.set(false);
+        List<SearchResult> batch = new ArrayList<>();
+        SearchHit hit;
+        while ((hit = pendingResults.poll()) != null) {
+            batch.add(new SearchResult(hit, formatBytes(hit.getSize()), formatDate(hit.getLastModified())));
+        }
+        if (control != searchControl || batch.isEmpty()) {
+            return;
+        }
+        resultsTable.getItems().addAll(batch);
+        if (isSearching) {
+            statusLabel.setText("Trovati " + resultsTable.getItems().size() + " file...");
+        }
+    }
+    
+    private void openResult(SearchHit hit) {
+        FileViewerDialog viewer = hit.isArchiveEntry()
+            ? new FileViewerDialog(hit.getPath(), hit.getEntry())
+            : new FileViewerDialog(hit.getPath().toFile());
+        viewer.show();
+    }
+    
+    private int getMaxDepth() {
+        String selected = subfoldersCombo.getValue();
+        if (selected == null || selected.equals("Tutte (profondità illimitata)")) {
+            return Integer.MAX_VALUE;
+        } else if (selected.equals("Nessuna")) {
+            return 0;
+        } else {
+            try {
+                return Integer.parseInt(selected.split(" ")[0]);
+            } catch (Exception e) {
+                return Integer.MAX_VALUE;
             }
         }
-        
-        return false;
     }
     
     /**
@@ -704,13 +663,6 @@ public class FindFilesDialog extends Stage {
      */
     private String determineCharset(String fileName) {
         // Se più checkbox sono selezionate, usa la priorità
-        // Office XML files
-        if (officeXmlCheckBox.isSelected() && 
-            (fileName.endsWith(".docx") || fileName.endsWith(".xlsx") || 
-             fileName.endsWith(".pptx") || fileName.endsWith(".odt"))) {
-            return "UTF-8"; // Office XML è UTF-8
-        }
-        
         // Unicode UTF16
         if (unicodeUtf16CheckBox.isSelected()) {
             return "UTF-16";
@@ -736,67 +688,6 @@ public class FindFilesDialog extends Stage {
         return "UTF-8";
     }
     
-    /**
-     * Decodifica il contenuto del file con il charset appropriato
-     */
-    private String decodeContent(byte[] bytes, String charset, String fileName) {
-        try {
-            // Per Office XML, devo estrarre il testo dall'archivio ZIP
-            if (officeXmlCheckBox.isSelected() && 
-                (fileName.endsWith(".docx") || fileName.endsWith(".xlsx") || fileName.endsWith(".pptx"))) {
-                return extractTextFromOfficeXml(bytes, fileName);
-            }
-            
-            // Per altri formati, usa il charset specificato
-            return new String(bytes, java.nio.charset.Charset.forName(charset));
-        } catch (Exception e) {
-            // Fallback a UTF-8
-            return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
-        }
-    }
-    
-    /**
-     * Estrae il testo da file Office XML (docx, xlsx, pptx sono archivi ZIP)
-     */
-    private String extractTextFromOfficeXml(byte[] bytes, String fileName) {
-        try {
-            // Per semplicità, per ora leggiamo come testo normale
-            // In futuro si potrebbe implementare l'estrazione vera dall'archivio ZIP
-            return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            return "";
-        }
-    }
-    
-    /**
-     * Converte un pattern esadecimale in stringa di ricerca
-     */
-    private String convertHexToPattern(String hexPattern) {
-        try {
-            // Rimuovi spazi e separatori comuni
-            String cleanHex = hexPattern.replaceAll("[\\s-]", "");
-            
-            // Verifica che sia esadecimale valido
-            if (!cleanHex.matches("[0-9A-Fa-f]+")) {
-                return hexPattern; // Se non è valido, ritorna originale
-            }
-            
-            // Converti esadecimale in bytes, poi in stringa
-            StringBuilder result = new StringBuilder();
-            for (int i = 0; i < cleanHex.length(); i += 2) {
-                if (i + 1 < cleanHex.length()) {
-                    String hexByte = cleanHex.substring(i, i + 2);
-                    int byteValue = Integer.parseInt(hexByte, 16);
-                    result.append((char) byteValue);
-                }
-            }
-            
-            return Pattern.quote(result.toString());
-        } catch (Exception e) {
-            return hexPattern; // Se fallisce, ritorna originale
-        }
-    }
-    
     private String formatBytes(long bytes) {
         if (bytes < 1024) return bytes + " B";
         if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
@@ -805,7 +696,7 @@ public class FindFilesDialog extends Stage {
     }
     
     private String formatDate(long millis) {
-        return new java.text.SimpleDateFormat("dd/MM/yyyy HH:mm").format(new java.util.Date(millis));
+        return com.totalcommander.models.FileItem.formatDate(millis);
     }
     
     private void showHelp() {
@@ -828,18 +719,21 @@ public class FindFilesDialog extends Stage {
      * Classe per rappresentare un risultato di ricerca
      */
     private static class SearchResult {
+        private final SearchHit hit;
         private final javafx.beans.property.SimpleStringProperty path;
         private final javafx.beans.property.SimpleStringProperty name;
         private final javafx.beans.property.SimpleStringProperty size;
         private final javafx.beans.property.SimpleStringProperty date;
         
-        public SearchResult(String path, String name, String size, String date) {
-            this.path = new javafx.beans.property.SimpleStringProperty(path);
-            this.name = new javafx.beans.property.SimpleStringProperty(name);
+        public SearchResult(SearchHit hit, String size, String date) {
+            this.hit = hit;
+            this.path = new javafx.beans.property.SimpleStringProperty(hit.getLocation());
+            this.name = new javafx.beans.property.SimpleStringProperty(hit.getName());
             this.size = new javafx.beans.property.SimpleStringProperty(size);
             this.date = new javafx.beans.property.SimpleStringProperty(date);
         }
         
+        public SearchHit getHit() { return hit; }
         public javafx.beans.property.StringProperty pathProperty() { return path; }
         public javafx.beans.property.StringProperty nameProperty() { return name; }
         public javafx.beans.property.StringProperty sizeProperty() { return size; }
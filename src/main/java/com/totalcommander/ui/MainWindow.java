@@ -7,7 +7,11 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import com.totalcommander.ui.panels.FilePanel;
+import com.totalcommander.models.OperationResult;
 import com.totalcommander.services.FileOperationService;
+import com.totalcommander.services.MoveEngine;
+import com.totalcommander.services.MoveJournal;
+import com.totalcommander.services.SyncEngine;
 import com.totalcommander.services.TransferService;
 import com.totalcommander.services.LanguageService;
 import com.totalcommander.services.SettingsService;
@@ -143,6 +147,8 @@ public class MainWindow extends BorderPane {
         
         leftPanel = new FilePanel(this::setActivePanel);
         rightPanel = new FilePanel(this::setActivePanel);
+        leftPanel.setTransferService(transferService);
+        rightPanel.setTransferService(transferService);
         
         // Aggiungi listener per salvare i percorsi quando cambiano
         setupPanelPathListeners();
@@ -363,13 +369,7 @@ public class MainWindow extends BorderPane {
         editBtn.setOnAction(e -> activePanel.editSelectedFile());
         
         Button syncBtn = createToolbarButton("⇄", tr("toolbar.sync"), buttonStyle, buttonHoverStyle);
-        syncBtn.setOnAction(e -> {
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle("Sincronizza");
-            alert.setHeaderText("Sincronizzazione cartelle");
-            alert.setContentText("Funzionalità in sviluppo.");
-            alert.showAndWait();
-        });
+        syncBtn.setOnAction(e -> showSyncDialog());
         
         Button clipboardBtn = createToolbarButton("📋", tr("toolbar.clipboard"), buttonStyle, buttonHoverStyle);
         clipboardBtn.setOnAction(e -> {
@@ -657,19 +657,86 @@ public class MainWindow extends BorderPane {
         if (sourcePanel.isFtpMode() || targetPanel.isFtpMode()) {
             copyFtpFiles(sourcePanel, targetPanel);
         } else {
-            // Copia locale normale
-            if (fileOperationService.copyFiles(selectedFiles, targetPanel.getCurrentPath())) {
-        targetPanel.refresh();
-            } else {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Errore");
-                alert.setHeaderText("Impossibile copiare i file");
-                alert.setContentText("Verifica i permessi e riprova.");
+            // Copia locale in background, con avanzamento nel gestore trasferimenti
+            java.nio.file.Path destination = targetPanel.getCurrentPath();
+            if (isSameDirectory(selectedFiles, destination)) {
+                Alert alert = new Alert(Alert.AlertType.WARNING);
+                alert.setTitle("Attenzione");
+                alert.setHeaderText("Origine e destinazione coincidono");
+                alert.setContentText("I file selezionati si trovano già in " + destination);
                 alert.showAndWait();
+                return;
             }
+            showTransferManager();
+            transferService.queueLocalOperation("Copia", sourcePanel.getCurrentPath().toString(),
+                destination.toString(), describeSelection(selectedFiles),
+                (control, tracker) -> fileOperationService.copyFiles(selectedFiles, destination, control, tracker),
+                result -> {
+                    targetPanel.refresh();
+                    showOperationErrors("Impossibile copiare", result);
+                });
         }
     }
 
+    /**
+     * Qualche file selezionato si trova già nella cartella di destinazione
+     */
+    private boolean isSameDirectory(List<java.io.File> files, java.nio.file.Path destination) {
+        java.nio.file.Path target = destination.toAbsolutePath().normalize();
+        for (java.io.File file : files) {
+            java.nio.file.Path parent = file.toPath().toAbsolutePath().normalize().getParent();
+            try {
+                if (target.equals(parent)
+                    || parent != null && java.nio.file.Files.isSameFile(parent, target)) {
+                    return true;
+                }
+            } catch (java.io.IOException e) {
+                // Cartella non accessibile: il controllo avverrà durante la copia
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Nome da mostrare nel gestore trasferimenti per una selezione di file
+     */
+    private String describeSelection(List<java.io.File> files) {
+        return files.size() == 1 ? files.get(0).getName() : files.size() + " elementi";
+    }
+    
+    /**
+     * Mostra gli errori di un'operazione locale terminata (nulla se riuscita o annullata)
+     */
+    private void showOperationErrors(String header, OperationResult result) {
+        if (result.isSuccess() || result.isCancelled()) {
+            return;
+        }
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Errore");
+        alert.setHeaderText(header + " " + result.getFailureCount() + " elementi");
+        alert.setContentText(formatFailures(result) + "\n\nVerifica i permessi e riprova.");
+        alert.showAndWait();
+    }
+    
+    /**
+     * Elenca i primi file non riusciti e il throughput dell'operazione
+     */
+    private String formatFailures(OperationResult result) {
+        StringBuilder sb = new StringBuilder();
+        List<OperationResult.FileResult> failures = result.getFailures();
+        int shown = Math.min(failures.size(), 10);
+        for (int i = 0; i < shown; i++) {
+            OperationResult.FileResult failure = failures.get(i);
+            sb.append(failure.getSource()).append(": ").append(failure.getErrorMessage()).append("\n");
+        }
+        if (failures.size() > shown) {
+            sb.append("... e altri ").append(failures.size() - shown).append(" errori\n");
+        }
+        sb.append("Completati: ").append(result.getFilesDone())
+          .append(" file (").append(result.formatThroughput()).append(")");
+        return sb.toString();
+    }
+
     private void moveSelected() {
         FilePanel sourcePanel = activePanel;
         FilePanel targetPanel = (activePanel == leftPanel) ? rightPanel : leftPanel;
@@ -678,13 +745,64 @@ public class MainWindow extends BorderPane {
         if (sourcePanel.isFtpMode() || targetPanel.isFtpMode()) {
             moveFtpFiles(sourcePanel, targetPanel);
         } else {
-            // Sposta locale normale
-        fileOperationService.moveFiles(
-            sourcePanel.getSelectedFiles(),
-            targetPanel.getCurrentPath()
-        );
-        sourcePanel.refresh();
-        targetPanel.refresh();
+            // Sposta locale in background
+            List<java.io.File> selectedFiles = sourcePanel.getSelectedFiles();
+            if (selectedFiles.isEmpty()) {
+                return;
+            }
+            java.nio.file.Path destination = targetPanel.getCurrentPath();
+            showTransferManager();
+            transferService.queueLocalOperation("Sposta", sourcePanel.getCurrentPath().toString(),
+                destination.toString(), describeSelection(selectedFiles),
+                (control, tracker) -> fileOperationService.moveFiles(selectedFiles, destination, control, tracker),
+                result -> {
+                    sourcePanel.refresh();
+                    targetPanel.refresh();
+                    showOperationErrors("Impossibile spostare", result);
+                });
+        }
+    }
+    
+    /**
+     * Chiede come proseguire per ogni spostamento tra volumi rimasto nel giornale
+     */
+    public void recoverInterruptedMoves() {
+        for (MoveJournal.Entry entry : MoveJournal.loadPending()) {
+            boolean copying = MoveJournal.PHASE_COPY.equals(entry.phase);
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+            alert.setTitle("Spostamento interrotto");
+            alert.setHeaderText("Uno spostamento verso " + entry.destination + " non è stato completato");
+            alert.setContentText(String.join("\n", entry.sources) + "\n\n" + (copying
+                ? "Le origini sono intatte. Riprendere lo spostamento o rimuovere le copie parziali?"
+                : "La copia è completa e verificata. Riprendere per eliminare le origini rimaste?"));
+            ButtonType resumeButton = new ButtonType("Riprendi", ButtonBar.ButtonData.YES);
+            ButtonType rollbackButton = new ButtonType("Annulla spostamento", ButtonBar.ButtonData.NO);
+            ButtonType laterButton = new ButtonType("Più tardi", ButtonBar.ButtonData.CANCEL_CLOSE);
+            if (copying) {
+                alert.getButtonTypes().setAll(resumeButton, rollbackButton, laterButton);
+            } else {
+                alert.getButtonTypes().setAll(resumeButton, laterButton);
+            }
+            
+            ButtonType choice = alert.showAndWait().orElse(laterButton);
+            if (choice == laterButton) {
+                continue;
+            }
+            boolean resume = choice == resumeButton;
+            showTransferManager();
+            transferService.queueLocalOperation(resume ? "Sposta" : "Ripristino", String.join(", ", entry.sources),
+                entry.destination, entry.sources.size() + " elementi",
+                (control, tracker) -> {
+                    MoveEngine engine = new MoveEngine();
+                    engine.setControl(control);
+                    engine.setProgressTracker(tracker);
+                    return resume ? engine.resume(entry) : engine.rollback(entry);
+                },
+                result -> {
+                    leftPanel.refresh();
+                    rightPanel.refresh();
+                    showOperationErrors(resume ? "Impossibile spostare" : "Impossibile ripristinare", result);
+                });
         }
     }
     
@@ -728,7 +846,8 @@ public class MainWindow extends BorderPane {
             appendFtpStatus("Aggiunti " + ftpPaths.size() + " elementi alla coda di download...");
             
             // Aggiungi tutti i file/cartelle alla coda
-            transferService.queueDownload(ftpPaths, localDestinationDir, ftpService);
+            transferService.queueDownload(ftpPaths, localDestinationDir, ftpService,
+                sourcePanel.getFtpConnection());
         } else {
             // Upload da locale a FTP
             com.totalcommander.services.FtpService ftpService = targetPanel.getFtpService();
@@ -737,7 +856,8 @@ public class MainWindow extends BorderPane {
             appendFtpStatus("Aggiunti " + selectedFiles.size() + " elementi alla coda di upload...");
             
             // Aggiungi tutti i file/cartelle alla coda
-            transferService.queueUpload(selectedFiles, remotePath, ftpService);
+            transferService.queueUpload(selectedFiles, remotePath, ftpService,
+                targetPanel.getFtpConnection());
         }
     }
     
@@ -903,16 +1023,73 @@ public class MainWindow extends BorderPane {
                 
                 // Avvia aggiornamento periodico della lista file
                 startFtpAutoRefresh();
+                recoverInterruptedTransfers(connection);
             }
         });
         dialog.showAndWait();
     }
     
+    /**
+     * Propone di riprendere i trasferimenti verso il server rimasti interrotti alla chiusura
+     */
+    private void recoverInterruptedTransfers(com.totalcommander.models.FtpConnection connection) {
+        int count = transferService.countInterruptedTransfers(connection);
+        if (count == 0) {
+            return;
+        }
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Trasferimenti interrotti");
+        alert.setHeaderText(count + " trasferimenti con " + connection.getHost() + " non sono stati completati");
+        alert.setContentText("Riprenderli dal punto raggiunto?");
+        ButtonType resumeButton = new ButtonType("Riprendi", ButtonBar.ButtonData.YES);
+        ButtonType discardButton = new ButtonType("Abbandona", ButtonBar.ButtonData.NO);
+        ButtonType laterButton = new ButtonType("Più tardi", ButtonBar.ButtonData.CANCEL_CLOSE);
+        alert.getButtonTypes().setAll(resumeButton, discardButton, laterButton);
+        
+        ButtonType choice = alert.showAndWait().orElse(laterButton);
+        if (choice == resumeButton) {
+            showTransferManager();
+            int queued = transferService.resumeInterruptedTransfers(connection);
+            appendFtpStatus("Ripresi " + queued + " trasferimenti interrotti");
+        } else if (choice == discardButton) {
+            transferService.discardInterruptedTransfers(connection);
+        }
+    }
+    
     private void showDiskStructure() {
         DiskStructureDialog dialog = new DiskStructureDialog();
         dialog.show();
     }
     
+    /**
+     * Apre la sincronizzazione tra le cartelle correnti dei due pannelli
+     */
+    private void showSyncDialog() {
+        if (leftPanel.isFtpMode() && rightPanel.isFtpMode()) {
+            showError("Sincronizza", "La sincronizzazione tra due server FTP non è supportata.");
+            return;
+        }
+        SyncDialog dialog = new SyncDialog(createSyncSide(leftPanel), createSyncSide(rightPanel), transferService,
+            result -> {
+                leftPanel.refresh();
+                rightPanel.refresh();
+                showOperationErrors("Impossibile sincronizzare", result);
+            });
+        dialog.setOnHidden(e -> {
+            if (transferService.getActiveTransfers().stream().anyMatch(t -> !t.isCompleted() && !t.isFailed())) {
+                showTransferManager();
+            }
+        });
+        dialog.show();
+    }
+    
+    private SyncEngine.Side createSyncSide(FilePanel panel) {
+        if (panel.isFtpMode()) {
+            return new SyncEngine.FtpSide(panel.getFtpConnection(), panel.getCurrentFtpPath());
+        }
+        return new SyncEngine.LocalSide(panel.getCurrentPath());
+    }
+    
     private void showFindDialog() {
         FindFilesDialog dialog = new FindFilesDialog();
         dialog.show();
@@ -21,6 +21,9 @@ public class SettingsDialog extends Stage {
     private LanguageService languageService;
     private String selectedLanguageCode = "ITA";
     private TextField menuFilePathField;
+    private CheckBox verifyCopiesCheck;
+    private ComboBox<String> verifyAlgorithmCombo;
+    private CheckBox verifyMovesCheck;
     
     // Mappa nomi lingue -> codici
     private final Map<String, String> languageMap = new HashMap<>();
@@ -190,6 +193,8 @@ public class SettingsDialog extends Stage {
         
         if (category.equals("Lingua (Language)")) {
             content.getChildren().addAll(createLanguageContent());
+        } else if (category.equals("Copia/cancellazione (Copy/delete)")) {
+            content.getChildren().addAll(createCopyDeleteContent());
         } else {
             // Placeholder per altre categorie
             Label placeholderLabel = new Label("Impostazioni per: " + category);
@@ -318,6 +323,34 @@ public class SettingsDialog extends Stage {
         return languageBox;
     }
     
+    private VBox createCopyDeleteContent() {
+        VBox copyBox = new VBox(10);
+        com.totalcommander.services.SettingsService.ApplicationSettings settings =
+            com.totalcommander.services.SettingsService.getInstance().getSettings();
+        
+        Label titleLabel = new Label("Verifica delle copie");
+        titleLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold;");
+        
+        verifyCopiesCheck = new CheckBox("Verifica ogni copia e trasferimento FTP con un checksum");
+        verifyCopiesCheck.setSelected(settings.verifyCopies);
+        
+        HBox algorithmBox = new HBox(5);
+        algorithmBox.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+        verifyAlgorithmCombo = new ComboBox<>();
+        verifyAlgorithmCombo.getItems().addAll("CRC32C", "SHA-256");
+        verifyAlgorithmCombo.setValue(settings.verifyAlgorithm);
+        algorithmBox.getChildren().addAll(new Label("Algoritmo:"), verifyAlgorithmCombo);
+        
+        verifyMovesCheck = new CheckBox("Verifica le copie prima di eliminare le origini negli spostamenti tra dischi");
+        verifyMovesCheck.setSelected(settings.verifyMoves);
+        
+        Label infoLabel = new Label("In modalità FTP ASCII la verifica non viene eseguita.");
+        infoLabel.setStyle("-fx-text-fill: #666666;");
+        
+        copyBox.getChildren().addAll(titleLabel, verifyCopiesCheck, algorithmBox, verifyMovesCheck, infoLabel);
+        return copyBox;
+    }
+    
     private void updateMenuFilePath() {
         // Usa il percorso dal LanguageService
         String filePath = languageService.getMenuFilePath();
@@ -327,6 +360,16 @@ public class SettingsDialog extends Stage {
     }
     
     private void applySettings() {
+        // Applica le impostazioni di copia se la sezione è stata aperta
+        if (verifyCopiesCheck != null) {
+            com.totalcommander.services.SettingsService settingsService = 
+                com.totalcommander.services.SettingsService.getInstance();
+            settingsService.getSettings().verifyCopies = verifyCopiesCheck.isSelected();
+            settingsService.getSettings().verifyAlgorithm = verifyAlgorithmCombo.getValue();
+            settingsService.getSettings().verifyMoves = verifyMovesCheck.isSelected();
+            settingsService.saveSettings();
+        }
+        
         // Applica le impostazioni selezionate
         // Carica la lingua selezionata
         if (languageService.loadLanguage(selectedLanguageCode)) {
@@ -0,0 +1,270 @@
+package com.totalcommander.ui;
+
+import com.totalcommander.models.OperationResult;
+import com.totalcommander.models.SyncAction;
+import com.totalcommander.services.OperationControl;
+import com.totalcommander.services.SyncEngine;
+import com.totalcommander.services.TransferService;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.*;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Dialog per sincronizzare le cartelle dei due pannelli: confronto, anteprima delle
+ * differenze e applicazione in background tramite il gestore trasferimenti
+ */
+public class SyncDialog extends Stage {
+
+    // Differenze accodate prima di aggiornare la tabella sul thread JavaFX
+    private static final int UI_BATCH_SIZE = 200;
+    // Differenze mostrate in anteprima; delle altre si tengono solo i totali
+    private static final int MAX_PREVIEW = 1000;
+
+    private final SyncEngine.Side leftSide;
+    private final SyncEngine.Side rightSide;
+    private final TransferService transferService;
+    private final Consumer<OperationResult> onComplete;
+    private final ObservableList<SyncAction> actions = FXCollections.observableArrayList();
+    // Totali del confronto, aggiornati sul thread JavaFX
+    private long totalActions;
+    private long totalCopies;
+    private long totalDeletes;
+    private long totalBytes;
+
+    private ComboBox<String> directionCombo;
+    private CheckBox deleteExtraCheck;
+    private CheckBox compareContentCheck;
+    private Button compareButton;
+    private Button syncButton;
+    private Label statusLabel;
+    private OperationControl compareControl;
+
+    public SyncDialog(SyncEngine.Side leftSide, SyncEngine.Side rightSide, TransferService transferService,
+                      Consumer<OperationResult> onComplete) {
+        this.leftSide = leftSide;
+        this.rightSide = rightSide;
+        this.transferService = transferService;
+        this.onComplete = onComplete;
+        initStyle(StageStyle.UTILITY);
+        setTitle("Sincronizza cartelle");
+        setWidth(800);
+        setHeight(550);
+        setResizable(true);
+
+        initializeUI();
+        addEventHandler(javafx.stage.WindowEvent.WINDOW_HIDDEN, e -> cancelCompare());
+    }
+
+    private void initializeUI() {
+        VBox root = new VBox(10);
+        root.setPadding(new Insets(10));
+
+        GridPane pathsGrid = new GridPane();
+        pathsGrid.setHgap(10);
+        pathsGrid.setVgap(5);
+        pathsGrid.add(new Label("Sinistra:"), 0, 0);
+        pathsGrid.add(new Label(leftSide.describe()), 1, 0);
+        pathsGrid.add(new Label("Destra:"), 0, 1);
+        pathsGrid.add(new Label(rightSide.describe()), 1, 1);
+
+        directionCombo = new ComboBox<>();
+        directionCombo.getItems().addAll("Sinistra → Destra", "Destra → Sinistra");
+        directionCombo.setValue("Sinistra → Destra");
+        directionCombo.setOnAction(e -> invalidateComparison());
+
+        deleteExtraCheck = new CheckBox("Elimina dalla destinazione i file assenti nell'origine (mirror)");
+        deleteExtraCheck.setOnAction(e -> invalidateComparison());
+        compareContentCheck = new CheckBox("Confronta il contenuto (checksum, solo cartelle locali)");
+        compareContentCheck.setDisable(leftSide.isRemote() || rightSide.isRemote());
+        compareContentCheck.setOnAction(e -> invalidateComparison());
+
+        HBox optionsBox = new HBox(10);
+        optionsBox.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+        optionsBox.getChildren().addAll(new Label("Direzione:"), directionCombo);
+
+        // Tabella delle differenze
+        TableView<SyncAction> actionsTable = new TableView<>(actions);
+        TableColumn<SyncAction, String> typeColumn = new TableColumn<>("Azione");
+        typeColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getType().getLabel()));
+        typeColumn.setPrefWidth(110);
+        TableColumn<SyncAction, String> pathColumn = new TableColumn<>("Percorso");
+        pathColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getRelativePath()));
+        pathColumn.setPrefWidth(400);
+        TableColumn<SyncAction, String> sizeColumn = new TableColumn<>("Dimensione");
+        sizeColumn.setCellValueFactory(cell -> new SimpleStringProperty(
+            cell.getValue().isDirectory() ? "<DIR>" : formatBytes(cell.getValue().getSize())));
+        sizeColumn.setPrefWidth(100);
+        TableColumn<SyncAction, String> reasonColumn = new TableColumn<>("Motivo");
+        reasonColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getReason()));
+        reasonColumn.setPrefWidth(150);
+        actionsTable.getColumns().setAll(List.of(typeColumn, pathColumn, sizeColumn, reasonColumn));
+
+        statusLabel = new Label("Premi Confronta per cercare le differenze");
+
+        compareButton = new Button("Confronta");
+        compareButton.setOnAction(e -> startCompare());
+        syncButton = new Button("Sincronizza");
+        syncButton.setDisable(true);
+        syncButton.setOnAction(e -> startSync());
+        Button closeButton = new Button("Chiudi");
+        closeButton.setOnAction(e -> close());
+
+        HBox buttonBox = new HBox(10);
+        buttonBox.setAlignment(javafx.geometry.Pos.CENTER_RIGHT);
+        buttonBox.getChildren().addAll(compareButton, syncButton, closeButton);
+
+        root.getChildren().addAll(pathsGrid, optionsBox, deleteExtraCheck, compareContentCheck,
+            actionsTable, statusLabel, buttonBox);
+        VBox.setVgrow(actionsTable, Priority.ALWAYS);
+
+        setScene(new javafx.scene.Scene(root));
+    }
+
+    /**
+     * Le opzioni sono cambiate: il confronto precedente non è più valido
+     */
+    private void invalidateComparison() {
+        cancelCompare();
+        clearActions();
+        compareButton.setDisable(false);
+        syncButton.setDisable(true);
+        statusLabel.setText("Premi Confronta per cercare le differenze");
+    }
+
+    private boolean isLeftToRight() {
+        return directionCombo.getValue().startsWith("Sinistra");
+    }
+
+    private SyncEngine createEngine() {
+        SyncEngine engine = isLeftToRight()
+            ? new SyncEngine(leftSide, rightSide)
+            : new SyncEngine(rightSide, leftSide);
+        engine.setDeleteExtra(deleteExtraCheck.isSelected());
+        engine.setCompareContent(compareContentCheck.isSelected());
+        return engine;
+    }
+
+    /**
+     * Confronta in background, aggiungendo le differenze alla tabella a blocchi
+     */
+    private void startCompare() {
+        cancelCompare();
+        clearActions();
+        syncButton.setDisable(true);
+        compareButton.setDisable(true);
+        statusLabel.setText("Confronto in corso...");
+
+        SyncEngine engine = createEngine();
+        OperationControl control = new OperationControl();
+        engine.setControl(control);
+        compareControl = control;
+
+        Thread thread = new Thread(() -> {
+            List<SyncAction> batch = new ArrayList<>();
+            String error = null;
+            try {
+                engine.compare(action -> {
+                    batch.add(action);
+                    if (batch.size() >= UI_BATCH_SIZE) {
+                        publish(new ArrayList<>(batch), control);
+                        batch.clear();
+                    }
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                error = e.getMessage();
+            }
+            publish(new ArrayList<>(batch), control);
+            String finalError = error;
+            Platform.runLater(() -> {
+                if (control != compareControl) {
+                    return;
+                }
+                compareButton.setDisable(false);
+                syncButton.setDisable(totalActions == 0 || finalError != null || control.isCancelled());
+                statusLabel.setText(finalError != null ? "Errore durante il confronto: " + finalError : summary());
+            });
+        }, "sync-compare");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void publish(List<SyncAction> batch, OperationControl control) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Platform.runLater(() -> {
+            if (control == compareControl && !control.isCancelled()) {
+                for (SyncAction action : batch) {
+                    totalActions++;
+                    if (action.getType() == SyncAction.Type.COPY) {
+                        totalCopies++;
+                        totalBytes += action.getSize();
+                    } else if (action.getType() == SyncAction.Type.DELETE) {
+                        totalDeletes++;
+                    }
+                }
+                int room = MAX_PREVIEW - actions.size();
+                if (room > 0) {
+                    actions.addAll(batch.size() > room ? batch.subList(0, room) : batch);
+                }
+                statusLabel.setText("Confronto in corso... " + totalActions + " differenze");
+            }
+        });
+    }
+
+    private void cancelCompare() {
+        if (compareControl != null) {
+            compareControl.cancel();
+        }
+    }
+
+    private void clearActions() {
+        actions.clear();
+        totalActions = 0;
+        totalCopies = 0;
+        totalDeletes = 0;
+        totalBytes = 0;
+    }
+
+    private String summary() {
+        if (totalActions == 0) {
+            return "Le cartelle sono già sincronizzate";
+        }
+        String text = String.format("%d differenze: %d file da copiare (%s), %d da eliminare",
+            totalActions, totalCopies, formatBytes(totalBytes), totalDeletes);
+        return totalActions > actions.size() ? text + " (anteprima delle prime " + actions.size() + ")" : text;
+    }
+
+    /**
+     * Il motore ripete il confronto applicando le differenze man mano che le trova
+     */
+    private void startSync() {
+        SyncEngine engine = createEngine();
+        long expectedActions = totalActions;
+        long expectedBytes = totalBytes;
+        SyncEngine.Side source = isLeftToRight() ? leftSide : rightSide;
+        SyncEngine.Side target = isLeftToRight() ? rightSide : leftSide;
+        transferService.queueLocalOperation("Sincronizza", source.describe(), target.describe(),
+            expectedActions + " differenze",
+            (control, tracker) -> engine.apply(expectedActions, expectedBytes, control, tracker),
+            onComplete);
+        close();
+    }
+
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
+        if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024.0));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
+}
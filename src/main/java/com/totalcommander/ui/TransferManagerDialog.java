@@ -1,7 +1,12 @@
 package com.totalcommander.ui;
 
 import com.totalcommander.models.TransferTask;
+import com.totalcommander.services.TransferQueue;
 import com.totalcommander.services.TransferService;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
@@ -9,21 +14,30 @@ import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.util.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Dialog per visualizzare e gestire i trasferimenti in background
  */
 public class TransferManagerDialog extends Stage {
     
+    // La coda può contenere milioni di elementi: se ne mostrano solo i primi
+    private static final int QUEUE_VIEW_LIMIT = 200;
+    
     private TableView<TransferTask> transfersTable;
+    private TableView<TransferQueue.Item> queueTable;
     private TransferService transferService;
     private Label statusLabel;
+    private Timeline statusRefresh;
     
     public TransferManagerDialog(TransferService transferService) {
         this.transferService = transferService;
         initStyle(StageStyle.UTILITY);
         setTitle("Gestore Trasferimenti");
-        setWidth(800);
+        setWidth(950);
         setHeight(500);
         setResizable(true);
         
@@ -32,6 +46,21 @@ public class TransferManagerDialog extends Stage {
         // Aggiorna automaticamente la tabella quando cambiano i trasferimenti
         ObservableList<TransferTask> activeTransfers = transferService.getActiveTransfers();
         transfersTable.setItems(activeTransfers);
+        
+        // La velocità complessiva cambia di continuo: il riepilogo si aggiorna due volte al secondo
+        statusRefresh = new Timeline(new KeyFrame(Duration.millis(500), e -> updateStatus()));
+        Timeline queueRefresh = new Timeline(new KeyFrame(Duration.seconds(2), e -> refreshQueue()));
+        queueRefresh.setCycleCount(Timeline.INDEFINITE);
+        statusRefresh.setCycleCount(Timeline.INDEFINITE);
+        setOnShown(e -> {
+            refreshQueue();
+            statusRefresh.play();
+            queueRefresh.play();
+        });
+        setOnHidden(e -> {
+            statusRefresh.stop();
+            queueRefresh.stop();
+        });
     }
     
     private void initializeUI() {
@@ -76,48 +105,215 @@ public class TransferManagerDialog extends Stage {
         TableColumn<TransferTask, String> speedColumn = new TableColumn<>("Velocità");
         speedColumn.setCellValueFactory(cellData -> {
             TransferTask task = cellData.getValue();
-            long bytes = task.getBytesTransferred();
-            long total = task.getTotalBytes();
-            if (total > 0 && bytes > 0) {
-                return new javafx.beans.property.SimpleStringProperty(
-                    formatBytes(bytes) + " / " + formatBytes(total));
-            } else if (bytes > 0) {
-                return new javafx.beans.property.SimpleStringProperty(formatBytes(bytes));
-            }
-            return new javafx.beans.property.SimpleStringProperty("-");
+            // Binding sui byte trasferiti, così la colonna segue l'avanzamento
+            return javafx.beans.binding.Bindings.createStringBinding(() -> {
+                long bytes = task.getBytesTransferred();
+                long total = task.getTotalBytes();
+                String rate = task.getBytesPerSecond() > 0 && !task.isCompleted() && !task.isFailed()
+                    ? " - " + formatBytes((long) task.getBytesPerSecond()) + "/s" : "";
+                if (total > 0 && bytes > 0) {
+                    return formatBytes(bytes) + " / " + formatBytes(total) + rate;
+                } else if (bytes > 0) {
+                    return formatBytes(bytes) + rate;
+                }
+                return "-";
+            }, task.bytesTransferredProperty(), task.totalBytesProperty(), task.bytesPerSecondProperty());
         });
-        speedColumn.setPrefWidth(150);
+        speedColumn.setPrefWidth(200);
         
         transfersTable.getColumns().addAll(sourceColumn, destinationColumn, 
                                           progressColumn, statusColumn, speedColumn);
+        transfersTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         
-        // Label stato (senza bottoni)
+        // Label stato
         statusLabel = new Label("Trasferimenti attivi: 0");
         statusLabel.setPadding(new Insets(5, 0, 0, 0));
         
+        // Bottoni per pausa/ripresa/annullamento dei trasferimenti selezionati
+        Button pauseButton = new Button("Pausa");
+        pauseButton.setOnAction(e -> forEachSelected(transferService::pauseTransfer));
+        Button resumeButton = new Button("Riprendi");
+        resumeButton.setOnAction(e -> forEachSelected(transferService::resumeTransfer));
+        Button cancelButton = new Button("Annulla");
+        cancelButton.setOnAction(e -> forEachSelected(transferService::cancelTransfer));
+        Button retryButton = new Button("Riprova");
+        retryButton.setOnAction(e -> {
+            for (TransferTask task : new java.util.ArrayList<>(transfersTable.getSelectionModel().getSelectedItems())) {
+                transferService.retryTransfer(task);
+            }
+            refreshQueue();
+        });
+        
+        HBox buttonBox = new HBox(10);
+        buttonBox.getChildren().addAll(pauseButton, resumeButton, cancelButton, retryButton);
+        
+        VBox transfersBox = new VBox(10, transfersTable, buttonBox);
+        transfersBox.setPadding(new Insets(10, 0, 0, 0));
+        VBox.setVgrow(transfersTable, Priority.ALWAYS);
+        
         // Aggiorna il contatore
         transferService.getActiveTransfers().addListener(
-            (javafx.collections.ListChangeListener.Change<? extends TransferTask> c) -> {
-                long active = transferService.getActiveTransfers().stream()
-                    .filter(t -> !t.isCompleted() && !t.isFailed())
-                    .count();
-                long completed = transferService.getActiveTransfers().stream()
-                    .filter(TransferTask::isCompleted)
-                    .count();
-                long failed = transferService.getActiveTransfers().stream()
-                    .filter(TransferTask::isFailed)
-                    .count();
-                statusLabel.setText(String.format(
-                    "Attivi: %d | Completati: %d | Falliti: %d | Totale: %d",
-                    active, completed, failed, transferService.getActiveTransfers().size()));
-            });
-        
-        root.getChildren().addAll(transfersTable, statusLabel);
-        VBox.setVgrow(transfersTable, Priority.ALWAYS);
+            (javafx.collections.ListChangeListener.Change<? extends TransferTask> c) -> updateStatus());
+        
+        TabPane tabs = new TabPane(new Tab("Trasferimenti", transfersBox), new Tab("Coda", createQueuePane()));
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        
+        root.getChildren().addAll(tabs, statusLabel);
+        VBox.setVgrow(tabs, Priority.ALWAYS);
         
         setScene(new javafx.scene.Scene(root));
     }
     
+    /**
+     * Elementi non ancora partiti, con i comandi per riordinarli, sospenderli e riprovarli
+     */
+    private VBox createQueuePane() {
+        queueTable = new TableView<>();
+        queueTable.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
+        queueTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        
+        TableColumn<TransferQueue.Item, String> nameColumn = new TableColumn<>("Nome");
+        nameColumn.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getFileName()));
+        nameColumn.setPrefWidth(160);
+        
+        TableColumn<TransferQueue.Item, String> sourceColumn = new TableColumn<>("Origine");
+        sourceColumn.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getSourcePath()));
+        sourceColumn.setPrefWidth(220);
+        
+        TableColumn<TransferQueue.Item, String> destinationColumn = new TableColumn<>("Destinazione");
+        destinationColumn.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getDestinationPath()));
+        destinationColumn.setPrefWidth(220);
+        
+        TableColumn<TransferQueue.Item, String> priorityColumn = new TableColumn<>("Priorità");
+        priorityColumn.setCellValueFactory(data -> new SimpleStringProperty(
+            formatPriority(data.getValue().getPriority())));
+        priorityColumn.setPrefWidth(70);
+        
+        TableColumn<TransferQueue.Item, String> stateColumn = new TableColumn<>("Stato");
+        stateColumn.setCellValueFactory(data -> new SimpleStringProperty(formatState(data.getValue())));
+        stateColumn.setPrefWidth(110);
+        
+        queueTable.getColumns().setAll(List.of(nameColumn, sourceColumn, destinationColumn, priorityColumn, stateColumn));
+        
+        Button topButton = new Button("In cima");
+        topButton.setOnAction(e -> forEachQueued(item -> transferService.moveQueued(item.getId(), true), true));
+        Button bottomButton = new Button("In fondo");
+        bottomButton.setOnAction(e -> forEachQueued(item -> transferService.moveQueued(item.getId(), false), false));
+        
+        ComboBox<String> priorityBox = new ComboBox<>(FXCollections.observableArrayList("Alta", "Normale", "Bassa"));
+        priorityBox.setPromptText("Priorità");
+        priorityBox.setOnAction(e -> {
+            int index = priorityBox.getSelectionModel().getSelectedIndex();
+            if (index >= 0) {
+                int priority = TransferQueue.PRIORITY_HIGH - index;
+                forEachQueued(item -> transferService.setQueuedPriority(item.getId(), priority), false);
+                priorityBox.getSelectionModel().clearSelection();
+            }
+        });
+        
+        Button pauseButton = new Button("Sospendi");
+        pauseButton.setOnAction(e -> forEachQueued(item -> transferService.pauseQueued(item.getId()), false));
+        Button resumeButton = new Button("Riattiva");
+        resumeButton.setOnAction(e -> forEachQueued(item -> transferService.resumeQueued(item.getId()), false));
+        Button retryButton = new Button("Riprova");
+        retryButton.setOnAction(e -> forEachQueued(item -> transferService.retryQueued(item.getId()), false));
+        Button retryAllButton = new Button("Riprova falliti");
+        retryAllButton.setOnAction(e -> {
+            transferService.retryFailedTransfers();
+            refreshQueue();
+        });
+        Button removeButton = new Button("Rimuovi");
+        removeButton.setOnAction(e -> forEachQueued(item -> transferService.removeQueued(item.getId()), false));
+        
+        HBox buttonBox = new HBox(10, topButton, bottomButton, priorityBox, pauseButton, resumeButton,
+            retryButton, retryAllButton, removeButton);
+        
+        VBox box = new VBox(10, queueTable, buttonBox);
+        box.setPadding(new Insets(10, 0, 0, 0));
+        VBox.setVgrow(queueTable, Priority.ALWAYS);
+        return box;
+    }
+    
+    /**
+     * Rilegge i primi elementi della coda mantenendo la selezione
+     */
+    private void refreshQueue() {
+        Set<Integer> selected = new HashSet<>();
+        for (TransferQueue.Item item : queueTable.getSelectionModel().getSelectedItems()) {
+            selected.add(item.getId());
+        }
+        List<TransferQueue.Item> items = transferService.getQueuedItems(QUEUE_VIEW_LIMIT);
+        queueTable.setItems(FXCollections.observableArrayList(items));
+        for (int i = 0; i < items.size(); i++) {
+            if (selected.contains(items.get(i).getId())) {
+                queueTable.getSelectionModel().select(i);
+            }
+        }
+    }
+    
+    /**
+     * Applica l'azione agli elementi selezionati nella coda; reverse per gli spostamenti in
+     * cima, così gli elementi mantengono il loro ordine relativo
+     */
+    private void forEachQueued(java.util.function.Consumer<TransferQueue.Item> action, boolean reverse) {
+        List<TransferQueue.Item> items = new java.util.ArrayList<>(queueTable.getSelectionModel().getSelectedItems());
+        if (reverse) {
+            java.util.Collections.reverse(items);
+        }
+        items.forEach(action);
+        refreshQueue();
+    }
+    
+    private static String formatPriority(int priority) {
+        switch (priority) {
+            case TransferQueue.PRIORITY_HIGH: return "Alta";
+            case TransferQueue.PRIORITY_LOW: return "Bassa";
+            default: return "Normale";
+        }
+    }
+    
+    private static String formatState(TransferQueue.Item item) {
+        switch (item.getState()) {
+            case PAUSED: return "Sospeso";
+            case WAITING: return "Attende il server";
+            case FAILED: return "Fallito";
+            default: return item.isResume() ? "In coda (ripresa)" : "In coda";
+        }
+    }
+    
+    /**
+     * Contatori e velocità complessiva dei trasferimenti in corso
+     */
+    private void updateStatus() {
+        long active = 0;
+        long completed = 0;
+        long failed = 0;
+        double rate = 0;
+        for (TransferTask task : transferService.getActiveTransfers()) {
+            if (task.isCompleted()) {
+                completed++;
+            } else if (task.isFailed()) {
+                failed++;
+            } else {
+                active++;
+                rate += task.getBytesPerSecond();
+            }
+        }
+        statusLabel.setText(String.format(
+            "Attivi: %d | Completati: %d | Falliti: %d | Totale: %d | Velocità: %s/s | In coda: %d (sospesi %d, in attesa %d)",
+            active, completed, failed, transferService.getActiveTransfers().size(), formatBytes((long) rate),
+            transferService.getQueueCount(TransferQueue.State.QUEUED),
+            transferService.getQueueCount(TransferQueue.State.PAUSED),
+            transferService.getQueueCount(TransferQueue.State.WAITING)));
+    }
+    
+    private void forEachSelected(java.util.function.Consumer<TransferTask> action) {
+        for (TransferTask task : new java.util.ArrayList<>(transfersTable.getSelectionModel().getSelectedItems())) {
+            if (!task.isCompleted() && !task.isFailed()) {
+                action.accept(task);
+            }
+        }
+    }
     
     private String formatBytes(long bytes) {
         if (bytes < 1024) return bytes + " B";
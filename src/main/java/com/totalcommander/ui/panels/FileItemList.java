@@ -0,0 +1,77 @@
+package com.totalcommander.ui.panels;
+
+import com.totalcommander.models.FileItem;
+import javafx.collections.ModifiableObservableListBase;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lista osservabile delle righe di un pannello. Più modifiche possono essere raggruppate
+ * in un'unica notifica e l'ordinamento produce una permutazione, così la tabella
+ * conserva selezione e scorrimento
+ */
+class FileItemList extends ModifiableObservableListBase<FileItem> {
+
+    private List<FileItem> items = new ArrayList<>();
+
+    /**
+     * Esegue le modifiche notificando la tabella una sola volta alla fine
+     */
+    void batch(Runnable changes) {
+        beginChange();
+        try {
+            changes.run();
+        } finally {
+            endChange();
+        }
+    }
+
+    @Override
+    public void sort(Comparator<? super FileItem> comparator) {
+        int size = items.size();
+        if (size < 2) {
+            return;
+        }
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        java.util.Arrays.sort(order, (a, b) -> comparator.compare(items.get(a), items.get(b)));
+        List<FileItem> sorted = new ArrayList<>(size);
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted.add(items.get(order[i]));
+            permutation[order[i]] = i;
+        }
+        beginChange();
+        items = sorted;
+        nextPermutation(0, size, permutation);
+        endChange();
+    }
+
+    @Override
+    public FileItem get(int index) {
+        return items.get(index);
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    protected void doAdd(int index, FileItem element) {
+        items.add(index, element);
+    }
+
+    @Override
+    protected FileItem doSet(int index, FileItem element) {
+        return items.set(index, element);
+    }
+
+    @Override
+    protected FileItem doRemove(int index) {
+        return items.remove(index);
+    }
+}
@@ -1,5 +1,6 @@
 package com.totalcommander.ui.panels;
 
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.ListChangeListener;
@@ -13,7 +14,11 @@ import com.totalcommander.models.FileItem;
 import com.totalcommander.models.FtpConnection;
 import com.totalcommander.services.FileOperationService;
 import com.totalcommander.services.ArchiveService;
+import com.totalcommander.services.DirectoryCache;
+import com.totalcommander.services.DirectoryLoader;
+import com.totalcommander.services.OperationControl;
 import com.totalcommander.services.FtpService;
+import com.totalcommander.services.TransferService;
 import org.apache.commons.net.ftp.FTPFile;
 import java.io.File;
 import java.nio.file.FileStore;
@@ -22,9 +27,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.function.Function;
 
 /**
  * Pannello file con lista file e navigazione
@@ -34,10 +39,11 @@ public class FilePanel extends VBox {
     private ComboBox<String> driveComboBox;
     private TextField pathField;
     private TableView<FileItem> fileTable;
-    private ObservableList<FileItem> fileItems;
+    private FileItemList fileItems;
     private Path currentPath;
     private FileOperationService fileOperationService;
     private ArchiveService archiveService;
+    private TransferService transferService;
     private Consumer<FilePanel> onActivate;
     private boolean isActive;
     private Label statusLabel;
@@ -47,14 +53,27 @@ public class FilePanel extends VBox {
     private FtpService ftpService;
     private FtpConnection ftpConnection;
     private String currentFtpPath = "/";
+    private boolean ftpListingShown = false; // La tabella mostra già la cartella FTP corrente
     private boolean isRefreshing = false; // Flag per evitare refresh durante operazioni
+    
+    // Caricamento locale in corso, annullato quando si cambia cartella
+    private OperationControl currentLoad;
+    
+    // Oltre questo numero di righe nuove conviene riordinare tutta la tabella
+    private static final int BULK_INSERT_THRESHOLD = 256;
+    
+    // Cache condivisa delle cartelle e osservatore della cartella mostrata
+    private final DirectoryCache directoryCache = DirectoryCache.getInstance();
+    private Path watchedPath;
+    private Consumer<DirectoryCache.Delta> watchListener;
+    private String diskInfo = "";
 
     public FilePanel(Consumer<FilePanel> onActivate) {
         try {
         this.onActivate = onActivate;
         this.fileOperationService = new FileOperationService();
         this.archiveService = new ArchiveService();
-        this.fileItems = FXCollections.observableArrayList();
+        this.fileItems = new FileItemList();
             
             // Prova a caricare la directory home, altrimenti usa la directory corrente
             try {
@@ -137,20 +156,32 @@ public class FilePanel extends VBox {
         nameColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
         nameColumn.setPrefWidth(300);
         
-        TableColumn<FileItem, String> sizeColumn = new TableColumn<>("Dimensione");
-        sizeColumn.setCellValueFactory(new PropertyValueFactory<>("size"));
+        // Dimensione e data ordinano sui valori grezzi e formattano solo le celle visibili
+        TableColumn<FileItem, FileItem> sizeColumn = new TableColumn<>("Dimensione");
+        sizeColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue()));
+        sizeColumn.setCellFactory(column -> formattedCell(FileItem::getSize));
+        sizeColumn.setComparator(FileItem.BY_SIZE);
         sizeColumn.setPrefWidth(100);
         
         TableColumn<FileItem, String> typeColumn = new TableColumn<>("Tipo");
         typeColumn.setCellValueFactory(new PropertyValueFactory<>("type"));
         typeColumn.setPrefWidth(100);
         
-        TableColumn<FileItem, String> dateColumn = new TableColumn<>("Data Modifica");
-        dateColumn.setCellValueFactory(new PropertyValueFactory<>("modifiedDate"));
+        TableColumn<FileItem, FileItem> dateColumn = new TableColumn<>("Data Modifica");
+        dateColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue()));
+        dateColumn.setCellFactory(column -> formattedCell(FileItem::getModifiedDate));
+        dateColumn.setComparator(FileItem.BY_DATE);
         dateColumn.setPrefWidth(150);
         
         fileTable.getColumns().addAll(nameColumn, sizeColumn, typeColumn, dateColumn);
         fileTable.setItems(fileItems);
+        // Ordinamento come permutazione delle righe, senza sostituire il contenuto della lista
+        fileTable.setSortPolicy(table -> {
+            if (table.getComparator() != null) {
+                fileItems.sort(table.getComparator());
+            }
+            return true;
+        });
         
         // Abilita selezione multipla
         fileTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
@@ -250,12 +281,28 @@ public class FilePanel extends VBox {
     }
     
     private void loadLocalDirectory(Path path) {
+        loadLocalDirectory(path, null);
+    }
+    
+    /**
+     * Mostra la cartella: subito dalla cache se visitata di recente, altrimenti la carica
+     * in background e gli elementi arrivano nella tabella a blocchi.
+     * onLoaded viene eseguito sul thread JavaFX a caricamento completato
+     */
+    private void loadLocalDirectory(Path path, Runnable onLoaded) {
         try {
-            File dir = path.toFile();
-            if (!dir.exists() || !dir.isDirectory()) {
+            if (!Files.isDirectory(path)) {
+                finishLoad(onLoaded);
                 return;
             }
             
+            // Annulla il caricamento precedente, i suoi blocchi non vanno più mostrati
+            if (currentLoad != null) {
+                currentLoad.cancel();
+                currentLoad = null;
+                isRefreshing = false;
+            }
+            
             currentPath = path;
             pathField.setText(path.toString());
             fileItems.clear();
@@ -265,21 +312,294 @@ public class FilePanel extends VBox {
             
             // Cartella parent
             if (path.getParent() != null) {
-                fileItems.add(new FileItem("..", "Cartella", "", "", true));
+                fileItems.add(FileItem.parent());
             }
             
-            // File e cartelle
-            File[] files = dir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    fileItems.add(FileItem.fromFile(file));
-                }
+            // Osserva la cartella prima di leggerla, così nessuna modifica va persa
+            watchDirectory(path);
+            
+            List<FileItem> cached = directoryCache.get(path);
+            if (cached != null) {
+                fileItems.addAll(cached);
+                sortItems();
+                updateStatistics();
+                refreshDiskInfo(path);
+                finishLoad(onLoaded);
+                return;
             }
             
-            // Aggiorna statistiche dopo il caricamento
-            updateStatistics();
+            statusLabel.setText("Caricamento...");
+            List<FileItem> loaded = new ArrayList<>();
+            OperationControl[] load = new OperationControl[1];
+            load[0] = DirectoryLoader.load(path,
+                batch -> javafx.application.Platform.runLater(() -> {
+                    if (load[0] == currentLoad && !load[0].isCancelled()) {
+                        fileItems.addAll(batch);
+                        loaded.addAll(batch);
+                    }
+                }),
+                statistics -> {
+                    // Informazioni sul disco lette qui, fuori dal thread JavaFX
+                    String info = getDiskInfo(path);
+                    javafx.application.Platform.runLater(() -> {
+                        if (load[0] != currentLoad || load[0].isCancelled()) {
+                            return;
+                        }
+                        currentLoad = null;
+                        directoryCache.put(path, loaded);
+                        diskInfo = info;
+                        sortItems();
+                        showStatistics(statistics.getFolderCount(), statistics.getFileCount(),
+                            statistics.getTotalBytes(), diskInfo);
+                        if (onLoaded != null) {
+                            onLoaded.run();
+                        }
+                    });
+                },
+                error -> javafx.application.Platform.runLater(() -> {
+                    if (load[0] == currentLoad) {
+                        currentLoad = null;
+                        statusLabel.setText("");
+                        showError("Errore", "Impossibile caricare la directory: " + error.getMessage());
+                        finishLoad(onLoaded);
+                    }
+                }));
+            currentLoad = load[0];
         } catch (Exception e) {
             showError("Errore", "Impossibile caricare la directory: " + e.getMessage());
+            finishLoad(onLoaded);
+        }
+    }
+    
+    /**
+     * Rilegge la cartella in background; la cache inoltra solo le differenze,
+     * applicate alla tabella senza ricaricarla
+     */
+    private void reloadLocalDirectory(Runnable onLoaded) {
+        Path path = currentPath;
+        if (currentLoad != null || directoryCache.get(path) == null) {
+            // Primo caricamento ancora in corso o cartella non in cache: lettura completa
+            loadLocalDirectory(path, onLoaded);
+            return;
+        }
+        directoryCache.reloadInBackground(path, () -> {
+            String info = getDiskInfo(path);
+            javafx.application.Platform.runLater(() -> {
+                if (path.equals(currentPath) && !isFtpMode) {
+                    diskInfo = info;
+                    updateStatistics();
+                }
+                if (onLoaded != null) {
+                    onLoaded.run();
+                }
+            });
+        });
+    }
+    
+    /**
+     * Sposta l'osservatore sulla cartella mostrata
+     */
+    private void watchDirectory(Path path) {
+        unwatchDirectory();
+        AtomicReference<Consumer<DirectoryCache.Delta>> listener = new AtomicReference<>();
+        listener.set(delta -> javafx.application.Platform.runLater(() -> {
+            if (watchListener == listener.get()) {
+                applyDelta(delta);
+            }
+        }));
+        watchListener = listener.get();
+        watchedPath = path;
+        directoryCache.watch(path, watchListener);
+    }
+    
+    private void unwatchDirectory() {
+        if (watchListener != null) {
+            directoryCache.unwatch(watchedPath, watchListener);
+            watchListener = null;
+            watchedPath = null;
+        }
+    }
+    
+    /**
+     * Applica alla tabella le modifiche avvenute sul disco
+     */
+    private void applyDelta(DirectoryCache.Delta delta) {
+        if (delta.isReload()) {
+            // Cartella eliminata o eventi persi: risale fino a una cartella esistente
+            Path path = currentPath;
+            while (path != null && !Files.isDirectory(path)) {
+                path = path.getParent();
+            }
+            if (path != null) {
+                loadLocalDirectory(path);
+            }
+            return;
+        }
+        if (currentLoad != null) {
+            // Caricamento in corso: le differenze sono già incluse nel risultato
+            return;
+        }
+        applyChanges(delta.getUpdated(), delta.getRemoved());
+        updateStatistics();
+    }
+    
+    /**
+     * Confronta il nuovo contenuto con le righe mostrate e applica solo le differenze
+     */
+    private void applyListing(List<FileItem> listing) {
+        java.util.Map<String, FileItem> shown = new java.util.HashMap<>();
+        for (FileItem item : fileItems) {
+            if (!item.isParent()) {
+                shown.put(item.getName(), item);
+            }
+        }
+        List<FileItem> updated = new ArrayList<>();
+        for (FileItem item : listing) {
+            if (!item.sameAs(shown.remove(item.getName()))) {
+                updated.add(item);
+            }
+        }
+        applyChanges(updated, shown.keySet());
+    }
+    
+    /**
+     * Operazioni minime sulle righe, notificate alla tabella come un'unica modifica:
+     * scorrimento, selezione e focus restano stabili
+     */
+    private void applyChanges(java.util.Collection<FileItem> updated, java.util.Collection<String> removedNames) {
+        if (updated.isEmpty() && removedNames.isEmpty()) {
+            return;
+        }
+        java.util.Set<String> selectedNames = getSelectedNames();
+        FileItem focused = fileTable.getFocusModel().getFocusedItem();
+        String focusedName = focused != null ? focused.getName() : null;
+        java.util.Comparator<FileItem> comparator = fileTable.getComparator();
+        boolean[] needsSort = new boolean[1];
+        
+        fileItems.batch(() -> {
+            java.util.Set<String> removed = new java.util.HashSet<>(removedNames);
+            java.util.Map<String, Integer> indexByName = new java.util.HashMap<>();
+            for (int i = 0; i < fileItems.size(); i++) {
+                indexByName.put(fileItems.get(i).getName(), i);
+            }
+            
+            // Righe modificate che restano al loro posto: sostituite sul posto
+            List<FileItem> toInsert = new ArrayList<>();
+            for (FileItem item : updated) {
+                Integer index = indexByName.get(item.getName());
+                if (index != null && (comparator == null || isInOrder(index, item, comparator))) {
+                    fileItems.set(index, item);
+                } else {
+                    if (index != null) {
+                        removed.add(item.getName());
+                    }
+                    toInsert.add(item);
+                }
+            }
+            if (!removed.isEmpty()) {
+                fileItems.removeIf(item -> !item.isParent() && removed.contains(item.getName()));
+            }
+            
+            // Nuove righe nella posizione dell'ordinamento; molte insieme costano meno con un ordinamento unico
+            if (comparator == null || toInsert.size() > BULK_INSERT_THRESHOLD) {
+                fileItems.addAll(toInsert);
+                needsSort[0] = comparator != null;
+            } else {
+                for (FileItem item : toInsert) {
+                    fileItems.add(insertionIndex(item, comparator), item);
+                }
+            }
+        });
+        if (needsSort[0]) {
+            sortItems();
+        }
+        restoreSelection(selectedNames, focusedName);
+    }
+    
+    private java.util.Set<String> getSelectedNames() {
+        java.util.Set<String> names = new java.util.HashSet<>();
+        for (FileItem item : fileTable.getSelectionModel().getSelectedItems()) {
+            if (item != null && !item.isParent()) {
+                names.add(item.getName());
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Riseleziona le righe per nome con un solo passaggio sulla lista
+     */
+    private void restoreSelection(java.util.Set<String> selectedNames, String focusedName) {
+        int[] indices = new int[selectedNames.size()];
+        int count = 0;
+        int focusIndex = -1;
+        for (int i = 0; i < fileItems.size(); i++) {
+            String name = fileItems.get(i).getName();
+            if (selectedNames.contains(name) && count < indices.length) {
+                indices[count++] = i;
+            }
+            if (name.equals(focusedName)) {
+                focusIndex = i;
+            }
+        }
+        MultipleSelectionModel<FileItem> selection = fileTable.getSelectionModel();
+        List<Integer> current = selection.getSelectedIndices();
+        boolean unchanged = current.size() == count;
+        for (int i = 0; unchanged && i < count; i++) {
+            unchanged = selection.isSelected(indices[i]);
+        }
+        if (!unchanged) {
+            selection.clearSelection();
+            if (count > 0) {
+                selection.selectIndices(indices[0], java.util.Arrays.copyOfRange(indices, 1, count));
+            }
+        }
+        if (focusIndex >= 0 && fileTable.getFocusModel().getFocusedIndex() != focusIndex) {
+            fileTable.getFocusModel().focus(focusIndex);
+        }
+    }
+    
+    private boolean isInOrder(int index, FileItem item, java.util.Comparator<FileItem> comparator) {
+        return (index == 0 || comparator.compare(fileItems.get(index - 1), item) <= 0)
+            && (index == fileItems.size() - 1 || comparator.compare(item, fileItems.get(index + 1)) <= 0);
+    }
+    
+    /**
+     * Posizione che rispetta l'ordinamento scelto dall'utente, in coda se non ordinata
+     */
+    private int insertionIndex(FileItem item, java.util.Comparator<FileItem> comparator) {
+        if (comparator == null) {
+            return fileItems.size();
+        }
+        int index = java.util.Collections.binarySearch(fileItems, item, comparator);
+        return index >= 0 ? index + 1 : -(index + 1);
+    }
+    
+    /**
+     * Mantiene l'ordinamento scelto dall'utente dopo l'aggiunta di elementi
+     */
+    private void sortItems() {
+        if (!fileTable.getSortOrder().isEmpty()) {
+            fileTable.sort();
+        }
+    }
+    
+    private void refreshDiskInfo(Path path) {
+        java.util.concurrent.CompletableFuture.supplyAsync(() -> getDiskInfo(path))
+            .thenAccept(info -> javafx.application.Platform.runLater(() -> {
+                if (path.equals(currentPath) && !isFtpMode) {
+                    diskInfo = info;
+                    updateStatistics();
+                }
+            }));
+    }
+    
+    /**
+     * Esegue onLoaded sempre in differita, come al termine di un caricamento in background
+     */
+    private void finishLoad(Runnable onLoaded) {
+        if (onLoaded != null) {
+            javafx.application.Platform.runLater(onLoaded);
         }
     }
     
@@ -302,16 +622,13 @@ public class FilePanel extends VBox {
                 }
             }
             
+            String previousPath = currentFtpPath;
             currentFtpPath = ftpService.getCurrentDirectory();
             pathField.setText("ftp://" + ftpConnection.getHost() + currentFtpPath);
-            fileItems.clear();
-            
-            // Cartella parent (se non siamo alla root)
-            if (!currentFtpPath.equals("/") && !currentFtpPath.isEmpty()) {
-                fileItems.add(new FileItem("..", "Cartella", "", "", true));
-            }
+            boolean sameDirectory = ftpListingShown && currentFtpPath.equals(previousPath);
             
             // Lista file FTP
+            List<FileItem> listing = new ArrayList<>();
             FTPFile[] ftpFiles = ftpService.listFiles(currentFtpPath);
             if (ftpFiles != null) {
                 for (FTPFile ftpFile : ftpFiles) {
@@ -321,14 +638,29 @@ public class FilePanel extends VBox {
                     }
                     
                     boolean isDir = ftpFile.isDirectory();
-                    String type = isDir ? "Cartella" : getFileExtension(name);
-                    String size = isDir ? "<DIR>" : formatFileSize(ftpFile.getSize());
-                    String date = formatFtpDate(ftpFile.getTimestamp());
+                    long size = isDir ? 0 : Math.max(0, ftpFile.getSize());
+                    long date = ftpFile.getTimestamp() != null
+                        ? ftpFile.getTimestamp().getTimeInMillis() : FileItem.UNKNOWN_TIME;
                     
-                    fileItems.add(new FileItem(name, type, size, date, isDir));
+                    listing.add(new FileItem(name, size, date, isDir));
                 }
             }
             
+            if (sameDirectory) {
+                // Stessa cartella: solo le righe cambiate
+                applyListing(listing);
+            } else {
+                List<FileItem> rows = new ArrayList<>(listing.size() + 1);
+                // Cartella parent (se non siamo alla root)
+                if (!currentFtpPath.equals("/") && !currentFtpPath.isEmpty()) {
+                    rows.add(FileItem.parent());
+                }
+                rows.addAll(listing);
+                fileItems.setAll(rows);
+                ftpListingShown = true;
+                sortItems();
+            }
+            
             // Aggiorna statistiche
             updateFtpStatistics();
         } catch (Exception e) {
@@ -337,29 +669,19 @@ public class FilePanel extends VBox {
         }
     }
     
-    private String getFileExtension(String filename) {
-        int lastDot = filename.lastIndexOf('.');
-        if (lastDot > 0 && lastDot < filename.length() - 1) {
-            return filename.substring(lastDot + 1).toUpperCase();
-        }
-        return "File";
-    }
-    
-    private String formatFileSize(long bytes) {
-        if (bytes < 1024) return bytes + " B";
-        if (bytes < 1024 * 1024) return String.format("%.2f KB", bytes / 1024.0);
-        if (bytes < 1024 * 1024 * 1024) return String.format("%.2f MB", bytes / (1024.0 * 1024.0));
-        return String.format("%.2f GB", bytes / (1024.0 * 1024.0 * 1024.0));
-    }
-    
-    private String formatFtpDate(java.util.Calendar calendar) {
-        if (calendar == null) {
-            return "";
-        }
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-        return sdf.format(calendar.getTime());
+    /**
+     * Cella che mostra un testo ricavato dall'elemento, formattato solo quando visibile
+     */
+    private TableCell<FileItem, FileItem> formattedCell(Function<FileItem, String> formatter) {
+        return new TableCell<FileItem, FileItem>() {
+            @Override
+            protected void updateItem(FileItem item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : formatter.apply(item));
+            }
+        };
     }
-    
+
     private void updateFtpStatistics() {
         int folderCount = 0;
         int fileCount = 0;
@@ -373,29 +695,7 @@ public class FilePanel extends VBox {
                 folderCount++;
             } else {
                 fileCount++;
-                // Prova a estrarre la dimensione dal formato stringa
-                String sizeStr = item.getSize();
-                if (!sizeStr.equals("<DIR>")) {
-                    try {
-                        // Estrai numero dalla stringa (es. "1.23 MB" -> 1.23)
-                        String[] parts = sizeStr.split(" ");
-                        if (parts.length >= 2) {
-                            double value = Double.parseDouble(parts[0]);
-                            String unit = parts[1].toUpperCase();
-                            if (unit.equals("B")) {
-                                totalBytes += (long)value;
-                            } else if (unit.equals("KB")) {
-                                totalBytes += (long)(value * 1024);
-                            } else if (unit.equals("MB")) {
-                                totalBytes += (long)(value * 1024 * 1024);
-                            } else if (unit.equals("GB")) {
-                                totalBytes += (long)(value * 1024 * 1024 * 1024);
-                            }
-                        }
-                    } catch (Exception e) {
-                        // Ignora errori di parsing
-                    }
-                }
+                totalBytes += item.getSizeBytes();
             }
         }
         
@@ -409,10 +709,18 @@ public class FilePanel extends VBox {
      */
     public void connectToFtp(FtpConnection connection, FtpService service) {
         this.isFtpMode = true;
+        this.ftpListingShown = false;
         this.ftpConnection = connection;
         this.ftpService = service;
         this.currentFtpPath = connection.getInitialPath() != null ? connection.getInitialPath() : "/";
         
+        // La cartella locale non è più mostrata
+        if (currentLoad != null) {
+            currentLoad.cancel();
+            currentLoad = null;
+        }
+        unwatchDirectory();
+        
         // Nascondi il ComboBox delle unità in modalità FTP
         driveComboBox.setVisible(false);
         
@@ -425,6 +733,7 @@ public class FilePanel extends VBox {
      */
     public void disconnectFromFtp() {
         this.isFtpMode = false;
+        this.ftpListingShown = false;
         this.ftpService = null;
         this.ftpConnection = null;
         this.currentFtpPath = "/";
@@ -442,6 +751,13 @@ public class FilePanel extends VBox {
         }
     }
     
+    /**
+     * Imposta il servizio che esegue in background le operazioni locali del pannello
+     */
+    public void setTransferService(TransferService transferService) {
+        this.transferService = transferService;
+    }
+    
     public boolean isFtpMode() {
         return isFtpMode;
     }
@@ -538,6 +854,9 @@ public class FilePanel extends VBox {
         }
     }
     
+    /**
+     * Statistiche calcolate dagli elementi già caricati, senza rileggere il disco
+     */
     private void updateStatistics() {
         int folderCount = 0;
         int fileCount = 0;
@@ -552,33 +871,25 @@ public class FilePanel extends VBox {
                 folderCount++;
             } else {
                 fileCount++;
-                // Calcola la dimensione del file
-                try {
-                    Path itemPath = currentPath.resolve(item.getName());
-                    File file = itemPath.toFile();
-                    if (file.exists() && file.isFile()) {
-                        totalBytes += file.length();
-                    }
-                } catch (Exception e) {
-                    // Ignora errori nel calcolo della dimensione
-                }
+                totalBytes += item.getSizeBytes();
             }
         }
         
+        showStatistics(folderCount, fileCount, totalBytes, diskInfo);
+    }
+    
+    private void showStatistics(int folderCount, int fileCount, long totalBytes, String diskInfo) {
         // Converti bytes in MB
         double totalMB = totalBytes / (1024.0 * 1024.0);
         
-        // Ottieni informazioni sul disco
-        String diskInfo = getDiskInfo();
-        
         // Aggiorna la label di stato
         statusLabel.setText(String.format("Cartelle: %d | File: %d | Totale: %.2f MB | %s", 
             folderCount, fileCount, totalMB, diskInfo));
     }
     
-    private String getDiskInfo() {
+    private String getDiskInfo(Path path) {
         try {
-            FileStore store = Files.getFileStore(currentPath);
+            FileStore store = Files.getFileStore(path);
             String volumeName = store.name();
             if (volumeName == null || volumeName.isEmpty()) {
                 volumeName = "Volume";
@@ -725,11 +1036,17 @@ public class FilePanel extends VBox {
                     }
                 }
                 
-                if (fileOperationService.deleteFiles(filesToDelete)) {
-                    refresh();
-                } else {
-                    showError("Errore", "Impossibile eliminare alcuni file.");
-                }
+                // Eliminazione in background, visibile nel gestore trasferimenti
+                String name = filesToDelete.size() == 1 ? filesToDelete.get(0).getName() 
+                                                        : filesToDelete.size() + " elementi";
+                transferService.queueLocalOperation("Elimina", currentPath.toString(), "", name,
+                    (control, tracker) -> fileOperationService.deleteFiles(filesToDelete, control, tracker),
+                    result -> {
+                        refresh();
+                        if (!result.isSuccess() && !result.isCancelled()) {
+                            showError("Errore", "Impossibile eliminare " + result.getFailureCount() + " elementi.");
+                        }
+                    });
             }
         });
     }
@@ -858,47 +1175,32 @@ public class FilePanel extends VBox {
             return; // Evita refresh multipli simultanei
         }
         
-        isRefreshing = true;
-        
         // Salva la selezione corrente prima del refresh
-        List<String> selectedFileNames = new ArrayList<>();
-        for (FileItem item : fileTable.getSelectionModel().getSelectedItems()) {
-            if (!item.getName().equals("..")) {
-                selectedFileNames.add(item.getName());
+        java.util.Set<String> selectedFileNames = getSelectedNames();
+        FileItem focused = fileTable.getFocusModel().getFocusedItem();
+        String focusedName = focused != null ? focused.getName() : null;
+        
+        // Ripristina la selezione dopo il refresh, usando i nomi
+        Runnable restoreSelection = () -> {
+            try {
+                if (!selectedFileNames.isEmpty()) {
+                    restoreSelection(selectedFileNames, focusedName);
+                }
+            } catch (Exception e) {
+                System.err.println("Errore nel ripristino della selezione: " + e.getMessage());
+            } finally {
+                isRefreshing = false;
             }
-        }
+        };
         
-        // Esegui il refresh
+        // Esegui il refresh (il ripristino avviene sempre dopo questo metodo)
         if (isFtpMode) {
             loadFtpDirectory(currentFtpPath);
+            javafx.application.Platform.runLater(restoreSelection);
         } else {
-            loadLocalDirectory(currentPath);
-            updateStatistics();
-        }
-        
-        // Ripristina la selezione dopo il refresh
-        if (!selectedFileNames.isEmpty()) {
-            javafx.application.Platform.runLater(() -> {
-                try {
-                    // Aspetta che la tabella sia aggiornata
-                    fileTable.getSelectionModel().clearSelection();
-                    
-                    // Ripristina la selezione usando i nomi
-                    for (int i = 0; i < fileItems.size(); i++) {
-                        FileItem item = fileItems.get(i);
-                        if (selectedFileNames.contains(item.getName())) {
-                            fileTable.getSelectionModel().select(i);
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Errore nel ripristino della selezione: " + e.getMessage());
-                } finally {
-                    isRefreshing = false;
-                }
-            });
-        } else {
-            isRefreshing = false;
+            reloadLocalDirectory(restoreSelection);
         }
+        isRefreshing = true;
     }
     
     public void refreshWithoutPreservingSelection() {
@@ -907,7 +1209,6 @@ public class FilePanel extends VBox {
             loadFtpDirectory(currentFtpPath);
         } else {
             loadLocalDirectory(currentPath);
-            updateStatistics();
         }
     }
     
@@ -0,0 +1,121 @@
+package com.totalcommander.models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Modello con valori grezzi e testi formattati su richiesta
+ */
+class FileItemTest {
+
+    private static final long KB = 1024;
+
+    @Test
+    void sortsBySizeAndDateOnRawValues() {
+        FileItem small = new FileItem("piccolo.txt", 9 * KB, 2000, false);
+        FileItem large = new FileItem("grande.txt", 10 * KB * KB, 1000, false);
+        FileItem dir = new FileItem("cartella", 0, 3000, true);
+        List<FileItem> items = new ArrayList<>(List.of(large, small, dir));
+
+        items.sort(FileItem.BY_SIZE);
+        assertEquals(List.of(dir, small, large), items);
+
+        items.sort(FileItem.BY_DATE);
+        assertEquals(List.of(large, small, dir), items);
+    }
+
+    @Test
+    void formatsDisplayTextOnDemand() {
+        FileItem file = new FileItem("report.pdf", 2 * KB * KB, FileItem.UNKNOWN_TIME, false);
+        FileItem dir = new FileItem("docs.old", 0, 0, true);
+        FileItem parent = FileItem.parent();
+
+        assertTrue(file.getSize().endsWith(" MB"));
+        assertEquals("PDF", file.getType());
+        assertEquals("", file.getModifiedDate());
+        assertEquals("<DIR>", dir.getSize());
+        assertEquals("Cartella", dir.getType());
+        assertNull(dir.getExtension());
+        assertTrue(parent.isDirectory() && parent.isParent());
+        assertEquals("", parent.getSize());
+        assertEquals("File", new FileItem("README", 1, 0, false).getType());
+    }
+
+    @Test
+    void sharesShortExtensionsOnly() {
+        FileItem first = new FileItem("a.txt", 1, 0, false);
+        FileItem second = new FileItem("B.TXT", 1, 0, false);
+        FileItem longFirst = new FileItem("backup.20240101-1200", 1, 0, false);
+        FileItem longSecond = new FileItem("other.20240101-1200", 1, 0, false);
+
+        assertSame(first.getExtension(), second.getExtension());
+        assertEquals("20240101-1200", longFirst.getExtension());
+        assertNotSame(longFirst.getExtension(), longSecond.getExtension());
+    }
+
+    @Test
+    void sameAsComparesRawAttributes() {
+        FileItem item = new FileItem("a.txt", 10, 1000, false);
+
+        assertTrue(item.sameAs(new FileItem("a.txt", 10, 1000, false)));
+        assertFalse(item.sameAs(new FileItem("a.txt", 11, 1000, false)));
+        assertFalse(item.sameAs(new FileItem("a.txt", 10, 1000, true)));
+    }
+
+    /**
+     * Costruzione di 1M elementi e memoria occupata, confrontate con la vecchia
+     * formattazione anticipata: mvn test -Dbenchmark=true [-Dbenchmark.items=1000000]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkConstructionAndFootprint() {
+        int count = Integer.getInteger("benchmark.items", 1_000_000);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "file" + i + (i % 3 == 0 ? ".txt" : i % 3 == 1 ? ".java" : ".png");
+        }
+
+        long before = usedMemory();
+        long start = System.nanoTime();
+        List<String[]> eager = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Vecchio modello: quattro testi formattati per ogni elemento
+            String name = names[i];
+            String type = name.substring(name.lastIndexOf('.') + 1).toUpperCase();
+            String size = String.format("%.2f KB", (i * 37L % 1_000_000) / 1024.0);
+            String date = new SimpleDateFormat("dd/MM/yyyy HH:mm").format(new Date(i * 1000L));
+            eager.add(new String[]{name, type, size, date});
+        }
+        double eagerSeconds = (System.nanoTime() - start) / 1e9;
+        long eagerBytes = usedMemory() - before;
+        assertEquals(count, eager.size());
+        eager = null;
+
+        before = usedMemory();
+        start = System.nanoTime();
+        List<FileItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new FileItem(names[i], i * 37L % 1_000_000, i * 1000L, false));
+        }
+        double lazySeconds = (System.nanoTime() - start) / 1e9;
+        long lazyBytes = usedMemory() - before;
+        assertEquals(count, items.size());
+
+        System.out.printf("%d elementi: formattazione anticipata %.2f s / %d MB, FileItem %.2f s / %d MB%n",
+            count, eagerSeconds, eagerBytes / (KB * KB), lazySeconds, lazyBytes / (KB * KB));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,115 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Copia a segmenti dei file grandi (FileChannel.transferTo)
+ */
+class CopyEngineTest {
+
+    private static final long MB = 1024 * 1024;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void copiesLargeFileInSegments() throws IOException {
+        Path source = createFile(temp.resolve("grande.bin"), 20 * MB + 123);
+        Path destination = Files.createDirectory(temp.resolve("destinazione"));
+
+        CopyEngine engine = new CopyEngine(2);
+        engine.setLargeFileThreshold(MB);
+        engine.setVerifyAlgorithm(null);
+        OperationResult result = engine.copy(List.of(source.toFile()), destination);
+
+        assertTrue(result.isSuccess());
+        assertEquals(Files.size(source), result.getBytesDone());
+        assertEquals(-1, Files.mismatch(source, destination.resolve("grande.bin")));
+    }
+
+    @Test
+    void cancelledLargeCopyLeavesNoPartialFile() throws IOException {
+        Path source = createFile(temp.resolve("grande.bin"), 40 * MB);
+        Path destination = Files.createDirectory(temp.resolve("destinazione"));
+
+        OperationControl control = new OperationControl();
+        CopyEngine engine = new CopyEngine(1);
+        engine.setLargeFileThreshold(MB);
+        engine.setVerifyAlgorithm(null);
+        engine.setControl(control);
+        // Annulla appena arriva il primo segmento
+        engine.setProgressTracker(new ProgressTracker(progress -> {
+            if (progress.getBytesDone() > 0) {
+                control.cancel();
+            }
+        }, 0));
+        OperationResult result = engine.copy(List.of(source.toFile()), destination);
+
+        assertTrue(result.isCancelled());
+        assertFalse(Files.exists(destination.resolve("grande.bin")));
+    }
+
+    @Test
+    void refusesToCopyFileOntoItself() throws IOException {
+        Path source = createFile(temp.resolve("grande.bin"), 2 * MB);
+        byte[] before = Files.readAllBytes(source);
+
+        CopyEngine engine = new CopyEngine(1);
+        engine.setLargeFileThreshold(MB);
+        OperationResult result = engine.copy(List.of(source.toFile()), temp);
+
+        assertEquals(1, result.getFailureCount());
+        assertArrayEquals(before, Files.readAllBytes(source));
+    }
+
+    /**
+     * Confronto con Files.copy: mvn test -Dbenchmark=true [-Dbenchmark.sizeMB=1024]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstFilesCopy() throws IOException {
+        long size = Long.getLong("benchmark.sizeMB", 1024) * MB;
+        Path source = createFile(temp.resolve("bench.bin"), size);
+        Path destination = Files.createDirectory(temp.resolve("destinazione"));
+
+        long start = System.nanoTime();
+        Files.copy(source, temp.resolve("files-copy.bin"), StandardCopyOption.REPLACE_EXISTING);
+        double filesCopy = (System.nanoTime() - start) / 1e9;
+        Files.delete(temp.resolve("files-copy.bin"));
+
+        CopyEngine engine = new CopyEngine(1);
+        engine.setLargeFileThreshold(MB);
+        engine.setVerifyAlgorithm(null);
+        start = System.nanoTime();
+        OperationResult result = engine.copy(List.of(source.toFile()), destination);
+        double chunked = (System.nanoTime() - start) / 1e9;
+
+        assertTrue(result.isSuccess());
+        System.out.printf("Copia di %d MB: Files.copy %.2f s, transferTo a segmenti %.2f s%n",
+            size / MB, filesCopy, chunked);
+    }
+
+    private static Path createFile(Path path, long size) throws IOException {
+        Random random = new Random(size);
+        byte[] buffer = new byte[(int) MB];
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (long written = 0; written < size; written += buffer.length) {
+                random.nextBytes(buffer);
+                out.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+            }
+        }
+        return path;
+    }
+}
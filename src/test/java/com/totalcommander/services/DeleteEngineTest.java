@@ -0,0 +1,128 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.OperationResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Eliminazione parallela in post-ordine
+ */
+class DeleteEngineTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void deletesWholeTree() throws IOException {
+        Path root = Files.createDirectory(temp.resolve("radice"));
+        int files = createTree(root, 3, 4, 10);
+
+        OperationResult result = new DeleteEngine(4).delete(List.of(root.toFile()));
+
+        assertTrue(result.isSuccess());
+        assertFalse(Files.exists(root));
+        assertTrue(result.getFilesDone() >= files);
+    }
+
+    @Test
+    void reportsFailedPathsAndDeletesTheRest() throws IOException {
+        Path missing = temp.resolve("inesistente");
+        Path root = Files.createDirectory(temp.resolve("radice"));
+        createTree(root, 2, 3, 5);
+
+        OperationResult result = new DeleteEngine(2).delete(List.of(missing.toFile(), root.toFile()));
+
+        assertEquals(1, result.getFailureCount());
+        assertEquals(missing, result.getFailures().get(0).getSource());
+        assertFalse(Files.exists(root));
+    }
+
+    @Test
+    void cancelledDeleteKeepsFiles() throws IOException {
+        Path root = Files.createDirectory(temp.resolve("radice"));
+        createTree(root, 2, 3, 5);
+        OperationControl control = new OperationControl();
+        control.cancel();
+
+        DeleteEngine engine = new DeleteEngine(2);
+        engine.setControl(control);
+        OperationResult result = engine.delete(List.of(root.toFile()));
+
+        assertTrue(result.isCancelled());
+        assertTrue(Files.exists(root.resolve("d0").resolve("f0.dat")));
+    }
+
+    /**
+     * Confronto con una visita sequenziale: mvn test -Dbenchmark=true [-Dbenchmark.files=500000]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstSequentialDelete() throws IOException {
+        int total = Integer.getInteger("benchmark.files", 500_000);
+        Path sequentialRoot = Files.createDirectory(temp.resolve("sequenziale"));
+        Path parallelRoot = Files.createDirectory(temp.resolve("parallela"));
+        createFlatTree(sequentialRoot, total);
+        createFlatTree(parallelRoot, total);
+
+        long start = System.nanoTime();
+        Files.walkFileTree(sequentialRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        double sequential = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        OperationResult result = new DeleteEngine().delete(List.of(parallelRoot.toFile()));
+        double parallel = (System.nanoTime() - start) / 1e9;
+
+        assertTrue(result.isSuccess());
+        System.out.printf("Eliminazione di %d file: sequenziale %.2f s, DeleteEngine %.2f s (%s)%n",
+            total, sequential, parallel, result.formatThroughput());
+    }
+
+    private static int createTree(Path dir, int depth, int fanOut, int filesPerDirectory) throws IOException {
+        int files = 0;
+        for (int i = 0; i < filesPerDirectory; i++) {
+            Files.write(dir.resolve("f" + i + ".dat"), new byte[i]);
+            files++;
+        }
+        if (depth > 0) {
+            for (int i = 0; i < fanOut; i++) {
+                files += createTree(Files.createDirectory(dir.resolve("d" + i)), depth - 1, fanOut, filesPerDirectory);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Albero simile a node_modules: molte cartelle piccole da 50 file
+     */
+    private static void createFlatTree(Path root, int total) throws IOException {
+        Path dir = root;
+        for (int i = 0; i < total; i++) {
+            if (i % 50 == 0) {
+                dir = Files.createDirectories(root.resolve("p" + (i / 5000)).resolve("m" + (i / 50)));
+            }
+            Files.createFile(dir.resolve("f" + i + ".js"));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.totalcommander.services;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Indice dei nomi con ricerca per trigrammi: i risultati devono coincidere con una
+ * visita completa dell'albero
+ */
+class FileNameIndexTest {
+
+    @TempDir
+    static Path temp;
+
+    private static Path root;
+    private static FileNameIndex.Index index;
+
+    @BeforeAll
+    static void crawlTree() throws IOException {
+        root = Files.createDirectory(temp.resolve("radice"));
+        String[] names = {"report1.xlsx", "report2.xlsx", "Report_final.XLSX", "server.log", "app.log.1",
+            "main.h", "main.c", "notes.txt", "perche.txt", "a.b"};
+        for (int d = 0; d < 4; d++) {
+            Path dir = Files.createDirectories(root.resolve("livello" + d).resolve("log").resolve("sub" + d));
+            for (Path target : List.of(dir, dir.getParent(), dir.getParent().getParent())) {
+                for (String name : names) {
+                    if (!Files.exists(target.resolve(name))) {
+                        Files.createFile(target.resolve(name));
+                    }
+                }
+            }
+        }
+        index = FileNameIndex.crawl(root);
+    }
+
+    @Test
+    void findsDirectoriesByPath() {
+        assertEquals(0, index.findDirectory(root));
+        assertTrue(index.findDirectory(root.resolve("livello2").resolve("log")) > 0);
+        assertEquals(-1, index.findDirectory(root.resolve("livello2").resolve("manca")));
+        // Un file non è una cartella
+        assertEquals(-1, index.findDirectory(root.resolve("livello2").resolve("main.c")));
+    }
+
+    @Test
+    void wildcardQueriesMatchFullWalk() throws IOException {
+        for (String pattern : List.of("*.log", "report?.xlsx", "*.h", "*erch*", "*log*", "a.b", "*")) {
+            assertEquals(walk(root, Integer.MAX_VALUE, wildcard(pattern)),
+                query(root, Integer.MAX_VALUE, pattern, false), pattern);
+        }
+    }
+
+    @Test
+    void regexQueriesMatchFullWalk() throws IOException {
+        for (String regex : List.of("report\\d\\.xlsx", "(server|app)\\.log.*", "main\\.[ch]", ".*\\.txt")) {
+            Pattern compiled = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            assertEquals(walk(root, Integer.MAX_VALUE, compiled),
+                query(root, Integer.MAX_VALUE, regex, true), regex);
+        }
+    }
+
+    @Test
+    void respectsSearchFolderAndDepth() throws IOException {
+        Path folder = root.resolve("livello1");
+        assertEquals(walk(folder, 1, wildcard("*.log")), query(folder, 1, "*.log", false));
+        assertEquals(walk(folder, 0, wildcard("*")), query(folder, 0, "*", false));
+    }
+
+    @Test
+    void survivesWriteAndRead() throws IOException {
+        Path file = temp.resolve("nomi.idx");
+        FileNameIndex.write(index, file);
+        FileNameIndex.Index loaded = FileNameIndex.read(file, root);
+
+        assertEquals(index.getEntryCount(), loaded.getEntryCount());
+        List<Path> hits = new ArrayList<>();
+        loaded.query(0, Integer.MAX_VALUE, "*.xlsx", false, wildcard("*.xlsx"), new OperationControl(), hits::add);
+        assertEquals(walk(root, Integer.MAX_VALUE, wildcard("*.xlsx")), new TreeSet<>(hits));
+    }
+
+    /**
+     * Albero sintetico: tempo di costruzione, dimensione dell'indice e latenza delle
+     * ricerche. mvn test -Dbenchmark=true [-Dbenchmark.entries=5000000]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkBuildSizeAndQueries() throws IOException {
+        int entries = Integer.getInteger("benchmark.entries", 5_000_000);
+        Path benchRoot = Files.createDirectory(temp.resolve("benchmark"));
+        String[] extensions = {".log", ".txt", ".java", ".xlsx", ".png", ".h"};
+        Path dir = benchRoot;
+        for (int i = 0; i < entries; i++) {
+            if (i % 200 == 0) {
+                dir = Files.createDirectories(benchRoot.resolve("g" + (i / 40_000)).resolve("d" + (i / 200)));
+            }
+            Files.createFile(dir.resolve(Long.toString(i * 2654435761L % 1_000_000_007L, 36)
+                + extensions[i % extensions.length]));
+        }
+
+        long start = System.nanoTime();
+        FileNameIndex.Index benchIndex = FileNameIndex.crawl(benchRoot);
+        double buildSeconds = (System.nanoTime() - start) / 1e9;
+        Path file = temp.resolve("benchmark.idx");
+        FileNameIndex.write(benchIndex, file);
+        System.out.printf("%d elementi: costruzione %.2f s, indice %d MB%n",
+            benchIndex.getEntryCount(), buildSeconds, Files.size(file) / (1024 * 1024));
+
+        for (String pattern : List.of("abc*.log", "*zz9*", "report?.xlsx", "*.h")) {
+            int[] hits = {0};
+            start = System.nanoTime();
+            benchIndex.query(0, Integer.MAX_VALUE, pattern, false, wildcard(pattern), new OperationControl(),
+                path -> hits[0]++);
+            System.out.printf("  %-14s %8d risultati in %.1f ms%n", pattern, hits[0], (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    private static Set<Path> query(Path folder, int maxDepth, String pattern, boolean regex) {
+        Pattern compiled = regex ? Pattern.compile(pattern, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)
+            : wildcard(pattern);
+        Set<Path> hits = new TreeSet<>();
+        index.query(index.findDirectory(folder), maxDepth, pattern, regex, compiled, new OperationControl(), hits::add);
+        return hits;
+    }
+
+    private static Set<Path> walk(Path folder, int maxDepth, Pattern pattern) throws IOException {
+        // maxDepth conta le cartelle attraversate: i file della cartella stessa sono a profondità 0
+        try (Stream<Path> paths = Files.walk(folder, maxDepth == Integer.MAX_VALUE ? maxDepth : maxDepth + 1)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(path -> pattern.matcher(path.getFileName().toString()).matches())
+                .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    private static Pattern wildcard(String pattern) {
+        return Pattern.compile(FileSearchEngine.wildcardToRegex(pattern), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
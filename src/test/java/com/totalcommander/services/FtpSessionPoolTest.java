@@ -0,0 +1,178 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.FtpConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pool di sessioni FTP e trasferimenti paralleli contro un server FTP locale con
+ * latenza simulata. I worker si comportano come quelli di TransferService: ognuno prende
+ * una sessione dal pool e la tiene finché trova elementi da trasferire
+ */
+class FtpSessionPoolTest {
+
+    // Latenza per comando: con molti file piccoli domina il tempo di trasferimento
+    private static final long COMMAND_DELAY_MILLIS = 15;
+    private static final int FILE_COUNT = 32;
+
+    @TempDir
+    Path temp;
+
+    private Path serverRoot;
+    private MiniFtpServer server;
+    private FtpConnection connection;
+    private final FtpSessionPool pool = FtpSessionPool.getInstance();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        serverRoot = Files.createDirectory(temp.resolve("server"));
+        server = new MiniFtpServer(serverRoot, COMMAND_DELAY_MILLIS);
+        connection = new FtpConnection("test", "127.0.0.1", server.getPort(), "utente", "segreta", "/");
+        pool.setMaxSessions(8);
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        pool.close(connection);
+        server.close();
+    }
+
+    @Test
+    void reusesReleasedSessions() throws IOException {
+        FtpService first = pool.borrow(connection);
+        pool.release(connection, first);
+        FtpService second = pool.borrow(connection);
+        pool.release(connection, second);
+
+        assertSame(first, second);
+        assertEquals(1, server.getLogins());
+    }
+
+    @Test
+    void blocksBorrowersBeyondMaxSessions() throws Exception {
+        pool.setMaxSessions(2);
+        FtpService first = pool.borrow(connection);
+        FtpService second = pool.borrow(connection);
+        ExecutorService waiter = Executors.newSingleThreadExecutor();
+        try {
+            Future<FtpService> third = waiter.submit(() -> pool.borrow(connection));
+            assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+
+            pool.release(connection, first);
+            assertSame(first, third.get(5, TimeUnit.SECONDS));
+            pool.release(connection, third.get());
+            pool.release(connection, second);
+        } finally {
+            waiter.shutdownNow();
+        }
+        assertEquals(2, server.getMaxOpenSessions());
+    }
+
+    @Test
+    void parallelDownloadsScaleWithWorkers() throws Exception {
+        List<String> names = createServerFiles(FILE_COUNT);
+
+        double oneWorker = download(names, 1, Files.createDirectory(temp.resolve("uno")));
+        double fourWorkers = download(names, 4, Files.createDirectory(temp.resolve("quattro")));
+
+        System.out.printf("%d download: 1 worker %.2f s, 4 worker %.2f s%n", FILE_COUNT, oneWorker, fourWorkers);
+        assertTrue(fourWorkers < oneWorker / 2, "4 worker: " + fourWorkers + " s, 1 worker: " + oneWorker + " s");
+        assertTrue(server.getMaxOpenSessions() <= 4);
+    }
+
+    @Test
+    void parallelUploadsArriveIntact() throws Exception {
+        Path local = Files.createDirectory(temp.resolve("locale"));
+        Queue<String> pending = new ConcurrentLinkedQueue<>();
+        Random random = new Random(21);
+        for (int i = 0; i < FILE_COUNT; i++) {
+            byte[] data = new byte[1000 + random.nextInt(50_000)];
+            random.nextBytes(data);
+            Files.write(local.resolve("up" + i + ".bin"), data);
+            pending.add("up" + i + ".bin");
+        }
+
+        runWorkers(4, service -> {
+            String name;
+            while ((name = pending.poll()) != null) {
+                assertTrue(service.uploadFile(local.resolve(name), "/" + name));
+            }
+        });
+
+        for (int i = 0; i < FILE_COUNT; i++) {
+            assertEquals(-1, Files.mismatch(local.resolve("up" + i + ".bin"), serverRoot.resolve("up" + i + ".bin")));
+        }
+    }
+
+    private interface Worker {
+        void run(FtpService service) throws IOException;
+    }
+
+    private double download(List<String> names, int workers, Path target) throws Exception {
+        Queue<String> pending = new ConcurrentLinkedQueue<>(names);
+        long start = System.nanoTime();
+        runWorkers(workers, service -> {
+            String name;
+            while ((name = pending.poll()) != null) {
+                assertTrue(service.downloadFile("/" + name, target.resolve(name)));
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (String name : names) {
+            assertEquals(-1, Files.mismatch(serverRoot.resolve(name), target.resolve(name)));
+        }
+        return seconds;
+    }
+
+    private void runWorkers(int workers, Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                results.add(executor.submit(() -> {
+                    FtpService service = pool.borrow(connection);
+                    try {
+                        worker.run(service);
+                    } finally {
+                        pool.release(connection, service);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<String> createServerFiles(int count) throws IOException {
+        Random random = new Random(count);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[500 + random.nextInt(20_000)];
+            random.nextBytes(data);
+            Files.write(serverRoot.resolve("file" + i + ".bin"), data);
+            names.add("file" + i + ".bin");
+        }
+        return names;
+    }
+}
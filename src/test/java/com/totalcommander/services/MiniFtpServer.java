@@ -0,0 +1,174 @@
+package com.totalcommander.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server FTP minimo per i test: modalità passiva, file sotto una cartella locale e un
+ * ritardo fisso per comando che simula la latenza di rete
+ */
+class MiniFtpServer implements AutoCloseable {
+
+    private final Path root;
+    private final long commandDelayMillis;
+    private final ServerSocket control;
+    private final ExecutorService sessions = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "mini-ftp");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicInteger logins = new AtomicInteger();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicInteger maxOpenSessions = new AtomicInteger();
+
+    MiniFtpServer(Path root, long commandDelayMillis) throws IOException {
+        this.root = root;
+        this.commandDelayMillis = commandDelayMillis;
+        this.control = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        sessions.submit(this::acceptLoop);
+    }
+
+    int getPort() {
+        return control.getLocalPort();
+    }
+
+    int getLogins() {
+        return logins.get();
+    }
+
+    int getMaxOpenSessions() {
+        return maxOpenSessions.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        control.close();
+        sessions.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!control.isClosed()) {
+            try {
+                Socket socket = control.accept();
+                sessions.submit(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        maxOpenSessions.accumulateAndGet(openSessions.incrementAndGet(), Math::max);
+        ServerSocket passive = null;
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            reply(out, "220 pronto");
+            long restart = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                Thread.sleep(commandDelayMillis);
+                int space = line.indexOf(' ');
+                String command = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+                String argument = space < 0 ? "" : line.substring(space + 1);
+                Path file = root.resolve(argument.startsWith("/") ? argument.substring(1) : argument);
+                switch (command) {
+                    case "USER":
+                        reply(out, "331 password");
+                        break;
+                    case "PASS":
+                        logins.incrementAndGet();
+                        reply(out, "230 ok");
+                        break;
+                    case "TYPE":
+                    case "NOOP":
+                    case "MODE":
+                    case "STRU":
+                        reply(out, "200 ok");
+                        break;
+                    case "SYST":
+                        reply(out, "215 UNIX Type: L8");
+                        break;
+                    case "PWD":
+                        reply(out, "257 \"/\"");
+                        break;
+                    case "PASV":
+                        passive = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                        int port = passive.getLocalPort();
+                        reply(out, "227 Entering Passive Mode (127,0,0,1," + (port >> 8) + "," + (port & 255) + ")");
+                        break;
+                    case "REST":
+                        restart = Long.parseLong(argument);
+                        reply(out, "350 ok");
+                        break;
+                    case "SIZE":
+                        if (Files.isRegularFile(file)) {
+                            reply(out, "213 " + Files.size(file));
+                        } else {
+                            reply(out, "550 assente");
+                        }
+                        break;
+                    case "RETR":
+                    case "STOR":
+                        if (command.equals("RETR") && !Files.isRegularFile(file)) {
+                            reply(out, "550 assente");
+                            break;
+                        }
+                        reply(out, "150 apertura");
+                        try (Socket data = passive.accept()) {
+                            if (command.equals("RETR")) {
+                                try (InputStream source = Files.newInputStream(file)) {
+                                    source.skipNBytes(restart);
+                                    source.transferTo(data.getOutputStream());
+                                }
+                            } else {
+                                try (OutputStream target = Files.newOutputStream(file)) {
+                                    data.getInputStream().transferTo(target);
+                                }
+                            }
+                        } finally {
+                            passive.close();
+                            restart = 0;
+                        }
+                        reply(out, "226 completato");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 arrivederci");
+                        return;
+                    default:
+                        reply(out, "502 non supportato");
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // Sessione chiusa dal client o server arrestato
+        } finally {
+            openSessions.decrementAndGet();
+            if (passive != null) {
+                try {
+                    passive.close();
+                } catch (IOException e) {
+                    // già chiuso
+                }
+            }
+        }
+    }
+
+    private static void reply(Writer out, String text) throws IOException {
+        out.write(text + "\r\n");
+        out.flush();
+    }
+}
@@ -0,0 +1,167 @@
+package com.totalcommander.services;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.totalcommander.models.TransferTask;
+import com.totalcommander.services.TransferLogService.TransferLogEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Log dei trasferimenti in sola aggiunta con indice in memoria. Il servizio è statico
+ * e il file è condiviso fra i test: ogni test usa percorsi propri
+ */
+class TransferLogServiceTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void latestEntryWinsForEachPair() {
+        TransferTask task = newTask();
+        task.setTotalBytes(1000);
+        task.setBytesTransferred(100);
+        TransferLogService.saveTransfer(task);
+        task.setBytesTransferred(600);
+        TransferLogService.saveTransfer(task);
+
+        TransferLogEntry entry = TransferLogService.findIncompleteTransfer(task.getSourcePath(), task.getDestinationPath());
+        assertNotNull(entry);
+        assertEquals(600, entry.bytesTransferred);
+        assertEquals(1000, entry.totalBytes);
+
+        task.setCompleted(true);
+        TransferLogService.saveTransfer(task);
+        assertNull(TransferLogService.findIncompleteTransfer(task.getSourcePath(), task.getDestinationPath()));
+        assertNull(TransferLogService.findUnfinishedTransfer(task.getSourcePath(), task.getDestinationPath()));
+    }
+
+    @Test
+    void failedTransferIsUnfinishedButNotIncomplete() {
+        TransferTask task = newTask();
+        task.setFailed(true, "Connessione persa");
+        TransferLogService.saveTransfer(task);
+
+        assertNull(TransferLogService.findIncompleteTransfer(task.getSourcePath(), task.getDestinationPath()));
+        TransferLogEntry entry = TransferLogService.findUnfinishedTransfer(task.getSourcePath(), task.getDestinationPath());
+        assertNotNull(entry);
+        assertEquals("Connessione persa", entry.errorMessage);
+    }
+
+    @Test
+    void recordsBytesWrittenAtDestination() {
+        TransferTask task = newTask();
+        task.setBytesTransferred(10);
+        TransferLogService.saveTransfer(task, 4096);
+
+        assertEquals(4096, TransferLogService.findUnfinishedTransfer(task.getSourcePath(), task.getDestinationPath())
+            .bytesTransferred);
+    }
+
+    @Test
+    void flushWritesEveryEntryToDisk() {
+        TransferTask task = newTask();
+        for (int i = 1; i <= 5; i++) {
+            task.setBytesTransferred(i * 100L);
+            TransferLogService.saveTransfer(task);
+        }
+
+        List<TransferLogEntry> logged = new ArrayList<>();
+        for (TransferLogEntry entry : TransferLogService.loadAllTransfers()) {
+            if (entry.sourcePath.equals(task.getSourcePath())) {
+                logged.add(entry);
+            }
+        }
+        // La compattazione può lasciare solo l'ultima voce, che deve comunque essere su disco
+        assertFalse(logged.isEmpty());
+        assertEquals(500, logged.get(logged.size() - 1).bytesTransferred);
+    }
+
+    /**
+     * Due registrazioni per trasferimento (avvio e fine) più la ricerca per la ripresa,
+     * confrontate con il vecchio log riscritto per intero a ogni salvataggio:
+     * mvn test -Dbenchmark=true [-Dbenchmark.transfers=100000] [-Dbenchmark.legacyTransfers=2000]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstFullRewrite() throws IOException {
+        int transfers = Integer.getInteger("benchmark.transfers", 100_000);
+        int legacyTransfers = Integer.getInteger("benchmark.legacyTransfers", 2000);
+        String prefix = "/benchmark/" + UUID.randomUUID() + "/";
+
+        long start = System.nanoTime();
+        for (int i = 0; i < transfers; i++) {
+            TransferTask task = new TransferTask(prefix + i, prefix + "dst" + i, "f" + i, "Download");
+            TransferLogService.saveTransfer(task);
+            task.setCompleted(true);
+            TransferLogService.saveTransfer(task);
+        }
+        double recordSeconds = (System.nanoTime() - start) / 1e9;
+        TransferLogService.flush();
+        double totalSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < transfers; i++) {
+            if (TransferLogService.findUnfinishedTransfer(prefix + i, prefix + "dst" + i) == null) {
+                found++;
+            }
+        }
+        double lookupMicros = (System.nanoTime() - start) / 1e3 / transfers;
+        assertEquals(transfers, found);
+
+        Path legacyFile = temp.resolve("transfer_log.json");
+        start = System.nanoTime();
+        for (int i = 0; i < legacyTransfers; i++) {
+            TransferTask task = new TransferTask(prefix + i, prefix + "dst" + i, "f" + i, "Download");
+            legacySave(legacyFile, task);
+            task.setCompleted(true);
+            legacySave(legacyFile, task);
+        }
+        double legacySeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d trasferimenti: registrazione %.2f s, su disco dopo %.2f s, ricerca %.2f us%n",
+            transfers, recordSeconds, totalSeconds, lookupMicros);
+        System.out.printf("%d trasferimenti con riscrittura completa: %.2f s (%.2f ms a trasferimento)%n",
+            legacyTransfers, legacySeconds, legacySeconds * 1000 / legacyTransfers);
+    }
+
+    private static TransferTask newTask() {
+        String id = UUID.randomUUID().toString();
+        return new TransferTask("/remoto/" + id + ".bin", "/locale/" + id + ".bin", id + ".bin", "Download");
+    }
+
+    /**
+     * Vecchio salvataggio: rilegge l'intero log, sostituisce la voce e lo riscrive
+     */
+    private static void legacySave(Path file, TransferTask task) throws IOException {
+        Gson gson = new Gson();
+        List<TransferLogEntry> logs = new ArrayList<>();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                logs = gson.fromJson(reader, new TypeToken<List<TransferLogEntry>>(){}.getType());
+            }
+        }
+        TransferLogEntry entry = new TransferLogEntry(task);
+        logs.removeIf(log -> log.sourcePath.equals(entry.sourcePath) && log.destinationPath.equals(entry.destinationPath)
+            && !log.completed && !log.failed);
+        logs.add(entry);
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile)) {
+            gson.toJson(logs, writer);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
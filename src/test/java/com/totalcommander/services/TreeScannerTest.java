@@ -0,0 +1,120 @@
+package com.totalcommander.services;
+
+import com.totalcommander.models.ScanResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Scansione preliminare della selezione prima di copia e spostamento
+ */
+class TreeScannerTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void countsFilesAndBytesWithDirectoriesInPreOrder() throws IOException {
+        Path root = Files.createDirectory(temp.resolve("radice"));
+        long bytes = createTree(root, 3, 4, 5);
+        Path single = Files.write(temp.resolve("singolo.txt"), new byte[42]);
+
+        ScanResult scan = new TreeScanner().scan(List.of(root.toFile(), single.toFile()));
+
+        // 5 file per cartella: radice + 4 + 16 + 64 cartelle
+        assertEquals(85 * 5 + 1, scan.getFileCount());
+        assertEquals(85, scan.getDirectoryCount());
+        assertEquals(bytes + 42, scan.getTotalBytes());
+        assertTrue(scan.getFailures().isEmpty());
+        assertFalse(scan.isCancelled());
+        Set<Path> seen = new HashSet<>();
+        for (ScanResult.Entry dir : scan.getDirectories()) {
+            Path parent = dir.getRelativePath().getParent();
+            assertTrue(parent == null || seen.contains(parent), "cartella prima del padre: " + dir.getRelativePath());
+            seen.add(dir.getRelativePath());
+        }
+    }
+
+    @Test
+    void cancelledScanIsReported() throws IOException {
+        Path root = Files.createDirectory(temp.resolve("radice"));
+        createTree(root, 2, 3, 3);
+        OperationControl control = new OperationControl();
+        control.cancel();
+
+        TreeScanner scanner = new TreeScanner();
+        scanner.setControl(control);
+        ScanResult scan = scanner.scan(List.of(root.toFile()));
+
+        assertTrue(scan.isCancelled());
+        assertEquals(0, scan.getFileCount());
+    }
+
+    @Test
+    void refusesScanLargerThanFreeSpace() {
+        ScanResult scan = new ScanResult(
+            List.of(new ScanResult.Entry(temp.resolve("enorme"), Path.of("enorme"), Long.MAX_VALUE / 2, false)),
+            List.of(), false);
+
+        assertThrows(IOException.class, () -> TreeScanner.ensureFreeSpace(scan, temp));
+    }
+
+    /**
+     * Confronto con un Files.walk sequenziale: mvn test -Dbenchmark=true [-Dbenchmark.depth=4]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkAgainstSequentialWalk() throws IOException {
+        Path root = Files.createDirectory(temp.resolve("radice"));
+        createTree(root, Integer.getInteger("benchmark.depth", 4), 8, 20);
+
+        long start = System.nanoTime();
+        AtomicLong walked = new AtomicLong();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                try {
+                    walked.addAndGet(Files.size(path));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        double sequential = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        ScanResult scan = new TreeScanner().scan(List.of(root.toFile()));
+        double parallel = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(walked.get(), scan.getTotalBytes());
+        System.out.printf("Scansione di %d file: Files.walk %.2f s, TreeScanner %.2f s%n",
+            scan.getFileCount(), sequential, parallel);
+    }
+
+    /**
+     * Albero con filesPerDirectory file in ogni cartella e fanOut sottocartelle fino a depth
+     * livelli; restituisce i byte scritti
+     */
+    private static long createTree(Path dir, int depth, int fanOut, int filesPerDirectory) throws IOException {
+        long bytes = 0;
+        for (int i = 0; i < filesPerDirectory; i++) {
+            Files.write(dir.resolve("f" + i + ".dat"), new byte[i * 10]);
+            bytes += i * 10;
+        }
+        if (depth > 0) {
+            for (int i = 0; i < fanOut; i++) {
+                bytes += createTree(Files.createDirectory(dir.resolve("d" + i)), depth - 1, fanOut, filesPerDirectory);
+            }
+        }
+        return bytes;
+    }
+}